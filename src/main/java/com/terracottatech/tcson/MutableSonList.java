@@ -32,29 +32,35 @@ public interface MutableSonList extends SonList<MutableSonValue>, Externalizable
   long serialVersionUID = 42L;
 
   default MutableSonList add(SonType type, Object value) {
-    return set(size(), type, value);
+    return add(new MutableSonValue(type, value));
   }
 
   MutableSonList set(int idx, SonType type, Object value);
 
   default MutableSonList add(boolean v) {
-    return set(size(), v);
+    return add(new MutableSonValue(SonType.BOOL, v));
   }
 
   MutableSonList set(int idx, boolean v);
 
   default MutableSonList add(char v) {
-    return set(size(), v);
+    return add(new MutableSonValue(SonType.CHAR, v));
   }
 
   MutableSonList set(int idx, char v);
 
   default MutableSonList add(String v) {
-    return set(size(), v);
+    return add(new MutableSonValue(SonType.STRING, v));
   }
 
   MutableSonList set(int idx, String v);
 
+  /**
+   * Append a value. The other single argument adds all come through here.
+   *
+   * @param value value
+   * @return this list
+   */
   default MutableSonList add(MutableSonValue value) {
     return set(size(), value);
   }
@@ -62,61 +68,61 @@ public interface MutableSonList extends SonList<MutableSonValue>, Externalizable
   MutableSonList set(int idx, MutableSonValue value);
 
   default MutableSonList add(UTCMillisDate v) {
-    return set(size(), v);
+    return add(new MutableSonValue(SonType.DATE, v));
   }
 
   MutableSonList set(int idx, UTCMillisDate v);
 
   default MutableSonList add(UUID v) {
-    return set(size(), v);
+    return add(new MutableSonValue(SonType.UUID, v));
   }
 
   MutableSonList set(int idx, UUID v);
 
   default MutableSonList add(byte v) {
-    return set(size(), v);
+    return add(new MutableSonValue(SonType.BYTE, v));
   }
 
   MutableSonList set(int idx, byte v);
 
   default MutableSonList add(short v) {
-    return set(size(), v);
+    return add(new MutableSonValue(SonType.SHORT, v));
   }
 
   MutableSonList set(int idx, short v);
 
   default MutableSonList add(float v) {
-    return set(size(), v);
+    return add(new MutableSonValue(SonType.FLOAT, v));
   }
 
   MutableSonList set(int idx, float v);
 
   default MutableSonList add(int v) {
-    return set(size(), v);
+    return add(new MutableSonValue(SonType.INT, v));
   }
 
   MutableSonList set(int idx, int v);
 
   default MutableSonList add(double v) {
-    return set(size(), v);
+    return add(new MutableSonValue(SonType.DOUBLE, v));
   }
 
   MutableSonList set(int idx, double v);
 
   default MutableSonList add(long v) {
-    return set(size(), v);
+    return add(new MutableSonValue(SonType.LONG, v));
   }
 
   MutableSonList set(int idx, long v);
 
   default MutableSonList add(MutableSonList v) {
-    return set(size(), v);
+    return add(new MutableSonValue(SonType.LIST, v));
   }
 
   MutableSonList set(int idx, MutableSonList v);
 
   default MutableSonList add(MutableSonMap v) {
-    return set(size(), v);
+    return add(new MutableSonValue(SonType.MAP, v));
   }
 
   MutableSonList set(int idx, MutableSonMap v);
@@ -166,7 +172,7 @@ public interface MutableSonList extends SonList<MutableSonValue>, Externalizable
   }
 
   default MutableSonList add(byte signifier, byte[] v) {
-    return set(size(), signifier, v);
+    return add(new MutableSonValue(SonType.BYTES, new SonBytes(signifier, ByteBuffer.wrap(v))));
   }
 
   default MutableSonList set(int idx, byte signifier, byte[] v) {
@@ -174,7 +180,7 @@ public interface MutableSonList extends SonList<MutableSonValue>, Externalizable
   }
 
   default MutableSonList add(byte signifier, byte[] v, int off, int len) {
-    return set(size(), signifier, v, off, len);
+    return add(new MutableSonValue(SonType.BYTES, new SonBytes(signifier, ByteBuffer.wrap(v, off, len))));
   }
 
   default MutableSonList set(int idx, byte signifier, byte[] v, int off, int len) {
@@ -182,7 +188,7 @@ public interface MutableSonList extends SonList<MutableSonValue>, Externalizable
   }
 
   default MutableSonList addNull() {
-    return setNull(size());
+    return add(MutableSonValue.NULL_VALUE);
   }
 
   MutableSonList setNull(int idx);
@@ -213,6 +219,19 @@ public interface MutableSonList extends SonList<MutableSonValue>, Externalizable
 
   void sort(Comparator<? super SonValue> comparator);
 
+  /**
+   * Encode canonically: keys sorted in every nested map and ids allocated in that
+   * order, so equal lists always produce identical bytes, and the bytes
+   * themselves can serve as a cache key or content hash.
+   *
+   * @return canonical buffer
+   */
+  default ByteBuffer toCanonicalBuffer() {
+    return toCanonicalBuffer(null);
+  }
+
+  ByteBuffer toCanonicalBuffer(NameSource ns);
+
   default ByteBuffer toBuffer() {
     return toBuffer((NameSource) null);
   }
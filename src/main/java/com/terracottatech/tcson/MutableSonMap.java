@@ -94,6 +94,19 @@ public interface MutableSonMap extends SonMap<MutableSonValue.MapValue>, Externa
 
   MutableSonMap remove(String name);
 
+  /**
+   * Encode canonically: keys sorted in every map and ids allocated in that
+   * order, so equal maps always produce identical bytes, and the bytes
+   * themselves can serve as a cache key or content hash.
+   *
+   * @return canonical buffer
+   */
+  default ByteBuffer toCanonicalBuffer() {
+    return toCanonicalBuffer(null);
+  }
+
+  ByteBuffer toCanonicalBuffer(NameSource ns);
+
   default ByteBuffer toBuffer() {
     return toBuffer((NameSource) null);
   }
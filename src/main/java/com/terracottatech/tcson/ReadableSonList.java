@@ -29,6 +29,123 @@ public interface ReadableSonList extends SonList<ReadableSonValue> {
 
   NameSource getNameSource();
 
+  /**
+   * Read a long value without boxing.
+   *
+   * @param idx the index
+   * @return the value
+   * @throws ClassCastException if the value is not a long
+   */
+  long getLong(int idx);
+
+  /**
+   * Read a long value without boxing, or a default if the value is null.
+   *
+   * @param idx the index
+   * @param def the default
+   * @return the value
+   * @throws ClassCastException if the value is present but not a long
+   */
+  long getLongOrDefault(int idx, long def);
+
+  /**
+   * Read a int value without boxing.
+   *
+   * @param idx the index
+   * @return the value
+   * @throws ClassCastException if the value is not a int
+   */
+  int getInt(int idx);
+
+  /**
+   * Read a int value without boxing, or a default if the value is null.
+   *
+   * @param idx the index
+   * @param def the default
+   * @return the value
+   * @throws ClassCastException if the value is present but not a int
+   */
+  int getIntOrDefault(int idx, int def);
+
+  /**
+   * Read a double value without boxing.
+   *
+   * @param idx the index
+   * @return the value
+   * @throws ClassCastException if the value is not a double
+   */
+  double getDouble(int idx);
+
+  /**
+   * Read a double value without boxing, or a default if the value is null.
+   *
+   * @param idx the index
+   * @param def the default
+   * @return the value
+   * @throws ClassCastException if the value is present but not a double
+   */
+  double getDoubleOrDefault(int idx, double def);
+
+  /**
+   * Read a boolean value without boxing.
+   *
+   * @param idx the index
+   * @return the value
+   * @throws ClassCastException if the value is not a boolean
+   */
+  boolean getBoolean(int idx);
+
+  /**
+   * Read a boolean value without boxing, or a default if the value is null.
+   *
+   * @param idx the index
+   * @param def the default
+   * @return the value
+   * @throws ClassCastException if the value is present but not a boolean
+   */
+  boolean getBooleanOrDefault(int idx, boolean def);
+
+  /**
+   * Read a String value without boxing.
+   *
+   * @param idx the index
+   * @return the value
+   * @throws ClassCastException if the value is not a String
+   */
+  String getString(int idx);
+
+  /**
+   * Read a String value without boxing, or a default if the value is null.
+   *
+   * @param idx the index
+   * @param def the default
+   * @return the value
+   * @throws ClassCastException if the value is present but not a String
+   */
+  String getStringOrDefault(int idx, String def);
+
+  /**
+   * Point a caller supplied map at a nested map value, instead of allocating
+   * a new one.
+   *
+   * @param idx the index
+   * @param target map to reuse, from {@link Son#reusableMap()}
+   * @return the target
+   * @throws ClassCastException if the value is not a map
+   */
+  ReadableSonMap mapValueInto(int idx, ReadableSonMap target);
+
+  /**
+   * Point a caller supplied list at a nested list value, instead of
+   * allocating a new one.
+   *
+   * @param idx the index
+   * @param target list to reuse, from {@link Son#reusableList()}
+   * @return the target
+   * @throws ClassCastException if the value is not a list
+   */
+  ReadableSonList listValueInto(int idx, ReadableSonList target);
+
   ByteBuffer toBuffer();
 
   void toBuffer(ByteBuffer dest);
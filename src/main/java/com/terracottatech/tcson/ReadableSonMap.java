@@ -18,6 +18,7 @@ package com.terracottatech.tcson;
 import com.terracottatech.tcson.reading.ReadableSonValue;
 
 import java.nio.ByteBuffer;
+import java.util.Iterator;
 
 /**
  * A read only, buffer based SonMap. An implementation of this class
@@ -37,6 +38,215 @@ public interface ReadableSonMap extends SonMap<ReadableSonValue.MapValue> {
 
   NameSource getNameSource();
 
+  /**
+   * Read a long value without boxing.
+   *
+   * @param name the key name
+   * @return the value
+   * @throws java.util.NoSuchElementException if there is no such key
+   * @throws ClassCastException if the value is not a long
+   */
+  long getLong(String name);
+
+  /**
+   * Read a long value without boxing, or a default if the key is absent or null.
+   *
+   * @param name the key name
+   * @param def the default
+   * @return the value
+   * @throws ClassCastException if the value is present but not a long
+   */
+  long getLongOrDefault(String name, long def);
+
+  /**
+   * Read a long value without boxing.
+   *
+   * @param key the prepared key
+   * @return the value
+   * @throws java.util.NoSuchElementException if there is no such key
+   * @throws ClassCastException if the value is not a long
+   */
+  long getLong(SonKey key);
+
+  /**
+   * Read a long value without boxing, or a default if the key is absent or null.
+   *
+   * @param key the prepared key
+   * @param def the default
+   * @return the value
+   * @throws ClassCastException if the value is present but not a long
+   */
+  long getLongOrDefault(SonKey key, long def);
+
+  /**
+   * Read a int value without boxing.
+   *
+   * @param name the key name
+   * @return the value
+   * @throws java.util.NoSuchElementException if there is no such key
+   * @throws ClassCastException if the value is not a int
+   */
+  int getInt(String name);
+
+  /**
+   * Read a int value without boxing, or a default if the key is absent or null.
+   *
+   * @param name the key name
+   * @param def the default
+   * @return the value
+   * @throws ClassCastException if the value is present but not a int
+   */
+  int getIntOrDefault(String name, int def);
+
+  /**
+   * Read a int value without boxing.
+   *
+   * @param key the prepared key
+   * @return the value
+   * @throws java.util.NoSuchElementException if there is no such key
+   * @throws ClassCastException if the value is not a int
+   */
+  int getInt(SonKey key);
+
+  /**
+   * Read a int value without boxing, or a default if the key is absent or null.
+   *
+   * @param key the prepared key
+   * @param def the default
+   * @return the value
+   * @throws ClassCastException if the value is present but not a int
+   */
+  int getIntOrDefault(SonKey key, int def);
+
+  /**
+   * Read a double value without boxing.
+   *
+   * @param name the key name
+   * @return the value
+   * @throws java.util.NoSuchElementException if there is no such key
+   * @throws ClassCastException if the value is not a double
+   */
+  double getDouble(String name);
+
+  /**
+   * Read a double value without boxing, or a default if the key is absent or null.
+   *
+   * @param name the key name
+   * @param def the default
+   * @return the value
+   * @throws ClassCastException if the value is present but not a double
+   */
+  double getDoubleOrDefault(String name, double def);
+
+  /**
+   * Read a double value without boxing.
+   *
+   * @param key the prepared key
+   * @return the value
+   * @throws java.util.NoSuchElementException if there is no such key
+   * @throws ClassCastException if the value is not a double
+   */
+  double getDouble(SonKey key);
+
+  /**
+   * Read a double value without boxing, or a default if the key is absent or null.
+   *
+   * @param key the prepared key
+   * @param def the default
+   * @return the value
+   * @throws ClassCastException if the value is present but not a double
+   */
+  double getDoubleOrDefault(SonKey key, double def);
+
+  /**
+   * Read a boolean value without boxing.
+   *
+   * @param name the key name
+   * @return the value
+   * @throws java.util.NoSuchElementException if there is no such key
+   * @throws ClassCastException if the value is not a boolean
+   */
+  boolean getBoolean(String name);
+
+  /**
+   * Read a boolean value without boxing, or a default if the key is absent or null.
+   *
+   * @param name the key name
+   * @param def the default
+   * @return the value
+   * @throws ClassCastException if the value is present but not a boolean
+   */
+  boolean getBooleanOrDefault(String name, boolean def);
+
+  /**
+   * Read a boolean value without boxing.
+   *
+   * @param key the prepared key
+   * @return the value
+   * @throws java.util.NoSuchElementException if there is no such key
+   * @throws ClassCastException if the value is not a boolean
+   */
+  boolean getBoolean(SonKey key);
+
+  /**
+   * Read a boolean value without boxing, or a default if the key is absent or null.
+   *
+   * @param key the prepared key
+   * @param def the default
+   * @return the value
+   * @throws ClassCastException if the value is present but not a boolean
+   */
+  boolean getBooleanOrDefault(SonKey key, boolean def);
+
+  /**
+   * Read a String value without boxing.
+   *
+   * @param name the key name
+   * @return the value
+   * @throws java.util.NoSuchElementException if there is no such key
+   * @throws ClassCastException if the value is not a String
+   */
+  String getString(String name);
+
+  /**
+   * Read a String value without boxing, or a default if the key is absent or null.
+   *
+   * @param name the key name
+   * @param def the default
+   * @return the value
+   * @throws ClassCastException if the value is present but not a String
+   */
+  String getStringOrDefault(String name, String def);
+
+  /**
+   * Read a String value without boxing.
+   *
+   * @param key the prepared key
+   * @return the value
+   * @throws java.util.NoSuchElementException if there is no such key
+   * @throws ClassCastException if the value is not a String
+   */
+  String getString(SonKey key);
+
+  /**
+   * Read a String value without boxing, or a default if the key is absent or null.
+   *
+   * @param key the prepared key
+   * @param def the default
+   * @return the value
+   * @throws ClassCastException if the value is present but not a String
+   */
+  String getStringOrDefault(SonKey key, String def);
+
+  /**
+   * Iterate the keys, in stored order, without decoding any values.
+   *
+   * @return key iterator
+   */
+  default Iterator<String> keyIterator() {
+    return keys().iterator();
+  }
+
   /**
    * Reset this to preside over a new buffer.
    *
@@ -57,7 +267,57 @@ public interface ReadableSonMap extends SonMap<ReadableSonValue.MapValue> {
    */
   ReadableSonMap reset(ByteBuffer buf, int start, int limit);
 
+  /**
+   * Compare the value under a key with the value under the same key in
+   * another map, ordered as {@link SonValue#compareTo(SonValue)} would, but
+   * without materializing either value.
+   *
+   * @param name the key name
+   * @param other the other map
+   * @return negative, zero or positive
+   * @throws java.util.NoSuchElementException if either map lacks the key
+   * @throws ClassCastException if the values are maps or lists
+   */
+  int compareValue(String name, ReadableSonMap other);
+
+  int compareValue(SonKey key, ReadableSonMap other);
+
+  /**
+   * Point a caller supplied map at a nested map value, instead of allocating
+   * a new one. The target's internal arrays are reused, so a loop over
+   * nested documents can run without garbage.
+   *
+   * @param name the key name
+   * @param target map to reuse, from {@link Son#reusableMap()}
+   * @return the target, or null if there is no such key
+   * @throws ClassCastException if the value is not a map
+   */
+  ReadableSonMap mapValueInto(String name, ReadableSonMap target);
+
+  ReadableSonMap mapValueInto(SonKey key, ReadableSonMap target);
+
+  /**
+   * Point a caller supplied list at a nested list value, instead of
+   * allocating a new one.
+   *
+   * @param name the key name
+   * @param target list to reuse, from {@link Son#reusableList()}
+   * @return the target, or null if there is no such key
+   * @throws ClassCastException if the value is not a list
+   */
+  ReadableSonList listValueInto(String name, ReadableSonList target);
+
+  ReadableSonList listValueInto(SonKey key, ReadableSonList target);
+
   ByteBuffer toBuffer();
 
   void toBuffer(ByteBuffer dest);
+
+  /**
+   * Re-encode this map canonically, see {@link MutableSonMap#toCanonicalBuffer()}.
+   * Equal maps produce identical bytes whichever way they were written.
+   *
+   * @return canonical buffer
+   */
+  ByteBuffer toCanonicalBuffer();
 }
@@ -15,20 +15,28 @@
  */
 package com.terracottatech.tcson;
 
+import com.terracottatech.tcson.mutable.ConcurrentMutableSonListImpl;
+import com.terracottatech.tcson.mutable.ConcurrentMutableSonMapImpl;
 import com.terracottatech.tcson.mutable.MutableSonListImpl;
 import com.terracottatech.tcson.mutable.MutableSonMapImpl;
 import com.terracottatech.tcson.mutable.MutableSonValue;
+import com.terracottatech.tcson.mutable.OverlaySonMapImpl;
+import com.terracottatech.tcson.pile.ChannelManagedBuffer;
 import com.terracottatech.tcson.pile.ManagedBuffer;
 import com.terracottatech.tcson.printers.JSONPrettyPrinter;
 import com.terracottatech.tcson.printers.SonPrettyPrinter;
 import com.terracottatech.tcson.printers.SonPrinter;
 import com.terracottatech.tcson.query.SonDotParser;
+import com.terracottatech.tcson.reading.GlobalNameTableCache;
 import com.terracottatech.tcson.reading.ReadableSonListImpl;
 import com.terracottatech.tcson.reading.ReadableSonMapImpl;
+import com.terracottatech.tcson.reading.SonBatchReader;
+import com.terracottatech.tcson.writing.SonBatchWriter;
 import com.terracottatech.tcson.writing.SonStreamingListWriter;
 import com.terracottatech.tcson.writing.SonStreamingMapWriter;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.UUID;
 
 /**
@@ -119,6 +127,19 @@ public interface Son {
     return new ReadableSonMapImpl(nameSource, buf);
   }
 
+  /**
+   * Readable map which shares its decoded global name table, via the
+   * supplied cache, with other documents carrying identical name tables.
+   *
+   * @param nameSource name source, may be null
+   * @param cache name table cache, see {@link GlobalNameTableCache#shared()}
+   * @param buf buffer
+   * @return readable map
+   */
+  static ReadableSonMap readableMap(NameSource nameSource, GlobalNameTableCache cache, ByteBuffer buf) {
+    return new ReadableSonMapImpl(nameSource, cache, buf);
+  }
+
   static ReadableSonList readableList(ByteBuffer buf) {
     return new ReadableSonListImpl(null, buf);
   }
@@ -127,14 +148,71 @@ public interface Son {
     return new ReadableSonListImpl(nameSource, buf);
   }
 
+  static ReadableSonList readableList(NameSource nameSource, GlobalNameTableCache cache, ByteBuffer buf) {
+    return new ReadableSonListImpl(nameSource, cache, buf);
+  }
+
+  /**
+   * Unattached readable map, for reuse via
+   * {@link ReadableSonMap#mapValueInto(String, ReadableSonMap)} or
+   * {@link ReadableSonMap#reset(ByteBuffer)}.
+   *
+   * @return readable map
+   */
+  static ReadableSonMap reusableMap() {
+    return new ReadableSonMapImpl();
+  }
+
+  /**
+   * Unattached readable list, for reuse via
+   * {@link ReadableSonMap#listValueInto(String, ReadableSonList)}.
+   *
+   * @return readable list
+   */
+  static ReadableSonList reusableList() {
+    return new ReadableSonListImpl();
+  }
+
   static MutableSonMap writeableMap() {
     return new MutableSonMapImpl();
   }
 
+  /**
+   * Mutable map over a readable one which only copies what it changes;
+   * untouched entries are copied raw from the source buffer when written.
+   * The source buffer must not change while the map is in use.
+   *
+   * @param source readable map
+   * @return mutable overlay
+   */
+  static MutableSonMap overlayMap(ReadableSonMap source) {
+    return new OverlaySonMapImpl(source);
+  }
+
   static MutableSonList writeableList() {
     return new MutableSonListImpl();
   }
 
+  /**
+   * Mutable map which may be shared between threads. Reads do not lock and
+   * iterators see a snapshot; each write copies the entries.
+   *
+   * @return concurrent mutable map
+   */
+  static MutableSonMap concurrentWriteableMap() {
+    return new ConcurrentMutableSonMapImpl();
+  }
+
+  /**
+   * Mutable list which may be shared between threads. Reads do not lock,
+   * iterators see a snapshot, and appends are atomic.
+   *
+   * @return concurrent mutable list
+   */
+  static MutableSonList concurrentWriteableList() {
+    return new ConcurrentMutableSonListImpl();
+  }
+
   static SonStreamingMapWriter<Void> streamingMapWriter() {
     return new SonStreamingMapWriter<>();
   }
@@ -151,6 +229,19 @@ public interface Son {
     return new SonStreamingMapWriter<>(nameSource, buffer);
   }
 
+  /**
+   * Streaming map writer which writes through to a channel in chunks as it
+   * goes, so memory use does not depend on the size of the document.
+   * The document is fully written once the root {@code endMap()} returns.
+   *
+   * @param nameSource name source, may be null
+   * @param channel destination channel
+   * @return writer
+   */
+  static SonStreamingMapWriter<Void> streamingMapWriter(NameSource nameSource, WritableByteChannel channel) {
+    return new SonStreamingMapWriter<>(nameSource, new ChannelManagedBuffer(channel));
+  }
+
   static SonStreamingListWriter<Void> streamingListWriter() {
     return new SonStreamingListWriter<>(null, new ManagedBuffer(1024));
   }
@@ -167,6 +258,28 @@ public interface Son {
     return new SonStreamingListWriter<>(nameSource, mb);
   }
 
+  static SonStreamingListWriter<Void> streamingListWriter(NameSource nameSource, WritableByteChannel channel) {
+    return new SonStreamingListWriter<>(nameSource, new ChannelManagedBuffer(channel));
+  }
+
+  /**
+   * Writer for a batch of maps sharing one name table.
+   *
+   * @param nameSource name source, may be null
+   * @return batch writer
+   */
+  static SonBatchWriter batchWriter(NameSource nameSource) {
+    return new SonBatchWriter(nameSource);
+  }
+
+  static SonBatchWriter batchWriter(NameSource nameSource, ManagedBuffer mb) {
+    return new SonBatchWriter(nameSource, mb);
+  }
+
+  static SonBatchReader batchReader(NameSource nameSource, ByteBuffer buf) {
+    return new SonBatchReader(nameSource, buf);
+  }
+
   static SonDotParser dotParser() {
     return new SonDotParser();
   }
@@ -0,0 +1,94 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson;
+
+import com.terracottatech.tcson.reading.SonKeyAccess;
+
+/**
+ * Prepared handle for a map key. Create one per field name, hold onto it,
+ * and use {@link SonMap#get(SonKey)} in place of {@link SonMap#get(String)}.
+ * <p>
+ * Readable maps resolve the key to a name id once per name table and
+ * remember the slot the key was last found at, so repeated access to
+ * documents of the same shape neither hashes the name nor probes a map.
+ * Documents share a name table when read through one
+ * {@link com.terracottatech.tcson.reading.GlobalNameTableCache} or batch, or
+ * when their names are byte for byte the same. A key holds on to no
+ * document. Keys are safe to share between threads.
+ */
+public final class SonKey {
+  static {
+    SonKeyAccess.install(new Access());
+  }
+
+  private static final class Access extends SonKeyAccess {
+    @Override
+    protected Object resolved(SonKey key) {
+      return key.resolved;
+    }
+
+    @Override
+    protected void resolved(SonKey key, Object resolved) {
+      key.resolved = resolved;
+    }
+
+    @Override
+    protected int slotHint(SonKey key) {
+      return key.slotHint;
+    }
+
+    @Override
+    protected void slotHint(SonKey key, int slot) {
+      key.slotHint = slot;
+    }
+  }
+
+  private final String name;
+  // owned by the reading package
+  private volatile Object resolved;
+  // racy on purpose; readers verify the hint before trusting it
+  private int slotHint = -1;
+
+  private SonKey(String name) {
+    this.name = name;
+  }
+
+  public static SonKey of(String name) {
+    if (name == null) {
+      throw new IllegalArgumentException("Null key name");
+    }
+    return new SonKey(name);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return this == o || (o instanceof SonKey && name.equals(((SonKey) o).name));
+  }
+
+  @Override
+  public int hashCode() {
+    return name.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -69,6 +69,16 @@ public interface SonMap<V extends SonMapValue> extends Iterable<V> {
    */
   V get(String name);
 
+  /**
+   * Get the SonMapValue for a prepared key.
+   *
+   * @param key the key
+   * @return the map value, or null if none.
+   */
+  default V get(SonKey key) {
+    return get(key.getName());
+  }
+
   default int deepHashCode() {
     int hs = 0;
     for (V ent : this) {
@@ -104,7 +104,7 @@ public abstract class SonValue implements Comparable<SonValue> {
    */
   public double doubleValue() {
     checkType(SonType.DOUBLE, SonType.FLOAT);
-    return (double) value;
+    return ((Number) value).doubleValue();
   }
 
   @Override
@@ -199,7 +199,7 @@ public abstract class SonValue implements Comparable<SonValue> {
    */
   public int intValue() {
     checkType(SonType.INT, SonType.SHORT, SonType.BYTE);
-    return (int) value;
+    return ((Number) value).intValue();
   }
 
   /**
@@ -219,7 +219,7 @@ public abstract class SonValue implements Comparable<SonValue> {
    */
   public long longValue() {
     checkType(SonType.LONG, SonType.INT, SonType.SHORT, SonType.BYTE);
-    return (long) value;
+    return ((Number) value).longValue();
   }
 
   public Number numberValue() {
@@ -235,7 +235,7 @@ public abstract class SonValue implements Comparable<SonValue> {
    */
   public short shortValue() {
     checkType(SonType.SHORT, SonType.BYTE);
-    return (short) value;
+    return ((Number) value).shortValue();
   }
 
   /**
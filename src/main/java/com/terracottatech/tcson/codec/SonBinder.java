@@ -0,0 +1,743 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.codec;
+
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.SonBytes;
+import com.terracottatech.tcson.SonKey;
+import com.terracottatech.tcson.UTCMillisDate;
+import com.terracottatech.tcson.pile.Pile;
+import com.terracottatech.tcson.pile.PileReader;
+import com.terracottatech.tcson.reading.GlobalNameMapReader;
+import com.terracottatech.tcson.reading.GlobalNameTable;
+import com.terracottatech.tcson.reading.ReadableSonMapImpl;
+import com.terracottatech.tcson.writing.SonStreamingListWriter;
+import com.terracottatech.tcson.writing.SonStreamingMapWriter;
+import com.terracottatech.tcson.writing.SonWriter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Runtime counterpart of {@link SonCodecProcessor}, for classes that cannot be
+ * annotated. A class is introspected once into a plan of method handles,
+ * with the same property rules and supported types as {@link SonObject}.
+ * <p>
+ * Binding walks the key id pile of the source map and reads each value
+ * straight out of the pile, so no {@code ReadableSonValue} wrappers are
+ * built. When name tables are shared through a
+ * {@link com.terracottatech.tcson.reading.GlobalNameTableCache}, the key id ::
+ * property mapping is cached for the last few tables seen, which makes it
+ * effectively free. Otherwise each property's id is looked up in the encoded
+ * names, without decoding the table.
+ * <p>
+ * Numbers convert as {@link SonNumbers} describes.
+ *
+ * @param <T> bound type
+ */
+public final class SonBinder<T> implements SonCodec<T> {
+
+  private static final ClassValue<SonBinder<?>> BINDERS = new ClassValue<SonBinder<?>>() {
+    @Override
+    protected SonBinder<?> computeValue(Class<?> type) {
+      return new SonBinder<>(type);
+    }
+  };
+
+  private enum Kind {
+    BOOLEAN,
+    BYTE,
+    SHORT,
+    INT,
+    LONG,
+    FLOAT,
+    DOUBLE,
+    CHAR,
+    STRING,
+    UUID,
+    DATE,
+    BYTES,
+    BYTE_ARRAY,
+    ENUM,
+    OBJECT,
+    LIST
+  }
+
+  private static final class Shape {
+    private final Kind kind;
+    private final Class<?> type;
+    private final Shape element;
+
+    Shape(Kind kind, Class<?> type, Shape element) {
+      this.kind = kind;
+      this.type = type;
+      this.element = element;
+    }
+
+    boolean isPrimitive() {
+      return type.isPrimitive();
+    }
+
+    SonBinder<?> binder() {
+      // resolved lazily so self referencing types work
+      return SonBinder.of(type);
+    }
+  }
+
+  private static final class Property {
+    private final String name;
+    private final Shape shape;
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+
+    Property(String name, Shape shape, MethodHandle getter, MethodHandle setter) {
+      this.name = name;
+      this.shape = shape;
+      this.getter = getter;
+      this.setter = setter;
+    }
+  }
+
+  private static final int PLANS = 4;
+
+  private static final class Resolved {
+    private final GlobalNameTable table;
+    private final int[] idToProperty;
+
+    Resolved(GlobalNameTable table, int[] idToProperty) {
+      this.table = table;
+      this.idToProperty = idToProperty;
+    }
+  }
+
+  private final Class<T> type;
+  private final Property[] properties;
+  private final HashMap<String, Integer> propertyIndex = new HashMap<>();
+  private final SonKey[] keys;
+  private final MethodHandle constructor;
+  private final boolean setterMode;
+  private volatile Resolved[] plans = new Resolved[0];
+
+  private SonBinder(Class<T> type) {
+    if (type.isInterface() || type.isArray() || type.isPrimitive() || Modifier.isAbstract(type.getModifiers()) ||
+        type.getTypeParameters().length > 0 || (type.isMemberClass() && !Modifier.isStatic(type.getModifiers()))) {
+      throw new IllegalArgumentException("Cannot bind " + type.getName());
+    }
+    this.type = type;
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    List<Field> fields = new ArrayList<>();
+    for (Field f : type.getDeclaredFields()) {
+      int mods = f.getModifiers();
+      if (!Modifier.isStatic(mods) && !Modifier.isTransient(mods) && !f.isSynthetic()) {
+        fields.add(f);
+      }
+    }
+
+    boolean settable = true;
+    this.properties = new Property[fields.size()];
+    this.keys = new SonKey[fields.size()];
+    Class<?>[] ctorTypes = new Class<?>[fields.size()];
+    for (int i = 0; i < properties.length; i++) {
+      Field f = fields.get(i);
+      Shape shape = shapeOf(f.getType(), f.getGenericType(), f);
+      MethodHandle getter = getterFor(lookup, type, f, shape);
+      MethodHandle setter = setterFor(lookup, type, f, shape);
+      settable = settable && setter != null;
+      properties[i] = new Property(f.getName(), shape, getter, setter);
+      propertyIndex.put(f.getName(), i);
+      keys[i] = SonKey.of(f.getName());
+      ctorTypes[i] = f.getType();
+    }
+
+    MethodHandle ctor = settable ? constructorFor(lookup, type) : null;
+    this.setterMode = ctor != null;
+    if (ctor == null) {
+      ctor = constructorFor(lookup, type, ctorTypes);
+      if (ctor == null) {
+        throw new IllegalArgumentException(type.getName() + " needs either a no-arg constructor and writable " +
+                                           "properties, or a constructor taking every property in declaration order");
+      }
+      ctor = ctor.asSpreader(Object[].class, ctorTypes.length);
+    }
+    this.constructor = ctor.asType(ctor.type().changeReturnType(Object.class));
+  }
+
+  /**
+   * Binder for a class; built once and cached per class.
+   *
+   * @param type class
+   * @param <T> type
+   * @return binder
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> SonBinder<T> of(Class<T> type) {
+    return (SonBinder<T>) BINDERS.get(type);
+  }
+
+  public Class<T> getType() {
+    return type;
+  }
+
+  private static Shape shapeOf(Class<?> c, Type generic, Field f) {
+    if (c == boolean.class || c == Boolean.class) {
+      return new Shape(Kind.BOOLEAN, c, null);
+    } else if (c == byte.class || c == Byte.class) {
+      return new Shape(Kind.BYTE, c, null);
+    } else if (c == short.class || c == Short.class) {
+      return new Shape(Kind.SHORT, c, null);
+    } else if (c == int.class || c == Integer.class) {
+      return new Shape(Kind.INT, c, null);
+    } else if (c == long.class || c == Long.class) {
+      return new Shape(Kind.LONG, c, null);
+    } else if (c == float.class || c == Float.class) {
+      return new Shape(Kind.FLOAT, c, null);
+    } else if (c == double.class || c == Double.class) {
+      return new Shape(Kind.DOUBLE, c, null);
+    } else if (c == char.class || c == Character.class) {
+      return new Shape(Kind.CHAR, c, null);
+    } else if (c == String.class) {
+      return new Shape(Kind.STRING, c, null);
+    } else if (c == UUID.class) {
+      return new Shape(Kind.UUID, c, null);
+    } else if (c == UTCMillisDate.class) {
+      return new Shape(Kind.DATE, c, null);
+    } else if (c == SonBytes.class) {
+      return new Shape(Kind.BYTES, c, null);
+    } else if (c == byte[].class) {
+      return new Shape(Kind.BYTE_ARRAY, c, null);
+    } else if (c.isEnum()) {
+      return new Shape(Kind.ENUM, c, null);
+    } else if (c == List.class && generic instanceof ParameterizedType) {
+      Type arg = ((ParameterizedType) generic).getActualTypeArguments()[0];
+      if (arg instanceof Class && !((Class<?>) arg).isPrimitive() && arg != List.class) {
+        return new Shape(Kind.LIST, c, shapeOf((Class<?>) arg, arg, f));
+      }
+    } else if (!c.isPrimitive() && !c.isArray() && !c.isInterface() && !c.getName().startsWith("java.")) {
+      return new Shape(Kind.OBJECT, c, null);
+    }
+    throw new IllegalArgumentException("Unsupported property type " + generic.getTypeName() + " for " + f);
+  }
+
+  private static String capitalize(String s) {
+    return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+  }
+
+  private static Method findMethod(Class<?> type, String name, Class<?>... params) {
+    try {
+      Method m = type.getDeclaredMethod(name, params);
+      if (Modifier.isStatic(m.getModifiers()) || Modifier.isPrivate(m.getModifiers())) {
+        return null;
+      }
+      m.setAccessible(true);
+      return m;
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  private static MethodType getterType(Shape shape) {
+    return MethodType.methodType(shape.isPrimitive() ? shape.type : Object.class, Object.class);
+  }
+
+  private static MethodType setterType(Shape shape) {
+    return MethodType.methodType(void.class, Object.class, shape.isPrimitive() ? shape.type : Object.class);
+  }
+
+  private static MethodHandle getterFor(MethodHandles.Lookup lookup, Class<?> type, Field f, Shape shape) {
+    String cap = capitalize(f.getName());
+    Method m = findMethod(type, "get" + cap);
+    if (m == null && f.getType() == boolean.class) {
+      m = findMethod(type, "is" + cap);
+    }
+    if (m == null) {
+      m = findMethod(type, f.getName());
+    }
+    try {
+      MethodHandle mh;
+      if (m != null && m.getReturnType() == f.getType()) {
+        mh = lookup.unreflect(m);
+      } else {
+        f.setAccessible(true);
+        mh = lookup.unreflectGetter(f);
+      }
+      return mh.asType(getterType(shape));
+    } catch (IllegalAccessException | RuntimeException e) {
+      throw new IllegalArgumentException("Cannot read " + f, e);
+    }
+  }
+
+  private static MethodHandle setterFor(MethodHandles.Lookup lookup, Class<?> type, Field f, Shape shape) {
+    try {
+      Method m = findMethod(type, "set" + capitalize(f.getName()), f.getType());
+      MethodHandle mh;
+      if (m != null) {
+        mh = lookup.unreflect(m);
+        mh = mh.asType(mh.type().changeReturnType(void.class));
+      } else if (!Modifier.isFinal(f.getModifiers())) {
+        f.setAccessible(true);
+        mh = lookup.unreflectSetter(f);
+      } else {
+        return null;
+      }
+      return mh.asType(setterType(shape));
+    } catch (IllegalAccessException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static MethodHandle constructorFor(MethodHandles.Lookup lookup, Class<?> type, Class<?>... params) {
+    try {
+      Constructor<?> c = type.getDeclaredConstructor(params);
+      if (Modifier.isPrivate(c.getModifiers())) {
+        return null;
+      }
+      c.setAccessible(true);
+      return lookup.unreflectConstructor(c);
+    } catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static RuntimeException rethrow(Throwable t) {
+    if (t instanceof RuntimeException) {
+      return (RuntimeException) t;
+    }
+    if (t instanceof Error) {
+      throw (Error) t;
+    }
+    return new IllegalStateException(t);
+  }
+
+  @Override
+  public void appendTo(T value, SonStreamingMapWriter<?> writer) {
+    try {
+      for (Property p : properties) {
+        appendProperty(p, value, writer);
+      }
+    } catch (Throwable t) {
+      throw rethrow(t);
+    }
+  }
+
+  private static void appendProperty(Property p, Object obj, SonStreamingMapWriter<?> w) throws Throwable {
+    String name = p.name;
+    if (p.shape.isPrimitive()) {
+      MethodHandle g = p.getter;
+      switch (p.shape.kind) {
+        case BOOLEAN:
+          w.append(name, (boolean) g.invokeExact(obj));
+          return;
+        case BYTE:
+          w.append(name, (byte) g.invokeExact(obj));
+          return;
+        case SHORT:
+          w.append(name, (short) g.invokeExact(obj));
+          return;
+        case INT:
+          w.append(name, (int) g.invokeExact(obj));
+          return;
+        case LONG:
+          w.append(name, (long) g.invokeExact(obj));
+          return;
+        case FLOAT:
+          w.append(name, (float) g.invokeExact(obj));
+          return;
+        case DOUBLE:
+          w.append(name, (double) g.invokeExact(obj));
+          return;
+        case CHAR:
+          w.append(name, (char) g.invokeExact(obj));
+          return;
+        default:
+          throw new IllegalStateException(p.shape.kind.name());
+      }
+    }
+    Object v = (Object) p.getter.invokeExact(obj);
+    if (v == null) {
+      w.appendNull(name);
+      return;
+    }
+    switch (p.shape.kind) {
+      case BOOLEAN:
+        w.append(name, (boolean) (Boolean) v);
+        break;
+      case BYTE:
+        w.append(name, (byte) (Byte) v);
+        break;
+      case SHORT:
+        w.append(name, (short) (Short) v);
+        break;
+      case INT:
+        w.append(name, (int) (Integer) v);
+        break;
+      case LONG:
+        w.append(name, (long) (Long) v);
+        break;
+      case FLOAT:
+        w.append(name, (float) (Float) v);
+        break;
+      case DOUBLE:
+        w.append(name, (double) (Double) v);
+        break;
+      case CHAR:
+        w.append(name, (char) (Character) v);
+        break;
+      case STRING:
+        w.append(name, (String) v);
+        break;
+      case UUID:
+        w.append(name, (UUID) v);
+        break;
+      case DATE:
+        w.append(name, (UTCMillisDate) v);
+        break;
+      case BYTES:
+        w.append(name, ((SonBytes) v).getSignifier(), ((SonBytes) v).getBuffer().slice());
+        break;
+      case BYTE_ARRAY:
+        w.append(name, (byte) 0, (byte[]) v);
+        break;
+      case ENUM:
+        w.append(name, ((Enum<?>) v).name());
+        break;
+      case OBJECT:
+        SonStreamingMapWriter<?> m = w.map(name);
+        appendObject(p.shape, v, m);
+        m.endMap();
+        break;
+      case LIST:
+        SonStreamingListWriter<?> l = w.list(name);
+        for (Object e : (List<?>) v) {
+          appendElement(p.shape.element, e, l);
+        }
+        l.endList();
+        break;
+      default:
+        throw new IllegalStateException(p.shape.kind.name());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void appendObject(Shape shape, Object v, SonStreamingMapWriter<?> m) {
+    ((SonBinder<Object>) shape.binder()).appendTo(v, m);
+  }
+
+  private static void appendElement(Shape shape, Object v, SonStreamingListWriter<?> l) {
+    if (v == null) {
+      l.appendNull();
+      return;
+    }
+    switch (shape.kind) {
+      case BOOLEAN:
+        l.append((boolean) (Boolean) v);
+        break;
+      case BYTE:
+        l.append((byte) (Byte) v);
+        break;
+      case SHORT:
+        l.append((short) (Short) v);
+        break;
+      case INT:
+        l.append((int) (Integer) v);
+        break;
+      case LONG:
+        l.append((long) (Long) v);
+        break;
+      case FLOAT:
+        l.append((float) (Float) v);
+        break;
+      case DOUBLE:
+        l.append((double) (Double) v);
+        break;
+      case CHAR:
+        l.append((char) (Character) v);
+        break;
+      case STRING:
+        l.append((String) v);
+        break;
+      case UUID:
+        l.append((UUID) v);
+        break;
+      case DATE:
+        l.append((UTCMillisDate) v);
+        break;
+      case BYTES:
+        l.append(((SonBytes) v).getSignifier(), ((SonBytes) v).getBuffer().slice());
+        break;
+      case BYTE_ARRAY:
+        l.append((byte) 0, (byte[]) v);
+        break;
+      case ENUM:
+        l.append(((Enum<?>) v).name());
+        break;
+      case OBJECT:
+        SonStreamingMapWriter<?> m = l.map();
+        appendObject(shape, v, m);
+        m.endMap();
+        break;
+      default:
+        throw new IllegalStateException(shape.kind.name());
+    }
+  }
+
+  @Override
+  public T fromSon(ReadableSonMap map) {
+    if (!(map instanceof ReadableSonMapImpl)) {
+      throw new IllegalArgumentException("Unsupported map implementation: " + map.getClass().getName());
+    }
+    ReadableSonMapImpl rm = (ReadableSonMapImpl) map;
+    try {
+      return bind(rm.getNameMap(), rm.getPile(), rm.getKeysPile());
+    } catch (Throwable t) {
+      throw rethrow(t);
+    }
+  }
+
+  /*
+   * A table shared through a cache gets a plan covering every id, kept for
+   * the last few tables seen. Any other table would be decoded per document,
+   * so its plan is built from each property's id in the encoded names.
+   */
+  private int[] resolve(GlobalNameMapReader names) {
+    if (!names.isShared()) {
+      int[] ids = new int[names.size()];
+      Arrays.fill(ids, -1);
+      for (int i = 0; i < keys.length; i++) {
+        int id = names.lookupId(keys[i]);
+        if (id >= 0) {
+          ids[id] = i;
+        }
+      }
+      return ids;
+    }
+    GlobalNameTable table = names.getTable();
+    Resolved[] rs = plans;
+    for (Resolved r : rs) {
+      if (r.table == table) {
+        return r.idToProperty;
+      }
+    }
+    int[] ids = new int[table.size()];
+    for (int i = 0; i < ids.length; i++) {
+      Integer prop = propertyIndex.get(table.nameOf(i));
+      ids[i] = prop == null ? -1 : prop;
+    }
+    Resolved[] next = new Resolved[Math.min(rs.length + 1, PLANS)];
+    next[0] = new Resolved(table, ids);
+    System.arraycopy(rs, 0, next, 1, next.length - 1);
+    plans = next;
+    return ids;
+  }
+
+  private T bind(GlobalNameMapReader names, PileReader pile, PileReader keys) throws Throwable {
+    int[] idToProperty = resolve(names);
+    int cnt = keys.size();
+    if (setterMode) {
+      Object ret = (Object) constructor.invokeExact();
+      for (int i = 0; i < cnt; i++) {
+        int prop = idToProperty[keys.int32(i)];
+        if (prop >= 0 && !pile.isNull(i)) {
+          setProperty(properties[prop], ret, names, pile, i);
+        }
+      }
+      return type.cast(ret);
+    }
+    Object[] args = new Object[properties.length];
+    for (int i = 0; i < cnt; i++) {
+      int prop = idToProperty[keys.int32(i)];
+      if (prop >= 0 && !pile.isNull(i)) {
+        args[prop] = read(properties[prop].shape, names, pile, i);
+      }
+    }
+    for (int i = 0; i < args.length; i++) {
+      if (args[i] == null && properties[i].shape.isPrimitive()) {
+        args[i] = zero(properties[i].shape.kind);
+      }
+    }
+    return type.cast((Object) constructor.invokeExact(args));
+  }
+
+  private static Object zero(Kind kind) {
+    switch (kind) {
+      case BOOLEAN:
+        return false;
+      case BYTE:
+        return (byte) 0;
+      case SHORT:
+        return (short) 0;
+      case INT:
+        return 0;
+      case LONG:
+        return 0L;
+      case FLOAT:
+        return 0f;
+      case DOUBLE:
+        return 0d;
+      case CHAR:
+        return (char) 0;
+      default:
+        return null;
+    }
+  }
+
+  private static void setProperty(Property p, Object obj, GlobalNameMapReader names, PileReader pile,
+                                  int idx) throws Throwable {
+    MethodHandle s = p.setter;
+    if (p.shape.isPrimitive()) {
+      switch (p.shape.kind) {
+        case BOOLEAN:
+          s.invokeExact(obj, readBoolean(pile, idx));
+          return;
+        case BYTE:
+          s.invokeExact(obj, (byte) SonNumbers.readLong(pile, idx, Byte.MIN_VALUE, Byte.MAX_VALUE));
+          return;
+        case SHORT:
+          s.invokeExact(obj, (short) SonNumbers.readLong(pile, idx, Short.MIN_VALUE, Short.MAX_VALUE));
+          return;
+        case INT:
+          s.invokeExact(obj, (int) SonNumbers.readLong(pile, idx, Integer.MIN_VALUE, Integer.MAX_VALUE));
+          return;
+        case LONG:
+          s.invokeExact(obj, SonNumbers.readLong(pile, idx));
+          return;
+        case FLOAT:
+          s.invokeExact(obj, SonNumbers.readFloat(pile, idx));
+          return;
+        case DOUBLE:
+          s.invokeExact(obj, SonNumbers.readDouble(pile, idx));
+          return;
+        case CHAR:
+          s.invokeExact(obj, readChar(pile, idx));
+          return;
+        default:
+          throw new IllegalStateException(p.shape.kind.name());
+      }
+    }
+    s.invokeExact(obj, read(p.shape, names, pile, idx));
+  }
+
+  private static ClassCastException mismatch(Shape shape, Pile.Type found) {
+    return new ClassCastException("Expected " + shape.kind + ", found " + found);
+  }
+
+  private static boolean readBoolean(PileReader pile, int idx) {
+    if (pile.typeOf(idx) != Pile.Type.BOOLEAN) {
+      throw new ClassCastException("Expected BOOLEAN, found " + pile.typeOf(idx));
+    }
+    return pile.bool(idx);
+  }
+
+  private static char readChar(PileReader pile, int idx) {
+    if (pile.typeOf(idx) != Pile.Type.CHAR) {
+      throw new ClassCastException("Expected CHAR, found " + pile.typeOf(idx));
+    }
+    return pile.chr(idx);
+  }
+
+  private static ByteBuffer readBytes(Shape shape, PileReader pile, int idx, byte signifier) {
+    Pile.Type t = pile.typeOf(idx);
+    if (t != Pile.Type.BYTE_ARRAY || pile.byteArraySignifier(idx) != signifier) {
+      throw mismatch(shape, t);
+    }
+    return pile.byteArray(idx);
+  }
+
+  private static Object read(Shape shape, GlobalNameMapReader names, PileReader pile, int idx) throws Throwable {
+    switch (shape.kind) {
+      case BOOLEAN:
+        return readBoolean(pile, idx);
+      case BYTE:
+        return (byte) SonNumbers.readLong(pile, idx, Byte.MIN_VALUE, Byte.MAX_VALUE);
+      case SHORT:
+        return (short) SonNumbers.readLong(pile, idx, Short.MIN_VALUE, Short.MAX_VALUE);
+      case INT:
+        return (int) SonNumbers.readLong(pile, idx, Integer.MIN_VALUE, Integer.MAX_VALUE);
+      case LONG:
+        return SonNumbers.readLong(pile, idx);
+      case FLOAT:
+        return SonNumbers.readFloat(pile, idx);
+      case DOUBLE:
+        return SonNumbers.readDouble(pile, idx);
+      case CHAR:
+        return readChar(pile, idx);
+      case STRING:
+        if (pile.typeOf(idx) != Pile.Type.STRING) {
+          throw mismatch(shape, pile.typeOf(idx));
+        }
+        return pile.str(idx);
+      case ENUM:
+        if (pile.typeOf(idx) != Pile.Type.STRING) {
+          throw mismatch(shape, pile.typeOf(idx));
+        }
+        return enumValue(shape.type, pile.str(idx));
+      case UUID:
+        ByteBuffer b = readBytes(shape, pile, idx, SonWriter.UUID_SIGNIFIER);
+        return new UUID(b.getLong(), b.getLong());
+      case DATE:
+        return new UTCMillisDate(readBytes(shape, pile, idx, SonWriter.DATE_SIGNIFIER).getLong());
+      case BYTES:
+        if (pile.typeOf(idx) != Pile.Type.BYTE_ARRAY) {
+          throw mismatch(shape, pile.typeOf(idx));
+        }
+        return new SonBytes(pile.byteArraySignifier(idx), pile.byteArray(idx)).dup();
+      case BYTE_ARRAY:
+        if (pile.typeOf(idx) != Pile.Type.BYTE_ARRAY) {
+          throw mismatch(shape, pile.typeOf(idx));
+        }
+        ByteBuffer bb = pile.byteArray(idx);
+        byte[] arr = new byte[bb.remaining()];
+        bb.get(arr);
+        return arr;
+      case OBJECT:
+        if (pile.typeOf(idx) != Pile.Type.PILE1) {
+          throw mismatch(shape, pile.typeOf(idx));
+        }
+        PileReader nested = pile.pile(idx);
+        return shape.binder().bind(names, nested, nested.pile(nested.size() - 1));
+      case LIST:
+        if (pile.typeOf(idx) != Pile.Type.PILE2) {
+          throw mismatch(shape, pile.typeOf(idx));
+        }
+        PileReader lp = pile.pile(idx);
+        int cnt = lp.size();
+        ArrayList<Object> ret = new ArrayList<>(cnt);
+        for (int i = 0; i < cnt; i++) {
+          ret.add(lp.isNull(i) ? null : read(shape.element, names, lp, i));
+        }
+        return ret;
+      default:
+        throw new IllegalStateException(shape.kind.name());
+    }
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static Object enumValue(Class<?> type, String name) {
+    return Enum.valueOf((Class) type, name);
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.codec;
+
+import com.terracottatech.tcson.NameSource;
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.Son;
+import com.terracottatech.tcson.pile.ManagedBuffer;
+import com.terracottatech.tcson.writing.SonStreamingMapWriter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Direct object :: SON codec. Encoding goes straight to a streaming writer,
+ * with no intermediate mutable tree; decoding pulls typed fields out of a
+ * readable map.
+ *
+ * @param <T> object type
+ */
+public interface SonCodec<T> {
+
+  /**
+   * Append the fields of this object to an open map writer.
+   *
+   * @param value object
+   * @param writer map writer
+   */
+  void appendTo(T value, SonStreamingMapWriter<?> writer);
+
+  /**
+   * Build an object from a map.
+   *
+   * @param map readable map
+   * @return new object
+   */
+  T fromSon(ReadableSonMap map);
+
+  default ByteBuffer toBuffer(T value) {
+    return toBuffer(value, (NameSource) null);
+  }
+
+  default ByteBuffer toBuffer(T value, NameSource ns) {
+    SonStreamingMapWriter<Void> w = Son.streamingMapWriter(ns);
+    appendTo(value, w);
+    w.endMap();
+    ByteBuffer ret = w.buffer().getBuffer();
+    ret.flip();
+    return ret;
+  }
+
+  default void toBuffer(T value, NameSource ns, ManagedBuffer dest) {
+    SonStreamingMapWriter<Void> w = Son.streamingMapWriter(ns, dest);
+    appendTo(value, w);
+    w.endMap();
+  }
+
+  default T fromSon(ByteBuffer buf) {
+    return fromSon(Son.readableMap(buf));
+  }
+}
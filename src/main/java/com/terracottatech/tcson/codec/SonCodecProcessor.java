@@ -0,0 +1,531 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.codec;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Annotation processor generating a {@link SonCodec} for each type annotated
+ * with {@link SonObject}. Encoders call the streaming writer directly, so
+ * object to bytes is a single pass with no intermediate tree.
+ * <p>
+ * Supported property types are the primitives and their boxes, String,
+ * UUID, UTCMillisDate, SonBytes, byte[], enums (stored by name), other
+ * {@link SonObject} types (stored as nested maps), and {@code java.util.List}s
+ * of any of those.
+ * <p>
+ * Registered as a service, so having this artifact on the compile classpath
+ * is enough to enable it.
+ */
+public class SonCodecProcessor extends AbstractProcessor {
+
+  private enum Kind {
+    BOOLEAN("boolean", "Boolean", "%s.boolValue()", "false", "getBooleanOrDefault"),
+    BYTE("byte", "Byte", "com.terracottatech.tcson.codec.SonNumbers.toByte(%s.numberValue())", "(byte) 0", "getByte"),
+    SHORT("short", "Short", "com.terracottatech.tcson.codec.SonNumbers.toShort(%s.numberValue())", "(short) 0", "getShort"),
+    INT("int", "Integer", "com.terracottatech.tcson.codec.SonNumbers.toInt(%s.numberValue())", "0", "getInt"),
+    LONG("long", "Long", "com.terracottatech.tcson.codec.SonNumbers.toLong(%s.numberValue())", "0L", "getLong"),
+    FLOAT("float", "Float", "com.terracottatech.tcson.codec.SonNumbers.toFloat(%s.numberValue())", "0f", "getFloat"),
+    DOUBLE("double", "Double", "%s.numberValue().doubleValue()", "0d", "getDouble"),
+    CHAR("char", "Character", "%s.charValue()", "(char) 0", null),
+    STRING(null, "java.lang.String", "%s.stringValue()", "null", "getStringOrDefault"),
+    UUID(null, "java.util.UUID", "%s.uuidValue()", "null", null),
+    DATE(null, "com.terracottatech.tcson.UTCMillisDate", "%s.dateValue()", "null", null),
+    BYTES(null, "com.terracottatech.tcson.SonBytes", "%s.bytesValue().dup()", "null", null),
+    BYTE_ARRAY(null, null, "%s.bytesValue().asArray()", "null", null),
+    ENUM(null, null, null, "null", null),
+    OBJECT(null, null, null, "null", null),
+    LIST(null, null, null, "null", null);
+
+    private final String primitive;
+    private final String boxed;
+    private final String read;
+    private final String zero;
+    private final String getter;
+
+    Kind(String primitive, String boxed, String read, String zero, String getter) {
+      this.primitive = primitive;
+      this.boxed = boxed;
+      this.read = read;
+      this.zero = zero;
+      this.getter = getter;
+    }
+  }
+
+  private static final class Shape {
+    private final Kind kind;
+    private final boolean primitive;
+    private final String typeName;
+    private final String codecName;
+    private final Shape element;
+
+    Shape(Kind kind, boolean primitive, String typeName, String codecName, Shape element) {
+      this.kind = kind;
+      this.primitive = primitive;
+      this.typeName = typeName;
+      this.codecName = codecName;
+      this.element = element;
+    }
+
+    String zero() {
+      return primitive ? kind.zero : "null";
+    }
+
+    /**
+     * Whether this shape reads straight off the pile by {@code SonKey},
+     * rather than through the {@code MapValue} wrapper.
+     */
+    boolean typed() {
+      return kind.getter != null && (primitive || kind == Kind.STRING);
+    }
+
+    /*
+     * Numbers go through SonNumbers, which converts between stored widths
+     * with the same checks as SonBinder.
+     */
+    String typedRead(String map, String key, String def) {
+      switch (kind) {
+        case BOOLEAN:
+        case STRING:
+          return map + "." + kind.getter + "(" + key + ", " + def + ")";
+        default:
+          return "com.terracottatech.tcson.codec.SonNumbers." + kind.getter + "(" + map + ", " + key + ", " + def + ")";
+      }
+    }
+  }
+
+  private static final class Property {
+    private final String name;
+    private final Shape shape;
+    private final String reader;
+    private final String writer;
+
+    Property(String name, Shape shape, String reader, String writer) {
+      this.name = name;
+      this.shape = shape;
+      this.reader = reader;
+      this.writer = writer;
+    }
+  }
+
+  private static final class CodecException extends Exception {
+    private final Element element;
+
+    CodecException(Element element, String message) {
+      super(message);
+      this.element = element;
+    }
+  }
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    return Collections.singleton(SonObject.class.getName());
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (Element e : roundEnv.getElementsAnnotatedWith(SonObject.class)) {
+      try {
+        generate(checkType(e));
+      } catch (CodecException ce) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, ce.getMessage(), ce.element);
+      } catch (IOException ioe) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, ioe.toString(), e);
+      }
+    }
+    return true;
+  }
+
+  private static boolean isRecord(Element e) {
+    // ElementKind.RECORD does not exist on the oldest JDK we build for.
+    return e.getKind().name().equals("RECORD");
+  }
+
+  private TypeElement checkType(Element e) throws CodecException {
+    if (e.getKind() != ElementKind.CLASS && !isRecord(e)) {
+      throw new CodecException(e, "@SonObject only applies to classes and records");
+    }
+    TypeElement te = (TypeElement) e;
+    if (!te.getTypeParameters().isEmpty()) {
+      throw new CodecException(e, "@SonObject types cannot be generic");
+    }
+    if (te.getModifiers().contains(Modifier.PRIVATE) || te.getModifiers().contains(Modifier.ABSTRACT)) {
+      throw new CodecException(e, "@SonObject types must be concrete and not private");
+    }
+    if (te.getEnclosingElement().getKind() != ElementKind.PACKAGE && !te.getModifiers().contains(Modifier.STATIC)) {
+      throw new CodecException(e, "nested @SonObject types must be static");
+    }
+    return te;
+  }
+
+  private String codecName(TypeElement te) {
+    String simple = te.getSimpleName().toString();
+    Element enc = te.getEnclosingElement();
+    while (enc.getKind() != ElementKind.PACKAGE) {
+      simple = enc.getSimpleName() + "_" + simple;
+      enc = enc.getEnclosingElement();
+    }
+    return simple + "SonCodec";
+  }
+
+  private String packageName(TypeElement te) {
+    PackageElement pe = processingEnv.getElementUtils().getPackageOf(te);
+    return pe.isUnnamed() ? "" : pe.getQualifiedName().toString();
+  }
+
+  private Shape shapeOf(Element owner, TypeMirror t) throws CodecException {
+    switch (t.getKind()) {
+      case BOOLEAN:
+        return new Shape(Kind.BOOLEAN, true, "boolean", null, null);
+      case BYTE:
+        return new Shape(Kind.BYTE, true, "byte", null, null);
+      case SHORT:
+        return new Shape(Kind.SHORT, true, "short", null, null);
+      case INT:
+        return new Shape(Kind.INT, true, "int", null, null);
+      case LONG:
+        return new Shape(Kind.LONG, true, "long", null, null);
+      case FLOAT:
+        return new Shape(Kind.FLOAT, true, "float", null, null);
+      case DOUBLE:
+        return new Shape(Kind.DOUBLE, true, "double", null, null);
+      case CHAR:
+        return new Shape(Kind.CHAR, true, "char", null, null);
+      case ARRAY:
+        if (t.toString().equals("byte[]")) {
+          return new Shape(Kind.BYTE_ARRAY, false, "byte[]", null, null);
+        }
+        break;
+      case DECLARED:
+        TypeElement te = (TypeElement) ((DeclaredType) t).asElement();
+        String qn = te.getQualifiedName().toString();
+        for (Kind k : Kind.values()) {
+          if (qn.equals(k.boxed) || (k.primitive != null && qn.equals("java.lang." + k.boxed))) {
+            return new Shape(k, false, qn, null, null);
+          }
+        }
+        if (te.getKind() == ElementKind.ENUM) {
+          return new Shape(Kind.ENUM, false, qn, null, null);
+        }
+        if (te.getAnnotation(SonObject.class) != null) {
+          String pkg = packageName(te);
+          String codec = (pkg.isEmpty() ? "" : pkg + ".") + codecName(te);
+          return new Shape(Kind.OBJECT, false, qn, codec, null);
+        }
+        if (qn.equals("java.util.List")) {
+          List<? extends TypeMirror> args = ((DeclaredType) t).getTypeArguments();
+          if (args.size() == 1) {
+            Shape elem = shapeOf(owner, args.get(0));
+            if (elem.kind != Kind.LIST) {
+              return new Shape(Kind.LIST, false, t.toString(), null, elem);
+            }
+          }
+        }
+        break;
+      default:
+        break;
+    }
+    throw new CodecException(owner, "unsupported @SonObject property type: " + t);
+  }
+
+  private static String capitalize(String s) {
+    return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+  }
+
+  private static boolean accessible(Element e) {
+    return !e.getModifiers().contains(Modifier.PRIVATE);
+  }
+
+  private ExecutableElement findMethod(TypeElement te, String name, TypeMirror paramType) {
+    for (Element e : te.getEnclosedElements()) {
+      if (e.getKind() == ElementKind.METHOD && e.getSimpleName().contentEquals(name) && accessible(e) &&
+          !e.getModifiers().contains(Modifier.STATIC)) {
+        ExecutableElement ee = (ExecutableElement) e;
+        if (paramType == null && ee.getParameters().isEmpty()) {
+          return ee;
+        }
+        if (paramType != null && ee.getParameters().size() == 1 &&
+            processingEnv.getTypeUtils().isSameType(ee.getParameters().get(0).asType(), paramType)) {
+          return ee;
+        }
+      }
+    }
+    return null;
+  }
+
+  private List<Property> properties(TypeElement te) throws CodecException {
+    boolean record = isRecord(te);
+    List<Property> props = new ArrayList<>();
+    for (Element e : te.getEnclosedElements()) {
+      if (e.getKind() != ElementKind.FIELD) {
+        continue;
+      }
+      Set<Modifier> mods = e.getModifiers();
+      if (mods.contains(Modifier.STATIC) || mods.contains(Modifier.TRANSIENT)) {
+        continue;
+      }
+      VariableElement ve = (VariableElement) e;
+      String name = ve.getSimpleName().toString();
+      TypeMirror type = ve.asType();
+      Shape shape = shapeOf(ve, type);
+
+      String reader = null;
+      if (record) {
+        reader = "v." + name + "()";
+      } else if (accessible(ve)) {
+        reader = "v." + name;
+      } else {
+        String prefix = type.getKind() == TypeKind.BOOLEAN ? "is" : "get";
+        if (findMethod(te, prefix + capitalize(name), null) != null) {
+          reader = "v." + prefix + capitalize(name) + "()";
+        } else if (findMethod(te, "get" + capitalize(name), null) != null) {
+          reader = "v.get" + capitalize(name) + "()";
+        }
+      }
+      if (reader == null) {
+        throw new CodecException(ve, "no accessible field or getter for property '" + name + "'");
+      }
+
+      String writer = null;
+      if (!record) {
+        if (accessible(ve) && !mods.contains(Modifier.FINAL)) {
+          writer = "ret." + name + " = %s;";
+        } else if (findMethod(te, "set" + capitalize(name), type) != null) {
+          writer = "ret.set" + capitalize(name) + "(%s);";
+        }
+      }
+      props.add(new Property(name, shape, reader, writer));
+    }
+    return props;
+  }
+
+  private boolean hasConstructor(TypeElement te, List<TypeMirror> params) {
+    for (Element e : te.getEnclosedElements()) {
+      if (e.getKind() == ElementKind.CONSTRUCTOR && accessible(e)) {
+        List<? extends VariableElement> ps = ((ExecutableElement) e).getParameters();
+        if (ps.size() == params.size()) {
+          boolean match = true;
+          for (int i = 0; i < ps.size() && match; i++) {
+            match = processingEnv.getTypeUtils().isSameType(ps.get(i).asType(), params.get(i));
+          }
+          if (match) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  private void generate(TypeElement te) throws CodecException, IOException {
+    List<Property> props = properties(te);
+    boolean setterMode = hasConstructor(te, Collections.<TypeMirror>emptyList());
+    for (Property p : props) {
+      setterMode = setterMode && p.writer != null;
+    }
+    if (!setterMode) {
+      List<TypeMirror> types = new ArrayList<>();
+      for (Element e : te.getEnclosedElements()) {
+        if (e.getKind() == ElementKind.FIELD && !e.getModifiers().contains(Modifier.STATIC) &&
+            !e.getModifiers().contains(Modifier.TRANSIENT)) {
+          types.add(e.asType());
+        }
+      }
+      if (!hasConstructor(te, types)) {
+        throw new CodecException(te, "@SonObject types need either a no-arg constructor and writable properties, " +
+                                     "or a constructor taking every property in declaration order");
+      }
+    }
+
+    String pkg = packageName(te);
+    String codec = codecName(te);
+    String type = te.getQualifiedName().toString();
+    JavaFileObject jfo = processingEnv.getFiler().createSourceFile((pkg.isEmpty() ? "" : pkg + ".") + codec, te);
+    try (Writer w = jfo.openWriter(); PrintWriter pw = new PrintWriter(w)) {
+      pw.println("// Generated by " + SonCodecProcessor.class.getName() + ". Do not edit.");
+      if (!pkg.isEmpty()) {
+        pw.println("package " + pkg + ";");
+        pw.println();
+      }
+      pw.println("public final class " + codec + " implements com.terracottatech.tcson.codec.SonCodec<" + type + "> {");
+      pw.println("  public static final " + codec + " INSTANCE = new " + codec + "();");
+      for (int i = 0; i < props.size(); i++) {
+        pw.println("  private static final com.terracottatech.tcson.SonKey K" + i +
+                   " = com.terracottatech.tcson.SonKey.of(\"" + props.get(i).name + "\");");
+      }
+      pw.println();
+      pw.println("  @Override");
+      pw.println("  public void appendTo(" + type + " v, com.terracottatech.tcson.writing.SonStreamingMapWriter<?> w) {");
+      for (int i = 0; i < props.size(); i++) {
+        Property p = props.get(i);
+        pw.println("    {");
+        pw.println("      " + p.shape.typeName + " p = " + p.reader + ";");
+        emitAppend(pw, "      ", p.shape, "p", "w", "\"" + p.name + "\"");
+        pw.println("    }");
+      }
+      pw.println("  }");
+      pw.println();
+      pw.println("  @Override");
+      pw.println("  public " + type + " fromSon(com.terracottatech.tcson.ReadableSonMap map) {");
+      boolean wrapped = false;
+      for (Property p : props) {
+        wrapped |= !p.shape.typed();
+      }
+      if (wrapped) {
+        pw.println("    com.terracottatech.tcson.reading.ReadableSonValue.MapValue mv;");
+      }
+      if (setterMode) {
+        pw.println("    " + type + " ret = new " + type + "();");
+      }
+      StringBuilder args = new StringBuilder();
+      for (int i = 0; i < props.size(); i++) {
+        Property p = props.get(i);
+        String local = "f" + i;
+        if (p.shape.typed()) {
+          // absent and null keys fall back to what the instance already holds
+          String def = setterMode ? "ret" + p.reader.substring(1) : p.shape.zero();
+          pw.println("    " + p.shape.typeName + " " + local + " = " + p.shape.typedRead("map", "K" + i, def) + ";");
+          if (setterMode) {
+            pw.println("    " + String.format(p.writer, local));
+          }
+        } else {
+          pw.println("    " + p.shape.typeName + " " + local + " = " + p.shape.zero() + ";");
+          pw.println("    mv = map.get(K" + i + ");");
+          pw.println("    if (mv != null && !mv.isNullValue()) {");
+          emitRead(pw, "      ", p.shape, "mv", local);
+          if (setterMode) {
+            pw.println("      " + String.format(p.writer, local));
+          }
+          pw.println("    }");
+        }
+        args.append(i == 0 ? "" : ", ").append(local);
+      }
+      if (setterMode) {
+        pw.println("    return ret;");
+      } else {
+        pw.println("    return new " + type + "(" + args + ");");
+      }
+      pw.println("  }");
+      pw.println("}");
+    }
+  }
+
+  private void emitAppend(PrintWriter pw, String indent, Shape shape, String var, String writer, String name) {
+    String prefix = name == null ? "" : name + ", ";
+    String nullCall = name == null ? writer + ".appendNull();" : writer + ".appendNull(" + name + ");";
+    if (shape.primitive) {
+      pw.println(indent + writer + ".append(" + prefix + var + ");");
+      return;
+    }
+    pw.println(indent + "if (" + var + " == null) {");
+    pw.println(indent + "  " + nullCall);
+    pw.println(indent + "} else {");
+    String in = indent + "  ";
+    switch (shape.kind) {
+      case BOOLEAN:
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+      case CHAR:
+        pw.println(in + writer + ".append(" + prefix + var + "." + shape.kind.primitive + "Value());");
+        break;
+      case STRING:
+      case UUID:
+      case DATE:
+        pw.println(in + writer + ".append(" + prefix + var + ");");
+        break;
+      case BYTES:
+        pw.println(in + writer + ".append(" + prefix + var + ".getSignifier(), " + var + ".getBuffer().slice());");
+        break;
+      case BYTE_ARRAY:
+        pw.println(in + writer + ".append(" + prefix + "(byte) 0, " + var + ");");
+        break;
+      case ENUM:
+        pw.println(in + writer + ".append(" + prefix + var + ".name());");
+        break;
+      case OBJECT:
+        pw.println(in + "com.terracottatech.tcson.writing.SonStreamingMapWriter<?> m = " + writer + ".map(" +
+                   (name == null ? "" : name) + ");");
+        pw.println(in + shape.codecName + ".INSTANCE.appendTo(" + var + ", m);");
+        pw.println(in + "m.endMap();");
+        break;
+      case LIST:
+        pw.println(in + "com.terracottatech.tcson.writing.SonStreamingListWriter<?> l = " + writer + ".list(" + name + ");");
+        pw.println(in + "for (" + shape.element.typeName + " e : " + var + ") {");
+        emitAppend(pw, in + "  ", shape.element, "e", "l", null);
+        pw.println(in + "}");
+        pw.println(in + "l.endList();");
+        break;
+      default:
+        throw new IllegalStateException(shape.kind.name());
+    }
+    pw.println(indent + "}");
+  }
+
+  private void emitRead(PrintWriter pw, String indent, Shape shape, String value, String target) {
+    switch (shape.kind) {
+      case ENUM:
+        pw.println(indent + target + " = " + shape.typeName + ".valueOf(" + value + ".stringValue());");
+        break;
+      case OBJECT:
+        pw.println(indent + target + " = " + shape.codecName + ".INSTANCE.fromSon(" + value + ".mapValue());");
+        break;
+      case LIST:
+        pw.println(indent + "com.terracottatech.tcson.ReadableSonList l = " + value + ".listValue();");
+        pw.println(indent + target + " = new java.util.ArrayList<>(l.size());");
+        pw.println(indent + "for (com.terracottatech.tcson.reading.ReadableSonValue e : l) {");
+        pw.println(indent + "  " + shape.element.typeName + " t = null;");
+        pw.println(indent + "  if (!e.isNullValue()) {");
+        emitRead(pw, indent + "    ", shape.element, "e", "t");
+        pw.println(indent + "  }");
+        pw.println(indent + "  " + target + ".add(t);");
+        pw.println(indent + "}");
+        break;
+      default:
+        pw.println(indent + target + " = " + String.format(shape.kind.read, value) + ";");
+        break;
+    }
+  }
+}
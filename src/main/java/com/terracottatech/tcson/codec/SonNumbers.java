@@ -0,0 +1,160 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.codec;
+
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.SonKey;
+import com.terracottatech.tcson.pile.PileReader;
+import com.terracottatech.tcson.reading.ReadableSonMapImpl;
+import com.terracottatech.tcson.reading.ReadableSonValue;
+
+/**
+ * Number conversions shared by {@link SonBinder} and the codecs
+ * {@link SonCodecProcessor} generates. Any stored number converts to the
+ * property type when its value fits, and to an integral type only when it
+ * is whole; otherwise {@link ArithmeticException}. Anything that is not a
+ * number is a {@link ClassCastException}.
+ * <p>
+ * The map readers return the default when the key is absent or null.
+ */
+public final class SonNumbers {
+  private SonNumbers() {
+  }
+
+  public static byte getByte(ReadableSonMap map, SonKey key, byte def) {
+    return (byte) getLong(map, key, def, Byte.MIN_VALUE, Byte.MAX_VALUE);
+  }
+
+  public static short getShort(ReadableSonMap map, SonKey key, short def) {
+    return (short) getLong(map, key, def, Short.MIN_VALUE, Short.MAX_VALUE);
+  }
+
+  public static int getInt(ReadableSonMap map, SonKey key, int def) {
+    return (int) getLong(map, key, def, Integer.MIN_VALUE, Integer.MAX_VALUE);
+  }
+
+  public static long getLong(ReadableSonMap map, SonKey key, long def) {
+    return getLong(map, key, def, Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  public static float getFloat(ReadableSonMap map, SonKey key, float def) {
+    return toFloat(getDouble(map, key, def));
+  }
+
+  public static double getDouble(ReadableSonMap map, SonKey key, double def) {
+    if (map instanceof ReadableSonMapImpl) {
+      ReadableSonMapImpl rm = (ReadableSonMapImpl) map;
+      int idx = rm.indexOf(key);
+      return idx < 0 || rm.getPile().isNull(idx) ? def : readDouble(rm.getPile(), idx);
+    }
+    ReadableSonValue.MapValue mv = map.get(key);
+    return mv == null || mv.isNullValue() ? def : mv.numberValue().doubleValue();
+  }
+
+  private static long getLong(ReadableSonMap map, SonKey key, long def, long min, long max) {
+    if (map instanceof ReadableSonMapImpl) {
+      ReadableSonMapImpl rm = (ReadableSonMapImpl) map;
+      int idx = rm.indexOf(key);
+      return idx < 0 || rm.getPile().isNull(idx) ? def : readLong(rm.getPile(), idx, min, max);
+    }
+    ReadableSonValue.MapValue mv = map.get(key);
+    if (mv == null || mv.isNullValue()) {
+      return def;
+    }
+    return fits(toLong(mv.numberValue()), min, max);
+  }
+
+  public static byte toByte(Number n) {
+    return (byte) fits(toLong(n), Byte.MIN_VALUE, Byte.MAX_VALUE);
+  }
+
+  public static short toShort(Number n) {
+    return (short) fits(toLong(n), Short.MIN_VALUE, Short.MAX_VALUE);
+  }
+
+  public static int toInt(Number n) {
+    return (int) fits(toLong(n), Integer.MIN_VALUE, Integer.MAX_VALUE);
+  }
+
+  public static long toLong(Number n) {
+    return n instanceof Float || n instanceof Double ? exact(n.doubleValue()) : n.longValue();
+  }
+
+  public static float toFloat(Number n) {
+    return toFloat(n.doubleValue());
+  }
+
+  static long readLong(PileReader pile, int idx) {
+    switch (pile.typeOf(idx)) {
+      case INT8:
+      case INT16:
+      case INT32:
+      case ZIGZAG32:
+        return pile.int32(idx);
+      case INT64:
+      case ZIGZAG64:
+        return pile.int64(idx);
+      case FLOAT32:
+        return exact(pile.float32(idx));
+      case FLOAT64:
+        return exact(pile.float64(idx));
+      default:
+        throw new ClassCastException("Expected a number, found " + pile.typeOf(idx));
+    }
+  }
+
+  static long readLong(PileReader pile, int idx, long min, long max) {
+    return fits(readLong(pile, idx), min, max);
+  }
+
+  static double readDouble(PileReader pile, int idx) {
+    switch (pile.typeOf(idx)) {
+      case FLOAT32:
+        return pile.float32(idx);
+      case FLOAT64:
+        return pile.float64(idx);
+      default:
+        return readLong(pile, idx);
+    }
+  }
+
+  static float readFloat(PileReader pile, int idx) {
+    return toFloat(readDouble(pile, idx));
+  }
+
+  private static long fits(long v, long min, long max) {
+    if (v < min || v > max) {
+      throw new ArithmeticException(v + " is out of range [" + min + ", " + max + "]");
+    }
+    return v;
+  }
+
+  private static long exact(double d) {
+    long v = (long) d;
+    if (v != d || d >= 0x1p63) {
+      throw new ArithmeticException(d + " is not a whole long");
+    }
+    return v;
+  }
+
+  private static float toFloat(double d) {
+    float f = (float) d;
+    if (Float.isInfinite(f) && !Double.isInfinite(d)) {
+      throw new ArithmeticException(d + " is out of range for a float");
+    }
+    return f;
+  }
+}
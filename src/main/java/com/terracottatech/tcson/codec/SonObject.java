@@ -0,0 +1,41 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.codec;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class (or record) for which {@link SonCodecProcessor} should
+ * generate a {@link SonCodec}. The generated codec is named after the
+ * annotated type with a {@code SonCodec} suffix (nested types are flattened
+ * with underscores), lives in the same package, and exposes a singleton
+ * {@code INSTANCE}.
+ * <p>
+ * Properties are the non-static, non-transient fields, in declaration order.
+ * They are read through the field itself if it is not private, otherwise via a
+ * {@code getX()}/{@code isX()} method (or the record accessor). They are written
+ * back through the field, a {@code setX()} method, or, for records and
+ * immutable classes, a constructor taking every property in declaration order.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface SonObject {
+}
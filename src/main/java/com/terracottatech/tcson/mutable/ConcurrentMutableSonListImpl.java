@@ -0,0 +1,60 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.mutable;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Mutable list for sharing between threads. Entries are held in a copy on
+ * write snapshot: reads never lock, iterators see the snapshot current when
+ * they started, and each write, including an append or a set at the end of
+ * the list, is atomic.
+ * <p>
+ * Only this list is shared safely; nested maps and lists should be
+ * concurrent ones too if they are changed once shared.
+ */
+public class ConcurrentMutableSonListImpl extends MutableSonListImpl {
+
+  private static final long serialVersionUID = 8613190537408926562L;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private volatile SonSlots current = new SonSlots(false);
+
+  /**
+   * Images could be recorded from a snapshot a writer has since replaced.
+   */
+  @Override
+  boolean cachesImages() {
+    return false;
+  }
+
+  @Override
+  SonSlots storage() {
+    return current;
+  }
+
+  @Override
+  SonSlots beginWrite() {
+    lock.lock();
+    return current.copy();
+  }
+
+  @Override
+  void endWrite(SonSlots s) {
+    current = s;
+    lock.unlock();
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.mutable;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Mutable map for sharing between threads. Entries are held in a copy on
+ * write snapshot: reads never lock, iterators and serialization see the
+ * snapshot current when they started, and each write copies the entries,
+ * so this suits maps read far more often than written. Writers serialize on
+ * a lock rather than a monitor, so they do not pin virtual threads.
+ * <p>
+ * Only this map is shared safely; nested maps and lists should be concurrent
+ * ones too if they are changed once shared.
+ */
+public class ConcurrentMutableSonMapImpl extends MutableSonMapImpl {
+
+  private static final long serialVersionUID = -4475062155806744201L;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private volatile SonSlots current = new SonSlots(true);
+
+  /**
+   * Images could be recorded from a snapshot a writer has since replaced.
+   */
+  @Override
+  boolean cachesImages() {
+    return false;
+  }
+
+  @Override
+  SonSlots storage() {
+    return current;
+  }
+
+  @Override
+  SonSlots beginWrite() {
+    lock.lock();
+    return current.copy();
+  }
+
+  @Override
+  void endWrite(SonSlots s) {
+    current = s;
+    lock.unlock();
+  }
+}
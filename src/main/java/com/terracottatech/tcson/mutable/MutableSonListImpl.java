@@ -25,127 +25,285 @@ import com.terracottatech.tcson.SonType;
 import com.terracottatech.tcson.SonValue;
 import com.terracottatech.tcson.UTCMillisDate;
 import com.terracottatech.tcson.pile.ManagedBuffer;
+import com.terracottatech.tcson.pile.PileReader;
+import com.terracottatech.tcson.reading.GlobalNameMapReader;
+import com.terracottatech.tcson.reading.ReadableSonListImpl;
 import com.terracottatech.tcson.writing.SonStreamingListWriter;
 
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.UUID;
 
 public class MutableSonListImpl implements MutableSonList {
 
   private static final long serialVersionUID = -1770228071344659054L;
-  private ArrayList<MutableSonValue> entries = new ArrayList<>();
 
-  public MutableSonListImpl() {
+  private final SonSlots slots = new SonSlots(false);
+  private transient SonImage image = null;
+  private transient int freshNames = 0;
+  private transient boolean written = false;
+  private transient Runnable onWrite = null;
+
+  /**
+   * Slots to read from. Subclasses sharing the list between threads hand out
+   * a snapshot.
+   */
+  SonSlots storage() {
+    return slots;
+  }
+
+  /**
+   * Slots to change; each call is paired with {@link #endWrite(SonSlots)}.
+   * Drops the written image.
+   */
+  SonSlots beginWrite() {
+    image = null;
+    Runnable r = onWrite;
+    if (r != null) {
+      onWrite = null;
+      r.run();
+    }
+    return slots;
   }
 
-  @Override
-  public synchronized MutableSonList add(int idx, SonType type, Object value) {
-    entries.add(idx, new MutableSonValue(type, value));
+  void endWrite(SonSlots s) {
+  }
+
+  /**
+   * Runs {@code r} once, ahead of the next change to this list.
+   */
+  void onWrite(Runnable r) {
+    onWrite = r;
+  }
+
+  /**
+   * Whether this list keeps an image of where it was last written.
+   *
+   * @see MutableSonMapImpl#cachesImages()
+   */
+  boolean cachesImages() {
+    return true;
+  }
+
+  SonImage image() {
+    return image;
+  }
+
+  SonImage recordImage(PileReader pile, GlobalNameMapReader names) {
+    if (!cachesImages()) {
+      return null;
+    }
+    image = SonImage.record(storage(), pile, names, null, null);
+    return image;
+  }
+
+  private MutableSonList append(SonType type, long bits, Object ref) {
+    SonSlots s = beginWrite();
+    try {
+      s.insert(s.size(), type, bits, ref);
+    } finally {
+      endWrite(s);
+    }
     return this;
   }
 
-  @Override
-  public synchronized MutableSonList add(int idx, boolean v) {
-    add(idx, new MutableSonValue(SonType.BOOL, v));
+  private MutableSonList insert(int idx, SonType type, long bits, Object ref) {
+    SonSlots s = beginWrite();
+    try {
+      // bounds checked against size + 1, so idx == size appends
+      s.insert(idx, type, bits, ref);
+    } finally {
+      endWrite(s);
+    }
     return this;
   }
 
-  @Override
-  public synchronized MutableSonList add(int idx, MutableSonValue value) {
-    Objects.requireNonNull(value);
-    entries.add(idx, value);
+  private MutableSonList store(int idx, SonType type, long bits, Object ref) {
+    SonSlots s = beginWrite();
+    try {
+      if (idx == s.size()) {
+        s.insert(idx, type, bits, ref);
+      } else {
+        s.set(idx, type, bits, ref);
+      }
+    } finally {
+      endWrite(s);
+    }
     return this;
   }
 
   @Override
-  public synchronized MutableSonList add(int idx, UTCMillisDate v) {
-    add(idx, new MutableSonValue(SonType.DATE, v));
-    return this;
+  public MutableSonList add(SonType type, Object value) {
+    type.checkType(value);
+    return append(type, SonSlots.toBits(type, value), SonSlots.isPrimitive(type) ? null : value);
   }
 
   @Override
-  public synchronized MutableSonList add(int idx, UUID v) {
-    add(idx, new MutableSonValue(SonType.UUID, v));
-    return this;
+  public MutableSonList add(int idx, SonType type, Object value) {
+    type.checkType(value);
+    return insert(idx, type, SonSlots.toBits(type, value), SonSlots.isPrimitive(type) ? null : value);
   }
 
   @Override
-  public synchronized MutableSonList add(int idx, char v) {
-    add(idx, new MutableSonValue(SonType.CHAR, v));
-    return this;
+  public MutableSonList add(MutableSonValue value) {
+    return add(value.getType(), value.getValue());
   }
 
   @Override
-  public synchronized MutableSonList add(int idx, String v) {
-    add(idx, new MutableSonValue(SonType.STRING, v));
-    return this;
+  public MutableSonList add(int idx, MutableSonValue value) {
+    return add(idx, value.getType(), value.getValue());
   }
 
   @Override
-  public synchronized MutableSonList add(int idx, byte v) {
-    add(idx, new MutableSonValue(SonType.BYTE, v));
-    return this;
+  public MutableSonList add(boolean v) {
+    return append(SonType.BOOL, v ? 1 : 0, null);
   }
 
   @Override
-  public synchronized MutableSonList add(int idx, short v) {
-    add(idx, new MutableSonValue(SonType.SHORT, v));
-    return this;
+  public MutableSonList add(int idx, boolean v) {
+    return insert(idx, SonType.BOOL, v ? 1 : 0, null);
   }
 
   @Override
-  public synchronized MutableSonList add(int idx, int v) {
-    add(idx, new MutableSonValue(SonType.INT, v));
-    return this;
+  public MutableSonList add(byte v) {
+    return append(SonType.BYTE, v, null);
   }
 
   @Override
-  public synchronized MutableSonList add(int idx, long v) {
-    add(idx, new MutableSonValue(SonType.LONG, v));
-    return this;
+  public MutableSonList add(int idx, byte v) {
+    return insert(idx, SonType.BYTE, v, null);
   }
 
   @Override
-  public synchronized MutableSonList add(int idx, float v) {
-    add(idx, new MutableSonValue(SonType.FLOAT, v));
-    return this;
+  public MutableSonList add(short v) {
+    return append(SonType.SHORT, v, null);
   }
 
   @Override
-  public synchronized MutableSonList add(int idx, double v) {
-    add(idx, new MutableSonValue(SonType.DOUBLE, v));
-    return this;
+  public MutableSonList add(int idx, short v) {
+    return insert(idx, SonType.SHORT, v, null);
   }
 
   @Override
-  public synchronized MutableSonList add(int idx, SonBytes sb) {
-    add(idx, new MutableSonValue(SonType.BYTES, sb));
-    return this;
+  public MutableSonList add(int v) {
+    return append(SonType.INT, v, null);
   }
 
   @Override
-  public synchronized MutableSonList add(int idx, MutableSonList v) {
-    add(idx, new MutableSonValue(SonType.LIST, v));
-    return this;
+  public MutableSonList add(int idx, int v) {
+    return insert(idx, SonType.INT, v, null);
   }
 
   @Override
-  public synchronized MutableSonList add(int idx, MutableSonMap v) {
-    add(idx, new MutableSonValue(SonType.MAP, v));
-    return this;
+  public MutableSonList add(char v) {
+    return append(SonType.CHAR, v, null);
   }
 
   @Override
-  public synchronized MutableSonList addNull(int idx) {
-    add(idx, MutableSonValue.NULL_VALUE);
-    return this;
+  public MutableSonList add(int idx, char v) {
+    return insert(idx, SonType.CHAR, v, null);
+  }
+
+  @Override
+  public MutableSonList add(long v) {
+    return append(SonType.LONG, v, null);
+  }
+
+  @Override
+  public MutableSonList add(int idx, long v) {
+    return insert(idx, SonType.LONG, v, null);
+  }
+
+  @Override
+  public MutableSonList add(float v) {
+    return append(SonType.FLOAT, Float.floatToRawIntBits(v), null);
+  }
+
+  @Override
+  public MutableSonList add(int idx, float v) {
+    return insert(idx, SonType.FLOAT, Float.floatToRawIntBits(v), null);
+  }
+
+  @Override
+  public MutableSonList add(double v) {
+    return append(SonType.DOUBLE, Double.doubleToRawLongBits(v), null);
+  }
+
+  @Override
+  public MutableSonList add(int idx, double v) {
+    return insert(idx, SonType.DOUBLE, Double.doubleToRawLongBits(v), null);
+  }
+
+  @Override
+  public MutableSonList add(String v) {
+    return append(SonType.STRING, 0, Objects.requireNonNull(v));
+  }
+
+  @Override
+  public MutableSonList add(int idx, String v) {
+    return insert(idx, SonType.STRING, 0, Objects.requireNonNull(v));
+  }
+
+  @Override
+  public MutableSonList add(UTCMillisDate v) {
+    return append(SonType.DATE, 0, Objects.requireNonNull(v));
+  }
+
+  @Override
+  public MutableSonList add(int idx, UTCMillisDate v) {
+    return insert(idx, SonType.DATE, 0, Objects.requireNonNull(v));
+  }
+
+  @Override
+  public MutableSonList add(UUID v) {
+    return append(SonType.UUID, 0, Objects.requireNonNull(v));
+  }
+
+  @Override
+  public MutableSonList add(int idx, UUID v) {
+    return insert(idx, SonType.UUID, 0, Objects.requireNonNull(v));
+  }
+
+  @Override
+  public MutableSonList add(int idx, SonBytes v) {
+    return insert(idx, SonType.BYTES, 0, Objects.requireNonNull(v));
+  }
+
+  @Override
+  public MutableSonList add(MutableSonList v) {
+    return append(SonType.LIST, 0, Objects.requireNonNull(v));
+  }
+
+  @Override
+  public MutableSonList add(int idx, MutableSonList v) {
+    return insert(idx, SonType.LIST, 0, Objects.requireNonNull(v));
+  }
+
+  @Override
+  public MutableSonList add(MutableSonMap v) {
+    return append(SonType.MAP, 0, Objects.requireNonNull(v));
+  }
+
+  @Override
+  public MutableSonList add(int idx, MutableSonMap v) {
+    return insert(idx, SonType.MAP, 0, Objects.requireNonNull(v));
+  }
+
+  @Override
+  public MutableSonList addNull() {
+    return append(SonType.NULL, 0, null);
+  }
+
+  @Override
+  public MutableSonList addNull(int idx) {
+    return insert(idx, SonType.NULL, 0, null);
   }
 
   @Override
@@ -154,8 +312,13 @@ public class MutableSonListImpl implements MutableSonList {
   }
 
   @Override
-  public synchronized MutableSonList clear() {
-    entries.clear();
+  public MutableSonList clear() {
+    SonSlots s = beginWrite();
+    try {
+      s.clear();
+    } finally {
+      endWrite(s);
+    }
     return this;
   }
 
@@ -170,8 +333,8 @@ public class MutableSonListImpl implements MutableSonList {
     return false;
   }
 
-  public synchronized MutableSonValue get(int idx) {
-    return entries.get(idx);
+  public MutableSonValue get(int idx) {
+    return storage().view(idx);
   }
 
   @Override
@@ -180,8 +343,28 @@ public class MutableSonListImpl implements MutableSonList {
   }
 
   @Override
-  public synchronized Iterator<MutableSonValue> iterator() {
-    return new ArrayList<>(entries).iterator();
+  public Iterator<MutableSonValue> iterator() {
+    SonSlots s = storage();
+    return new Iterator<MutableSonValue>() {
+      private final int expected = s.modCount();
+      private int i = 0;
+
+      @Override
+      public boolean hasNext() {
+        return i < s.size();
+      }
+
+      @Override
+      public MutableSonValue next() {
+        if (s.modCount() != expected) {
+          throw new ConcurrentModificationException();
+        }
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return s.view(i++);
+      }
+    };
   }
 
   @Override
@@ -189,150 +372,197 @@ public class MutableSonListImpl implements MutableSonList {
     int len = in.readInt();
     byte[] dest = new byte[len];
     in.read(dest);
-    MutableSonListImpl newList = (MutableSonListImpl) Son.readableList(ByteBuffer.wrap(dest)).asMutable();
-    this.entries = newList.entries;
+    MutableSonList newList = Son.readableList(ByteBuffer.wrap(dest)).asMutable();
+    clear();
+    for (MutableSonValue v : newList) {
+      add(v);
+    }
   }
 
   @Override
-  public synchronized MutableSonList remove(int idx) {
-    entries.remove(idx);
+  public MutableSonList remove(int idx) {
+    SonSlots s = beginWrite();
+    try {
+      s.remove(idx);
+    } finally {
+      endWrite(s);
+    }
     return this;
   }
 
   @Override
-  public synchronized MutableSonList set(int idx, SonType type, Object value) {
-    set(idx, new MutableSonValue(type, value));
-    return this;
+  public MutableSonList set(int idx, SonType type, Object value) {
+    type.checkType(value);
+    return store(idx, type, SonSlots.toBits(type, value), SonSlots.isPrimitive(type) ? null : value);
   }
 
   @Override
-  public synchronized MutableSonList set(int idx, MutableSonValue value) {
-    Objects.requireNonNull(value);
-    if (idx == size()) {
-      entries.add(value);
-    } else {
-      entries.set(idx, value);
-    }
-    return this;
+  public MutableSonList set(int idx, MutableSonValue value) {
+    return set(idx, value.getType(), value.getValue());
   }
 
-  public synchronized int size() {
-    return entries.size();
+  public int size() {
+    return storage().size();
   }
 
   @Override
-  public synchronized MutableSonList set(int idx, boolean v) {
-    set(idx, new MutableSonValue(SonType.BOOL, v));
-    return this;
+  public MutableSonList set(int idx, boolean v) {
+    return store(idx, SonType.BOOL, v ? 1 : 0, null);
   }
 
   @Override
-  public synchronized MutableSonList set(int idx, UTCMillisDate v) {
-    set(idx, new MutableSonValue(SonType.DATE, v));
-    return this;
+  public MutableSonList set(int idx, byte v) {
+    return store(idx, SonType.BYTE, v, null);
   }
 
   @Override
-  public synchronized MutableSonList set(int idx, UUID v) {
-    set(idx, new MutableSonValue(SonType.DATE, v));
-    return this;
+  public MutableSonList set(int idx, short v) {
+    return store(idx, SonType.SHORT, v, null);
   }
 
   @Override
-  public synchronized MutableSonList set(int idx, char v) {
-    set(idx, new MutableSonValue(SonType.CHAR, v));
-    return this;
+  public MutableSonList set(int idx, int v) {
+    return store(idx, SonType.INT, v, null);
   }
 
   @Override
-  public synchronized MutableSonList set(int idx, String v) {
-    set(idx, new MutableSonValue(SonType.STRING, v));
-    return this;
+  public MutableSonList set(int idx, char v) {
+    return store(idx, SonType.CHAR, v, null);
   }
 
   @Override
-  public synchronized MutableSonList set(int idx, byte v) {
-    set(idx, new MutableSonValue(SonType.BYTE, v));
-    return this;
+  public MutableSonList set(int idx, long v) {
+    return store(idx, SonType.LONG, v, null);
   }
 
   @Override
-  public synchronized MutableSonList set(int idx, short v) {
-    set(idx, new MutableSonValue(SonType.SHORT, v));
-    return this;
+  public MutableSonList set(int idx, float v) {
+    return store(idx, SonType.FLOAT, Float.floatToRawIntBits(v), null);
   }
 
   @Override
-  public synchronized MutableSonList set(int idx, int v) {
-    set(idx, new MutableSonValue(SonType.INT, v));
-    return this;
+  public MutableSonList set(int idx, double v) {
+    return store(idx, SonType.DOUBLE, Double.doubleToRawLongBits(v), null);
   }
 
   @Override
-  public synchronized MutableSonList set(int idx, long v) {
-    set(idx, new MutableSonValue(SonType.LONG, v));
-    return this;
+  public MutableSonList set(int idx, String v) {
+    return store(idx, SonType.STRING, 0, Objects.requireNonNull(v));
   }
 
   @Override
-  public synchronized MutableSonList set(int idx, float v) {
-    set(idx, new MutableSonValue(SonType.FLOAT, v));
-    return this;
+  public MutableSonList set(int idx, UTCMillisDate v) {
+    return store(idx, SonType.DATE, 0, Objects.requireNonNull(v));
   }
 
   @Override
-  public synchronized MutableSonList set(int idx, double v) {
-    set(idx, new MutableSonValue(SonType.DOUBLE, v));
-    return this;
+  public MutableSonList set(int idx, UUID v) {
+    return store(idx, SonType.UUID, 0, Objects.requireNonNull(v));
   }
 
   @Override
-  public synchronized MutableSonList set(int idx, SonBytes sb) {
-    set(idx, new MutableSonValue(SonType.BYTES, sb));
-    return this;
+  public MutableSonList set(int idx, SonBytes v) {
+    return store(idx, SonType.BYTES, 0, Objects.requireNonNull(v));
   }
 
   @Override
-  public synchronized MutableSonList set(int idx, MutableSonList v) {
-    set(idx, new MutableSonValue(SonType.LIST, v));
-    return this;
+  public MutableSonList set(int idx, MutableSonList v) {
+    return store(idx, SonType.LIST, 0, Objects.requireNonNull(v));
   }
 
   @Override
-  public synchronized MutableSonList set(int idx, MutableSonMap v) {
-    set(idx, new MutableSonValue(SonType.MAP, v));
-    return this;
+  public MutableSonList set(int idx, MutableSonMap v) {
+    return store(idx, SonType.MAP, 0, Objects.requireNonNull(v));
   }
 
   @Override
-  public synchronized MutableSonList setNull(int idx) {
-    set(idx, MutableSonValue.NULL_VALUE);
-    return this;
+  public MutableSonList setNull(int idx) {
+    return store(idx, SonType.NULL, 0, null);
   }
 
   @Override
-  public synchronized void sort(Comparator<? super SonValue> comparator) {
-    entries.sort(comparator);
+  public void sort(Comparator<? super SonValue> comparator) {
+    SonSlots s = beginWrite();
+    try {
+      s.sort(comparator);
+    } finally {
+      endWrite(s);
+    }
   }
 
+  /**
+   * @see MutableSonMapImpl#toBuffer(NameSource)
+   */
   @Override
-  public synchronized ByteBuffer toBuffer(NameSource ns) {
-    SonStreamingListWriter<Void> w = Son.streamingListWriter(ns);
+  public ByteBuffer toBuffer(NameSource ns) {
+    SonImage img = image;
+    if (img != null && img.bytes != null && Objects.equals(ns, img.nameSource) && img.current(storage())) {
+      ByteBuffer ret = ByteBuffer.allocate(img.bytes.remaining());
+      ret.put(img.bytes.duplicate());
+      ret.flip();
+      return ret;
+    }
+    boolean seed = img != null && img.bytes != null && Objects.equals(ns, img.nameSource)
+                   && img.names.size() <= 2 * freshNames;
+    SonStreamingListWriter<Void> w = seed ? new SonStreamingListWriter<>(ns, new ManagedBuffer(1024), img.names)
+      : Son.streamingListWriter(ns);
     appendTo(w);
     w.endList();
     ByteBuffer ret = w.buffer().getBuffer();
     ret.flip();
+    if (cachesImages() && !written) {
+      // most documents are written once; only keep an image once written again
+      written = true;
+    } else if (cachesImages()) {
+      ByteBuffer bytes = ByteBuffer.allocate(ret.remaining());
+      bytes.put(ret.duplicate());
+      bytes.flip();
+      ReadableSonListImpl written = new ReadableSonListImpl(ns, bytes.duplicate());
+      if (!seed) {
+        freshNames = written.getNameMap().size();
+      }
+      image = SonImage.record(storage(), written.getPile(), written.getNameMap(), bytes, ns);
+    }
     return ret;
   }
 
-  public synchronized void appendTo(SonStreamingListWriter<?> list) {
-    for (MutableSonValue ent : this) {
-      ent.getType().mutableListToBuffered(list, ent.getValue());
+  @Override
+  public ByteBuffer toCanonicalBuffer(NameSource ns) {
+    SonStreamingListWriter<Void> w = Son.streamingListWriter(ns).canonical(true);
+    appendTo(w);
+    w.endList();
+    ByteBuffer ret = w.buffer().getBuffer();
+    ret.flip();
+    return ret;
+  }
+
+  public void appendTo(SonStreamingListWriter<?> list) {
+    SonSlots s = storage();
+    SonImage img = image;
+    if (img == null || list.isCanonical()) {
+      for (int i = 0; i < s.size(); i++) {
+        s.appendTo(list, i);
+      }
+      return;
+    }
+    // own slots unchanged: copy runs from the image, re-encode changed nested values
+    int from = 0;
+    for (int i = 0; i < s.size(); i++) {
+      if (!img.current(s, i)) {
+        if (from < i) {
+          list.appendRangeFrom(img.pile, from, i, img.names);
+        }
+        s.appendTo(list, i);
+        from = i + 1;
+      }
+    }
+    if (from < s.size()) {
+      list.appendRangeFrom(img.pile, from, s.size(), img.names);
     }
   }
 
   @Override
-  public synchronized void toBuffer(NameSource ns, ManagedBuffer dest) {
+  public void toBuffer(NameSource ns, ManagedBuffer dest) {
     SonStreamingListWriter<Void> w = Son.streamingListWriter(ns, dest);
     appendTo(w);
     w.endList();
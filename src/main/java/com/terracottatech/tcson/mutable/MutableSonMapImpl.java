@@ -24,15 +24,20 @@ import com.terracottatech.tcson.SonMap;
 import com.terracottatech.tcson.SonType;
 import com.terracottatech.tcson.UTCMillisDate;
 import com.terracottatech.tcson.pile.ManagedBuffer;
+import com.terracottatech.tcson.pile.PileReader;
+import com.terracottatech.tcson.reading.GlobalNameMapReader;
+import com.terracottatech.tcson.reading.ReadableSonMapImpl;
 import com.terracottatech.tcson.writing.SonStreamingMapWriter;
 
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -40,16 +45,88 @@ public class MutableSonMapImpl implements MutableSonMap {
 
   private static final long serialVersionUID = -2312184814185347482L;
 
-  private LinkedHashMap<String, MutableSonValue.MapValue> map = new LinkedHashMap<>();
+  private final SonSlots slots = new SonSlots(true);
+  private transient SonImage image = null;
+  private transient int freshNames = 0;
+  private transient boolean written = false;
+  private transient Runnable onWrite = null;
 
   @Override
   public MutableSonValue asSonValue() {
     return new MutableSonValue(SonType.MAP, this);
   }
 
+  /**
+   * Slots to read from. Subclasses sharing the map between threads hand out
+   * a snapshot.
+   */
+  SonSlots storage() {
+    return slots;
+  }
+
+  /**
+   * Slots to change; each call is paired with {@link #endWrite(SonSlots)}.
+   * Drops the written image.
+   */
+  SonSlots beginWrite() {
+    image = null;
+    Runnable r = onWrite;
+    if (r != null) {
+      onWrite = null;
+      r.run();
+    }
+    return slots;
+  }
+
+  void endWrite(SonSlots s) {
+  }
+
+  /**
+   * Runs {@code r} once, ahead of the next change to this map.
+   */
+  void onWrite(Runnable r) {
+    onWrite = r;
+  }
+
+  /**
+   * Whether this map keeps an image of where it was last written, so an
+   * unchanged map, or unchanged runs of it, can be copied when written again.
+   */
+  boolean cachesImages() {
+    return true;
+  }
+
+  SonImage image() {
+    return image;
+  }
+
+  SonImage recordImage(PileReader pile, GlobalNameMapReader names) {
+    if (!cachesImages()) {
+      return null;
+    }
+    image = SonImage.record(storage(), pile, names, null, null);
+    return image;
+  }
+
+  private MutableSonMap store(String name, SonType type, long bits, Object ref) {
+    Objects.requireNonNull(name);
+    SonSlots s = beginWrite();
+    try {
+      s.put(name, type, bits, ref);
+    } finally {
+      endWrite(s);
+    }
+    return this;
+  }
+
   @Override
-  public synchronized MutableSonMap clear() {
-    map.clear();
+  public MutableSonMap clear() {
+    SonSlots s = beginWrite();
+    try {
+      s.clear();
+    } finally {
+      endWrite(s);
+    }
     return this;
   }
 
@@ -65,8 +142,10 @@ public class MutableSonMapImpl implements MutableSonMap {
   }
 
   @Override
-  public synchronized MutableSonValue.MapValue get(String name) {
-    return map.get(name);
+  public MutableSonValue.MapValue get(String name) {
+    SonSlots s = storage();
+    int i = s.indexOf(name);
+    return i < 0 ? null : s.entry(i);
   }
 
   public int hashCode() {
@@ -74,69 +153,78 @@ public class MutableSonMapImpl implements MutableSonMap {
   }
 
   @Override
-  public synchronized Iterator<MutableSonValue.MapValue> iterator() {
-    Iterator<MutableSonValue.MapValue> ret = new ArrayList<>(map.values()).iterator();
-    return ret;
+  public Iterator<MutableSonValue.MapValue> iterator() {
+    SonSlots s = storage();
+    return new Iterator<MutableSonValue.MapValue>() {
+      private final int expected = s.modCount();
+      private int i = 0;
+
+      @Override
+      public boolean hasNext() {
+        return i < s.size();
+      }
+
+      @Override
+      public MutableSonValue.MapValue next() {
+        if (s.modCount() != expected) {
+          throw new ConcurrentModificationException();
+        }
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return s.entry(i++);
+      }
+    };
   }
 
   @Override
-  public synchronized MutableSonMap put(String name, boolean v) {
-    map.put(name, new MutableSonValue.MapValue(name, SonType.BOOL, v));
-    return this;
+  public MutableSonMap put(String name, boolean v) {
+    return store(name, SonType.BOOL, v ? 1 : 0, null);
   }
 
   @Override
-  public synchronized MutableSonMap put(String name, byte v) {
-    map.put(name, new MutableSonValue.MapValue(name, SonType.BYTE, v));
-    return this;
+  public MutableSonMap put(String name, byte v) {
+    return store(name, SonType.BYTE, v, null);
   }
 
   @Override
-  public synchronized MutableSonMap put(String name, UTCMillisDate v) {
-    map.put(name, new MutableSonValue.MapValue(name, SonType.DATE, v));
-    return this;
+  public MutableSonMap put(String name, UTCMillisDate v) {
+    return store(name, SonType.DATE, 0, Objects.requireNonNull(v));
   }
 
   @Override
-  public synchronized MutableSonMap put(String name, UUID v) {
-    map.put(name, new MutableSonValue.MapValue(name, SonType.UUID, v));
-    return this;
+  public MutableSonMap put(String name, UUID v) {
+    return store(name, SonType.UUID, 0, Objects.requireNonNull(v));
   }
 
   @Override
-  public synchronized MutableSonMap put(String name, short v) {
-    map.put(name, new MutableSonValue.MapValue(name, SonType.SHORT, v));
-    return this;
+  public MutableSonMap put(String name, short v) {
+    return store(name, SonType.SHORT, v, null);
   }
 
   @Override
-  public synchronized MutableSonMap put(String name, int v) {
-    map.put(name, new MutableSonValue.MapValue(name, SonType.INT, v));
-    return this;
+  public MutableSonMap put(String name, int v) {
+    return store(name, SonType.INT, v, null);
   }
 
   @Override
-  public synchronized MutableSonMap put(String name, char v) {
-    map.put(name, new MutableSonValue.MapValue(name, SonType.CHAR, v));
-    return this;
+  public MutableSonMap put(String name, char v) {
+    return store(name, SonType.CHAR, v, null);
   }
 
   @Override
-  public synchronized MutableSonMap put(String name, long v) {
-    map.put(name, new MutableSonValue.MapValue(name, SonType.LONG, v));
-    return this;
+  public MutableSonMap put(String name, long v) {
+    return store(name, SonType.LONG, v, null);
   }
 
   @Override
-  public synchronized MutableSonMap put(String name, float v) {
-    map.put(name, new MutableSonValue.MapValue(name, SonType.FLOAT, v));
-    return this;
+  public MutableSonMap put(String name, float v) {
+    return store(name, SonType.FLOAT, Float.floatToRawIntBits(v), null);
   }
 
   @Override
-  public synchronized MutableSonMap put(String name, double v) {
-    map.put(name, new MutableSonValue.MapValue(name, SonType.DOUBLE, v));
-    return this;
+  public MutableSonMap put(String name, double v) {
+    return store(name, SonType.DOUBLE, Double.doubleToRawLongBits(v), null);
   }
 
   @Override
@@ -146,43 +234,38 @@ public class MutableSonMapImpl implements MutableSonMap {
 
   @Override
   public MutableSonMap put(String name, SonBytes sb) {
-    Objects.requireNonNull(sb);
-    this.map.put(name, new MutableSonValue.MapValue(name, SonType.BYTES, sb));
-    return this;
+    return store(name, SonType.BYTES, 0, Objects.requireNonNull(sb));
   }
 
   @Override
-  public synchronized MutableSonMap put(String name, String value) {
-    Objects.requireNonNull(value);
-    this.map.put(name, new MutableSonValue.MapValue(name, SonType.STRING, value));
-    return this;
+  public MutableSonMap put(String name, String value) {
+    return store(name, SonType.STRING, 0, Objects.requireNonNull(value));
   }
 
   @Override
-  public synchronized MutableSonMap put(String name, MutableSonMap map) {
-    Objects.requireNonNull(map);
-    this.map.put(name, new MutableSonValue.MapValue(name, SonType.MAP, map));
-    return this;
+  public MutableSonMap put(String name, MutableSonMap map) {
+    return store(name, SonType.MAP, 0, Objects.requireNonNull(map));
   }
 
   @Override
-  public synchronized MutableSonMap put(String name, MutableSonList ml) {
-    Objects.requireNonNull(map);
-    this.map.put(name, new MutableSonValue.MapValue(name, SonType.LIST, ml));
-    return this;
+  public MutableSonMap put(String name, MutableSonList ml) {
+    return store(name, SonType.LIST, 0, Objects.requireNonNull(ml));
   }
 
   @Override
-  public synchronized MutableSonMap put(MutableSonValue.MapValue m) {
-    map.put(m.getKey(), m);
-    return this;
+  public MutableSonMap put(String name, SonType type, Object value) {
+    type.checkType(value);
+    return store(name, type, SonSlots.toBits(type, value), SonSlots.isPrimitive(type) ? null : value);
   }
 
   @Override
-  public synchronized MutableSonMap putNull(String name) {
-    Objects.requireNonNull(map);
-    this.map.put(name, new MutableSonValue.MapValue(name, SonType.NULL, null));
-    return this;
+  public MutableSonMap put(MutableSonValue.MapValue m) {
+    return put(m.getKey(), m.getType(), m.getValue());
+  }
+
+  @Override
+  public MutableSonMap putNull(String name) {
+    return store(name, SonType.NULL, 0, null);
   }
 
   @Override
@@ -190,23 +273,74 @@ public class MutableSonMapImpl implements MutableSonMap {
     int len = in.readInt();
     byte[] dest = new byte[len];
     in.read(dest);
-    MutableSonMapImpl newMap = (MutableSonMapImpl) Son.readableMap(ByteBuffer.wrap(dest)).asMutable();
-    this.map = newMap.map;
+    MutableSonMap newMap = Son.readableMap(ByteBuffer.wrap(dest)).asMutable();
+    clear();
+    for (MutableSonValue.MapValue mv : newMap) {
+      put(mv);
+    }
   }
 
   @Override
-  public synchronized MutableSonMap remove(String name) {
-    map.remove(name);
+  public MutableSonMap remove(String name) {
+    SonSlots s = beginWrite();
+    try {
+      int i = s.indexOf(name);
+      if (i >= 0) {
+        s.remove(i);
+      }
+    } finally {
+      endWrite(s);
+    }
     return this;
   }
 
-  public synchronized int size() {
-    return map.size();
+  public int size() {
+    return storage().size();
+  }
+
+  /**
+   * From its second write on, the map keeps an image of what it wrote.
+   * Unchanged since last written with the same name source, the map hands
+   * back a copy of those bytes. Otherwise the writer is seeded with the last
+   * written names, so unchanged runs copy verbatim, unless that would let the
+   * name table grow to more than twice what a fresh write needs.
+   */
+  @Override
+  public ByteBuffer toBuffer(NameSource ns) {
+    SonImage img = image;
+    if (img != null && img.bytes != null && Objects.equals(ns, img.nameSource) && img.current(storage())) {
+      ByteBuffer ret = ByteBuffer.allocate(img.bytes.remaining());
+      ret.put(img.bytes.duplicate());
+      ret.flip();
+      return ret;
+    }
+    boolean seed = img != null && img.bytes != null && Objects.equals(ns, img.nameSource)
+                   && img.names.size() <= 2 * freshNames;
+    SonStreamingMapWriter<Void> w = seed ? new SonStreamingMapWriter<>(ns, new ManagedBuffer(1024), img.names)
+      : Son.streamingMapWriter(ns);
+    appendTo(w);
+    w.endMap();
+    ByteBuffer ret = w.buffer().getBuffer();
+    ret.flip();
+    if (cachesImages() && !written) {
+      // most documents are written once; only keep an image once written again
+      written = true;
+    } else if (cachesImages()) {
+      ByteBuffer bytes = ByteBuffer.allocate(ret.remaining());
+      bytes.put(ret.duplicate());
+      bytes.flip();
+      ReadableSonMapImpl written = new ReadableSonMapImpl(ns, bytes.duplicate());
+      if (!seed) {
+        freshNames = written.getNameMap().size();
+      }
+      image = SonImage.record(storage(), written.getPile(), written.getNameMap(), bytes, ns);
+    }
+    return ret;
   }
 
   @Override
-  public synchronized ByteBuffer toBuffer(NameSource ns) {
-    SonStreamingMapWriter<Void> w = Son.streamingMapWriter(ns);
+  public ByteBuffer toCanonicalBuffer(NameSource ns) {
+    SonStreamingMapWriter<Void> w = Son.streamingMapWriter(ns).canonical(true);
     appendTo(w);
     w.endMap();
     ByteBuffer ret = w.buffer().getBuffer();
@@ -214,21 +348,50 @@ public class MutableSonMapImpl implements MutableSonMap {
     return ret;
   }
 
-  public synchronized void appendTo(SonStreamingMapWriter<?> mw) {
-    for (MutableSonValue.MapValue ent : this) {
-      ent.getType().mutableMapToBuffered(mw, ent.getKey(), ent.getValue());
+  public void appendTo(SonStreamingMapWriter<?> mw) {
+    SonSlots s = storage();
+    SonImage img = image;
+    if (img != null && !mw.isCanonical()) {
+      // own slots unchanged: copy runs from the image, re-encode changed nested values
+      PileReader keys = img.pile.pile(s.size());
+      int from = 0;
+      for (int i = 0; i < s.size(); i++) {
+        if (!img.current(s, i)) {
+          if (from < i) {
+            mw.appendRangeFrom(img.pile, keys, from, i, img.names);
+          }
+          s.appendTo(mw, i);
+          from = i + 1;
+        }
+      }
+      if (from < s.size()) {
+        mw.appendRangeFrom(img.pile, keys, from, s.size(), img.names);
+      }
+    } else if (mw.isCanonical()) {
+      Integer[] order = new Integer[s.size()];
+      for (int i = 0; i < order.length; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, Comparator.comparing(s::key));
+      for (int i : order) {
+        s.appendTo(mw, i);
+      }
+    } else {
+      for (int i = 0; i < s.size(); i++) {
+        s.appendTo(mw, i);
+      }
     }
   }
 
   @Override
-  public synchronized void toBuffer(NameSource ns, ManagedBuffer dest) {
+  public void toBuffer(NameSource ns, ManagedBuffer dest) {
     SonStreamingMapWriter<Void> w = Son.streamingMapWriter(ns, dest);
     appendTo(w);
     w.endMap();
   }
 
   @Override
-  public synchronized String toString() {
+  public String toString() {
     return Son.SONPrinters.SON.pretty().printMap(this);
   }
 
@@ -0,0 +1,322 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.mutable;
+
+import com.terracottatech.tcson.MutableSonList;
+import com.terracottatech.tcson.MutableSonMap;
+import com.terracottatech.tcson.NameSource;
+import com.terracottatech.tcson.ReadableSonList;
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.SonBytes;
+import com.terracottatech.tcson.SonType;
+import com.terracottatech.tcson.pile.ManagedBuffer;
+import com.terracottatech.tcson.reading.GlobalNameMapReader;
+import com.terracottatech.tcson.reading.ReadableSonMapImpl;
+import com.terracottatech.tcson.reading.ReadableSonValue;
+import com.terracottatech.tcson.writing.SonStreamingMapWriter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Mutable map layered over a readable one, copying on write. Puts and
+ * removes are held in the overlay; nested maps are overlaid in turn the first
+ * time they are reached, and nested lists are copied when reached. Reaching
+ * a value does not change the overlay: a nested map or list joins it only
+ * once it is changed, so entries that are merely read, compared or printed
+ * stay in the source buffer and are copied from it raw when the map is
+ * written. A read-modify-write costs in proportion to the change rather
+ * than the document.
+ * <p>
+ * The source buffer must not change while the overlay is in use. Entries
+ * keep the source order; new keys, including ones removed and put back,
+ * follow it in insertion order.
+ */
+public class OverlaySonMapImpl extends MutableSonMapImpl {
+
+  private static final long serialVersionUID = 6084221562530715385L;
+
+  private ReadableSonMapImpl source;
+  private HashSet<String> removed = new HashSet<>();
+  private transient HashMap<String, Object> reached = new HashMap<>();
+
+  /**
+   * Empty overlay, only for deserialization.
+   */
+  public OverlaySonMapImpl() {
+    this.source = null;
+  }
+
+  public OverlaySonMapImpl(ReadableSonMap source) {
+    if (!(source instanceof ReadableSonMapImpl)) {
+      throw new IllegalArgumentException("Cannot overlay a " + source.getClass().getName());
+    }
+    this.source = (ReadableSonMapImpl) source;
+  }
+
+  /**
+   * The overlay's own slots are only part of what is written.
+   */
+  @Override
+  boolean cachesImages() {
+    return false;
+  }
+
+  private int sourceIndex(String name) {
+    if (source == null || removed.contains(name)) {
+      return -1;
+    }
+    return source.indexOf(name);
+  }
+
+  @Override
+  public MutableSonValue.MapValue get(String name) {
+    MutableSonValue.MapValue ret = super.get(name);
+    if (ret == null && sourceIndex(name) >= 0) {
+      ret = fromSource(source.get(name));
+    }
+    return ret;
+  }
+
+  /*
+   * Maps and lists are kept once reached, so the caller keeps getting the
+   * same one, but only join the overlay when changed; scalars are immutable,
+   * so are handed out as they are.
+   */
+  private MutableSonValue.MapValue fromSource(ReadableSonValue.MapValue ent) {
+    String name = ent.getKey();
+    switch (ent.getType()) {
+      case MAP:
+      case LIST:
+        Object v = reached.get(name);
+        if (v == null) {
+          v = reach(ent);
+          reached.put(name, v);
+        }
+        return new MutableSonValue.MapValue(name, ent.getType(), v);
+      case BYTES:
+        return new MutableSonValue.MapValue(name, SonType.BYTES, ((SonBytes) ent.getValue()).dup());
+      default:
+        return new MutableSonValue.MapValue(name, ent.getType(), ent.getValue());
+    }
+  }
+
+  private Object reach(ReadableSonValue.MapValue ent) {
+    String name = ent.getKey();
+    SonType type = ent.getType();
+    if (type == SonType.MAP) {
+      OverlaySonMapImpl m = new OverlaySonMapImpl((ReadableSonMap) ent.getValue());
+      m.onWrite(() -> attach(name, type, m));
+      return m;
+    }
+    MutableSonList l = ((ReadableSonList) ent.getValue()).asMutable();
+    watch(l, () -> attach(name, type, l));
+    return l;
+  }
+
+  /*
+   * A list copy changes when any map or list inside it does.
+   */
+  private static void watch(Object v, Runnable r) {
+    if (v instanceof MutableSonMapImpl) {
+      ((MutableSonMapImpl) v).onWrite(r);
+      for (MutableSonValue.MapValue ent : (MutableSonMapImpl) v) {
+        watch(ent.getValue(), r);
+      }
+    } else if (v instanceof MutableSonListImpl) {
+      ((MutableSonListImpl) v).onWrite(r);
+      for (MutableSonValue ent : (MutableSonListImpl) v) {
+        watch(ent.getValue(), r);
+      }
+    }
+  }
+
+  /*
+   * A reached value about to change joins the overlay, unless its entry has
+   * since been put or removed.
+   */
+  private void attach(String name, SonType type, Object v) {
+    if (reached.get(name) == v && super.get(name) == null && sourceIndex(name) >= 0) {
+      super.put(new MutableSonValue.MapValue(name, type, v));
+    }
+  }
+
+  /**
+   * Keys in order, each with its source index, or -1 if it lives in the
+   * overlay.
+   */
+  private List<Slot> slots() {
+    ArrayList<Slot> ret = new ArrayList<>();
+    if (source != null) {
+      int i = 0;
+      for (Iterator<String> it = source.keyIterator(); it.hasNext(); i++) {
+        String name = it.next();
+        if (!removed.contains(name)) {
+          ret.add(new Slot(name, super.get(name) == null ? i : -1));
+        }
+      }
+    }
+    for (Iterator<MutableSonValue.MapValue> it = super.iterator(); it.hasNext(); ) {
+      String name = it.next().getKey();
+      if (sourceIndex(name) < 0) {
+        ret.add(new Slot(name, -1));
+      }
+    }
+    return ret;
+  }
+
+  @Override
+  public Iterator<MutableSonValue.MapValue> iterator() {
+    ArrayList<MutableSonValue.MapValue> ret = new ArrayList<>();
+    for (Slot s : slots()) {
+      ret.add(get(s.name));
+    }
+    return ret.iterator();
+  }
+
+  @Override
+  public MutableSonMap remove(String name) {
+    super.remove(name);
+    if (sourceIndex(name) >= 0) {
+      removed.add(name);
+    }
+    return this;
+  }
+
+  @Override
+  public MutableSonMap clear() {
+    super.clear();
+    source = null;
+    removed.clear();
+    reached.clear();
+    return this;
+  }
+
+  @Override
+  public int size() {
+    int ret = super.size();
+    if (source != null) {
+      ret = ret + source.size() - removed.size();
+      for (Iterator<MutableSonValue.MapValue> it = super.iterator(); it.hasNext(); ) {
+        if (sourceIndex(it.next().getKey()) >= 0) {
+          ret--;
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * When written with the source's name source, the writer starts from the
+   * source's name ids, so untouched nested maps copy verbatim rather than
+   * having their keys translated. That is skipped once the entries dropped
+   * from the source used more than half its names, as the name table would
+   * then be more than twice what a fresh write needs.
+   */
+  @Override
+  public ByteBuffer toBuffer(NameSource ns) {
+    if (source == null || !Objects.equals(ns, source.getNameSource())) {
+      return super.toBuffer(ns);
+    }
+    int names = source.getNameMap().size();
+    HashSet<String> dropped = new HashSet<>();
+    dropped(dropped);
+    if (names > 2 * (names - dropped.size())) {
+      return super.toBuffer(ns);
+    }
+    SonStreamingMapWriter<Void> w = new SonStreamingMapWriter<>(ns, new ManagedBuffer(1024), source.getNameMap());
+    appendTo(w);
+    w.endMap();
+    ByteBuffer ret = w.buffer().getBuffer();
+    ret.flip();
+    return ret;
+  }
+
+  /*
+   * Names used by source entries that are no longer copied from the source,
+   * in this map and the nested overlays that joined it. Some may still be
+   * used elsewhere, so this over-counts what a fresh write would shed.
+   */
+  private void dropped(Set<String> into) {
+    if (source == null) {
+      return;
+    }
+    for (String name : removed) {
+      into.add(name);
+      names(source.get(name).getValue(), into);
+    }
+    for (Iterator<MutableSonValue.MapValue> it = super.iterator(); it.hasNext(); ) {
+      MutableSonValue.MapValue ent = it.next();
+      String name = ent.getKey();
+      if (removed.contains(name) || sourceIndex(name) < 0) {
+        continue;
+      }
+      if (reached.get(name) != ent.getValue()) {
+        into.add(name);
+        names(source.get(name).getValue(), into);
+      } else if (ent.getValue() instanceof OverlaySonMapImpl) {
+        ((OverlaySonMapImpl) ent.getValue()).dropped(into);
+      }
+    }
+  }
+
+  private static void names(Object v, Set<String> into) {
+    if (v instanceof ReadableSonMap) {
+      for (ReadableSonValue.MapValue ent : (ReadableSonMap) v) {
+        into.add(ent.getKey());
+        names(ent.getValue(), into);
+      }
+    } else if (v instanceof ReadableSonList) {
+      for (ReadableSonValue ent : (ReadableSonList) v) {
+        names(ent.getValue(), into);
+      }
+    }
+  }
+
+  @Override
+  public void appendTo(SonStreamingMapWriter<?> mw) {
+    List<Slot> slots = slots();
+    if (mw.isCanonical()) {
+      slots.sort(Comparator.comparing(s -> s.name));
+    }
+    GlobalNameMapReader names = source == null ? null : source.getNameMap();
+    for (Slot s : slots) {
+      if (s.sourceIndex >= 0) {
+        mw.appendFrom(s.name, source.getPile(), s.sourceIndex, names);
+      } else {
+        MutableSonValue.MapValue ent = super.get(s.name);
+        ent.getType().mutableMapToBuffered(mw, s.name, ent.getValue());
+      }
+    }
+  }
+
+  private static final class Slot {
+    private final String name;
+    private final int sourceIndex;
+
+    Slot(String name, int sourceIndex) {
+      this.name = name;
+      this.sourceIndex = sourceIndex;
+    }
+  }
+}
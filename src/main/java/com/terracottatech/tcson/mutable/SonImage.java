@@ -0,0 +1,102 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.mutable;
+
+import com.terracottatech.tcson.NameSource;
+import com.terracottatech.tcson.pile.PileReader;
+import com.terracottatech.tcson.reading.GlobalNameMapReader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Where a mutable map or list was last written: its pile in the written
+ * bytes, the names those bytes use, and the images its nested maps and lists
+ * had at the time. Any change to a node's own slots drops its image, so a
+ * node still holding an image, whose nested nodes still hold the images
+ * recorded here, is unchanged and can be copied from the image raw.
+ */
+final class SonImage {
+
+  final PileReader pile;
+  final GlobalNameMapReader names;
+  /*
+   * Whole document bytes and name source, only when written as a document.
+   */
+  final ByteBuffer bytes;
+  final NameSource nameSource;
+  private final SonImage[] nested;
+
+  private SonImage(PileReader pile, GlobalNameMapReader names, ByteBuffer bytes, NameSource nameSource,
+                   SonImage[] nested) {
+    this.pile = pile;
+    this.names = names;
+    this.bytes = bytes;
+    this.nameSource = nameSource;
+    this.nested = nested;
+  }
+
+  /**
+   * Image of the given slots, just written as pile, recording images for
+   * the nested maps and lists along the way.
+   */
+  static SonImage record(SonSlots s, PileReader pile, GlobalNameMapReader names, ByteBuffer bytes,
+                         NameSource nameSource) {
+    SonImage[] nested = new SonImage[s.size()];
+    for (int i = 0; i < nested.length; i++) {
+      switch (s.type(i)) {
+        case MAP:
+          nested[i] = ((MutableSonMapImpl) s.value(i)).recordImage(pile.pile(i), names);
+          break;
+        case LIST:
+          nested[i] = ((MutableSonListImpl) s.value(i)).recordImage(pile.pile(i), names);
+          break;
+        default:
+          break;
+      }
+    }
+    return new SonImage(pile, names, bytes, nameSource, nested);
+  }
+
+  /**
+   * Is everything below a node unchanged since this image was taken? The
+   * node's slots must be the ones it had then.
+   */
+  boolean current(SonSlots s) {
+    for (int i = 0; i < nested.length; i++) {
+      if (!current(s, i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Is slot i unchanged since this image was taken? Always true for
+   * scalars, as the node's slots are the ones it had then.
+   */
+  boolean current(SonSlots s, int i) {
+    switch (s.type(i)) {
+      case MAP:
+        MutableSonMapImpl m = (MutableSonMapImpl) s.value(i);
+        return nested[i] != null && m.image() == nested[i] && nested[i].current(m.storage());
+      case LIST:
+        MutableSonListImpl l = (MutableSonListImpl) s.value(i);
+        return nested[i] != null && l.image() == nested[i] && nested[i].current(l.storage());
+      default:
+        return true;
+    }
+  }
+}
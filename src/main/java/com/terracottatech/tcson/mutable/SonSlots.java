@@ -0,0 +1,399 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.mutable;
+
+import com.terracottatech.tcson.SonType;
+import com.terracottatech.tcson.SonValue;
+import com.terracottatech.tcson.writing.SonStreamingListWriter;
+import com.terracottatech.tcson.writing.SonStreamingMapWriter;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Unboxed backing store for the mutable maps and lists. Each slot keeps its
+ * type, a long holding any primitive (floating point as raw bits, booleans as
+ * 0 or 1), and a reference for everything else; map slots also keep their key.
+ * Values are only boxed when a caller asks for one, so building a document
+ * allocates little beyond the arrays.
+ * <p>
+ * Small maps, the usual case, find keys by scanning the key array. Past
+ * {@link #SCAN_LIMIT} keys an open addressed table of slot numbers is built
+ * alongside, and dropped again if the map shrinks back.
+ */
+final class SonSlots {
+
+  private static final SonType[] TYPES = SonType.values();
+  private static final String[] NO_KEYS = new String[0];
+  private static final byte[] NO_TYPES = new byte[0];
+  private static final long[] NO_BITS = new long[0];
+  private static final Object[] NO_REFS = new Object[0];
+
+  static final int SCAN_LIMIT = 16;
+
+  private final boolean keyed;
+  /*
+   * Slot number plus one per entry, 0 marking an empty entry; null while
+   * keys are scanned.
+   */
+  private int[] table = null;
+  private String[] keys = NO_KEYS;
+  private byte[] types = NO_TYPES;
+  private long[] bits = NO_BITS;
+  private Object[] refs = NO_REFS;
+  private int size = 0;
+  // structural changes, for fail fast iterators
+  private int modCount = 0;
+
+  /**
+   * @param keyed true for a map's slots, false for a list's
+   */
+  SonSlots(boolean keyed) {
+    this.keyed = keyed;
+  }
+
+  private SonSlots(SonSlots src) {
+    this.keyed = src.keyed;
+    this.table = src.table == null ? null : src.table.clone();
+    this.size = src.size;
+    if (size > 0) {
+      this.keys = keyed ? Arrays.copyOf(src.keys, size) : NO_KEYS;
+      this.types = Arrays.copyOf(src.types, size);
+      this.bits = Arrays.copyOf(src.bits, size);
+      this.refs = Arrays.copyOf(src.refs, size);
+    }
+  }
+
+  static boolean isPrimitive(SonType type) {
+    switch (type) {
+      case BYTE:
+      case SHORT:
+      case INT:
+      case CHAR:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+      case BOOL:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Slot bits for a boxed primitive; 0 for reference types.
+   */
+  static long toBits(SonType type, Object value) {
+    switch (type) {
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+        return ((Number) value).longValue();
+      case CHAR:
+        return (char) value;
+      case FLOAT:
+        return Float.floatToRawIntBits((float) value);
+      case DOUBLE:
+        return Double.doubleToRawLongBits((double) value);
+      case BOOL:
+        return (boolean) value ? 1 : 0;
+      default:
+        return 0;
+    }
+  }
+
+  SonSlots copy() {
+    return new SonSlots(this);
+  }
+
+  int size() {
+    return size;
+  }
+
+  int modCount() {
+    return modCount;
+  }
+
+  int indexOf(String key) {
+    if (table == null) {
+      for (int i = 0; i < size; i++) {
+        if (keys[i].equals(key)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+    int mask = table.length - 1;
+    for (int h = hash(key) & mask; ; h = (h + 1) & mask) {
+      int slot = table[h];
+      if (slot == 0) {
+        return -1;
+      }
+      if (keys[slot - 1].equals(key)) {
+        return slot - 1;
+      }
+    }
+  }
+
+  private static int hash(String key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private void index(int i) {
+    int mask = table.length - 1;
+    int h = hash(keys[i]) & mask;
+    while (table[h] != 0) {
+      h = (h + 1) & mask;
+    }
+    table[h] = i + 1;
+  }
+
+  /**
+   * Rebuilds the table for the current keys, at most half full, or drops it
+   * if they are few enough to scan.
+   */
+  private void reindex() {
+    if (size <= SCAN_LIMIT) {
+      table = null;
+      return;
+    }
+    table = new int[Integer.highestOneBit(size) << 2];
+    for (int i = 0; i < size; i++) {
+      index(i);
+    }
+  }
+
+  String key(int i) {
+    checkIndex(i, size);
+    return keys[i];
+  }
+
+  SonType type(int i) {
+    checkIndex(i, size);
+    return TYPES[types[i]];
+  }
+
+  /**
+   * Value in slot i, boxed.
+   */
+  Object value(int i) {
+    long b = bits[i];
+    switch (type(i)) {
+      case BYTE:
+        return (byte) b;
+      case SHORT:
+        return (short) b;
+      case INT:
+        return (int) b;
+      case CHAR:
+        return (char) b;
+      case LONG:
+        return b;
+      case FLOAT:
+        return Float.intBitsToFloat((int) b);
+      case DOUBLE:
+        return Double.longBitsToDouble(b);
+      case BOOL:
+        return b != 0;
+      default:
+        return refs[i];
+    }
+  }
+
+  MutableSonValue view(int i) {
+    SonType t = type(i);
+    return t == SonType.NULL ? MutableSonValue.NULL_VALUE : new MutableSonValue(t, value(i));
+  }
+
+  MutableSonValue.MapValue entry(int i) {
+    return new MutableSonValue.MapValue(keys[i], type(i), value(i));
+  }
+
+  /**
+   * Set the value for a key, appending a slot if the key is new.
+   */
+  void put(String key, SonType type, long b, Object ref) {
+    int i = indexOf(key);
+    if (i < 0) {
+      i = size;
+      grow();
+      keys[i] = key;
+      size++;
+      modCount++;
+      if (table == null ? size > SCAN_LIMIT : size * 2 > table.length) {
+        reindex();
+      } else if (table != null) {
+        index(i);
+      }
+    }
+    write(i, type, b, ref);
+  }
+
+  void set(int i, SonType type, long b, Object ref) {
+    checkIndex(i, size);
+    write(i, type, b, ref);
+  }
+
+  void insert(int i, SonType type, long b, Object ref) {
+    checkIndex(i, size + 1);
+    grow();
+    int tail = size - i;
+    System.arraycopy(types, i, types, i + 1, tail);
+    System.arraycopy(bits, i, bits, i + 1, tail);
+    System.arraycopy(refs, i, refs, i + 1, tail);
+    size++;
+    modCount++;
+    write(i, type, b, ref);
+  }
+
+  void remove(int i) {
+    checkIndex(i, size);
+    int tail = size - i - 1;
+    System.arraycopy(types, i + 1, types, i, tail);
+    System.arraycopy(bits, i + 1, bits, i, tail);
+    System.arraycopy(refs, i + 1, refs, i, tail);
+    size--;
+    modCount++;
+    refs[size] = null;
+    if (keyed) {
+      System.arraycopy(keys, i + 1, keys, i, tail);
+      keys[size] = null;
+      if (table != null) {
+        reindex();
+      }
+    }
+  }
+
+  void clear() {
+    Arrays.fill(refs, 0, size, null);
+    if (keyed) {
+      Arrays.fill(keys, 0, size, null);
+      table = null;
+    }
+    size = 0;
+    modCount++;
+  }
+
+  /**
+   * Stable sort of a list's slots.
+   */
+  void sort(Comparator<? super SonValue> comparator) {
+    MutableSonValue[] views = new MutableSonValue[size];
+    for (int i = 0; i < size; i++) {
+      views[i] = view(i);
+    }
+    Arrays.sort(views, comparator);
+    modCount++;
+    for (int i = 0; i < size; i++) {
+      SonType t = views[i].getType();
+      Object v = views[i].getValue();
+      write(i, t, toBits(t, v), isPrimitive(t) ? null : v);
+    }
+  }
+
+  void appendTo(SonStreamingMapWriter<?> w, int i) {
+    String key = keys[i];
+    long b = bits[i];
+    SonType t = type(i);
+    switch (t) {
+      case BYTE:
+        w.append(key, (byte) b);
+        break;
+      case SHORT:
+        w.append(key, (short) b);
+        break;
+      case INT:
+        w.append(key, (int) b);
+        break;
+      case CHAR:
+        w.append(key, (char) b);
+        break;
+      case LONG:
+        w.append(key, b);
+        break;
+      case FLOAT:
+        w.append(key, Float.intBitsToFloat((int) b));
+        break;
+      case DOUBLE:
+        w.append(key, Double.longBitsToDouble(b));
+        break;
+      case BOOL:
+        w.append(key, b != 0);
+        break;
+      default:
+        t.mutableMapToBuffered(w, key, refs[i]);
+    }
+  }
+
+  void appendTo(SonStreamingListWriter<?> w, int i) {
+    long b = bits[i];
+    SonType t = type(i);
+    switch (t) {
+      case BYTE:
+        w.append((byte) b);
+        break;
+      case SHORT:
+        w.append((short) b);
+        break;
+      case INT:
+        w.append((int) b);
+        break;
+      case CHAR:
+        w.append((char) b);
+        break;
+      case LONG:
+        w.append(b);
+        break;
+      case FLOAT:
+        w.append(Float.intBitsToFloat((int) b));
+        break;
+      case DOUBLE:
+        w.append(Double.longBitsToDouble(b));
+        break;
+      case BOOL:
+        w.append(b != 0);
+        break;
+      default:
+        t.mutableListToBuffered(w, refs[i]);
+    }
+  }
+
+  private void write(int i, SonType type, long b, Object ref) {
+    types[i] = (byte) type.ordinal();
+    bits[i] = b;
+    refs[i] = ref;
+  }
+
+  private void grow() {
+    if (size == types.length) {
+      int cap = Math.max(8, size + (size >> 1));
+      if (keyed) {
+        keys = Arrays.copyOf(keys, cap);
+      }
+      types = Arrays.copyOf(types, cap);
+      bits = Arrays.copyOf(bits, cap);
+      refs = Arrays.copyOf(refs, cap);
+    }
+  }
+
+  private static void checkIndex(int i, int limit) {
+    if (i < 0 || i >= limit) {
+      throw new IndexOutOfBoundsException("Index: " + i);
+    }
+  }
+}
@@ -85,7 +85,10 @@
  *
  * <p>{@link com.terracottatech.tcson.MutableSonMap}
  * and {@link com.terracottatech.tcson.MutableSonList}
- * objects are thread safe. {@link com.terracottatech.tcson.ReadableSonMap} and
+ * objects are not synchronized; confine them to one thread, or use
+ * {@link com.terracottatech.tcson.Son#concurrentWriteableMap()} and
+ * {@link com.terracottatech.tcson.Son#concurrentWriteableList()}, which read without
+ * locking and iterate over snapshots. {@link com.terracottatech.tcson.ReadableSonMap} and
  * {@link com.terracottatech.tcson.ReadableSonList} objects are as well, providing the underlying
  * buffer is not manipulated. {@link com.terracottatech.tcson.SonValue} and it's subclasses
  * are immutable, and therefore thread safe.
@@ -0,0 +1,83 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.pile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Managed buffer which drains to a channel rather than growing. Since piles
+ * are written strictly in order and never revisited, anything already in the
+ * buffer can be written out whenever more room is needed; only the metadata
+ * for open piles stays in memory. The buffer only grows past its chunk size
+ * to hold a single value larger than a chunk.
+ * <p>
+ * IO failures surface as {@link UncheckedIOException}. The channel is not
+ * closed by this class.
+ */
+public class ChannelManagedBuffer extends ManagedBuffer {
+  public static final int DEFAULT_CHUNK = 64 * 1024;
+
+  private final WritableByteChannel channel;
+
+  public ChannelManagedBuffer(WritableByteChannel channel) {
+    this(channel, DEFAULT_CHUNK);
+  }
+
+  public ChannelManagedBuffer(WritableByteChannel channel, int chunk) {
+    super(ByteBuffer.allocate(chunk));
+    this.channel = channel;
+  }
+
+  public ChannelManagedBuffer(OutputStream os) {
+    this(Channels.newChannel(os));
+  }
+
+  public ChannelManagedBuffer(OutputStream os, int chunk) {
+    this(Channels.newChannel(os), chunk);
+  }
+
+  @Override
+  public void ensureRemaining(int need) {
+    if (getBuffer().remaining() < need) {
+      flush();
+      super.ensureRemaining(need);
+    }
+  }
+
+  @Override
+  public void flush() {
+    ByteBuffer b = getBuffer();
+    b.flip();
+    try {
+      while (b.hasRemaining()) {
+        flushed(channel.write(b));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      b.compact();
+    }
+  }
+
+  public WritableByteChannel getChannel() {
+    return channel;
+  }
+}
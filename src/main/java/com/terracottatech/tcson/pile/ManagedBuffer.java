@@ -22,6 +22,7 @@ public class ManagedBuffer {
   private int initial;
   private int max;
   private ByteBuffer buffer;
+  private long flushed;
 
   public ManagedBuffer() {
     this(1024);
@@ -38,6 +39,7 @@ public class ManagedBuffer {
   public void reset(ByteBuffer b) {
     this.buffer = b;
     this.initial = this.max = b.remaining();
+    this.flushed = 0;
   }
 
   public void ensureRemaining(int need) {
@@ -56,11 +58,38 @@ public class ManagedBuffer {
     return buffer;
   }
 
+  /**
+   * Position in the logical output stream. Same as the buffer position
+   * unless a subclass has flushed some of the buffer away.
+   *
+   * @return stream position
+   */
+  public long streamPosition() {
+    return flushed + buffer.position();
+  }
+
+  /**
+   * Hook for subclasses which drain to somewhere else. Called when a
+   * root pile is complete; a no-op for a plain buffer.
+   */
+  public void flush() {
+  }
+
+  /**
+   * Record that the given number of bytes have left the buffer.
+   *
+   * @param cnt byte count
+   */
+  protected void flushed(long cnt) {
+    flushed = flushed + cnt;
+  }
+
   public void reset() {
     if (shouldResizeDown()) {
       this.buffer = ByteBuffer.allocate(max);
     }
     this.buffer.clear();
+    this.flushed = 0;
   }
 
   private boolean shouldResizeDown() {
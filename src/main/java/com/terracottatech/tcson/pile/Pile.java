@@ -115,4 +115,17 @@ public class Pile {
     return new PileReaderImpl(b, start, limit);
   }
 
+  /**
+   * Reader which skips per access checks. Only for data which has already
+   * been validated, see {@link TrustedPileReader}.
+   *
+   * @param b the buffer
+   * @param start the start position (absolute)
+   * @param limit the limit (absolute)
+   * @return trusted reader
+   */
+  public static PileReader trustedReader(ByteBuffer b, int start, int limit) {
+    return new TrustedPileReader(b, start, limit);
+  }
+
 }
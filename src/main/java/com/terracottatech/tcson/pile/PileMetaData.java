@@ -20,62 +20,110 @@ import java.io.StringWriter;
 import java.nio.ByteBuffer;
 
 public class PileMetaData {
-  private final int payloadSize;
-  private final int start;
-  private final int limit;
-  private final ByteBuffer buffer;
-  private final int[] typeAndPositionArray;
+  private int payloadSize;
+  private int start;
+  private int limit;
+  private ByteBuffer buffer;
+  private byte[] types;
+  private int[] positions;
   private int lastSize;
   private int count;
 
   public PileMetaData(ByteBuffer go, int start, int limit) {
+    reset(go, start, limit);
+  }
+
+  /**
+   * Re-parse over a new pile, reusing the position array if it is big
+   * enough.
+   *
+   * @param go buffer
+   * @param start start position (absolute)
+   * @param limit limit (absolute)
+   * @return this
+   */
+  public PileMetaData reset(ByteBuffer go, int start, int limit) {
+    // absolute reads only, so many threads can open readers over one buffer
     this.buffer = go;
-    int savePos = go.position();
     this.start = start;
     this.limit = limit;
-    int op = go.get(limit - 1);
-    int bytesForSize;
-    int footprint;
-    if ((op & 0b11) == 0b00) {
-      bytesForSize = 1;
-      footprint = (((op & 0xff) >>> 2)) & 0xffffff;
-    } else if ((op & 0b11) == 0b01) {
-      bytesForSize = 2;
-      footprint = (go.getShort(limit - 2) >> 2) & 0xffffff;
-    } else {
-      bytesForSize = 4;
-      footprint = (go.getInt(limit - 4) >> 2) & 0xffffff;
-    }
+    int bytesForSize = footerWidth(go, limit);
+    int footprint = directorySize(go, limit);
 
     this.payloadSize = limit - start - bytesForSize - footprint;
 
-    go.position(limit - bytesForSize - footprint);
-    // turns out to be more efficient to pack everything in one array.
+    int at = limit - bytesForSize - footprint;
+    int end = limit - bytesForSize;
     // worst case is everything is in one byte
-    int max = limit - go.position() - bytesForSize;
-    this.typeAndPositionArray = new int[max];
+    int max = end - at;
+    if (positions == null || positions.length < max) {
+      this.types = new byte[max];
+      this.positions = new int[max];
+    }
     int pos = 0;
     int idx = 0;
-    for (; go.position() < (limit - bytesForSize); ) {
-      int p = go.get();
+    this.lastSize = 0;
+    while (at < end) {
+      int p = go.get(at++);
       int ord = p & Pile.Type.maxOrdinalValue();
       Pile.Type typ = Pile.Type.values()[ord];
       int thisSize;
       if (typ.isKnownSize()) {
         thisSize = typ.getKnownSize();
       } else if (p == ord) {
-        thisSize = (int) VarInts.varDecode(go);
+        thisSize = (int) VarInts.varDecode(go, at);
+        while (go.get(at++) < 0) {
+          // skip the rest of the varint
+        }
       } else {
         // -1 because zero length would be  prob
         thisSize = ((p >>> Pile.Type.bitWidth()) & Pile.Type.maxInlineValue()) - 1;
       }
       // keep track of the size of the last one.
       this.lastSize = thisSize;
-      this.typeAndPositionArray[idx++] = pos | (typ.ordinal() << (32 - Pile.Type.bitWidth()));
+      this.types[idx] = (byte) ord;
+      this.positions[idx++] = pos;
       pos = pos + thisSize;
     }
     this.count = idx;
-    go.position(savePos);
+    return this;
+  }
+
+  /**
+   * Width of the footer ending a pile: 1, 2 or 4 bytes, per its low two bits.
+   *
+   * @param b buffer
+   * @param limit end of the pile (absolute)
+   * @return footer width
+   */
+  public static int footerWidth(ByteBuffer b, int limit) {
+    switch (b.get(limit - 1) & 0b11) {
+      case 0b00:
+        return 1;
+      case 0b01:
+        return 2;
+      default:
+        return 4;
+    }
+  }
+
+  /**
+   * Size of the directory preceding a pile's footer. The whole footer, of
+   * {@link #footerWidth(ByteBuffer, int)} bytes, must be in the buffer.
+   *
+   * @param b buffer
+   * @param limit end of the pile (absolute)
+   * @return directory size in bytes, at most {@link PileWriterMetaData#MAX_DIRECTORY}
+   */
+  public static int directorySize(ByteBuffer b, int limit) {
+    switch (footerWidth(b, limit)) {
+      case 1:
+        return (b.get(limit - 1) & 0xff) >>> 2;
+      case 2:
+        return (b.getShort(limit - 2) & 0xffff) >>> 2;
+      default:
+        return b.getInt(limit - 4) >>> 2;
+    }
   }
 
   public ByteBuffer getBuffer() {
@@ -94,11 +142,11 @@ public class PileMetaData {
   }
 
   public Pile.Type getType(int index) {
-    return Pile.Type.values()[typeAndPositionArray[index] >>> (32 - Pile.Type.bitWidth())];
+    return Pile.Type.values()[types[index]];
   }
 
   private int relativePositionOf(int index) {
-    return typeAndPositionArray[index] & ((1 << (32 - Pile.Type.bitWidth())) - 1);
+    return positions[index];
   }
 
   public int size() {
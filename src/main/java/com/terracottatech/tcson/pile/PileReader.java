@@ -151,6 +151,14 @@ public interface PileReader {
    */
   int lengthOf(int idx);
 
+  /**
+   * Absolute position of a field in the source buffer.
+   *
+   * @param idx the idx
+   * @return the position
+   */
+  int positionOf(int idx);
+
   /**
    * Open a new Pile 1 reader for a nested Pile.
    *
@@ -159,6 +167,26 @@ public interface PileReader {
    */
   PileReader pile(int idx);
 
+  /**
+   * Point an existing reader at a nested pile, instead of opening a new one.
+   *
+   * @param idx the index of the pile.
+   * @param target reader to reset
+   * @return the target
+   */
+  PileReader pileInto(int idx, PileReader target);
+
+  /**
+   * Reset this reader to preside over a new pile, reusing its internal
+   * arrays where possible.
+   *
+   * @param src the buffer
+   * @param start the start position (absolute)
+   * @param limit the limit (absolute)
+   * @return this
+   */
+  PileReader reset(ByteBuffer src, int start, int limit);
+
   /**
    * Gets field count for this pile. Sub piles count as 1.
    *
@@ -166,6 +194,14 @@ public interface PileReader {
    */
   int size();
 
+  /**
+   * View of the encoded bytes of a field, whatever its type.
+   *
+   * @param idx the idx
+   * @return read only view
+   */
+  ByteBuffer raw(int idx);
+
   /**
    * Read a String from the specified field.
    *
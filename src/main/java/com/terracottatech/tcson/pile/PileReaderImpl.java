@@ -23,10 +23,10 @@ import java.nio.ByteOrder;
 import java.util.Base64;
 
 public class PileReaderImpl implements PileReader {
-  protected final ByteBuffer src;
+  protected ByteBuffer src;
   protected final PileMetaData meta;
-  private final int start;
-  private final int limit;
+  private int start;
+  private int limit;
 
   public PileReaderImpl(ByteBuffer src) {
     this(src, src.position(), src.limit());
@@ -42,6 +42,18 @@ public class PileReaderImpl implements PileReader {
     this.meta = new PileMetaData(src, start, limit);
   }
 
+  @Override
+  public PileReaderImpl reset(ByteBuffer src, int start, int limit) {
+    if (src.order() != ByteOrder.BIG_ENDIAN) {
+      throw new IllegalArgumentException();
+    }
+    meta.reset(src, start, limit);
+    this.src = src;
+    this.start = start;
+    this.limit = limit;
+    return this;
+  }
+
   @Override
   public boolean bool(int idx) {
     checkType(idx, Pile.Type.BOOLEAN);
@@ -79,6 +91,15 @@ public class PileReaderImpl implements PileReader {
     return src.get(positionOf(idx));
   }
 
+  @Override
+  public ByteBuffer raw(int idx) {
+    ByteBuffer b = src.duplicate();
+    int p = positionOf(idx);
+    b.limit(p + lengthOf(idx));
+    b.position(p);
+    return b.asReadOnlyBuffer();
+  }
+
   @Override
   public char chr(int idx) {
     checkType(idx, Pile.Type.CHAR);
@@ -169,6 +190,7 @@ public class PileReaderImpl implements PileReader {
     return src.get(positionOf(idx));
   }
 
+  @Override
   public int positionOf(int idx) {
     return meta.getPosition(idx);
   }
@@ -195,6 +217,20 @@ public class PileReaderImpl implements PileReader {
     return new PileReaderImpl(src, p, p + l);
   }
 
+  @Override
+  public PileReader pileInto(int idx, PileReader target) {
+    Pile.Type mt = meta.getType(idx);
+    if (mt != Pile.Type.PILE1 && mt != Pile.Type.PILE2) {
+      throw new ClassCastException();
+    }
+    if (target.getClass() != getClass()) {
+      // never hand trust to, or take it from, a reader of another kind
+      return pile(idx);
+    }
+    int p = positionOf(idx);
+    return target.reset(src, p, p + lengthOf(idx));
+  }
+
   @Override
   public int size() {
     return meta.size();
@@ -203,10 +239,8 @@ public class PileReaderImpl implements PileReader {
   @Override
   public String str(int idx) {
     checkType(idx, Pile.Type.STRING);
-    ByteBuffer b = src.slice();
-    b.position(positionOf(idx));
     try {
-      return StringTool.decodeString(b, lengthOf(idx));
+      return StringTool.decodeString(src, positionOf(idx), lengthOf(idx));
     } catch (UTFDataFormatException e) {
       throw new RuntimeException(e);
     }
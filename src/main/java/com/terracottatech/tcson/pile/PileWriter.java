@@ -50,6 +50,27 @@ public interface PileWriter {
    */
   PileWriter byteArray(byte signifier, ByteBuffer buf);
 
+  /**
+   * Copy a field verbatim from another pile. Nested piles are copied
+   * whole, as raw bytes.
+   *
+   * @param src source pile
+   * @param idx field index in the source
+   * @return the pile writer
+   */
+  PileWriter copy(PileReader src, int idx);
+
+  /**
+   * Copy a run of consecutive fields verbatim from another pile, as one bulk
+   * copy of their bytes.
+   *
+   * @param src source pile
+   * @param from first field index, inclusive
+   * @param to last field index, exclusive
+   * @return the pile writer
+   */
+  PileWriter copyRange(PileReader src, int from, int to);
+
   /**
    * Write a character
    *
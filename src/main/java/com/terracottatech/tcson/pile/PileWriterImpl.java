@@ -32,7 +32,7 @@ public class PileWriterImpl implements PileWriter {
     this.parent = parent;
     this.pileType = pileType;
     this.meta = new PileWriterMetaData(32);
-    meta.setStartPos(buffer().position());
+    meta.setStartPos(managedBuffer.streamPosition());
   }
 
   @Override
@@ -59,7 +59,7 @@ public class PileWriterImpl implements PileWriter {
     this.pileType = pileType;
     this.managedBuffer = new ManagedBuffer(initial);
     this.meta = new PileWriterMetaData(32);
-    meta.setStartPos(buffer().position());
+    meta.setStartPos(managedBuffer.streamPosition());
     this.parent = null;
   }
 
@@ -68,7 +68,7 @@ public class PileWriterImpl implements PileWriter {
     this.pileType = pileType;
     this.managedBuffer = mbuf;
     this.meta = new PileWriterMetaData(32);
-    meta.setStartPos(buffer().position());
+    meta.setStartPos(managedBuffer.streamPosition());
     this.parent = null;
   }
 
@@ -77,7 +77,7 @@ public class PileWriterImpl implements PileWriter {
     this.pileType = pileType;
     this.managedBuffer = new ManagedBuffer(managedBuffer);
     this.meta = new PileWriterMetaData(32);
-    meta.setStartPos(managedBuffer.position());
+    meta.setStartPos(this.managedBuffer.streamPosition());
     this.parent = null;
   }
 
@@ -110,6 +110,53 @@ public class PileWriterImpl implements PileWriter {
     return this;
   }
 
+  @Override
+  public PileWriter copy(PileReader src, int idx) {
+    ByteBuffer raw = src.raw(idx);
+    int len = raw.remaining();
+    putRaw(raw);
+    meta.add(src.typeOf(idx), len);
+    return this;
+  }
+
+  @Override
+  public PileWriter copyRange(PileReader src, int from, int to) {
+    if (from >= to) {
+      return this;
+    }
+    int start = src.positionOf(from);
+    int end = start;
+    for (int i = from; i < to; i++) {
+      if (src.positionOf(i) != end) {
+        // not laid out back to back, copy one at a time
+        for (int j = from; j < to; j++) {
+          copy(src, j);
+        }
+        return this;
+      }
+      end = end + src.lengthOf(i);
+    }
+    ByteBuffer raw = src.getSourceBuffer().duplicate();
+    raw.limit(end).position(start);
+    putRaw(raw);
+    for (int i = from; i < to; i++) {
+      meta.add(src.typeOf(i), src.lengthOf(i));
+    }
+    return this;
+  }
+
+  private void putRaw(ByteBuffer raw) {
+    // in chunks, so channel backed buffers need not hold it all
+    while (raw.hasRemaining()) {
+      int chunk = Math.min(raw.remaining(), 8192);
+      managedBuffer.ensureRemaining(chunk);
+      ByteBuffer part = raw.duplicate();
+      part.limit(part.position() + chunk);
+      buffer().put(part);
+      raw.position(raw.position() + chunk);
+    }
+  }
+
   @Override
   public PileWriter chr(char c) {
     managedBuffer.ensureRemaining(2);
@@ -121,10 +168,11 @@ public class PileWriterImpl implements PileWriter {
   @Override
   public PileWriter endPile() {
     writeDirectory();
+    int size = footprint();
 
     // tell parent;
     if (parent != null) {
-      parent.meta.add(pileType, buffer().position() - meta.getStartPos());
+      parent.meta.add(pileType, size);
     }
 
     // return parent;
@@ -133,8 +181,7 @@ public class PileWriterImpl implements PileWriter {
 
   private void writeDirectory() {
     // write out end
-    managedBuffer.ensureRemaining(meta.maxFootprint());
-    meta.writeDirectory(buffer());
+    meta.writeDirectory(managedBuffer);
   }
 
   @Override
@@ -153,8 +200,16 @@ public class PileWriterImpl implements PileWriter {
     return this;
   }
 
+  /**
+   * Bytes written for this pile so far; readers address piles by int, so
+   * a pile may not pass 2 GB.
+   */
   private int footprint() {
-    return buffer().position() - meta.getStartPos();
+    long ret = managedBuffer.streamPosition() - meta.getStartPos();
+    if (ret > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Pile of " + ret + " bytes exceeds " + Integer.MAX_VALUE);
+    }
+    return (int) ret;
   }
 
   @Override
@@ -207,14 +262,14 @@ public class PileWriterImpl implements PileWriter {
   public void reset() {
     managedBuffer.reset();
     meta.clear();
-    meta.setStartPos(buffer().position());
+    meta.setStartPos(managedBuffer.streamPosition());
   }
 
   @Override
   public void reset(ByteBuffer b) {
     managedBuffer.reset(b);
     this.meta = new PileWriterMetaData(32);
-    meta.setStartPos(buffer().position());
+    meta.setStartPos(managedBuffer.streamPosition());
     this.parent = null;
   }
 
@@ -23,19 +23,25 @@ import java.util.Arrays;
  * are added. Writes highly dense metadata stanza as needed.
  */
 public class PileWriterMetaData {
-  private int startPos;
-  private Pile.Type[] types;
+  private static final Pile.Type[] TYPES = Pile.Type.values();
+  /**
+   * Largest directory a footer can record; the 4 byte footer keeps two bits
+   * for its width.
+   */
+  public static final int MAX_DIRECTORY = (1 << 30) - 1;
+  private long startPos;
+  private byte[] types;
   private int[] sizes;
   private int count = 0;
 
   public PileWriterMetaData(int initial) {
-    this.types = new Pile.Type[initial];
+    this.types = new byte[initial];
     this.sizes = new int[initial];
   }
 
   public void add(Pile.Type t, int fieldByteSize) {
     ensureRoom();
-    types[count] = t;
+    types[count] = (byte) t.ordinal();
     sizes[count++] = fieldByteSize;
   }
 
@@ -51,7 +57,7 @@ public class PileWriterMetaData {
     count = 0;
   }
 
-  public int getStartPos() {
+  public long getStartPos() {
     return startPos;
   }
 
@@ -59,10 +65,25 @@ public class PileWriterMetaData {
     return size() * 10 + 5;
   }
 
-  public void setStartPos(int startPos) {
+  public void setStartPos(long startPos) {
     this.startPos = startPos;
   }
 
+  /**
+   * Writes out meta data stanza into a managed buffer, a few entries
+   * at a time, so the directory of a very large pile never needs to fit
+   * in the buffer all at once.
+   */
+  public void writeDirectory(ManagedBuffer dest) {
+    long pos = dest.streamPosition();
+    for (int i = 0; i < size(); i++) {
+      dest.ensureRemaining(6);
+      writeEntry(dest.getBuffer(), i);
+    }
+    dest.ensureRemaining(4);
+    writeFooter(dest.getBuffer(), (int) Math.min(dest.streamPosition() - pos, Integer.MAX_VALUE));
+  }
+
   /**
    * Writes out meta data stanza.
    * Compressed type and size for each value, plus 1,2, or 4 byte footprint.
@@ -71,23 +92,33 @@ public class PileWriterMetaData {
     // write out end
     int pos = dest.position();
     for (int i = 0; i < size(); i++) {
-      Pile.Type typ = getType(i);
-      int sz = getSize(i);
-      if (!typ.isKnownSize()) {
-        // bit of cleverness. if small enough, stuff it in the upper 3 bits
-        // of the ordinal byte.
-        if ((sz + 1) <= Pile.Type.maxInlineValue()) {
-          byte tmp = (byte) ((sz + 1) << Pile.Type.bitWidth() | typ.ordinal());
-          dest.put(tmp);
-        } else {
-          dest.put((byte) typ.ordinal());
-          VarInts.varEncode(dest, sz);
-        }
+      writeEntry(dest, i);
+    }
+    writeFooter(dest, dest.position() - pos);
+  }
+
+  private void writeEntry(ByteBuffer dest, int i) {
+    Pile.Type typ = getType(i);
+    int sz = getSize(i);
+    if (!typ.isKnownSize()) {
+      // bit of cleverness. if small enough, stuff it in the upper 3 bits
+      // of the ordinal byte.
+      if ((sz + 1) <= Pile.Type.maxInlineValue()) {
+        byte tmp = (byte) ((sz + 1) << Pile.Type.bitWidth() | typ.ordinal());
+        dest.put(tmp);
       } else {
         dest.put((byte) typ.ordinal());
+        VarInts.varEncode(dest, sz);
       }
+    } else {
+      dest.put((byte) typ.ordinal());
+    }
+  }
+
+  static void writeFooter(ByteBuffer dest, int sz) {
+    if (sz > MAX_DIRECTORY) {
+      throw new IllegalStateException("Pile directory of " + sz + " bytes exceeds " + MAX_DIRECTORY);
     }
-    int sz = dest.position() - pos;
     if (sz < (1 << 6)) {
       dest.put((byte) (sz << 2));
     } else if (sz < (1 << 14)) {
@@ -98,7 +129,7 @@ public class PileWriterMetaData {
   }
 
   public Pile.Type getType(int index) {
-    return types[index];
+    return TYPES[types[index]];
   }
 
   public int getSize(int index) {
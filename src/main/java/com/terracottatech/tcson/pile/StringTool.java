@@ -67,6 +67,9 @@ public final class StringTool {
    */
   private static final int MAX_SLICE_LENGTH = 512;
 
+  private static final int FNV_OFFSET = 0x811C9DC5;
+  private static final int FNV_PRIME = 0x01000193;
+
   /**
    * Private niladic constructor to prevent instantiation.
    */
@@ -86,8 +89,30 @@ public final class StringTool {
    */
   public static String decodeString(final ByteBuffer buffer,
                                     final long encodedLength) throws UTFDataFormatException, BufferUnderflowException {
+    if (buffer.remaining() < encodedLength) {
+      throw new BufferUnderflowException();
+    }
+    int pos = buffer.position();
+    String ret = decodeString(buffer, pos, (int) encodedLength);
+    buffer.position(pos + (int) encodedLength);
+    return ret;
+  }
+
+  /**
+   * Decodes a modified UTF-8 encoding of a {@code String} at an absolute position, leaving the
+   * position of the {@code ByteBuffer} untouched.
+   *
+   * @param buffer the {@code ByteBuffer} containing the encoded bytes
+   * @param pos absolute position of the encoding
+   * @param encodedLength the byte length of the encoding
+   * @return a decoded {@code String}
+   * @throws UTFDataFormatException if an error is encountered while decoding the UTF value
+   */
+  public static String decodeString(final ByteBuffer buffer,
+                                    int pos,
+                                    final int encodedLength) throws UTFDataFormatException {
 
-    final int initialArrayLength = (int) encodedLength;
+    final int initialArrayLength = encodedLength;
     char[] chars = new char[initialArrayLength];
     int charIndex = -1;
     long remaining = encodedLength;
@@ -101,7 +126,7 @@ public final class StringTool {
         chars = enlargeChars(encodedLength, chars);
       }
 
-      int b = Byte.toUnsignedInt(buffer.get());
+      int b = Byte.toUnsignedInt(buffer.get(pos++));
       int f = b >>> 4;
       if (f < 0x08) {
         // Single-byte character
@@ -109,11 +134,12 @@ public final class StringTool {
         remaining -= 1;
       } else if (f == 0x0E) {
         // Three-byte character
-        chars[charIndex] = (char) ((b & 0x0F) << 12 | (buffer.get() & 0x3F) << 6 | buffer.get() & 0x3F);
+        chars[charIndex] = (char) ((b & 0x0F) << 12 | (buffer.get(pos) & 0x3F) << 6 | buffer.get(pos + 1) & 0x3F);
+        pos += 2;
         remaining -= 3;
       } else if (f >= 0x0C) {
         // Two-byte character
-        chars[charIndex] = (char) ((b & 0x1F) << 6 | buffer.get() & 0x3F);
+        chars[charIndex] = (char) ((b & 0x1F) << 6 | buffer.get(pos++) & 0x3F);
         remaining -= 2;
       } else {
         throw new UTFDataFormatException(String.format("Illegal element: %02x", b));
@@ -178,6 +204,146 @@ public final class StringTool {
     }
   }
 
+  /**
+   * Compares the modified UTF-8 encoding held in {@code buffer} with a {@code String}, encoding the
+   * {@code String} a character at a time. Uses absolute reads and allocates nothing.
+   *
+   * @param buffer the {@code ByteBuffer} containing the encoded bytes
+   * @param pos absolute position of the encoding
+   * @param len byte length of the encoding
+   * @param str the {@code String} to compare with
+   * @return true if {@code str} encodes to exactly those bytes
+   */
+  public static boolean encodedEquals(final ByteBuffer buffer, final int pos, final int len, final String str) {
+    final int strLength = str.length();
+    if (strLength > len || strLength * 3 < len) {
+      return false;
+    }
+    final int end = pos + len;
+    int p = pos;
+    for (int i = 0; i < strLength; i++) {
+      final char c = str.charAt(i);
+      if (c <= '\u007F' && c != '\u0000') {
+        if (p >= end || buffer.get(p) != (byte) c) {
+          return false;
+        }
+        p++;
+      } else if (c <= '\u07FF') {
+        if (p + 2 > end || buffer.get(p) != (byte) (0xC0 | c >>> 6) || buffer.get(p + 1) != (byte) (0x80 | (c & 0x3F))) {
+          return false;
+        }
+        p = p + 2;
+      } else {
+        if (p + 3 > end || buffer.get(p) != (byte) (0xE0 | c >>> 12) ||
+            buffer.get(p + 1) != (byte) (0x80 | ((c >>> 6) & 0x3F)) || buffer.get(p + 2) != (byte) (0x80 | (c & 0x3F))) {
+          return false;
+        }
+        p = p + 3;
+      }
+    }
+    return p == end;
+  }
+
+  /**
+   * 32 bit FNV-1a hash of the modified UTF-8 encoding of a {@code String}, computed without
+   * encoding it.
+   *
+   * @param str the {@code String}
+   * @return the hash
+   */
+  public static int encodedHash(final String str) {
+    int h = FNV_OFFSET;
+    final int strLength = str.length();
+    for (int i = 0; i < strLength; i++) {
+      final char c = str.charAt(i);
+      if (c <= '\u007F' && c != '\u0000') {
+        h = (h ^ c) * FNV_PRIME;
+      } else if (c <= '\u07FF') {
+        h = (h ^ (0xC0 | c >>> 6)) * FNV_PRIME;
+        h = (h ^ (0x80 | (c & 0x3F))) * FNV_PRIME;
+      } else {
+        h = (h ^ (0xE0 | c >>> 12)) * FNV_PRIME;
+        h = (h ^ (0x80 | ((c >>> 6) & 0x3F))) * FNV_PRIME;
+        h = (h ^ (0x80 | (c & 0x3F))) * FNV_PRIME;
+      }
+    }
+    return h;
+  }
+
+  /**
+   * {@link String#hashCode()} of the string held, in modified UTF-8, in {@code buffer}, computed
+   * without decoding it.
+   *
+   * @param buffer the {@code ByteBuffer} containing the encoded bytes
+   * @param pos absolute position of the encoding
+   * @param len byte length of the encoding
+   * @return the hash code
+   */
+  public static int decodedHashCode(final ByteBuffer buffer, final int pos, final int len) {
+    int h = 0;
+    final int end = pos + len;
+    for (int p = pos; p < end; ) {
+      final int cl = charAt(buffer, p);
+      h = 31 * h + (char) cl;
+      p += cl >>> 16;
+    }
+    return h;
+  }
+
+  /**
+   * Compares two strings held in modified UTF-8, with the ordering of {@link String#compareTo(String)},
+   * without decoding either.
+   *
+   * @param a first buffer
+   * @param aPos absolute position of the first encoding
+   * @param aLen byte length of the first encoding
+   * @param b second buffer
+   * @param bPos absolute position of the second encoding
+   * @param bLen byte length of the second encoding
+   * @return negative, zero or positive
+   */
+  public static int compareEncoded(final ByteBuffer a, final int aPos, final int aLen,
+                                   final ByteBuffer b, final int bPos, final int bLen) {
+    final int aEnd = aPos + aLen;
+    final int bEnd = bPos + bLen;
+    int pa = aPos;
+    int pb = bPos;
+    while (pa < aEnd && pb < bEnd) {
+      final int ca = charAt(a, pa);
+      final int cb = charAt(b, pb);
+      if ((char) ca != (char) cb) {
+        return (char) ca - (char) cb;
+      }
+      pa += ca >>> 16;
+      pb += cb >>> 16;
+    }
+    // same prefix; the shorter string, in chars, sorts first
+    int aRest = 0;
+    for (; pa < aEnd; aRest++) {
+      pa += charAt(a, pa) >>> 16;
+    }
+    int bRest = 0;
+    for (; pb < bEnd; bRest++) {
+      pb += charAt(b, pb) >>> 16;
+    }
+    return aRest - bRest;
+  }
+
+  /**
+   * Decodes one character: the char in the low 16 bits, its encoded length above.
+   */
+  private static int charAt(final ByteBuffer buffer, final int p) {
+    final int b = Byte.toUnsignedInt(buffer.get(p));
+    final int f = b >>> 4;
+    if (f < 0x08) {
+      return b | 1 << 16;
+    } else if (f == 0x0E) {
+      return ((b & 0x0F) << 12 | (buffer.get(p + 1) & 0x3F) << 6 | buffer.get(p + 2) & 0x3F) | 3 << 16;
+    } else {
+      return ((b & 0x1F) << 6 | buffer.get(p + 1) & 0x3F) | 2 << 16;
+    }
+  }
+
   /**
    * Return the worst case size needed to store a string.
    *
@@ -0,0 +1,164 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.pile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pile reader for data whose structure has already been validated, e.g. by
+ * {@link com.terracottatech.tcson.reading.SonValidator}. Accessors skip the
+ * type checks, and when the buffer is heap backed read the backing array
+ * directly rather than through the bounds checked ByteBuffer accessors.
+ * Nested piles opened from it are trusted too.
+ * <p>
+ * Asking a trusted reader for the wrong type does not fail cleanly; it
+ * returns garbage.
+ */
+public class TrustedPileReader extends PileReaderImpl {
+  private byte[] array;
+  private int offset;
+
+  public TrustedPileReader(ByteBuffer src, int start, int limit) {
+    super(src, start, limit);
+    attachArray(src);
+  }
+
+  private void attachArray(ByteBuffer src) {
+    if (src.hasArray()) {
+      this.array = src.array();
+      this.offset = src.arrayOffset();
+    } else {
+      this.array = null;
+      this.offset = 0;
+    }
+  }
+
+  @Override
+  public TrustedPileReader reset(ByteBuffer src, int start, int limit) {
+    super.reset(src, start, limit);
+    attachArray(src);
+    return this;
+  }
+
+  @Override
+  protected void checkType(int idx, Pile.Type type) {
+    // validated up front
+  }
+
+  @Override
+  public TrustedPileReader pile(int idx) {
+    int p = positionOf(idx);
+    return new TrustedPileReader(src, p, p + lengthOf(idx));
+  }
+
+  @Override
+  public boolean bool(int idx) {
+    if (array == null) {
+      return super.bool(idx);
+    }
+    return array[offset + positionOf(idx)] != 0;
+  }
+
+  @Override
+  public byte int8(int idx) {
+    if (array == null) {
+      return super.int8(idx);
+    }
+    return array[offset + positionOf(idx)];
+  }
+
+  @Override
+  public short int16(int idx) {
+    if (array == null) {
+      return super.int16(idx);
+    }
+    return (short) getShort(offset + positionOf(idx));
+  }
+
+  @Override
+  public char chr(int idx) {
+    if (array == null) {
+      return super.chr(idx);
+    }
+    return (char) getShort(offset + positionOf(idx));
+  }
+
+  @Override
+  public int int32(int idx) {
+    if (array == null) {
+      return super.int32(idx);
+    }
+    int p = offset + positionOf(idx);
+    switch (meta.getType(idx)) {
+      case INT8:
+        return array[p];
+      case INT16:
+        return (short) getShort(p);
+      case INT32:
+        return getInt(p);
+      default:
+        return super.int32(idx);
+    }
+  }
+
+  @Override
+  public long int64(int idx) {
+    if (array == null) {
+      return super.int64(idx);
+    }
+    int p = offset + positionOf(idx);
+    switch (meta.getType(idx)) {
+      case INT8:
+        return array[p];
+      case INT16:
+        return (short) getShort(p);
+      case INT32:
+        return getInt(p);
+      case INT64:
+        return getLong(p);
+      default:
+        return super.int64(idx);
+    }
+  }
+
+  @Override
+  public float float32(int idx) {
+    if (array == null) {
+      return super.float32(idx);
+    }
+    return Float.intBitsToFloat(getInt(offset + positionOf(idx)));
+  }
+
+  @Override
+  public double float64(int idx) {
+    if (array == null) {
+      return super.float64(idx);
+    }
+    return Double.longBitsToDouble(getLong(offset + positionOf(idx)));
+  }
+
+  private int getShort(int p) {
+    return (array[p] & 0xff) << 8 | (array[p + 1] & 0xff);
+  }
+
+  private int getInt(int p) {
+    return array[p] << 24 | (array[p + 1] & 0xff) << 16 | (array[p + 2] & 0xff) << 8 | (array[p + 3] & 0xff);
+  }
+
+  private long getLong(int p) {
+    return ((long) getInt(p)) << 32 | (getInt(p + 4) & 0xffffffffL);
+  }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.query;
+
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.Son;
+import com.terracottatech.tcson.parser.FieldReference;
+import com.terracottatech.tcson.pile.ManagedBuffer;
+import com.terracottatech.tcson.pile.PileReader;
+import com.terracottatech.tcson.reading.GlobalNameMapReader;
+import com.terracottatech.tcson.reading.ReadableSonListImpl;
+import com.terracottatech.tcson.reading.ReadableSonMapImpl;
+import com.terracottatech.tcson.writing.SonStreamingListWriter;
+import com.terracottatech.tcson.writing.SonStreamingMapWriter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the subset of a document selected by a set of paths, straight from
+ * the source buffer. Selected values are copied raw, with only their key
+ * ids remapped into the smaller name table of the result, so no mutable
+ * copy of the document is ever built.
+ * <p>
+ * Maps along a path are kept, in source order, even if nothing below them
+ * matched; values of the wrong shape for the path are left out. Key steps
+ * applied to a list apply to each map in it. The paths are compiled once, so
+ * a projector can be reused across documents.
+ */
+public class SonProjector {
+  private final Node root = new Node();
+
+  public SonProjector(List<SonDotTraversal> paths) {
+    for (SonDotTraversal p : paths) {
+      add(root, p.getTraversalSpec(), 0);
+    }
+  }
+
+  /**
+   * Project a document into a buffer.
+   *
+   * @param doc source document
+   * @param paths selected paths
+   * @param dest destination
+   */
+  public static void project(ReadableSonMap doc, List<SonDotTraversal> paths, ManagedBuffer dest) {
+    new SonProjector(paths).project(doc, dest);
+  }
+
+  public ByteBuffer project(ReadableSonMap doc) {
+    ManagedBuffer dest = new ManagedBuffer(1024);
+    project(doc, dest);
+    ByteBuffer ret = dest.getBuffer();
+    ret.flip();
+    return ret;
+  }
+
+  public void project(ReadableSonMap doc, ManagedBuffer dest) {
+    if (!(doc instanceof ReadableSonMapImpl)) {
+      throw new IllegalArgumentException("Cannot project a " + doc.getClass().getName());
+    }
+    ReadableSonMapImpl map = (ReadableSonMapImpl) doc;
+    SonStreamingMapWriter<Void> w = Son.streamingMapWriter(map.getNameSource(), dest);
+    // an empty path selects the whole document
+    map(w, map, root.whole ? Node.ALL : root);
+    w.endMap();
+  }
+
+  private static void add(Node node, List<FieldReference> spec, int from) {
+    if (from == spec.size()) {
+      node.whole = true;
+      return;
+    }
+    FieldReference fr = spec.get(from);
+    switch (fr.getType()) {
+      case MAP:
+        add(node.keys.computeIfAbsent(fr.mapRef().getFieldName(), k -> new Node()), spec, from + 1);
+        break;
+      case WILD:
+        if (node.wild == null) {
+          node.wild = new Node();
+        }
+        add(node.wild, spec, from + 1);
+        break;
+      case ARRAY:
+        for (FieldReference.ArraySlice slice : fr.arrSpec().getArrayMembers()) {
+          Node n = new Node();
+          node.slices.add(slice);
+          node.sliceNodes.add(n);
+          add(n, spec, from + 1);
+        }
+        break;
+      default:
+        throw new IllegalArgumentException(fr.toString());
+    }
+  }
+
+  private static void map(SonStreamingMapWriter<?> w, ReadableSonMapImpl map, Node node) {
+    GlobalNameMapReader names = map.getNameMap();
+    PileReader pile = map.getPile();
+    PileReader keys = map.getKeysPile();
+    for (int i = 0; i < map.size(); i++) {
+      String name = names.nameOf(keys.int32(i));
+      Node child = Node.union(node.keys.get(name), node.wild);
+      if (child == null) {
+        continue;
+      }
+      if (child.whole) {
+        w.appendFrom(name, pile, i, names);
+        continue;
+      }
+      Object v = map.get(name).getValue();
+      if (v instanceof ReadableSonMapImpl) {
+        SonStreamingMapWriter<?> inner = w.map(name);
+        map(inner, (ReadableSonMapImpl) v, child);
+        inner.endMap();
+      } else if (v instanceof ReadableSonListImpl) {
+        SonStreamingListWriter<?> inner = w.list(name);
+        list(inner, (ReadableSonListImpl) v, child, names);
+        inner.endList();
+      }
+    }
+  }
+
+  private static void list(SonStreamingListWriter<?> w, ReadableSonListImpl list, Node node,
+                           GlobalNameMapReader names) {
+    int n = list.size();
+    ArrayList<HashSet<Integer>> positions = new ArrayList<>();
+    for (FieldReference.ArraySlice s : node.slices) {
+      positions.add(new HashSet<>(s.extractPositions(n)));
+    }
+    // key steps reach through lists into the maps held in them
+    Node forMaps = node.keys.isEmpty() ? null : node;
+    for (int i = 0; i < n; i++) {
+      Node child = node.wild;
+      for (int j = 0; j < positions.size(); j++) {
+        if (positions.get(j).contains(i)) {
+          child = Node.union(child, node.sliceNodes.get(j));
+        }
+      }
+      Object v = list.get(i).getValue();
+      if (v instanceof ReadableSonMapImpl) {
+        child = Node.union(child, forMaps);
+      }
+      if (child == null) {
+        continue;
+      }
+      if (child.whole) {
+        w.appendFrom(list.getPile(), i, names);
+      } else if (v instanceof ReadableSonMapImpl) {
+        SonStreamingMapWriter<?> inner = w.map();
+        map(inner, (ReadableSonMapImpl) v, child);
+        inner.endMap();
+      } else if (v instanceof ReadableSonListImpl) {
+        SonStreamingListWriter<?> inner = w.list();
+        list(inner, (ReadableSonListImpl) v, child, names);
+        inner.endList();
+      }
+    }
+  }
+
+  /**
+   * Trie of the selected paths. A whole node selects everything below it.
+   */
+  private static final class Node {
+    static final Node ALL = new Node();
+
+    static {
+      ALL.wild = new Node();
+      ALL.wild.whole = true;
+    }
+
+    private boolean whole = false;
+    private final Map<String, Node> keys = new LinkedHashMap<>();
+    private Node wild = null;
+    private final List<FieldReference.ArraySlice> slices = new ArrayList<>();
+    private final List<Node> sliceNodes = new ArrayList<>();
+
+    static Node union(Node a, Node b) {
+      if (a == null || a == b) {
+        return b;
+      }
+      if (b == null) {
+        return a;
+      }
+      Node ret = new Node();
+      if (a.whole || b.whole) {
+        ret.whole = true;
+        return ret;
+      }
+      ret.keys.putAll(a.keys);
+      b.keys.forEach((k, v) -> ret.keys.merge(k, v, Node::union));
+      ret.wild = union(a.wild, b.wild);
+      ret.slices.addAll(a.slices);
+      ret.slices.addAll(b.slices);
+      ret.sliceNodes.addAll(a.sliceNodes);
+      ret.sliceNodes.addAll(b.sliceNodes);
+      return ret;
+    }
+  }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.query;
+
+import com.terracottatech.tcson.SonBytes;
+import com.terracottatech.tcson.SonMap;
+import com.terracottatech.tcson.SonType;
+import com.terracottatech.tcson.SonValue;
+import com.terracottatech.tcson.UTCMillisDate;
+import com.terracottatech.tcson.mutable.MutableSonValue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Order preserving binary encoding of scalar values, and tuples of them, for
+ * use as keys in sorted stores. The unsigned lexicographic order of encoded
+ * keys matches {@link SonValue#compareTo(SonValue)}, component by component,
+ * so sorting, range scans and merges can work on the raw bytes.
+ * <p>
+ * Each component is a type tag, in {@link SonType} order, followed by a self
+ * delimiting body. A tuple which is a prefix of another sorts first, and a
+ * component missing from the source document sorts before any value.
+ * Maps and lists have no ordering and cannot be encoded.
+ */
+public final class SonSortKey {
+  private static final int ABSENT = 0;
+  // strings are written as 1 to 3 bytes per char, see string()
+  private static final int TWO_BYTE_BASE = 0x7f;
+  private static final int THREE_BYTE_BASE = TWO_BYTE_BASE + 0x4000;
+
+  private SonSortKey() {
+  }
+
+  public static byte[] encode(SonValue value) {
+    return encode(Arrays.asList(value));
+  }
+
+  /**
+   * Encode a tuple of values; null entries are encoded as absent.
+   *
+   * @param values the tuple
+   * @return key bytes
+   */
+  public static byte[] encode(List<? extends SonValue> values) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (SonValue v : values) {
+      append(out, v);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Encode the tuple extracted from a document by a set of paths. Each path
+   * contributes its first terminal match, or absent if it has none.
+   *
+   * @param doc the document
+   * @param paths one path per tuple component
+   * @return key bytes
+   */
+  public static byte[] encode(SonMap<?> doc, SonDotTraversal... paths) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (SonDotTraversal p : paths) {
+      List<SonValue> found = p.matches(doc, true);
+      append(out, found.isEmpty() ? null : found.get(0));
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decode a key back into its components, with null for absent ones.
+   *
+   * @param key key bytes
+   * @return the components
+   * @throws IllegalArgumentException if the bytes are not a valid key
+   */
+  public static List<SonValue> decode(byte[] key) {
+    ByteBuffer in = ByteBuffer.wrap(key);
+    ArrayList<SonValue> ret = new ArrayList<>();
+    try {
+      while (in.hasRemaining()) {
+        ret.add(next(in));
+      }
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Malformed key at pos: " + in.position(), e);
+    }
+    return ret;
+  }
+
+  /**
+   * Unsigned lexicographic comparison, the order keys sort in.
+   *
+   * @param a first key
+   * @param b second key
+   * @return comparison result
+   */
+  public static int compare(byte[] a, byte[] b) {
+    int n = Math.min(a.length, b.length);
+    for (int i = 0; i < n; i++) {
+      int ret = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+      if (ret != 0) {
+        return ret;
+      }
+    }
+    return Integer.compare(a.length, b.length);
+  }
+
+  private static void append(ByteArrayOutputStream out, SonValue v) {
+    if (v == null) {
+      out.write(ABSENT);
+      return;
+    }
+    SonType type = v.getType();
+    out.write(type.ordinal() + 1);
+    switch (type) {
+      case BYTE:
+        out.write(v.byteValue() ^ 0x80);
+        break;
+      case SHORT:
+        fixed(out, v.shortValue() ^ Short.MIN_VALUE, 2);
+        break;
+      case INT:
+        fixed(out, v.intValue() ^ Integer.MIN_VALUE, 4);
+        break;
+      case CHAR:
+        fixed(out, v.charValue(), 2);
+        break;
+      case LONG:
+        fixed(out, v.longValue() ^ Long.MIN_VALUE, 8);
+        break;
+      case FLOAT:
+        fixed(out, sortable(Float.floatToIntBits(v.floatValue())), 4);
+        break;
+      case DOUBLE:
+        fixed(out, sortable(Double.doubleToLongBits(v.doubleValue())), 8);
+        break;
+      case STRING:
+        string(out, v.stringValue());
+        break;
+      case BOOL:
+        out.write(v.boolValue() ? 1 : 0);
+        break;
+      case BYTES:
+        bytes(out, v.bytesValue());
+        break;
+      case DATE:
+        fixed(out, v.dateValue().utcMillis() ^ Long.MIN_VALUE, 8);
+        break;
+      case NULL:
+        break;
+      case UUID:
+        fixed(out, v.uuidValue().getMostSignificantBits() ^ Long.MIN_VALUE, 8);
+        fixed(out, v.uuidValue().getLeastSignificantBits() ^ Long.MIN_VALUE, 8);
+        break;
+      default:
+        throw new IllegalArgumentException("No sort order for " + type);
+    }
+  }
+
+  private static SonValue next(ByteBuffer in) {
+    int tag = in.get() & 0xff;
+    if (tag == ABSENT) {
+      return null;
+    }
+    SonType type = SonType.values()[tag - 1];
+    switch (type) {
+      case BYTE:
+        return new MutableSonValue(type, (byte) (in.get() ^ 0x80));
+      case SHORT:
+        return new MutableSonValue(type, (short) (in.getShort() ^ Short.MIN_VALUE));
+      case INT:
+        return new MutableSonValue(type, in.getInt() ^ Integer.MIN_VALUE);
+      case CHAR:
+        return new MutableSonValue(type, in.getChar());
+      case LONG:
+        return new MutableSonValue(type, in.getLong() ^ Long.MIN_VALUE);
+      case FLOAT:
+        return new MutableSonValue(type, Float.intBitsToFloat(unsortable(in.getInt())));
+      case DOUBLE:
+        return new MutableSonValue(type, Double.longBitsToDouble(unsortable(in.getLong())));
+      case STRING:
+        return new MutableSonValue(type, readString(in));
+      case BOOL:
+        return new MutableSonValue(type, in.get() != 0);
+      case BYTES:
+        byte sig = (byte) (in.get() ^ 0x80);
+        return new MutableSonValue(type, new SonBytes(sig, readBytes(in)));
+      case DATE:
+        return new MutableSonValue(type, new UTCMillisDate(in.getLong() ^ Long.MIN_VALUE));
+      case NULL:
+        return MutableSonValue.NULL_VALUE;
+      case UUID:
+        long msb = in.getLong() ^ Long.MIN_VALUE;
+        return new MutableSonValue(type, new UUID(msb, in.getLong() ^ Long.MIN_VALUE));
+      default:
+        throw new IllegalArgumentException("No sort order for " + type);
+    }
+  }
+
+  private static void fixed(ByteArrayOutputStream out, long v, int width) {
+    for (int shift = (width - 1) * 8; shift >= 0; shift = shift - 8) {
+      out.write((int) (v >>> shift));
+    }
+  }
+
+  // flips float bits so that unsigned order is Float.compare() order,
+  // negative values reversed, -0.0 before 0.0 and NaN last
+  private static int sortable(int bits) {
+    return bits < 0 ? ~bits : bits ^ Integer.MIN_VALUE;
+  }
+
+  private static int unsortable(int bits) {
+    return bits < 0 ? bits ^ Integer.MIN_VALUE : ~bits;
+  }
+
+  private static long sortable(long bits) {
+    return bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+  }
+
+  private static long unsortable(long bits) {
+    return bits < 0 ? bits ^ Long.MIN_VALUE : ~bits;
+  }
+
+  /*
+   * Chars in String.compareTo() order, ended by a 0: 0x0000-0x007e as one
+   * byte 0x01-0x7f, the next 16k chars as two bytes starting 0x80-0xbf, and
+   * the rest as 0xc0 followed by the char itself.
+   */
+  private static void string(ByteArrayOutputStream out, String s) {
+    for (int i = 0; i < s.length(); i++) {
+      int c = s.charAt(i);
+      if (c < TWO_BYTE_BASE) {
+        out.write(c + 1);
+      } else if (c < THREE_BYTE_BASE) {
+        int d = c - TWO_BYTE_BASE;
+        out.write(0x80 | (d >>> 8));
+        out.write(d);
+      } else {
+        out.write(0xc0);
+        out.write(c >>> 8);
+        out.write(c);
+      }
+    }
+    out.write(0);
+  }
+
+  private static String readString(ByteBuffer in) {
+    StringBuilder sb = new StringBuilder();
+    for (int b = in.get() & 0xff; b != 0; b = in.get() & 0xff) {
+      if (b < 0x80) {
+        sb.append((char) (b - 1));
+      } else if (b < 0xc0) {
+        sb.append((char) ((((b & 0x3f) << 8) | (in.get() & 0xff)) + TWO_BYTE_BASE));
+      } else if (b == 0xc0) {
+        sb.append(in.getChar());
+      } else {
+        throw new IllegalArgumentException();
+      }
+    }
+    return sb.toString();
+  }
+
+  /*
+   * Bytes compare signed, so each is written with its sign bit flipped;
+   * zeros are escaped as 0x00 0xff and the run ends with 0x00 0x00.
+   */
+  private static void bytes(ByteArrayOutputStream out, SonBytes sb) {
+    out.write(sb.getSignifier() ^ 0x80);
+    ByteBuffer b = sb.getBuffer();
+    for (int i = b.position(); i < b.limit(); i++) {
+      int v = (b.get(i) ^ 0x80) & 0xff;
+      out.write(v);
+      if (v == 0) {
+        out.write(0xff);
+      }
+    }
+    out.write(0);
+    out.write(0);
+  }
+
+  private static byte[] readBytes(ByteBuffer in) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (; ; ) {
+      int v = in.get() & 0xff;
+      if (v == 0) {
+        int esc = in.get() & 0xff;
+        if (esc == 0) {
+          return out.toByteArray();
+        } else if (esc != 0xff) {
+          throw new IllegalArgumentException();
+        }
+      }
+      out.write(v ^ 0x80);
+    }
+  }
+}
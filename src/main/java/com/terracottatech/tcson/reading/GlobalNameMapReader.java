@@ -16,22 +16,75 @@
 package com.terracottatech.tcson.reading;
 
 import com.terracottatech.tcson.NameSource;
+import com.terracottatech.tcson.SonKey;
 import com.terracottatech.tcson.pile.Pile;
 import com.terracottatech.tcson.pile.PileReader;
+import com.terracottatech.tcson.pile.StringTool;
 
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.Map;
 
 /**
  * Map of string key name :: key id. Lazily populated on first request.
+ * If a {@link GlobalNameTableCache} is supplied, the decoded table is
+ * shared with every other document carrying the same name pile bytes.
+ * <p>
+ * Name lookups do not need the decoded table. If the writer emitted a
+ * name hash index, a lookup is a probe of that; otherwise the first few
+ * lookups compare against the encoded names in place, and only after that
+ * is the full table decoded.
  */
 public class GlobalNameMapReader {
+  private static final int SCAN_LOOKUPS = 8;
+
+  /*
+   * Copy of a name pile that is not shared through a cache, so a key can
+   * recognise the same names in a later document without holding on to this
+   * one.
+   */
+  private static final class Names {
+    private final NameSource nameSource;
+    private final byte[] bytes;
+    private final int hash;
+
+    Names(NameSource nameSource, byte[] bytes, int hash) {
+      this.nameSource = nameSource;
+      this.bytes = bytes;
+      this.hash = hash;
+    }
+  }
+
+  private static final class KeyId {
+    private final Object names;
+    private final int id;
+
+    KeyId(Object names, int id) {
+      this.names = names;
+      this.id = id;
+    }
+  }
+
   private final PileReader namePile;
   private final NameSource nameSource;
-  private HashMap<String, Integer> namesToId;
+  private final GlobalNameTableCache cache;
+  private final int count;
+  private final int indexIdx;
+  private volatile GlobalNameTable table;
+  // racy; only steers when to give up scanning
+  private int scans = 0;
+  // racy but idempotent; the copy this reader's names are known to equal
+  private Names names;
 
   public GlobalNameMapReader(NameSource nameSource, PileReader namePile) {
+    this(nameSource, namePile, null);
+  }
+
+  public GlobalNameMapReader(NameSource nameSource, PileReader namePile, GlobalNameTableCache cache) {
     this.nameSource = nameSource;
     this.namePile = namePile;
+    this.cache = cache;
+    this.count = GlobalNameTable.nameCount(namePile);
+    this.indexIdx = count < namePile.size() ? count : -1;
   }
 
   public NameSource getNameSource() {
@@ -39,35 +92,182 @@ public class GlobalNameMapReader {
   }
 
   public int lookupId(String name) {
-    Integer ret = getNamesToId().get(name);
-    return ret == null ? -1 : ret;
-  }
-
-  public HashMap<String, Integer> getNamesToId() {
-    populateNamesToId();
-    return namesToId;
-  }
-
-  private void populateNamesToId() {
-    if (namesToId == null) {
-      HashMap<String, Integer> hm = new HashMap<>();
-      int nc = namePile.size();
-      for (int i = 0; i < nc; i++) {
-        String s;
-        if (namePile.typeOf(i).equals(Pile.Type.STRING)) {
-          s = namePile.str(i);
-        } else {
-          long p = namePile.int64(i);
-          s = nameSource.nameOf(p);
+    GlobalNameTable t = table;
+    if (t != null) {
+      return t.lookupId(name);
+    }
+    if (indexIdx >= 0) {
+      return probeIndex(name);
+    }
+    if (cache == null && scans < SCAN_LOOKUPS) {
+      scans++;
+      for (int i = 0; i < count; i++) {
+        if (matches(i, name)) {
+          return i;
         }
-        hm.put(s, i);
       }
-      this.namesToId = hm;
+      return -1;
+    }
+    return getTable().lookupId(name);
+  }
+
+  /**
+   * Id of a key. The key remembers it along with the table, or for a table
+   * not shared through a cache a copy of its encoded names, so documents
+   * with the same names find it without a lookup.
+   *
+   * @param key key
+   * @return id, or -1 if the name is not in the table
+   */
+  public int lookupId(SonKey key) {
+    SonKeyAccess keys = SonKeyAccess.get();
+    Object r = keys.resolved(key);
+    if (r != null && sameNames(((KeyId) r).names)) {
+      return ((KeyId) r).id;
+    }
+    int id = lookupId(key.getName());
+    keys.resolved(key, new KeyId(cache == null ? names() : getTable(), id));
+    return id;
+  }
+
+  private boolean sameNames(Object other) {
+    if (cache != null) {
+      return other == getTable();
+    }
+    Names n = names;
+    if (other == n) {
+      return true;
+    }
+    if (!(other instanceof Names)) {
+      return false;
+    }
+    Names o = (Names) other;
+    int len = namePile.footprint();
+    if (o.nameSource != nameSource || o.bytes.length != len || o.hash != (n == null ? hash() : n.hash) ||
+        !PileEquivalence.rangeEquals(namePile.getSourceBuffer(), namePile.getStartPosition(), ByteBuffer.wrap(o.bytes),
+                                     0, len)) {
+      return false;
+    }
+    names = o;
+    return true;
+  }
+
+  private Names names() {
+    Names n = names;
+    if (n == null) {
+      byte[] bytes = new byte[namePile.footprint()];
+      ByteBuffer src = namePile.getSourceBuffer().duplicate();
+      src.position(namePile.getStartPosition());
+      src.get(bytes);
+      n = new Names(nameSource, bytes, hash());
+      names = n;
+    }
+    return n;
+  }
+
+  private int hash() {
+    ByteBuffer buf = namePile.getSourceBuffer();
+    int start = namePile.getStartPosition();
+    int h = 1;
+    for (int i = 0, len = namePile.footprint(); i < len; i++) {
+      h = 31 * h + buf.get(start + i);
+    }
+    return h;
+  }
+
+  private boolean matches(int id, String name) {
+    if (namePile.typeOf(id) == Pile.Type.STRING) {
+      return StringTool.encodedEquals(namePile.getSourceBuffer(), namePile.positionOf(id), namePile.lengthOf(id), name);
+    }
+    return name.equals(nameSource.nameOf(namePile.int64(id)));
+  }
+
+  private int probeIndex(String name) {
+    // open addressed slots of (id + 1), 0 meaning empty
+    ByteBuffer buf = namePile.getSourceBuffer();
+    int base = namePile.positionOf(indexIdx) + 1;
+    int slots = (namePile.lengthOf(indexIdx) - 1) >>> 1;
+    int mask = slots - 1;
+    int slot = StringTool.encodedHash(name) & mask;
+    for (int i = 0; i < slots; i++) {
+      int v = buf.getShort(base + (slot << 1)) & 0xffff;
+      if (v == 0) {
+        return -1;
+      }
+      if (matches(v - 1, name)) {
+        return v - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Whether the decoded table is shared through a
+   * {@link GlobalNameTableCache}, so decoding it is paid once for many
+   * documents.
+   *
+   * @return true if a cache is in use
+   */
+  public boolean isShared() {
+    return cache != null;
+  }
+
+  /**
+   * Identity of the name table behind this reader, for caching resolved
+   * ids: the shared decoded table when a cache is in use, else this reader.
+   *
+   * @return identity token
+   */
+  public Object identity() {
+    return cache == null ? this : getTable();
+  }
+
+  /**
+   * Whether ids from this reader and another mean the same names: true if
+   * they share a table, or their name piles are byte for byte equal under
+   * the same NameSource.
+   *
+   * @param other other reader
+   * @return true if ids are interchangeable
+   */
+  public boolean sharesIds(GlobalNameMapReader other) {
+    if (this == other || identity() == other.identity()) {
+      return true;
+    }
+    if (nameSource != other.nameSource) {
+      return false;
+    }
+    int len = namePile.footprint();
+    return len == other.namePile.footprint() &&
+           PileEquivalence.rangeEquals(namePile.getSourceBuffer(), namePile.getStartPosition(),
+                                       other.namePile.getSourceBuffer(), other.namePile.getStartPosition(), len);
+  }
+
+  public Map<String, Integer> getNamesToId() {
+    return getTable().getNamesToId();
+  }
+
+  public String nameOf(int id) {
+    return getTable().nameOf(id);
+  }
+
+  public GlobalNameTable getTable() {
+    GlobalNameTable t = table;
+    if (t == null) {
+      // racy but idempotent
+      if (cache == null) {
+        t = GlobalNameTable.decode(nameSource, namePile);
+      } else {
+        t = cache.tableFor(nameSource, namePile);
+      }
+      table = t;
     }
+    return t;
   }
 
   public int size() {
-    return namePile.size();
+    return count;
   }
 
 }
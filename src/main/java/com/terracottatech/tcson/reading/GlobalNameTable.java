@@ -0,0 +1,98 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.reading;
+
+import com.terracottatech.tcson.NameSource;
+import com.terracottatech.tcson.pile.Pile;
+import com.terracottatech.tcson.pile.PileReader;
+import com.terracottatech.tcson.writing.SonWriter;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fully decoded, immutable global name table. Holds both directions,
+ * name :: id and id :: name, so it can be shared freely between
+ * documents (and threads) once built. The name :: id direction is only
+ * built on the first lookup; iteration never needs it.
+ */
+public final class GlobalNameTable {
+  private final String[] idToName;
+  private volatile Map<String, Integer> namesToId;
+
+  private GlobalNameTable(String[] idToName) {
+    this.idToName = idToName;
+  }
+
+  /**
+   * Number of names in a name pile, leaving out the optional hash index.
+   *
+   * @param namePile name pile
+   * @return name count
+   */
+  public static int nameCount(PileReader namePile) {
+    int sz = namePile.size();
+    if (sz > 0 && namePile.typeOf(sz - 1) == Pile.Type.BYTE_ARRAY &&
+        namePile.byteArraySignifier(sz - 1) == SonWriter.NAME_INDEX_SIGNIFIER) {
+      return sz - 1;
+    }
+    return sz;
+  }
+
+  public static GlobalNameTable decode(NameSource nameSource, PileReader namePile) {
+    int nc = nameCount(namePile);
+    String[] names = new String[nc];
+    for (int i = 0; i < nc; i++) {
+      String s;
+      if (namePile.typeOf(i).equals(Pile.Type.STRING)) {
+        s = namePile.str(i);
+      } else {
+        long p = namePile.int64(i);
+        s = nameSource.nameOf(p);
+      }
+      names[i] = s;
+    }
+    return new GlobalNameTable(names);
+  }
+
+  public int lookupId(String name) {
+    Integer ret = getNamesToId().get(name);
+    return ret == null ? -1 : ret;
+  }
+
+  public String nameOf(int id) {
+    return idToName[id];
+  }
+
+  public Map<String, Integer> getNamesToId() {
+    Map<String, Integer> ret = namesToId;
+    if (ret == null) {
+      HashMap<String, Integer> hm = new HashMap<>(idToName.length * 2);
+      for (int i = 0; i < idToName.length; i++) {
+        hm.put(idToName[i], i);
+      }
+      // racy but idempotent
+      ret = Collections.unmodifiableMap(hm);
+      namesToId = ret;
+    }
+    return ret;
+  }
+
+  public int size() {
+    return idToName.length;
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.reading;
+
+import com.terracottatech.tcson.NameSource;
+import com.terracottatech.tcson.pile.PileReader;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of decoded global name tables, keyed by the encoded bytes of the
+ * name pile (plus the NameSource used to decode it). Documents generated
+ * by the same code tend to carry byte identical name tables, so they can
+ * all share one decoded {@link GlobalNameTable}.
+ * <p>
+ * Lookups hash the name pile bytes in place; a hit is confirmed with a full
+ * byte comparison, so a hash collision can never hand back the wrong table.
+ * The cache is bounded: once full, a new table replaces one not used since
+ * the clock hand last passed it. NameSources are held weakly, and tables of
+ * a collected source are the first to go.
+ */
+public class GlobalNameTableCache {
+  private static final GlobalNameTableCache SHARED = new GlobalNameTableCache(1024);
+
+  private static final class WeakSource extends WeakReference<NameSource> {
+    WeakSource(NameSource nameSource) {
+      super(nameSource);
+    }
+  }
+
+  private static final class Key {
+    // the NameSource while probing, a WeakSource once stored
+    private final Object nameSource;
+    private final ByteBuffer bytes;
+    private final int hash;
+
+    Key(NameSource nameSource, ByteBuffer bytes) {
+      this.nameSource = nameSource;
+      this.bytes = bytes;
+      this.hash = 31 * System.identityHashCode(nameSource) + bytes.hashCode();
+    }
+
+    Key(Key probe) {
+      NameSource ns = probe.nameSource();
+      this.nameSource = ns == null ? null : new WeakSource(ns);
+      ByteBuffer copy = ByteBuffer.allocate(probe.bytes.remaining());
+      copy.put(probe.bytes.duplicate());
+      copy.flip();
+      this.bytes = copy;
+      this.hash = probe.hash;
+    }
+
+    NameSource nameSource() {
+      return nameSource instanceof WeakSource ? ((WeakSource) nameSource).get() : (NameSource) nameSource;
+    }
+
+    boolean alive() {
+      return !(nameSource instanceof WeakSource) || ((WeakSource) nameSource).get() != null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key key = (Key) o;
+      return hash == key.hash && alive() && key.alive() && nameSource() == key.nameSource() &&
+             bytes.equals(key.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  private static final class Entry {
+    private final Key key;
+    private final GlobalNameTable table;
+    private volatile boolean used = false;
+
+    Entry(Key key, GlobalNameTable table) {
+      this.key = key;
+      this.table = table;
+    }
+  }
+
+  private final ConcurrentHashMap<Key, Entry> tables = new ConcurrentHashMap<>();
+  // guarded by this
+  private final ArrayList<Entry> ring = new ArrayList<>();
+  private int hand = 0;
+  private final int maxEntries;
+
+  public GlobalNameTableCache(int maxEntries) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("" + maxEntries);
+    }
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * Process wide cache instance.
+   *
+   * @return shared cache
+   */
+  public static GlobalNameTableCache shared() {
+    return SHARED;
+  }
+
+  public GlobalNameTable tableFor(NameSource nameSource, PileReader namePile) {
+    ByteBuffer view = namePile.getSourceBuffer().duplicate();
+    view.limit(namePile.getLimit()).position(namePile.getStartPosition());
+    Key probe = new Key(nameSource, view);
+    Entry e = tables.get(probe);
+    if (e != null) {
+      if (!e.used) {
+        e.used = true;
+      }
+      return e.table;
+    }
+    return insert(new Key(probe), GlobalNameTable.decode(nameSource, namePile));
+  }
+
+  private synchronized GlobalNameTable insert(Key key, GlobalNameTable table) {
+    Entry prior = tables.get(key);
+    if (prior != null) {
+      return prior.table;
+    }
+    Entry e = new Entry(key, table);
+    if (ring.size() < maxEntries) {
+      ring.add(e);
+    } else {
+      for (Entry victim = ring.get(hand); victim.used && victim.key.alive(); victim = ring.get(hand)) {
+        victim.used = false;
+        hand = (hand + 1) % maxEntries;
+      }
+      tables.remove(ring.get(hand).key);
+      ring.set(hand, e);
+      hand = (hand + 1) % maxEntries;
+    }
+    tables.put(key, e);
+    return table;
+  }
+
+  public synchronized void clear() {
+    tables.clear();
+    ring.clear();
+    hand = 0;
+  }
+
+  public int size() {
+    return tables.size();
+  }
+}
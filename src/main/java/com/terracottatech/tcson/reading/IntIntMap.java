@@ -15,6 +15,8 @@
  */
 package com.terracottatech.tcson.reading;
 
+import java.util.Arrays;
+
 /**
  * Inspired by https://github.com/mikvor/hashmapTest IntIntMap4a, with some tweaks.
  * <p>
@@ -66,6 +68,17 @@ public class IntIntMap {
     this.threshold = (int) (capacity * fillFactor);
   }
 
+  /**
+   * Remove everything, keeping the current capacity.
+   */
+  public void clear() {
+    if (size > 0) {
+      Arrays.fill(data, FREE_KEY);
+    }
+    mapHasFreeKey = false;
+    size = 0;
+  }
+
   public static long nextPowerOfTwo(int i) {
     long tmp = Integer.highestOneBit(i);
     if (tmp != i) {
@@ -0,0 +1,262 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.reading;
+
+import com.terracottatech.tcson.SonType;
+import com.terracottatech.tcson.pile.PileReader;
+import com.terracottatech.tcson.pile.StringTool;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Equality, hashing and ordering of pile entries, straight off the bytes.
+ * Every result matches what {@link com.terracottatech.tcson.SonValue}
+ * would give for the materialized value, so readable documents can mix
+ * freely with mutable ones in hashed collections.
+ */
+final class PileEquivalence {
+  private PileEquivalence() {
+  }
+
+  static SonType sonType(PileReader p, int idx) {
+    switch (p.typeOf(idx)) {
+      case PILE1:
+        return SonType.MAP;
+      case PILE2:
+        return SonType.LIST;
+      case STRING:
+        return SonType.STRING;
+      case NULL:
+        return SonType.NULL;
+      case CHAR:
+        return SonType.CHAR;
+      case INT8:
+        return SonType.BYTE;
+      case INT16:
+        return SonType.SHORT;
+      case INT32:
+      case ZIGZAG32:
+        return SonType.INT;
+      case INT64:
+      case ZIGZAG64:
+        return SonType.LONG;
+      case FLOAT32:
+        return SonType.FLOAT;
+      case FLOAT64:
+        return SonType.DOUBLE;
+      case BOOLEAN:
+        return SonType.BOOL;
+      case BYTE_ARRAY:
+        return ReadableSonValue.typeFromSignifier(p.byteArraySignifier(idx));
+      default:
+        throw new IllegalStateException();
+    }
+  }
+
+  static boolean valueEquals(GlobalNameMapReader an, PileReader a, int i,
+                             GlobalNameMapReader bn, PileReader b, int j, boolean sameNames) {
+    SonType t = sonType(a, i);
+    if (t != sonType(b, j)) {
+      return false;
+    }
+    switch (t) {
+      case MAP:
+        return new ReadableSonMapImpl(an, a.pile(i)).bytesEqual(new ReadableSonMapImpl(bn, b.pile(j)), sameNames);
+      case LIST:
+        return new ReadableSonListImpl(an, a.pile(i)).bytesEqual(new ReadableSonListImpl(bn, b.pile(j)), sameNames);
+      case NULL:
+        return true;
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+        return a.int64(i) == b.int64(j);
+      case FLOAT:
+        return Float.floatToIntBits(a.float32(i)) == Float.floatToIntBits(b.float32(j));
+      case DOUBLE:
+        return Double.doubleToLongBits(a.float64(i)) == Double.doubleToLongBits(b.float64(j));
+      case BOOL:
+        return a.bool(i) == b.bool(j);
+      case CHAR:
+        return a.chr(i) == b.chr(j);
+      case STRING:
+        if (rawEquals(a, i, b, j)) {
+          return true;
+        }
+        return StringTool.compareEncoded(a.getSourceBuffer(), a.positionOf(i), a.lengthOf(i),
+                                         b.getSourceBuffer(), b.positionOf(j), b.lengthOf(j)) == 0;
+      default:
+        // dates, uuids and byte arrays: signifier and payload
+        return rawEquals(a, i, b, j);
+    }
+  }
+
+  static boolean rawEquals(PileReader a, int i, PileReader b, int j) {
+    int len = a.lengthOf(i);
+    return len == b.lengthOf(j) && rangeEquals(a.getSourceBuffer(), a.positionOf(i), b.getSourceBuffer(),
+                                               b.positionOf(j), len);
+  }
+
+  static boolean rangeEquals(ByteBuffer a, int pa, ByteBuffer b, int pb, int len) {
+    int i = 0;
+    for (; i + 8 <= len; i += 8) {
+      if (a.getLong(pa + i) != b.getLong(pb + i)) {
+        return false;
+      }
+    }
+    for (; i < len; i++) {
+      if (a.get(pa + i) != b.get(pb + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Same as {@code SonValue.hashCode()} of the materialized value.
+   */
+  static int valueHash(GlobalNameMapReader names, PileReader p, int idx) {
+    SonType t = sonType(p, idx);
+    int vh;
+    switch (t) {
+      case MAP:
+        return new ReadableSonMapImpl(names, p.pile(idx)).deepHashCode();
+      case LIST:
+        return new ReadableSonListImpl(names, p.pile(idx)).deepHashCode();
+      case NULL:
+        vh = 0;
+        break;
+      case BYTE:
+      case SHORT:
+      case INT:
+        vh = p.int32(idx);
+        break;
+      case LONG:
+        vh = Long.hashCode(p.int64(idx));
+        break;
+      case FLOAT:
+        vh = Float.hashCode(p.float32(idx));
+        break;
+      case DOUBLE:
+        vh = Double.hashCode(p.float64(idx));
+        break;
+      case BOOL:
+        vh = Boolean.hashCode(p.bool(idx));
+        break;
+      case CHAR:
+        vh = p.chr(idx);
+        break;
+      case STRING:
+        vh = StringTool.decodedHashCode(p.getSourceBuffer(), p.positionOf(idx), p.lengthOf(idx));
+        break;
+      case DATE:
+        // Objects.hash(millis)
+        vh = 31 + Long.hashCode(p.getSourceBuffer().getLong(p.positionOf(idx) + 1));
+        break;
+      case UUID:
+        ByteBuffer src = p.getSourceBuffer();
+        long hilo = src.getLong(p.positionOf(idx) + 1) ^ src.getLong(p.positionOf(idx) + 9);
+        vh = ((int) (hilo >> 32)) ^ (int) hilo;
+        break;
+      default:
+        vh = bytesHash(p, idx);
+        break;
+    }
+    // Objects.hash(type, value)
+    return 31 * (31 + t.hashCode()) + vh;
+  }
+
+  /**
+   * Same as {@code SonBytes.hashCode()}: {@code Objects.hash(buffer, signifier)}.
+   */
+  private static int bytesHash(PileReader p, int idx) {
+    ByteBuffer src = p.getSourceBuffer();
+    int start = p.positionOf(idx);
+    int h = 1;
+    for (int i = start + p.lengthOf(idx) - 1; i > start; i--) {
+      h = 31 * h + src.get(i);
+    }
+    return 31 * (31 + h) + src.get(start);
+  }
+
+  /**
+   * Same ordering as {@code SonValue.compareTo()}, for scalar values.
+   */
+  static int compareValues(PileReader a, int i, PileReader b, int j) {
+    SonType t = sonType(a, i);
+    int ret = t.compareTo(sonType(b, j));
+    if (ret != 0) {
+      return ret;
+    }
+    switch (t) {
+      case MAP:
+      case LIST:
+        throw new ClassCastException(t + " values are not comparable");
+      case NULL:
+        return 0;
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+        return Long.compare(a.int64(i), b.int64(j));
+      case FLOAT:
+        return Float.compare(a.float32(i), b.float32(j));
+      case DOUBLE:
+        return Double.compare(a.float64(i), b.float64(j));
+      case BOOL:
+        return Boolean.compare(a.bool(i), b.bool(j));
+      case CHAR:
+        return Character.compare(a.chr(i), b.chr(j));
+      case STRING:
+        return StringTool.compareEncoded(a.getSourceBuffer(), a.positionOf(i), a.lengthOf(i),
+                                         b.getSourceBuffer(), b.positionOf(j), b.lengthOf(j));
+      case DATE:
+        return Long.compare(a.getSourceBuffer().getLong(a.positionOf(i) + 1),
+                            b.getSourceBuffer().getLong(b.positionOf(j) + 1));
+      case UUID:
+        ret = Long.compare(a.getSourceBuffer().getLong(a.positionOf(i) + 1),
+                           b.getSourceBuffer().getLong(b.positionOf(j) + 1));
+        return ret != 0 ? ret : Long.compare(a.getSourceBuffer().getLong(a.positionOf(i) + 9),
+                                             b.getSourceBuffer().getLong(b.positionOf(j) + 9));
+      default:
+        return compareBytes(a, i, b, j);
+    }
+  }
+
+  /**
+   * Same as {@code SonBytes.compareTo()}: signifier, then the payload as a ByteBuffer.
+   */
+  private static int compareBytes(PileReader a, int i, PileReader b, int j) {
+    ByteBuffer as = a.getSourceBuffer();
+    ByteBuffer bs = b.getSourceBuffer();
+    int pa = a.positionOf(i);
+    int pb = b.positionOf(j);
+    int ret = Byte.compare(as.get(pa), bs.get(pb));
+    if (ret != 0) {
+      return ret;
+    }
+    int la = a.lengthOf(i) - 1;
+    int lb = b.lengthOf(j) - 1;
+    int n = Math.min(la, lb);
+    for (int k = 1; k <= n; k++) {
+      ret = Byte.compare(as.get(pa + k), bs.get(pb + k));
+      if (ret != 0) {
+        return ret;
+      }
+    }
+    return la - lb;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.reading;
+
+import com.terracottatech.tcson.SonType;
+import com.terracottatech.tcson.pile.PileReader;
+
+/**
+ * Unboxed reads of single pile entries, with the same widening the
+ * {@link com.terracottatech.tcson.SonValue} accessors allow.
+ */
+final class PileValues {
+  private PileValues() {
+  }
+
+  static long asLong(PileReader p, int idx) {
+    switch (p.typeOf(idx)) {
+      case INT8:
+      case INT16:
+      case INT32:
+      case INT64:
+      case ZIGZAG32:
+      case ZIGZAG64:
+        return p.int64(idx);
+      default:
+        throw mismatch(p, idx, SonType.LONG);
+    }
+  }
+
+  static int asInt(PileReader p, int idx) {
+    switch (p.typeOf(idx)) {
+      case INT8:
+      case INT16:
+      case INT32:
+      case ZIGZAG32:
+        return p.int32(idx);
+      default:
+        throw mismatch(p, idx, SonType.INT);
+    }
+  }
+
+  static double asDouble(PileReader p, int idx) {
+    switch (p.typeOf(idx)) {
+      case FLOAT32:
+        return p.float32(idx);
+      case FLOAT64:
+        return p.float64(idx);
+      default:
+        throw mismatch(p, idx, SonType.DOUBLE);
+    }
+  }
+
+  static boolean asBoolean(PileReader p, int idx) {
+    switch (p.typeOf(idx)) {
+      case BOOLEAN:
+        return p.bool(idx);
+      default:
+        throw mismatch(p, idx, SonType.BOOL);
+    }
+  }
+
+  static String asString(PileReader p, int idx) {
+    switch (p.typeOf(idx)) {
+      case STRING:
+        return p.str(idx);
+      default:
+        throw mismatch(p, idx, SonType.STRING);
+    }
+  }
+
+  private static ClassCastException mismatch(PileReader p, int idx, SonType wanted) {
+    return new ClassCastException("Expected " + wanted + ", found " + p.typeOf(idx));
+  }
+}
@@ -18,6 +18,7 @@ package com.terracottatech.tcson.reading;
 import com.terracottatech.tcson.MutableSonList;
 import com.terracottatech.tcson.NameSource;
 import com.terracottatech.tcson.ReadableSonList;
+import com.terracottatech.tcson.ReadableSonMap;
 import com.terracottatech.tcson.Son;
 import com.terracottatech.tcson.SonList;
 import com.terracottatech.tcson.SonType;
@@ -30,19 +31,48 @@ import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 public class ReadableSonListImpl implements ReadableSonList {
-  private final PileReader root;
-  private final int count;
-  private final GlobalNameMapReader nameMap;
+  private PileReader root;
+  private int count;
+  private GlobalNameMapReader nameMap;
+  // reader this list opened itself, so it can be reset rather than reallocated
+  private PileReader ownRoot;
+
+  /**
+   * Unattached list, to be used as the target of
+   * {@link #listValueInto(int, ReadableSonList)} and friends.
+   */
+  public ReadableSonListImpl() {
+  }
 
   public ReadableSonListImpl(NameSource nameSource, ByteBuffer buf) {
     this(nameSource, buf, buf.position(), buf.limit());
   }
 
   public ReadableSonListImpl(NameSource nameSource, ByteBuffer buf, int start, int limit) {
-    this.root = Pile.reader(buf, start, limit);
+    this(nameSource, null, buf, start, limit);
+  }
+
+  public ReadableSonListImpl(NameSource nameSource, GlobalNameTableCache cache, ByteBuffer buf) {
+    this(nameSource, cache, buf, buf.position(), buf.limit());
+  }
+
+  public ReadableSonListImpl(NameSource nameSource, GlobalNameTableCache cache, ByteBuffer buf, int start, int limit) {
+    this(nameSource, cache, Pile.reader(buf, start, limit));
+  }
+
+  /**
+   * Root list over an already opened pile reader, e.g. a trusted one from
+   * {@link SonValidator}.
+   *
+   * @param nameSource name source
+   * @param cache name table cache, may be null
+   * @param root root pile reader
+   */
+  public ReadableSonListImpl(NameSource nameSource, GlobalNameTableCache cache, PileReader root) {
+    this.root = root;
     int cnt = root.size();
     this.count = cnt - 1;
-    this.nameMap = new GlobalNameMapReader(nameSource, root.pile(cnt - 1));
+    this.nameMap = new GlobalNameMapReader(nameSource, root.pile(cnt - 1), cache);
   }
 
   public ReadableSonListImpl(GlobalNameMapReader nameMap, ByteBuffer buf, int start, int limit) {
@@ -90,11 +120,128 @@ public class ReadableSonListImpl implements ReadableSonList {
     return false;
   }
 
+  @Override
+  public boolean deepEquals(SonList<?> other) {
+    if (other instanceof ReadableSonListImpl) {
+      ReadableSonListImpl o = (ReadableSonListImpl) other;
+      return bytesEqual(o, nameMap.sharesIds(o.nameMap));
+    }
+    return ReadableSonList.super.deepEquals(other);
+  }
+
+  boolean bytesEqual(ReadableSonListImpl o, boolean sameIds) {
+    if (count != o.count) {
+      return false;
+    }
+    for (int i = 0; i < count; i++) {
+      if (!PileEquivalence.valueEquals(nameMap, root, i, o.nameMap, o.root, i, sameIds)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int deepHashCode() {
+    int hs = 0;
+    for (int i = 0; i < count; i++) {
+      hs = hs + PileEquivalence.valueHash(nameMap, root, i);
+    }
+    return hs;
+  }
+
   @Override
   public ReadableSonValue get(int idx) {
     return indexedGetAt(idx);
   }
 
+  @Override
+  public long getLong(int idx) {
+    return PileValues.asLong(root, checkIndex(idx));
+  }
+
+  @Override
+  public long getLongOrDefault(int idx, long def) {
+    return root.isNull(checkIndex(idx)) ? def : PileValues.asLong(root, idx);
+  }
+
+  @Override
+  public int getInt(int idx) {
+    return PileValues.asInt(root, checkIndex(idx));
+  }
+
+  @Override
+  public int getIntOrDefault(int idx, int def) {
+    return root.isNull(checkIndex(idx)) ? def : PileValues.asInt(root, idx);
+  }
+
+  @Override
+  public double getDouble(int idx) {
+    return PileValues.asDouble(root, checkIndex(idx));
+  }
+
+  @Override
+  public double getDoubleOrDefault(int idx, double def) {
+    return root.isNull(checkIndex(idx)) ? def : PileValues.asDouble(root, idx);
+  }
+
+  @Override
+  public boolean getBoolean(int idx) {
+    return PileValues.asBoolean(root, checkIndex(idx));
+  }
+
+  @Override
+  public boolean getBooleanOrDefault(int idx, boolean def) {
+    return root.isNull(checkIndex(idx)) ? def : PileValues.asBoolean(root, idx);
+  }
+
+  @Override
+  public String getString(int idx) {
+    return PileValues.asString(root, checkIndex(idx));
+  }
+
+  @Override
+  public String getStringOrDefault(int idx, String def) {
+    return root.isNull(checkIndex(idx)) ? def : PileValues.asString(root, idx);
+  }
+
+  @Override
+  public ReadableSonMap mapValueInto(int idx, ReadableSonMap target) {
+    if (root.typeOf(checkIndex(idx)) != Pile.Type.PILE1) {
+      throw new ClassCastException("Expected MAP, found " + root.typeOf(idx));
+    }
+    return ReadableSonMapImpl.reusable(target).attach(nameMap, root, idx);
+  }
+
+  @Override
+  public ReadableSonList listValueInto(int idx, ReadableSonList target) {
+    if (root.typeOf(checkIndex(idx)) != Pile.Type.PILE2) {
+      throw new ClassCastException("Expected LIST, found " + root.typeOf(idx));
+    }
+    return reusable(target).attach(nameMap, root, idx);
+  }
+
+  ReadableSonListImpl attach(GlobalNameMapReader nameMap, PileReader parent, int idx) {
+    this.root = ownRoot = ownRoot == null ? parent.pile(idx) : parent.pileInto(idx, ownRoot);
+    this.nameMap = nameMap;
+    this.count = root.size();
+    return this;
+  }
+
+  static ReadableSonListImpl reusable(ReadableSonList target) {
+    if (target instanceof ReadableSonListImpl) {
+      return (ReadableSonListImpl) target;
+    }
+    throw new IllegalArgumentException("Cannot reuse " + target.getClass().getName());
+  }
+
+  private int checkIndex(int idx) {
+    if (idx >= count) {
+      throw new ArrayIndexOutOfBoundsException(idx + " vs " + count);
+    }
+    return idx;
+  }
+
   @Override
   public NameSource getNameSource() {
     return nameMap.getNameSource();
@@ -200,6 +347,14 @@ public class ReadableSonListImpl implements ReadableSonList {
     return count;
   }
 
+  public PileReader getPile() {
+    return root;
+  }
+
+  public GlobalNameMapReader getNameMap() {
+    return nameMap;
+  }
+
   @Override
   public void toBuffer(ByteBuffer dest) {
     dest.put(toBuffer());
@@ -207,7 +362,7 @@ public class ReadableSonListImpl implements ReadableSonList {
 
   @Override
   public ByteBuffer toBuffer() {
-    ByteBuffer ret = root.getSourceBuffer().slice();
+    ByteBuffer ret = root.getSourceBuffer().duplicate();
     ret.position(root.getStartPosition()).limit(root.getLimit());
     return ret;
   }
@@ -23,25 +23,49 @@ import com.terracottatech.tcson.ReadableSonMap;
 import com.terracottatech.tcson.Son;
 import com.terracottatech.tcson.SonBytes;
 import com.terracottatech.tcson.SonMap;
+import com.terracottatech.tcson.SonKey;
 import com.terracottatech.tcson.SonMapValue;
 import com.terracottatech.tcson.SonType;
 import com.terracottatech.tcson.mutable.MutableSonMapImpl;
 import com.terracottatech.tcson.pile.Pile;
 import com.terracottatech.tcson.pile.PileReader;
+import com.terracottatech.tcson.pile.TrustedPileReader;
+import com.terracottatech.tcson.writing.SonStreamingMapWriter;
 
 import java.nio.ByteBuffer;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
+/**
+ * Readable map over a buffer. Reads use absolute positions only and the
+ * lazily built lookup state is published safely, so once a map has been
+ * handed to other threads it can be read by all of them at once. Resetting
+ * or reattaching a map is not thread safe.
+ */
 public class ReadableSonMapImpl implements ReadableSonMap {
+  private static final AtomicReferenceFieldUpdater<ReadableSonMapImpl, IntIntMap> SPARE_INDEX =
+    AtomicReferenceFieldUpdater.newUpdater(ReadableSonMapImpl.class, IntIntMap.class, "spareIndex");
   private GlobalNameMapReader globalNameMap;
+  private GlobalNameTableCache nameTableCache;
   private PileReader root;
   private PileReader keysPile;
+  // readers this map opened itself, so they can be reset rather than reallocated
+  private PileReader ownRoot;
+  private PileReader ownKeys;
   private int count;
-  private IntIntMap idToIndex = null;
-  private HashMap<String, Integer> nameToIndexCache = new HashMap<>();
+  private volatile IntIntMap idToIndex = null;
+  // index left over from before a reset, claimed by whichever thread builds the next one
+  private volatile IntIntMap spareIndex = null;
+
+  /**
+   * Unattached map, to be pointed at data with one of the reset methods, or
+   * used as the target of {@link #mapValueInto(String, ReadableSonMap)}.
+   */
+  public ReadableSonMapImpl() {
+  }
 
   public ReadableSonMapImpl(ByteBuffer buf) {
     this(null, buf);
@@ -52,11 +76,42 @@ public class ReadableSonMapImpl implements ReadableSonMap {
   }
 
   public ReadableSonMapImpl(NameSource nameSource, ByteBuffer buf, int start, int limit) {
+    this(nameSource, null, buf, start, limit);
+  }
+
+  public ReadableSonMapImpl(NameSource nameSource, GlobalNameTableCache cache, ByteBuffer buf) {
+    this(nameSource, cache, buf, buf.position(), buf.limit());
+  }
+
+  public ReadableSonMapImpl(NameSource nameSource, GlobalNameTableCache cache, ByteBuffer buf, int start, int limit) {
+    this.nameTableCache = cache;
     init(nameSource, buf, start, limit);
   }
 
+  /**
+   * Root map over an already opened pile reader, e.g. a trusted one from
+   * {@link SonValidator}.
+   *
+   * @param nameSource name source
+   * @param cache name table cache, may be null
+   * @param root root pile reader
+   */
+  public ReadableSonMapImpl(NameSource nameSource, GlobalNameTableCache cache, PileReader root) {
+    this.nameTableCache = cache;
+    init(nameSource, root);
+  }
+
   private void init(NameSource nameSource, ByteBuffer buf, int start, int limit) {
-    this.root = Pile.reader(buf, start, limit);
+    // a trusted reader is never pointed at data that was not validated
+    if (ownRoot == null || ownRoot instanceof TrustedPileReader) {
+      init(nameSource, Pile.reader(buf, start, limit));
+    } else {
+      init(nameSource, ownRoot.reset(buf, start, limit));
+    }
+  }
+
+  private void init(NameSource nameSource, PileReader reader) {
+    this.root = ownRoot = reader;
     // ok, this is split in 3 parts
     // values in order
     // for each value, the name id for that one
@@ -64,9 +119,35 @@ public class ReadableSonMapImpl implements ReadableSonMap {
     // last entry is count of dictionary pairs
     int cnt = root.size();
     PileReader globalNamePile = root.pile(cnt - 1);
-    this.globalNameMap = new GlobalNameMapReader(nameSource, globalNamePile);
-    this.keysPile = root.pile(cnt - 2);
+    this.globalNameMap = new GlobalNameMapReader(nameSource, globalNamePile, nameTableCache);
+    this.keysPile = ownKeys = ownKeys == null ? root.pile(cnt - 2) : root.pileInto(cnt - 2, ownKeys);
     this.count = keysPile.size();
+    clearIndex();
+  }
+
+  ReadableSonMapImpl attach(GlobalNameMapReader nameMap, PileReader parent, int idx) {
+    this.root = ownRoot = ownRoot == null ? parent.pile(idx) : parent.pileInto(idx, ownRoot);
+    this.globalNameMap = nameMap;
+    int cnt = root.size();
+    this.keysPile = ownKeys = ownKeys == null ? root.pile(cnt - 1) : root.pileInto(cnt - 1, ownKeys);
+    this.count = keysPile.size();
+    clearIndex();
+    return this;
+  }
+
+  private void clearIndex() {
+    IntIntMap m = idToIndex;
+    if (m != null) {
+      idToIndex = null;
+      spareIndex = m;
+    }
+  }
+
+  static ReadableSonMapImpl reusable(ReadableSonMap target) {
+    if (target instanceof ReadableSonMapImpl) {
+      return (ReadableSonMapImpl) target;
+    }
+    throw new IllegalArgumentException("Cannot reuse " + target.getClass().getName());
   }
 
   public ReadableSonMapImpl(GlobalNameMapReader nameMap, PileReader upd) {
@@ -118,6 +199,73 @@ public class ReadableSonMapImpl implements ReadableSonMap {
     return false;
   }
 
+  @Override
+  public boolean deepEquals(SonMap<?> other) {
+    if (other instanceof ReadableSonMapImpl) {
+      ReadableSonMapImpl o = (ReadableSonMapImpl) other;
+      return bytesEqual(o, globalNameMap.sharesIds(o.globalNameMap));
+    }
+    return ReadableSonMap.super.deepEquals(other);
+  }
+
+  /**
+   * Equality on the pile bytes. With interchangeable ids, identical bytes
+   * settle it at once; otherwise each key is matched by id or by name and
+   * its value compared in place.
+   */
+  boolean bytesEqual(ReadableSonMapImpl o, boolean sameIds) {
+    if (count != o.count) {
+      return false;
+    }
+    if (sameIds && root.footprint() == o.root.footprint() &&
+        PileEquivalence.rangeEquals(root.getSourceBuffer(), root.getStartPosition(), o.root.getSourceBuffer(),
+                                    o.root.getStartPosition(), root.footprint())) {
+      return true;
+    }
+    for (int i = 0; i < count; i++) {
+      int id = keysPile.int32(i);
+      int j = sameIds ? o.idToIndex().get(id) : o.indexForName(globalNameMap.nameOf(id));
+      if (j < 0 ||
+          !PileEquivalence.valueEquals(globalNameMap, root, i, o.globalNameMap, o.root, j, sameIds)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int deepHashCode() {
+    int hs = 0;
+    for (int i = 0; i < count; i++) {
+      // SonMapValue.hashCode(): Objects.hash(value hash, key)
+      int vh = PileEquivalence.valueHash(globalNameMap, root, i);
+      hs = hs + 31 * (31 + vh) + globalNameMap.nameOf(keysPile.int32(i)).hashCode();
+    }
+    return hs;
+  }
+
+  @Override
+  public int compareValue(String name, ReadableSonMap other) {
+    return compareAt(required(indexForName(name), name), name, other);
+  }
+
+  @Override
+  public int compareValue(SonKey key, ReadableSonMap other) {
+    return compareAt(required(indexForKey(key), key.getName()), key.getName(), other);
+  }
+
+  private int compareAt(int idx, String name, ReadableSonMap other) {
+    if (other instanceof ReadableSonMapImpl) {
+      ReadableSonMapImpl o = (ReadableSonMapImpl) other;
+      return PileEquivalence.compareValues(root, idx, o.root, required(o.indexForName(name), name));
+    }
+    ReadableSonValue.MapValue them = other.get(name);
+    if (them == null) {
+      throw new NoSuchElementException(name);
+    }
+    return indexedGetAt(name, globalNameMap, root, idx).compareTo(them);
+  }
+
   @Override
   public int footprint() {
     return root.footprint();
@@ -132,6 +280,125 @@ public class ReadableSonMapImpl implements ReadableSonMap {
     return null;
   }
 
+  @Override
+  public ReadableSonValue.MapValue get(SonKey key) {
+    int idx = indexForKey(key);
+    if (idx >= 0) {
+      return indexedGetAt(key.getName(), globalNameMap, root, idx);
+    }
+    return null;
+  }
+
+  @Override
+  public long getLong(String name) {
+    return PileValues.asLong(root, required(indexForName(name), name));
+  }
+
+  @Override
+  public long getLong(SonKey key) {
+    return PileValues.asLong(root, required(indexForKey(key), key.getName()));
+  }
+
+  @Override
+  public long getLongOrDefault(String name, long def) {
+    int idx = indexForName(name);
+    return idx < 0 || root.isNull(idx) ? def : PileValues.asLong(root, idx);
+  }
+
+  @Override
+  public long getLongOrDefault(SonKey key, long def) {
+    int idx = indexForKey(key);
+    return idx < 0 || root.isNull(idx) ? def : PileValues.asLong(root, idx);
+  }
+
+  @Override
+  public int getInt(String name) {
+    return PileValues.asInt(root, required(indexForName(name), name));
+  }
+
+  @Override
+  public int getInt(SonKey key) {
+    return PileValues.asInt(root, required(indexForKey(key), key.getName()));
+  }
+
+  @Override
+  public int getIntOrDefault(String name, int def) {
+    int idx = indexForName(name);
+    return idx < 0 || root.isNull(idx) ? def : PileValues.asInt(root, idx);
+  }
+
+  @Override
+  public int getIntOrDefault(SonKey key, int def) {
+    int idx = indexForKey(key);
+    return idx < 0 || root.isNull(idx) ? def : PileValues.asInt(root, idx);
+  }
+
+  @Override
+  public double getDouble(String name) {
+    return PileValues.asDouble(root, required(indexForName(name), name));
+  }
+
+  @Override
+  public double getDouble(SonKey key) {
+    return PileValues.asDouble(root, required(indexForKey(key), key.getName()));
+  }
+
+  @Override
+  public double getDoubleOrDefault(String name, double def) {
+    int idx = indexForName(name);
+    return idx < 0 || root.isNull(idx) ? def : PileValues.asDouble(root, idx);
+  }
+
+  @Override
+  public double getDoubleOrDefault(SonKey key, double def) {
+    int idx = indexForKey(key);
+    return idx < 0 || root.isNull(idx) ? def : PileValues.asDouble(root, idx);
+  }
+
+  @Override
+  public boolean getBoolean(String name) {
+    return PileValues.asBoolean(root, required(indexForName(name), name));
+  }
+
+  @Override
+  public boolean getBoolean(SonKey key) {
+    return PileValues.asBoolean(root, required(indexForKey(key), key.getName()));
+  }
+
+  @Override
+  public boolean getBooleanOrDefault(String name, boolean def) {
+    int idx = indexForName(name);
+    return idx < 0 || root.isNull(idx) ? def : PileValues.asBoolean(root, idx);
+  }
+
+  @Override
+  public boolean getBooleanOrDefault(SonKey key, boolean def) {
+    int idx = indexForKey(key);
+    return idx < 0 || root.isNull(idx) ? def : PileValues.asBoolean(root, idx);
+  }
+
+  @Override
+  public String getString(String name) {
+    return PileValues.asString(root, required(indexForName(name), name));
+  }
+
+  @Override
+  public String getString(SonKey key) {
+    return PileValues.asString(root, required(indexForKey(key), key.getName()));
+  }
+
+  @Override
+  public String getStringOrDefault(String name, String def) {
+    int idx = indexForName(name);
+    return idx < 0 || root.isNull(idx) ? def : PileValues.asString(root, idx);
+  }
+
+  @Override
+  public String getStringOrDefault(SonKey key, String def) {
+    int idx = indexForKey(key);
+    return idx < 0 || root.isNull(idx) ? def : PileValues.asString(root, idx);
+  }
+
   static ReadableSonValue.MapValue indexedGetAt(String name, GlobalNameMapReader nameMap, PileReader root, int idx) {
     Object val;
     SonType typ;
@@ -200,31 +467,122 @@ public class ReadableSonMapImpl implements ReadableSonMap {
     return new ReadableSonValue.MapValue(name, typ, val);
   }
 
+  @Override
+  public ReadableSonMap mapValueInto(String name, ReadableSonMap target) {
+    return mapInto(indexForName(name), target);
+  }
+
+  @Override
+  public ReadableSonMap mapValueInto(SonKey key, ReadableSonMap target) {
+    return mapInto(indexForKey(key), target);
+  }
+
+  @Override
+  public ReadableSonList listValueInto(String name, ReadableSonList target) {
+    return listInto(indexForName(name), target);
+  }
+
+  @Override
+  public ReadableSonList listValueInto(SonKey key, ReadableSonList target) {
+    return listInto(indexForKey(key), target);
+  }
+
+  private ReadableSonMap mapInto(int idx, ReadableSonMap target) {
+    if (idx < 0) {
+      return null;
+    }
+    if (root.typeOf(idx) != Pile.Type.PILE1) {
+      throw new ClassCastException("Expected MAP, found " + root.typeOf(idx));
+    }
+    return reusable(target).attach(globalNameMap, root, idx);
+  }
+
+  private ReadableSonList listInto(int idx, ReadableSonList target) {
+    if (idx < 0) {
+      return null;
+    }
+    if (root.typeOf(idx) != Pile.Type.PILE2) {
+      throw new ClassCastException("Expected LIST, found " + root.typeOf(idx));
+    }
+    return ReadableSonListImpl.reusable(target).attach(globalNameMap, root, idx);
+  }
+
+  /**
+   * Position of a key in this map's pile.
+   *
+   * @param name key
+   * @return index, or -1 if absent
+   */
+  public int indexOf(String name) {
+    return indexForName(name);
+  }
+
+  /**
+   * Position of a key in this map's pile.
+   *
+   * @param key key
+   * @return index, or -1 if absent
+   */
+  public int indexOf(SonKey key) {
+    return indexForKey(key);
+  }
+
   private int indexForName(String name) {
-    Integer probe = nameToIndexCache.get(name);
-    if (probe == null) {
-      int id = globalNameMap.lookupId(name);
-      if (id >= 0) {
-        populateIdToIndexMap();
-        id = idToIndex.get(id);
-        if (id >= 0) {
-          nameToIndexCache.put(name, id);
-        }
+    int id = globalNameMap.lookupId(name);
+    return id < 0 ? -1 : idToIndex().get(id);
+  }
+
+  private int indexForKey(SonKey key) {
+    SonKeyAccess keys = SonKeyAccess.get();
+    int id = globalNameMap.lookupId(key);
+    if (id < 0) {
+      return -1;
+    }
+    int idx = keys.slotHint(key);
+    if (idx < 0 || idx >= count || keysPile.int32(idx) != id) {
+      idx = idToIndex().get(id);
+      if (idx >= 0) {
+        keys.slotHint(key, idx);
       }
-      return id;
     }
-    return probe;
+    return idx;
   }
 
-  private void populateIdToIndexMap() {
-    if (idToIndex == null) {
-      int kcnt = keysPile.size();
-      IntIntMap m2 = new IntIntMap(-1, kcnt + 10);
-      for (int i = 0; i < kcnt; i++) {
-        m2.put(keysPile.int32(i), i);
+  private static int required(int idx, String name) {
+    if (idx < 0) {
+      throw new NoSuchElementException(name);
+    }
+    return idx;
+  }
+
+  private IntIntMap idToIndex() {
+    IntIntMap m = idToIndex;
+    if (m == null) {
+      m = SPARE_INDEX.getAndSet(this, null);
+      if (m == null) {
+        m = new IntIntMap(-1, count + 10);
+      } else {
+        m.clear();
+      }
+      for (int i = 0; i < count; i++) {
+        m.put(keysPile.int32(i), i);
       }
-      idToIndex = m2;
+      // racy but idempotent; each builder fills its own map
+      idToIndex = m;
     }
+    return m;
+  }
+
+  public GlobalNameMapReader getNameMap() {
+    return globalNameMap;
+  }
+
+  public PileReader getPile() {
+    return root;
+  }
+
+  public PileReader getKeysPile() {
+    return keysPile;
   }
 
   @Override
@@ -239,10 +597,6 @@ public class ReadableSonMapImpl implements ReadableSonMap {
 
   @Override
   public Iterator<ReadableSonValue.MapValue> iterator() {
-    final HashMap<Integer, String> hm = new HashMap<>();
-    for (Map.Entry<String, Integer> ent : globalNameMap.getNamesToId().entrySet()) {
-      hm.put(ent.getValue(), ent.getKey());
-    }
     return new Iterator<ReadableSonValue.MapValue>() {
 
       private int current = 0;
@@ -252,7 +606,7 @@ public class ReadableSonMapImpl implements ReadableSonMap {
         if (hasNext()) {
           int idx = current;
           int id = keysPile.int32(current++);
-          String nm = hm.get(id);
+          String nm = globalNameMap.nameOf(id);
           ReadableSonValue.MapValue ret = indexedGetAt(nm, globalNameMap, root, idx);
           return ret;
         }
@@ -261,18 +615,43 @@ public class ReadableSonMapImpl implements ReadableSonMap {
 
       @Override
       public boolean hasNext() {
-        return current < keysPile.size();
+        return current < count;
+      }
+    };
+  }
+
+  @Override
+  public Iterator<String> keyIterator() {
+    return new Iterator<String>() {
+      private int current = 0;
+
+      @Override
+      public String next() {
+        if (hasNext()) {
+          return globalNameMap.nameOf(keysPile.int32(current++));
+        }
+        throw new NoSuchElementException();
+      }
+
+      @Override
+      public boolean hasNext() {
+        return current < count;
       }
     };
   }
 
+  @Override
+  public Iterable<String> keys() {
+    return this::keyIterator;
+  }
+
   public ReadableSonMapImpl reset(NameSource nameSource, ByteBuffer buf, int start, int limit) {
     init(nameSource, buf, start, limit);
     return this;
   }
 
   public ReadableSonMapImpl reset(ByteBuffer buf, int start, int limit) {
-    init(globalNameMap.getNameSource(), buf, start, limit);
+    init(globalNameMap == null ? null : globalNameMap.getNameSource(), buf, start, limit);
     return this;
   }
 
@@ -288,11 +667,30 @@ public class ReadableSonMapImpl implements ReadableSonMap {
 
   @Override
   public ByteBuffer toBuffer() {
-    ByteBuffer ret = root.getSourceBuffer().slice();
+    ByteBuffer ret = root.getSourceBuffer().duplicate();
     ret.position(root.getStartPosition()).limit(root.getLimit());
     return ret;
   }
 
+  @Override
+  public ByteBuffer toCanonicalBuffer() {
+    String[] names = new String[count];
+    Integer[] order = new Integer[count];
+    for (int i = 0; i < count; i++) {
+      names[i] = globalNameMap.nameOf(keysPile.int32(i));
+      order[i] = i;
+    }
+    Arrays.sort(order, Comparator.comparing(i -> names[i]));
+    SonStreamingMapWriter<Void> w = Son.streamingMapWriter(globalNameMap.getNameSource()).canonical(true);
+    for (int i : order) {
+      w.appendFrom(names[i], root, i, globalNameMap);
+    }
+    w.endMap();
+    ByteBuffer ret = w.buffer().getBuffer();
+    ret.flip();
+    return ret;
+  }
+
   public String toString() {
     return Son.SONPrinters.SON.pretty().printMap(this);
   }
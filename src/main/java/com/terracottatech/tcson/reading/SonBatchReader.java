@@ -0,0 +1,87 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.reading;
+
+import com.terracottatech.tcson.NameSource;
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.pile.Pile;
+import com.terracottatech.tcson.pile.PileReader;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Random access over a batch written by
+ * {@link com.terracottatech.tcson.writing.SonBatchWriter}. The pile directory
+ * is the offset index, so {@link #get(int)} is O(1) and returns a view over
+ * the batch buffer; the name table is decoded once, on first use, and shared
+ * by every document.
+ */
+public class SonBatchReader implements Iterable<ReadableSonMap> {
+  private final PileReader root;
+  private final GlobalNameMapReader nameMap;
+  private final int count;
+
+  public SonBatchReader(NameSource nameSource, ByteBuffer buf) {
+    this(nameSource, null, buf);
+  }
+
+  public SonBatchReader(NameSource nameSource, GlobalNameTableCache cache, ByteBuffer buf) {
+    this.root = Pile.reader(buf, buf.position(), buf.limit());
+    int cnt = root.size();
+    this.count = cnt - 1;
+    this.nameMap = new GlobalNameMapReader(nameSource, root.pile(cnt - 1), cache);
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public ReadableSonMap get(int idx) {
+    if (idx < 0 || idx >= count) {
+      throw new IndexOutOfBoundsException(idx + " of " + count);
+    }
+    if (root.typeOf(idx) != Pile.Type.PILE1) {
+      throw new IllegalStateException("Batch entry " + idx + " is not a map: " + root.typeOf(idx));
+    }
+    return new ReadableSonMapImpl(nameMap, root.pile(idx));
+  }
+
+  public GlobalNameMapReader getNameMap() {
+    return nameMap;
+  }
+
+  @Override
+  public Iterator<ReadableSonMap> iterator() {
+    return new Iterator<ReadableSonMap>() {
+      private int current = 0;
+
+      @Override
+      public boolean hasNext() {
+        return current < count;
+      }
+
+      @Override
+      public ReadableSonMap next() {
+        if (hasNext()) {
+          return get(current++);
+        }
+        throw new NoSuchElementException();
+      }
+    };
+  }
+}
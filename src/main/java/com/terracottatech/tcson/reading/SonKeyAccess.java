@@ -0,0 +1,70 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.reading;
+
+import com.terracottatech.tcson.SonKey;
+
+/**
+ * Reaches the lookup state a {@link SonKey} keeps for readable maps, which
+ * is not part of its API. Only {@link SonKey} can install the instance,
+ * which it does when it is loaded.
+ */
+public abstract class SonKeyAccess {
+  private static volatile SonKeyAccess access;
+
+  protected SonKeyAccess() {
+  }
+
+  public static synchronized void install(SonKeyAccess a) {
+    if (access != null || a.getClass().getEnclosingClass() != SonKey.class) {
+      throw new IllegalStateException("SonKey access is installed by SonKey");
+    }
+    access = a;
+  }
+
+  static SonKeyAccess get() {
+    SonKeyAccess a = access;
+    if (a == null) {
+      try {
+        Class.forName(SonKey.class.getName(), true, SonKey.class.getClassLoader());
+      } catch (ClassNotFoundException e) {
+        throw new IllegalStateException(e);
+      }
+      a = access;
+    }
+    return a;
+  }
+
+  /**
+   * Id the key last resolved to, with what it was resolved against.
+   *
+   * @param key key
+   * @return state left by {@link GlobalNameMapReader#lookupId(SonKey)}, or null
+   */
+  protected abstract Object resolved(SonKey key);
+
+  protected abstract void resolved(SonKey key, Object resolved);
+
+  /**
+   * Slot the key was last found at; unverified.
+   *
+   * @param key key
+   * @return slot, or -1
+   */
+  protected abstract int slotHint(SonKey key);
+
+  protected abstract void slotHint(SonKey key, int slot);
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.reading;
+
+import com.terracottatech.tcson.NameSource;
+import com.terracottatech.tcson.ReadableSonList;
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.pile.Pile;
+import com.terracottatech.tcson.pile.PileMetaData;
+import com.terracottatech.tcson.pile.VarInts;
+import com.terracottatech.tcson.writing.SonWriter;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * Up front validation of a whole SON document. A single linear pass checks
+ * every pile directory, every value against its declared type and size,
+ * the map key and name tables, and the known byte array forms (dates,
+ * UUIDs, the name index). Malformed input fails here, with the offending
+ * position, rather than somewhere deep inside a later read.
+ * <p>
+ * The returned map or list reads through
+ * {@link com.terracottatech.tcson.pile.TrustedPileReader}s, which skip the
+ * per access checks.
+ */
+public final class SonValidator {
+  private static final Pile.Type[] TYPES = Pile.Type.values();
+
+  private final NameSource nameSource;
+  private final ByteBuffer buf;
+  private final BitSet seen = new BitSet();
+
+  private SonValidator(NameSource nameSource, ByteBuffer buf) {
+    this.nameSource = nameSource;
+    this.buf = buf;
+  }
+
+  /**
+   * Validate a root map, from the buffer's position to its limit.
+   *
+   * @param buf the buffer
+   * @return trusted map
+   * @throws IllegalArgumentException if the document is malformed
+   */
+  public static ReadableSonMap validate(ByteBuffer buf) {
+    return validate(null, buf);
+  }
+
+  public static ReadableSonMap validate(NameSource nameSource, ByteBuffer buf) {
+    int start = buf.position();
+    int limit = buf.limit();
+    new SonValidator(nameSource, buf).rootMap(start, limit);
+    return new ReadableSonMapImpl(nameSource, null, Pile.trustedReader(buf, start, limit));
+  }
+
+  /**
+   * Validate a root list, from the buffer's position to its limit.
+   *
+   * @param buf the buffer
+   * @return trusted list
+   * @throws IllegalArgumentException if the document is malformed
+   */
+  public static ReadableSonList validateList(ByteBuffer buf) {
+    return validateList(null, buf);
+  }
+
+  public static ReadableSonList validateList(NameSource nameSource, ByteBuffer buf) {
+    int start = buf.position();
+    int limit = buf.limit();
+    new SonValidator(nameSource, buf).rootList(start, limit);
+    return new ReadableSonListImpl(nameSource, null, Pile.trustedReader(buf, start, limit));
+  }
+
+  /**
+   * Parsed pile directory.
+   */
+  private static final class Dir {
+    private final Pile.Type[] types;
+    private final int[] pos;
+    private final int[] len;
+    private final int size;
+
+    Dir(Pile.Type[] types, int[] pos, int[] len, int size) {
+      this.types = types;
+      this.pos = pos;
+      this.len = len;
+      this.size = size;
+    }
+
+    int limitOf(int i) {
+      return pos[i] + len[i];
+    }
+  }
+
+  private void rootMap(int start, int limit) {
+    Dir d = directory(start, limit);
+    if (d.size < 2) {
+      throw malformed(start, "root map needs keys and names");
+    }
+    int names = names(subPile(d, d.size - 1));
+    map(d, d.size - 1, names);
+  }
+
+  private void rootList(int start, int limit) {
+    Dir d = directory(start, limit);
+    if (d.size < 1) {
+      throw malformed(start, "root list needs names");
+    }
+    int names = names(subPile(d, d.size - 1));
+    values(d, d.size - 1, names);
+  }
+
+  /**
+   * Map body: values, then the keys pile, over the first {@code end}
+   * entries of the directory.
+   */
+  private void map(Dir d, int end, int names) {
+    if (end < 1) {
+      throw malformed(d.pos.length == 0 ? 0 : d.pos[0], "map without keys");
+    }
+    Dir keys = subPile(d, end - 1);
+    int count = end - 1;
+    if (keys.size != count) {
+      throw malformed(d.pos[end - 1], "map has " + count + " values but " + keys.size + " keys");
+    }
+    seen.clear();
+    for (int i = 0; i < count; i++) {
+      if (keys.types[i] == Pile.Type.INT64 || keys.types[i] == Pile.Type.ZIGZAG64) {
+        throw malformed(keys.pos[i], "key id stored as " + keys.types[i]);
+      }
+      int id = (int) integral(keys, i);
+      if (id < 0 || id >= names) {
+        throw malformed(keys.pos[i], "key id " + id + " outside name table of " + names);
+      }
+      if (seen.get(id)) {
+        throw malformed(keys.pos[i], "duplicate key id " + id);
+      }
+      seen.set(id);
+    }
+    values(d, count, names);
+  }
+
+  private void values(Dir d, int end, int names) {
+    for (int i = 0; i < end; i++) {
+      int p = d.pos[i];
+      switch (d.types[i]) {
+        case PILE1:
+          Dir m = subPile(d, i);
+          map(m, m.size, names);
+          break;
+        case PILE2:
+          Dir l = subPile(d, i);
+          values(l, l.size, names);
+          break;
+        case STRING:
+          string(p, d.len[i]);
+          break;
+        case ZIGZAG32:
+        case ZIGZAG64:
+          varint(d, i);
+          break;
+        case BYTE_ARRAY:
+          if (d.len[i] < 1) {
+            throw malformed(p, "byte array without signifier");
+          }
+          byte sig = buf.get(p);
+          if (sig == SonWriter.DATE_SIGNIFIER && d.len[i] != 9) {
+            throw malformed(p, "date of " + (d.len[i] - 1) + " bytes");
+          }
+          if (sig == SonWriter.UUID_SIGNIFIER && d.len[i] != 17) {
+            throw malformed(p, "uuid of " + (d.len[i] - 1) + " bytes");
+          }
+          break;
+        default:
+          // fixed width; size already checked
+          break;
+      }
+    }
+  }
+
+  /**
+   * Name pile: strings or NameSource ids, then the optional hash index.
+   */
+  private int names(Dir d) {
+    int count = d.size;
+    if (count > 0 && d.types[count - 1] == Pile.Type.BYTE_ARRAY) {
+      int p = d.pos[count - 1];
+      if (d.len[count - 1] < 1 || buf.get(p) != SonWriter.NAME_INDEX_SIGNIFIER) {
+        throw malformed(p, "unexpected byte array in name table");
+      }
+      count--;
+      int slots = (d.len[count] - 1) >>> 1;
+      if ((d.len[count] & 1) == 0 || Integer.bitCount(slots) != 1 || slots <= count) {
+        throw malformed(p, "bad name index of " + d.len[count] + " bytes for " + count + " names");
+      }
+      for (int i = 0; i < slots; i++) {
+        int v = buf.getShort(p + 1 + (i << 1)) & 0xffff;
+        if (v > count) {
+          throw malformed(p + 1 + (i << 1), "name index slot points past the table");
+        }
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      if (d.types[i] == Pile.Type.STRING) {
+        string(d.pos[i], d.len[i]);
+      } else {
+        long id = integral(d, i);
+        if (nameSource == null) {
+          throw malformed(d.pos[i], "name id without a NameSource");
+        }
+        if (nameSource.nameOf(id) == null) {
+          throw malformed(d.pos[i], "name id " + id + " unknown to the NameSource");
+        }
+      }
+    }
+    return count;
+  }
+
+  private long integral(Dir d, int i) {
+    int p = d.pos[i];
+    switch (d.types[i]) {
+      case INT8:
+        return buf.get(p);
+      case INT16:
+        return buf.getShort(p);
+      case INT32:
+        return buf.getInt(p);
+      case INT64:
+        return buf.getLong(p);
+      case ZIGZAG32:
+      case ZIGZAG64:
+        varint(d, i);
+        return VarInts.zigzagDecode(buf, p);
+      default:
+        throw malformed(p, "expected an integer, found " + d.types[i]);
+    }
+  }
+
+  private void varint(Dir d, int i) {
+    int max = d.types[i] == Pile.Type.ZIGZAG32 ? 5 : 10;
+    int len = d.len[i];
+    if (len < 1 || len > max) {
+      throw malformed(d.pos[i], d.types[i] + " of " + len + " bytes");
+    }
+    int end = d.limitOf(i);
+    for (int p = d.pos[i]; p < end - 1; p++) {
+      if (buf.get(p) >= 0) {
+        throw malformed(p, "varint ends early");
+      }
+    }
+    if (buf.get(end - 1) < 0) {
+      throw malformed(end - 1, "varint runs past its entry");
+    }
+  }
+
+  private void string(int p, int len) {
+    int end = p + len;
+    while (p < end) {
+      int b = buf.get(p) & 0xff;
+      int f = b >>> 4;
+      int n;
+      if (f < 0x08) {
+        n = 1;
+      } else if (f == 0x0E) {
+        n = 3;
+      } else if (f >= 0x0C) {
+        n = 2;
+      } else {
+        throw malformed(p, String.format("illegal string byte %02x", b));
+      }
+      if (p + n > end) {
+        throw malformed(p, "string character runs past its entry");
+      }
+      for (int i = 1; i < n; i++) {
+        if ((buf.get(p + i) & 0xc0) != 0x80) {
+          throw malformed(p + i, "bad string continuation byte");
+        }
+      }
+      p += n;
+    }
+  }
+
+  private Dir subPile(Dir d, int i) {
+    Pile.Type t = d.types[i];
+    if (t != Pile.Type.PILE1 && t != Pile.Type.PILE2) {
+      throw malformed(d.pos[i], "expected a pile, found " + t);
+    }
+    return directory(d.pos[i], d.limitOf(i));
+  }
+
+  private Dir directory(int start, int limit) {
+    if (start < 0 || limit > buf.limit() || limit <= start) {
+      throw malformed(start, "pile bounds " + start + ".." + limit);
+    }
+    int width = PileMetaData.footerWidth(buf, limit);
+    if (limit - start < width) {
+      throw malformed(start, "truncated pile footer");
+    }
+    int footprint = PileMetaData.directorySize(buf, limit);
+    int at = limit - width - footprint;
+    int end = limit - width;
+    if (at < start) {
+      throw malformed(limit - 1, "pile directory of " + footprint + " bytes overruns the pile");
+    }
+    int payload = at - start;
+    int max = end - at;
+    Pile.Type[] types = new Pile.Type[max];
+    int[] pos = new int[max];
+    int[] len = new int[max];
+    int rel = 0;
+    int n = 0;
+    while (at < end) {
+      int p = buf.get(at++);
+      int ord = p & Pile.Type.maxOrdinalValue();
+      if (ord >= TYPES.length) {
+        throw malformed(at - 1, "unknown type ordinal " + ord);
+      }
+      Pile.Type typ = TYPES[ord];
+      long size;
+      if (typ.isKnownSize()) {
+        size = typ.getKnownSize();
+      } else if (p == ord) {
+        size = 0;
+        int shift = 0;
+        byte b;
+        do {
+          if (at >= end || shift > 28) {
+            throw malformed(at, "bad size varint in pile directory");
+          }
+          b = buf.get(at++);
+          size |= (long) (b & 0x7f) << shift;
+          shift += 7;
+        } while (b < 0);
+      } else {
+        size = ((p >>> Pile.Type.bitWidth()) & Pile.Type.maxInlineValue()) - 1;
+      }
+      if (rel + size > payload) {
+        throw malformed(start + rel, typ + " of " + size + " bytes overruns the pile payload");
+      }
+      types[n] = typ;
+      pos[n] = start + rel;
+      len[n] = (int) size;
+      n++;
+      rel += (int) size;
+    }
+    if (rel != payload) {
+      throw malformed(start + rel, (payload - rel) + " payload bytes not covered by the directory");
+    }
+    return new Dir(types, pos, len, n);
+  }
+
+  private static IllegalArgumentException malformed(int pos, String why) {
+    return new IllegalArgumentException("Malformed SON at " + pos + ": " + why);
+  }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.transform;
+
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.pile.ManagedBuffer;
+import com.terracottatech.tcson.pile.Pile;
+import com.terracottatech.tcson.pile.PileReader;
+import com.terracottatech.tcson.reading.GlobalNameMapReader;
+import com.terracottatech.tcson.reading.GlobalNameTable;
+import com.terracottatech.tcson.reading.ReadableSonMapImpl;
+import com.terracottatech.tcson.writing.SonStreamingListWriter;
+import com.terracottatech.tcson.writing.SonStreamingMapWriter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Computes a patch turning one SON map into another, working directly on the
+ * piles. Values are compared as raw bytes, so unchanged subtrees are skipped
+ * without descending into them whenever the two documents share a name table;
+ * otherwise each subtree is walked once, by name. Maps that differ only in
+ * key order and integers that differ only in width count as unchanged, and
+ * only changed values end up in the patch.
+ * <p>
+ * A patch is itself a SON map. For a map it holds a map of keys to set
+ * ({@value #SET}), a list of removed keys ({@value #REMOVE}), and a map of
+ * keys to nested patches ({@value #PATCH}). For a list, the new size
+ * ({@value #SIZE}), then index/value pairs to set and index/patch pairs,
+ * flattened into lists. Empty sections are left out. Apply with
+ * {@link SonPatch}.
+ */
+public final class SonDiff {
+  static final String SET = "s";
+  static final String REMOVE = "r";
+  static final String PATCH = "p";
+  static final String SIZE = "n";
+
+  private final GlobalNameMapReader baseNames;
+  private final GlobalNameMapReader updatedNames;
+  private final boolean sameIds;
+
+  private SonDiff(GlobalNameMapReader baseNames, GlobalNameMapReader updatedNames) {
+    this.baseNames = baseNames;
+    this.updatedNames = updatedNames;
+    this.sameIds = sameNames(baseNames.getTable(), updatedNames.getTable());
+  }
+
+  private static boolean sameNames(GlobalNameTable t1, GlobalNameTable t2) {
+    if (t1 == t2) {
+      return true;
+    }
+    if (t1.size() != t2.size()) {
+      return false;
+    }
+    for (int i = 0; i < t1.size(); i++) {
+      if (!t1.nameOf(i).equals(t2.nameOf(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static ReadableSonMapImpl impl(ReadableSonMap map) {
+    if (map instanceof ReadableSonMapImpl) {
+      return (ReadableSonMapImpl) map;
+    }
+    throw new IllegalArgumentException("Unsupported map implementation: " + map.getClass().getName());
+  }
+
+  /**
+   * Patch from {@code base} to {@code updated}.
+   *
+   * @param base base document
+   * @param updated updated document
+   * @return flipped buffer holding the patch
+   */
+  public static ByteBuffer diff(ReadableSonMap base, ReadableSonMap updated) {
+    ManagedBuffer mb = new ManagedBuffer(256);
+    diff(base, updated, mb);
+    ByteBuffer ret = mb.getBuffer();
+    ret.flip();
+    return ret;
+  }
+
+  public static void diff(ReadableSonMap base, ReadableSonMap updated, ManagedBuffer out) {
+    ReadableSonMapImpl b = impl(base);
+    ReadableSonMapImpl u = impl(updated);
+    SonStreamingMapWriter<Void> w = new SonStreamingMapWriter<>(null, out);
+    SonDiff d = new SonDiff(b.getNameMap(), u.getNameMap());
+    Patch p = d.diffMap(b.getPile(), b.getKeysPile(), u.getPile(), u.getKeysPile());
+    if (p != null) {
+      d.writeMap(p, w);
+    }
+    w.endMap();
+  }
+
+  private static boolean isPile(Pile.Type t) {
+    return t == Pile.Type.PILE1 || t == Pile.Type.PILE2;
+  }
+
+  private static boolean isIntegral(Pile.Type t) {
+    switch (t) {
+      case INT8:
+      case INT16:
+      case INT32:
+      case INT64:
+      case ZIGZAG32:
+      case ZIGZAG64:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static PileReader keysOf(PileReader map) {
+    return map.pile(map.size() - 1);
+  }
+
+  /*
+   * Changes to one map or list; entries index the updated pile.
+   */
+  private static final class Patch {
+    private final PileReader updated;
+    private final PileReader updatedKeys;
+    private final ArrayList<Integer> sets = new ArrayList<>();
+    private final ArrayList<String> removes = new ArrayList<>();
+    private final ArrayList<Integer> nestedAt = new ArrayList<>();
+    private final ArrayList<Patch> nested = new ArrayList<>();
+
+    Patch(PileReader updated, PileReader updatedKeys) {
+      this.updated = updated;
+      this.updatedKeys = updatedKeys;
+    }
+
+    boolean isEmpty() {
+      return sets.isEmpty() && removes.isEmpty() && nested.isEmpty();
+    }
+  }
+
+  private static final Patch REPLACE = new Patch(null, null);
+
+  private HashMap<String, Integer> indexOf(GlobalNameMapReader names, PileReader keys) {
+    HashMap<String, Integer> ret = new HashMap<>();
+    for (int i = 0; i < keys.size(); i++) {
+      ret.put(names.nameOf(keys.int32(i)), i);
+    }
+    return ret;
+  }
+
+  /*
+   * Null if unchanged, REPLACE if the value has to be set whole, else the
+   * patch for a nested map or list. Each subtree is walked at most once.
+   */
+  private Patch change(PileReader base, int bi, PileReader updated, int ui) {
+    Pile.Type bt = base.typeOf(bi);
+    Pile.Type ut = updated.typeOf(ui);
+    if (isPile(bt) && bt == ut) {
+      if (sameIds && base.lengthOf(bi) == updated.lengthOf(ui) && base.raw(bi).equals(updated.raw(ui))) {
+        return null;
+      }
+      PileReader bp = base.pile(bi);
+      PileReader up = updated.pile(ui);
+      return bt == Pile.Type.PILE1 ? diffMap(bp, keysOf(bp), up, keysOf(up)) : diffList(bp, up);
+    }
+    if (isIntegral(bt) && isIntegral(ut)) {
+      return base.int64(bi) == updated.int64(ui) ? null : REPLACE;
+    }
+    if (bt == ut && base.lengthOf(bi) == updated.lengthOf(ui) && base.raw(bi).equals(updated.raw(ui))) {
+      return null;
+    }
+    return REPLACE;
+  }
+
+  private Patch diffMap(PileReader base, PileReader baseKeys, PileReader updated, PileReader updatedKeys) {
+    HashMap<String, Integer> bidx = indexOf(baseNames, baseKeys);
+    Patch ret = new Patch(updated, updatedKeys);
+    for (int ui = 0; ui < updatedKeys.size(); ui++) {
+      Integer bi = bidx.remove(updatedNames.nameOf(updatedKeys.int32(ui)));
+      Patch p = bi == null ? REPLACE : change(base, bi, updated, ui);
+      if (p == REPLACE) {
+        ret.sets.add(ui);
+      } else if (p != null) {
+        ret.nestedAt.add(ui);
+        ret.nested.add(p);
+      }
+    }
+    if (!bidx.isEmpty()) {
+      // whatever is left was removed; keep base order
+      for (int bi = 0; bi < baseKeys.size(); bi++) {
+        String name = baseNames.nameOf(baseKeys.int32(bi));
+        if (bidx.containsKey(name)) {
+          ret.removes.add(name);
+        }
+      }
+    }
+    return ret.isEmpty() ? null : ret;
+  }
+
+  private Patch diffList(PileReader base, PileReader updated) {
+    int bcnt = base.size();
+    int ucnt = updated.size();
+    Patch ret = new Patch(updated, null);
+    for (int i = 0; i < ucnt; i++) {
+      Patch p = i >= bcnt ? REPLACE : change(base, i, updated, i);
+      if (p == REPLACE) {
+        ret.sets.add(i);
+      } else if (p != null) {
+        ret.nestedAt.add(i);
+        ret.nested.add(p);
+      }
+    }
+    return ret.isEmpty() && bcnt == ucnt ? null : ret;
+  }
+
+  private void writeMap(Patch patch, SonStreamingMapWriter<?> w) {
+    PileReader updated = patch.updated;
+    PileReader updatedKeys = patch.updatedKeys;
+    if (!patch.sets.isEmpty()) {
+      SonStreamingMapWriter<?> s = w.map(SET);
+      for (int ui : patch.sets) {
+        s.appendFrom(updatedNames.nameOf(updatedKeys.int32(ui)), updated, ui, updatedNames);
+      }
+      s.endMap();
+    }
+    if (!patch.removes.isEmpty()) {
+      SonStreamingListWriter<?> r = w.list(REMOVE);
+      for (String name : patch.removes) {
+        r.append(name);
+      }
+      r.endList();
+    }
+    if (!patch.nested.isEmpty()) {
+      SonStreamingMapWriter<?> p = w.map(PATCH);
+      for (int i = 0; i < patch.nested.size(); i++) {
+        SonStreamingMapWriter<?> np = p.map(updatedNames.nameOf(updatedKeys.int32(patch.nestedAt.get(i))));
+        writeNested(patch.nested.get(i), np);
+        np.endMap();
+      }
+      p.endMap();
+    }
+  }
+
+  private void writeNested(Patch patch, SonStreamingMapWriter<?> w) {
+    if (patch.updatedKeys != null) {
+      writeMap(patch, w);
+    } else {
+      writeList(patch, w);
+    }
+  }
+
+  private void writeList(Patch patch, SonStreamingMapWriter<?> w) {
+    PileReader updated = patch.updated;
+    w.append(SIZE, updated.size());
+    if (!patch.sets.isEmpty()) {
+      SonStreamingListWriter<?> s = w.list(SET);
+      for (int i : patch.sets) {
+        s.append(i);
+        s.appendFrom(updated, i, updatedNames);
+      }
+      s.endList();
+    }
+    if (!patch.nested.isEmpty()) {
+      SonStreamingListWriter<?> p = w.list(PATCH);
+      for (int i = 0; i < patch.nested.size(); i++) {
+        p.append(patch.nestedAt.get(i));
+        SonStreamingMapWriter<?> np = p.map();
+        writeNested(patch.nested.get(i), np);
+        np.endMap();
+      }
+      p.endList();
+    }
+  }
+}
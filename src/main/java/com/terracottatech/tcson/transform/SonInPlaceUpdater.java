@@ -0,0 +1,333 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.transform;
+
+import com.terracottatech.tcson.NameSource;
+import com.terracottatech.tcson.parser.FieldReference;
+import com.terracottatech.tcson.parser.query.ParseException;
+import com.terracottatech.tcson.pile.Pile;
+import com.terracottatech.tcson.pile.PileReader;
+import com.terracottatech.tcson.query.SonDotParser;
+import com.terracottatech.tcson.query.SonDotTraversal;
+import com.terracottatech.tcson.reading.ReadableSonListImpl;
+import com.terracottatech.tcson.reading.ReadableSonMapImpl;
+import com.terracottatech.tcson.writing.SonWriter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Overwrites fixed width scalars inside a serialized SON map, without
+ * rewriting the document. Counters and timestamps held in a shared buffer
+ * can be updated where they sit.
+ * <p>
+ * Only values stored at a fixed width can be updated: bytes, shorts, chars,
+ * floats, doubles, booleans, dates, and ints and longs written with
+ * {@code appendFixed()}; the usual varint encoding of ints and longs cannot
+ * be. A value which does not fit the stored width is refused rather than
+ * truncated. Resolve a {@link Field} once to update the same value
+ * repeatedly.
+ */
+public final class SonInPlaceUpdater {
+  private static final SonDotParser PARSER = new SonDotParser();
+
+  private SonInPlaceUpdater() {
+  }
+
+  public static void set(ByteBuffer doc, String dotPath, long v) {
+    field(doc, dotPath).set(v);
+  }
+
+  public static void set(ByteBuffer doc, String dotPath, double v) {
+    field(doc, dotPath).set(v);
+  }
+
+  public static void set(ByteBuffer doc, String dotPath, boolean v) {
+    field(doc, dotPath).set(v);
+  }
+
+  public static Field field(ByteBuffer doc, String dotPath) {
+    return field(doc, null, dotPath);
+  }
+
+  public static Field field(ByteBuffer doc, NameSource nameSource, String dotPath) {
+    try {
+      return field(doc, nameSource, PARSER.parse(dotPath));
+    } catch (ParseException e) {
+      throw new IllegalArgumentException("Bad path: " + dotPath, e);
+    }
+  }
+
+  /**
+   * Locate a single value in a document. The path may not contain
+   * wildcards or ranges.
+   *
+   * @param doc buffer holding a SON map, from its position to its limit
+   * @param nameSource name source the document was written with, may be null
+   * @param path path to the value
+   * @return updatable field
+   * @throws NoSuchElementException if the path does not lead to a value
+   * @throws IllegalArgumentException if the path does not name a single value
+   */
+  public static Field field(ByteBuffer doc, NameSource nameSource, SonDotTraversal path) {
+    List<FieldReference> spec = path.getTraversalSpec();
+    if (spec.isEmpty()) {
+      throw new IllegalArgumentException("Empty path");
+    }
+    Object current = new ReadableSonMapImpl(nameSource, doc);
+    PileReader pile = null;
+    int idx = -1;
+    for (FieldReference fr : spec) {
+      switch (fr.getType()) {
+        case MAP:
+          if (!(current instanceof ReadableSonMapImpl)) {
+            throw new NoSuchElementException(path.toString());
+          }
+          ReadableSonMapImpl map = (ReadableSonMapImpl) current;
+          String name = fr.mapRef().getFieldName();
+          pile = map.getPile();
+          idx = map.indexOf(name);
+          current = idx < 0 ? null : map.get(name).getValue();
+          break;
+        case ARRAY:
+          if (!(current instanceof ReadableSonListImpl)) {
+            throw new NoSuchElementException(path.toString());
+          }
+          ReadableSonListImpl list = (ReadableSonListImpl) current;
+          List<FieldReference.ArraySlice> slices = fr.arrSpec().getArrayMembers();
+          if (slices.size() != 1 || slices.get(0).getLeft() != slices.get(0).getRight()) {
+            throw new IllegalArgumentException("Path must name a single value: " + path);
+          }
+          List<Integer> positions = slices.get(0).extractPositions(list.size());
+          pile = list.getPile();
+          idx = positions.isEmpty() ? -1 : positions.get(0);
+          current = idx < 0 ? null : list.get(idx).getValue();
+          break;
+        default:
+          throw new IllegalArgumentException("Path must name a single value: " + path);
+      }
+      if (idx < 0) {
+        throw new NoSuchElementException(path.toString());
+      }
+    }
+    return new Field(doc, pile, idx);
+  }
+
+  /**
+   * A located fixed width value. It stays valid for as long as the document
+   * layout is unchanged; updating values through it does not change the
+   * layout.
+   */
+  public static final class Field {
+    private final ByteBuffer doc;
+    private final Pile.Type type;
+    private final boolean date;
+    private final int pos;
+
+    Field(ByteBuffer doc, PileReader pile, int idx) {
+      this.doc = doc;
+      this.type = pile.typeOf(idx);
+      this.date = type == Pile.Type.BYTE_ARRAY && pile.byteArraySignifier(idx) == SonWriter.DATE_SIGNIFIER;
+      // dates are a signifier byte followed by 8 bytes of millis
+      this.pos = date ? pile.positionOf(idx) + 1 : pile.positionOf(idx);
+    }
+
+    public int getPosition() {
+      return pos;
+    }
+
+    /**
+     * Set an integral or date value.
+     *
+     * @param v new value
+     * @throws IllegalArgumentException if the value does not fit, or is stored
+     * as a varint
+     * @throws ClassCastException if the stored value is not integral
+     */
+    public void set(long v) {
+      switch (type) {
+        case INT8:
+          doc.put(pos, (byte) fits(v, Byte.MIN_VALUE, Byte.MAX_VALUE));
+          break;
+        case INT16:
+          doc.putShort(pos, (short) fits(v, Short.MIN_VALUE, Short.MAX_VALUE));
+          break;
+        case CHAR:
+          doc.putChar(pos, (char) fits(v, Character.MIN_VALUE, Character.MAX_VALUE));
+          break;
+        case INT32:
+          doc.putInt(pos, (int) fits(v, Integer.MIN_VALUE, Integer.MAX_VALUE));
+          break;
+        case INT64:
+          doc.putLong(pos, v);
+          break;
+        case BYTE_ARRAY:
+          if (date) {
+            doc.putLong(pos, v);
+            break;
+          }
+          throw mismatch("integral");
+        case ZIGZAG32:
+        case ZIGZAG64:
+          throw new IllegalArgumentException("Value at pos: " + pos + " is a varint, it has no fixed width");
+        default:
+          throw mismatch("integral");
+      }
+    }
+
+    /**
+     * Set a floating point value. A float field only accepts values exactly
+     * representable as a float.
+     *
+     * @param v new value
+     * @throws IllegalArgumentException if the value does not fit
+     * @throws ClassCastException if the stored value is not floating point
+     */
+    public void set(double v) {
+      switch (type) {
+        case FLOAT64:
+          doc.putLong(pos, Double.doubleToLongBits(v));
+          break;
+        case FLOAT32:
+          float f = (float) v;
+          if (f != v && !Double.isNaN(v)) {
+            throw new IllegalArgumentException(v + " does not fit in a float");
+          }
+          doc.putInt(pos, Float.floatToIntBits(f));
+          break;
+        default:
+          throw mismatch("floating point");
+      }
+    }
+
+    public void set(boolean v) {
+      if (type != Pile.Type.BOOLEAN) {
+        throw mismatch("boolean");
+      }
+      doc.put(pos, (byte) (v ? 1 : 0));
+    }
+
+    /**
+     * Set a full width long with volatile semantics, so concurrent readers
+     * of a shared buffer never see a torn value.
+     *
+     * @param v new value
+     * @throws UnsupportedOperationException on Java 8
+     * @throws IllegalArgumentException if the buffer is not direct
+     * @throws IllegalStateException if the value is not 8 byte aligned
+     */
+    public void setVolatile(long v) {
+      checkAtomic();
+      try {
+        Atomics.SET_VOLATILE.invokeExact(doc, pos, v);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new IllegalStateException(t);
+      }
+    }
+
+    /**
+     * Atomically set a full width long if it holds the expected value.
+     *
+     * @param expect expected current value
+     * @param update new value
+     * @return true if the value was set
+     * @throws UnsupportedOperationException on Java 8
+     * @throws IllegalArgumentException if the buffer is not direct
+     * @throws IllegalStateException if the value is not 8 byte aligned
+     */
+    public boolean compareAndSet(long expect, long update) {
+      checkAtomic();
+      try {
+        return (boolean) Atomics.COMPARE_AND_SET.invokeExact(doc, pos, expect, update);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new IllegalStateException(t);
+      }
+    }
+
+    private void checkAtomic() {
+      if (type != Pile.Type.INT64 && !date) {
+        throw mismatch("full width long");
+      }
+      if (Atomics.SET_VOLATILE == null) {
+        throw new UnsupportedOperationException("Atomic updates need Java 9 or later");
+      }
+      if (!doc.isDirect()) {
+        throw new IllegalArgumentException("Atomic updates need a direct buffer");
+      }
+    }
+
+    private long fits(long v, long min, long max) {
+      if (v < min || v > max) {
+        throw new IllegalArgumentException(v + " does not fit in " + type);
+      }
+      return v;
+    }
+
+    private ClassCastException mismatch(String expected) {
+      return new ClassCastException("Expected " + expected + ", found " + type);
+    }
+  }
+
+  /**
+   * Byte buffer view var handles arrived in Java 9, so they are looked up
+   * reflectively and left null on Java 8.
+   */
+  private static final class Atomics {
+    static final MethodHandle SET_VOLATILE;
+    static final MethodHandle COMPARE_AND_SET;
+
+    static {
+      MethodHandle set = null;
+      MethodHandle cas = null;
+      try {
+        Method view = MethodHandles.class.getMethod("byteBufferViewVarHandle", Class.class, ByteOrder.class);
+        Object handle = view.invoke(null, long[].class, ByteOrder.BIG_ENDIAN);
+        Class<?> modes = Class.forName("java.lang.invoke.VarHandle$AccessMode");
+        Method invoker = MethodHandles.class.getMethod("varHandleExactInvoker", modes, MethodType.class);
+        set = ((MethodHandle) invoker.invoke(null, mode(modes, "SET_VOLATILE"),
+                                             MethodType.methodType(void.class, ByteBuffer.class, int.class,
+                                                                   long.class))).bindTo(handle);
+        cas = ((MethodHandle) invoker.invoke(null, mode(modes, "COMPARE_AND_SET"),
+                                             MethodType.methodType(boolean.class, ByteBuffer.class, int.class,
+                                                                   long.class, long.class))).bindTo(handle);
+      } catch (ReflectiveOperationException e) {
+        set = null;
+        cas = null;
+      }
+      SET_VOLATILE = set;
+      COMPARE_AND_SET = cas;
+    }
+
+    private static Object mode(Class<?> modes, String name) throws NoSuchFieldException {
+      for (Object m : modes.getEnumConstants()) {
+        if (((Enum<?>) m).name().equals(name)) {
+          return m;
+        }
+      }
+      throw new NoSuchFieldException(name);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.transform;
+
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.pile.ManagedBuffer;
+import com.terracottatech.tcson.pile.Pile;
+import com.terracottatech.tcson.pile.PileReader;
+import com.terracottatech.tcson.reading.GlobalNameMapReader;
+import com.terracottatech.tcson.reading.ReadableSonListImpl;
+import com.terracottatech.tcson.reading.ReadableSonMapImpl;
+import com.terracottatech.tcson.writing.SonStreamingListWriter;
+import com.terracottatech.tcson.writing.SonStreamingMapWriter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Deep merges an overlay document onto a base document, working on the
+ * piles of both. Keys present on one side only are copied across raw, runs
+ * of them at a time; only maps present on both sides are walked.
+ * <p>
+ * The result has the base keys in base order, followed by the keys only in
+ * the overlay, in overlay order. Where both sides hold a map the two are
+ * merged; where both hold a list the {@link ListPolicy} decides; otherwise
+ * the overlay value wins, nulls included. The result is written with the
+ * base's name source.
+ */
+public final class SonMerger {
+
+  public enum ListPolicy {
+    /**
+     * The overlay list replaces the base list.
+     */
+    REPLACE,
+    /**
+     * The overlay list is appended to the base list.
+     */
+    CONCAT
+  }
+
+  private SonMerger() {
+  }
+
+  public static void merge(ReadableSonMap base, ReadableSonMap overlay, ManagedBuffer out) {
+    merge(base, overlay, ListPolicy.REPLACE, out);
+  }
+
+  public static ByteBuffer merge(ReadableSonMap base, ReadableSonMap overlay, ListPolicy lists) {
+    ManagedBuffer out = new ManagedBuffer(1024);
+    merge(base, overlay, lists, out);
+    ByteBuffer ret = out.getBuffer();
+    ret.flip();
+    return ret;
+  }
+
+  /**
+   * Merge into a buffer.
+   *
+   * @param base base document
+   * @param overlay overriding document
+   * @param lists what to do where both sides hold a list
+   * @param out destination
+   */
+  public static void merge(ReadableSonMap base, ReadableSonMap overlay, ListPolicy lists, ManagedBuffer out) {
+    ReadableSonMapImpl b = impl(base);
+    ReadableSonMapImpl o = impl(overlay);
+    // same ids as the base, so base subtrees copy verbatim
+    SonStreamingMapWriter<Void> w = new SonStreamingMapWriter<>(b.getNameSource(), out, b.getNameMap());
+    mergeMaps(w, b, o, lists);
+    w.endMap();
+  }
+
+  private static ReadableSonMapImpl impl(ReadableSonMap map) {
+    if (!(map instanceof ReadableSonMapImpl)) {
+      throw new IllegalArgumentException("Cannot merge a " + map.getClass().getName());
+    }
+    return (ReadableSonMapImpl) map;
+  }
+
+  private static void mergeMaps(SonStreamingMapWriter<?> w, ReadableSonMapImpl base, ReadableSonMapImpl overlay,
+                                ListPolicy lists) {
+    GlobalNameMapReader baseNames = base.getNameMap();
+    PileReader basePile = base.getPile();
+    PileReader baseKeys = base.getKeysPile();
+    int n = base.size();
+    int run = 0;
+    for (int i = 0; i < n; i++) {
+      String name = baseNames.nameOf(baseKeys.int32(i));
+      int j = overlay.indexOf(name);
+      if (j >= 0) {
+        w.appendRangeFrom(basePile, baseKeys, run, i, baseNames);
+        run = i + 1;
+        mergeValue(w, name, base, i, overlay, j, lists);
+      }
+    }
+    w.appendRangeFrom(basePile, baseKeys, run, n, baseNames);
+
+    GlobalNameMapReader overNames = overlay.getNameMap();
+    PileReader overPile = overlay.getPile();
+    PileReader overKeys = overlay.getKeysPile();
+    int m = overlay.size();
+    run = 0;
+    for (int j = 0; j < m; j++) {
+      if (base.indexOf(overNames.nameOf(overKeys.int32(j))) >= 0) {
+        w.appendRangeFrom(overPile, overKeys, run, j, overNames);
+        run = j + 1;
+      }
+    }
+    w.appendRangeFrom(overPile, overKeys, run, m, overNames);
+  }
+
+  private static void mergeValue(SonStreamingMapWriter<?> w, String name, ReadableSonMapImpl base, int i,
+                                 ReadableSonMapImpl overlay, int j, ListPolicy lists) {
+    Pile.Type bt = base.getPile().typeOf(i);
+    Pile.Type ot = overlay.getPile().typeOf(j);
+    if (bt == Pile.Type.PILE1 && ot == Pile.Type.PILE1) {
+      SonStreamingMapWriter<?> inner = w.map(name);
+      mergeMaps(inner, (ReadableSonMapImpl) base.get(name).getValue(),
+                (ReadableSonMapImpl) overlay.get(name).getValue(), lists);
+      inner.endMap();
+    } else if (lists == ListPolicy.CONCAT && bt == Pile.Type.PILE2 && ot == Pile.Type.PILE2) {
+      ReadableSonListImpl bl = (ReadableSonListImpl) base.get(name).getValue();
+      ReadableSonListImpl ol = (ReadableSonListImpl) overlay.get(name).getValue();
+      SonStreamingListWriter<?> inner = w.list(name);
+      inner.appendRangeFrom(bl.getPile(), 0, bl.size(), base.getNameMap());
+      inner.appendRangeFrom(ol.getPile(), 0, ol.size(), overlay.getNameMap());
+      inner.endList();
+    } else {
+      w.appendFrom(name, overlay.getPile(), j, overlay.getNameMap());
+    }
+  }
+}
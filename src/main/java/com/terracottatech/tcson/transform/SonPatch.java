@@ -0,0 +1,213 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.transform;
+
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.Son;
+import com.terracottatech.tcson.pile.ManagedBuffer;
+import com.terracottatech.tcson.pile.Pile;
+import com.terracottatech.tcson.pile.PileReader;
+import com.terracottatech.tcson.reading.GlobalNameMapReader;
+import com.terracottatech.tcson.reading.ReadableSonMapImpl;
+import com.terracottatech.tcson.writing.SonStreamingListWriter;
+import com.terracottatech.tcson.writing.SonStreamingMapWriter;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.terracottatech.tcson.transform.SonDiff.PATCH;
+import static com.terracottatech.tcson.transform.SonDiff.REMOVE;
+import static com.terracottatech.tcson.transform.SonDiff.SET;
+import static com.terracottatech.tcson.transform.SonDiff.SIZE;
+
+/**
+ * Applies a patch produced by {@link SonDiff}. The result is written with
+ * the base document's name ids, so untouched values, subtrees included, are
+ * copied over as raw bytes; only patched values are re-encoded. Kept keys
+ * stay in base order, new keys follow them.
+ */
+public final class SonPatch {
+  private final GlobalNameMapReader baseNames;
+  private final GlobalNameMapReader patchNames;
+
+  private SonPatch(GlobalNameMapReader baseNames, GlobalNameMapReader patchNames) {
+    this.baseNames = baseNames;
+    this.patchNames = patchNames;
+  }
+
+  public static ByteBuffer apply(ReadableSonMap base, ByteBuffer patch) {
+    ManagedBuffer mb = new ManagedBuffer(Math.max(1024, base.footprint() + patch.remaining()));
+    apply(base, Son.readableMap(patch), mb);
+    ByteBuffer ret = mb.getBuffer();
+    ret.flip();
+    return ret;
+  }
+
+  public static void apply(ReadableSonMap base, ByteBuffer patch, ManagedBuffer out) {
+    apply(base, Son.readableMap(patch), out);
+  }
+
+  /**
+   * Write {@code base} with {@code patch} applied.
+   *
+   * @param base base document
+   * @param patch patch from {@link SonDiff}
+   * @param out destination
+   */
+  public static void apply(ReadableSonMap base, ReadableSonMap patch, ManagedBuffer out) {
+    ReadableSonMapImpl b = SonDiff.impl(base);
+    ReadableSonMapImpl p = SonDiff.impl(patch);
+    SonStreamingMapWriter<Void> w = new SonStreamingMapWriter<>(b.getNameSource(), out, b.getNameMap());
+    SonPatch patcher = new SonPatch(b.getNameMap(), p.getNameMap());
+    patcher.applyMap(b.getPile(), b.getKeysPile(), p.getPile(), p.getKeysPile(), w);
+    w.endMap();
+  }
+
+  private static IllegalArgumentException mismatch(Object where) {
+    return new IllegalArgumentException("Patch does not match base document at: " + where);
+  }
+
+  private int section(PileReader keys, String name) {
+    for (int i = 0; i < keys.size(); i++) {
+      if (patchNames.nameOf(keys.int32(i)).equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static PileReader keysOf(PileReader map) {
+    return map.pile(map.size() - 1);
+  }
+
+  private LinkedHashMap<String, Integer> mapSection(PileReader patch, PileReader patchKeys, String name) {
+    LinkedHashMap<String, Integer> ret = new LinkedHashMap<>();
+    int idx = section(patchKeys, name);
+    if (idx >= 0) {
+      PileReader sec = patch.pile(idx);
+      PileReader keys = sec.pile(sec.size() - 1);
+      for (int i = 0; i < keys.size(); i++) {
+        ret.put(patchNames.nameOf(keys.int32(i)), i);
+      }
+    }
+    return ret;
+  }
+
+  private HashMap<Integer, Integer> pairSection(PileReader sec) {
+    HashMap<Integer, Integer> ret = new HashMap<>();
+    for (int i = 0; i + 1 < sec.size(); i = i + 2) {
+      ret.put(sec.int32(i), i + 1);
+    }
+    return ret;
+  }
+
+  private void applyMap(PileReader base, PileReader baseKeys, PileReader patch, PileReader patchKeys,
+                        SonStreamingMapWriter<?> w) {
+    int si = section(patchKeys, SET);
+    PileReader sets = si < 0 ? null : patch.pile(si);
+    LinkedHashMap<String, Integer> setIdx = mapSection(patch, patchKeys, SET);
+    int pi = section(patchKeys, PATCH);
+    PileReader patches = pi < 0 ? null : patch.pile(pi);
+    Map<String, Integer> patchIdx = mapSection(patch, patchKeys, PATCH);
+    HashSet<String> removed = new HashSet<>();
+    int ri = section(patchKeys, REMOVE);
+    if (ri >= 0) {
+      PileReader r = patch.pile(ri);
+      for (int i = 0; i < r.size(); i++) {
+        removed.add(r.str(i));
+      }
+    }
+
+    for (int bi = 0; bi < baseKeys.size(); bi++) {
+      String name = baseNames.nameOf(baseKeys.int32(bi));
+      if (removed.contains(name)) {
+        continue;
+      }
+      Integer s = setIdx.remove(name);
+      Integer p = patchIdx.get(name);
+      if (s != null) {
+        w.appendFrom(name, sets, s, patchNames);
+      } else if (p != null) {
+        PileReader np = patches.pile(p);
+        switch (base.typeOf(bi)) {
+          case PILE1:
+            SonStreamingMapWriter<?> m = w.map(name);
+            PileReader nb = base.pile(bi);
+            applyMap(nb, keysOf(nb), np, keysOf(np), m);
+            m.endMap();
+            break;
+          case PILE2:
+            SonStreamingListWriter<?> l = w.list(name);
+            applyList(base.pile(bi), np, l);
+            l.endList();
+            break;
+          default:
+            throw mismatch(name);
+        }
+      } else {
+        w.appendFrom(name, base, bi, baseNames);
+      }
+    }
+    // new keys
+    for (Map.Entry<String, Integer> e : setIdx.entrySet()) {
+      w.appendFrom(e.getKey(), sets, e.getValue(), patchNames);
+    }
+  }
+
+  private void applyList(PileReader base, PileReader patch, SonStreamingListWriter<?> w) {
+    PileReader patchKeys = keysOf(patch);
+    int ni = section(patchKeys, SIZE);
+    if (ni < 0) {
+      throw mismatch(SIZE);
+    }
+    int cnt = patch.int32(ni);
+    int si = section(patchKeys, SET);
+    PileReader sets = si < 0 ? null : patch.pile(si);
+    HashMap<Integer, Integer> setIdx = sets == null ? new HashMap<>() : pairSection(sets);
+    int pi = section(patchKeys, PATCH);
+    PileReader patches = pi < 0 ? null : patch.pile(pi);
+    HashMap<Integer, Integer> patchIdx = patches == null ? new HashMap<>() : pairSection(patches);
+
+    for (int i = 0; i < cnt; i++) {
+      Integer s = setIdx.get(i);
+      Integer p = patchIdx.get(i);
+      if (s != null) {
+        w.appendFrom(sets, s, patchNames);
+      } else if (i >= base.size()) {
+        throw mismatch(i);
+      } else if (p != null) {
+        PileReader np = patches.pile(p);
+        if (base.typeOf(i) == Pile.Type.PILE1) {
+          SonStreamingMapWriter<?> m = w.map();
+          PileReader nb = base.pile(i);
+          applyMap(nb, keysOf(nb), np, keysOf(np), m);
+          m.endMap();
+        } else if (base.typeOf(i) == Pile.Type.PILE2) {
+          SonStreamingListWriter<?> l = w.list();
+          applyList(base.pile(i), np, l);
+          l.endList();
+        } else {
+          throw mismatch(i);
+        }
+      } else {
+        w.appendFrom(base, i, baseNames);
+      }
+    }
+  }
+}
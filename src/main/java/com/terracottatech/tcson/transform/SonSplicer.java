@@ -0,0 +1,270 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.transform;
+
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.SonList;
+import com.terracottatech.tcson.SonMap;
+import com.terracottatech.tcson.SonValue;
+import com.terracottatech.tcson.mutable.MutableSonListImpl;
+import com.terracottatech.tcson.mutable.MutableSonMapImpl;
+import com.terracottatech.tcson.parser.FieldReference;
+import com.terracottatech.tcson.parser.query.ParseException;
+import com.terracottatech.tcson.pile.ManagedBuffer;
+import com.terracottatech.tcson.pile.PileReader;
+import com.terracottatech.tcson.query.SonDotParser;
+import com.terracottatech.tcson.query.SonDotTraversal;
+import com.terracottatech.tcson.reading.GlobalNameMapReader;
+import com.terracottatech.tcson.reading.ReadableSonListImpl;
+import com.terracottatech.tcson.reading.ReadableSonMapImpl;
+import com.terracottatech.tcson.writing.SonStreamingListWriter;
+import com.terracottatech.tcson.writing.SonStreamingMapWriter;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Changes one value of a SON map by splicing, producing a new buffer. Only
+ * the maps and lists along the path are rebuilt; the values either side of
+ * the path at each level are copied across as bulk byte ranges, so the cost
+ * is in proportion to the depth of the path and the size of the change, not
+ * the size of the document.
+ * <p>
+ * Paths name a single value, by key in maps and by index in lists; negative
+ * list indexes count from the end. The source is left untouched.
+ */
+public final class SonSplicer {
+  private static final SonDotParser PARSER = new SonDotParser();
+
+  private enum Op {
+    REPLACE,
+    INSERT,
+    REMOVE
+  }
+
+  private SonSplicer() {
+  }
+
+  /**
+   * Replace an existing value.
+   *
+   * @param doc source document
+   * @param dotPath path to the value
+   * @param value new value
+   * @return new document
+   * @throws NoSuchElementException if there is no value at the path
+   */
+  public static ByteBuffer replace(ReadableSonMap doc, String dotPath, SonValue value) {
+    return replace(doc, parse(dotPath), value);
+  }
+
+  public static ByteBuffer replace(ReadableSonMap doc, SonDotTraversal path, SonValue value) {
+    return splice(doc, path, Op.REPLACE, value);
+  }
+
+  /**
+   * Insert a value: a new key in a map, or a new element in a list, before
+   * the one at the index given. An index of the list size, or -1, appends.
+   *
+   * @param doc source document
+   * @param dotPath path to the new value
+   * @param value new value
+   * @return new document
+   * @throws IllegalArgumentException if a map already has the key
+   */
+  public static ByteBuffer insert(ReadableSonMap doc, String dotPath, SonValue value) {
+    return insert(doc, parse(dotPath), value);
+  }
+
+  public static ByteBuffer insert(ReadableSonMap doc, SonDotTraversal path, SonValue value) {
+    return splice(doc, path, Op.INSERT, value);
+  }
+
+  /**
+   * Remove a value.
+   *
+   * @param doc source document
+   * @param dotPath path to the value
+   * @return new document
+   * @throws NoSuchElementException if there is no value at the path
+   */
+  public static ByteBuffer remove(ReadableSonMap doc, String dotPath) {
+    return remove(doc, parse(dotPath));
+  }
+
+  public static ByteBuffer remove(ReadableSonMap doc, SonDotTraversal path) {
+    return splice(doc, path, Op.REMOVE, null);
+  }
+
+  private static SonDotTraversal parse(String dotPath) {
+    try {
+      return PARSER.parse(dotPath);
+    } catch (ParseException e) {
+      throw new IllegalArgumentException("Bad path: " + dotPath, e);
+    }
+  }
+
+  private static ByteBuffer splice(ReadableSonMap doc, SonDotTraversal path, Op op, SonValue value) {
+    if (!(doc instanceof ReadableSonMapImpl)) {
+      throw new IllegalArgumentException("Cannot splice a " + doc.getClass().getName());
+    }
+    List<FieldReference> spec = path.getTraversalSpec();
+    if (spec.isEmpty()) {
+      throw new IllegalArgumentException("Empty path");
+    }
+    ReadableSonMapImpl root = (ReadableSonMapImpl) doc;
+    GlobalNameMapReader names = root.getNameMap();
+    // same ids as the source, so untouched values copy verbatim
+    SonStreamingMapWriter<Void> w = new SonStreamingMapWriter<>(root.getNameSource(),
+                                                                new ManagedBuffer(root.toBuffer().remaining() + 64),
+                                                                names);
+    new Splice(spec, path, op, value, names).map(w, root);
+    w.endMap();
+    ByteBuffer ret = w.buffer().getBuffer();
+    ret.flip();
+    return ret;
+  }
+
+  private static final class Splice {
+    private final List<FieldReference> spec;
+    private final SonDotTraversal path;
+    private final Op op;
+    private final SonValue value;
+    private final GlobalNameMapReader names;
+    private int depth = 0;
+
+    Splice(List<FieldReference> spec, SonDotTraversal path, Op op, SonValue value, GlobalNameMapReader names) {
+      this.spec = spec;
+      this.path = path;
+      this.op = op;
+      this.value = value;
+      this.names = names;
+    }
+
+    private boolean last() {
+      return depth == spec.size() - 1;
+    }
+
+    void map(SonStreamingMapWriter<?> w, ReadableSonMapImpl src) {
+      FieldReference fr = spec.get(depth);
+      if (fr.getType() != FieldReference.Type.MAP) {
+        throw new NoSuchElementException(path.toString());
+      }
+      String name = fr.mapRef().getFieldName();
+      PileReader pile = src.getPile();
+      PileReader keys = src.getKeysPile();
+      int n = src.size();
+      int idx = src.indexOf(name);
+      if (last() && op == Op.INSERT) {
+        if (idx >= 0) {
+          throw new IllegalArgumentException("Key already present: " + path);
+        }
+        w.appendRangeFrom(pile, keys, 0, n, names);
+        writeValue(w, name);
+        return;
+      }
+      if (idx < 0) {
+        throw new NoSuchElementException(path.toString());
+      }
+      w.appendRangeFrom(pile, keys, 0, idx, names);
+      if (!last()) {
+        Object child = src.get(name).getValue();
+        depth++;
+        if (child instanceof ReadableSonMapImpl) {
+          SonStreamingMapWriter<?> inner = w.map(name);
+          map(inner, (ReadableSonMapImpl) child);
+          inner.endMap();
+        } else if (child instanceof ReadableSonListImpl) {
+          SonStreamingListWriter<?> inner = w.list(name);
+          list(inner, (ReadableSonListImpl) child);
+          inner.endList();
+        } else {
+          throw new NoSuchElementException(path.toString());
+        }
+      } else if (op == Op.REPLACE) {
+        writeValue(w, name);
+      }
+      w.appendRangeFrom(pile, keys, idx + 1, n, names);
+    }
+
+    void list(SonStreamingListWriter<?> w, ReadableSonListImpl src) {
+      FieldReference fr = spec.get(depth);
+      if (fr.getType() != FieldReference.Type.ARRAY) {
+        throw new NoSuchElementException(path.toString());
+      }
+      List<FieldReference.ArraySlice> slices = fr.arrSpec().getArrayMembers();
+      if (slices.size() != 1 || slices.get(0).getLeft() != slices.get(0).getRight()) {
+        throw new IllegalArgumentException("Path must name a single value: " + path);
+      }
+      PileReader pile = src.getPile();
+      int n = src.size();
+      int idx = slices.get(0).getLeft();
+      if (last() && op == Op.INSERT) {
+        idx = idx < 0 ? n + idx + 1 : idx;
+        if (idx < 0 || idx > n) {
+          throw new NoSuchElementException(path.toString());
+        }
+        w.appendRangeFrom(pile, 0, idx, names);
+        writeValue(w);
+        w.appendRangeFrom(pile, idx, n, names);
+        return;
+      }
+      idx = idx < 0 ? n + idx : idx;
+      if (idx < 0 || idx >= n) {
+        throw new NoSuchElementException(path.toString());
+      }
+      w.appendRangeFrom(pile, 0, idx, names);
+      if (!last()) {
+        Object child = src.get(idx).getValue();
+        depth++;
+        if (child instanceof ReadableSonMapImpl) {
+          SonStreamingMapWriter<?> inner = w.map();
+          map(inner, (ReadableSonMapImpl) child);
+          inner.endMap();
+        } else if (child instanceof ReadableSonListImpl) {
+          SonStreamingListWriter<?> inner = w.list();
+          list(inner, (ReadableSonListImpl) child);
+          inner.endList();
+        } else {
+          throw new NoSuchElementException(path.toString());
+        }
+      } else if (op == Op.REPLACE) {
+        writeValue(w);
+      }
+      w.appendRangeFrom(pile, idx + 1, n, names);
+    }
+
+    private void writeValue(SonStreamingMapWriter<?> w, String name) {
+      value.getType().mutableMapToBuffered(w, name, mutable(value.getValue()));
+    }
+
+    private void writeValue(SonStreamingListWriter<?> w) {
+      value.getType().mutableListToBuffered(w, mutable(value.getValue()));
+    }
+
+    // the writers take nested values in their mutable form
+    private static Object mutable(Object v) {
+      if (v instanceof SonMap && !(v instanceof MutableSonMapImpl)) {
+        return ((SonMap<?>) v).asMutable();
+      }
+      if (v instanceof SonList && !(v instanceof MutableSonListImpl)) {
+        return ((SonList<?>) v).asMutable();
+      }
+      return v;
+    }
+  }
+}
@@ -15,6 +15,11 @@
  */
 package com.terracottatech.tcson.writing;
 
+import com.terracottatech.tcson.reading.GlobalNameMapReader;
+import com.terracottatech.tcson.reading.GlobalNameTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Set;
 
@@ -25,7 +30,13 @@ import java.util.Set;
  */
 public class GlobalNameMapWriter {
   private final LinkedHashMap<String, Integer> map;
+  private final ArrayList<String> names = new ArrayList<>();
   private int idGen = 0;
+  private boolean nameIndex = false;
+  private boolean canonical = false;
+  private GlobalNameTable remapSource;
+  private int[] remap;
+  private boolean remapIdentity;
 
   public GlobalNameMapWriter() {
     map = new LinkedHashMap<>();
@@ -38,12 +49,119 @@ public class GlobalNameMapWriter {
     }
     int id = idGen++;
     map.put(name, id);
+    names.add(name);
     return id;
   }
 
+  /**
+   * Allocate every name of a source table, in id order. Done on an empty
+   * writer this makes ids identical to the source's, so nested piles can be
+   * copied from that source verbatim.
+   *
+   * @param src source names
+   */
+  public void seed(GlobalNameMapReader src) {
+    GlobalNameTable table = src.getTable();
+    for (int i = 0; i < table.size(); i++) {
+      allocateId(table.nameOf(i));
+    }
+  }
+
+  /**
+   * Does every id of the source mean the same name here?
+   *
+   * @param src source names
+   * @return true if source piles can be copied without remapping ids
+   */
+  public boolean sharesIds(GlobalNameMapReader src) {
+    remapFor(src);
+    return remapIdentity;
+  }
+
+  /**
+   * Translate a source name id into an id in this map, allocating as needed.
+   *
+   * @param src source names
+   * @param srcId source id
+   * @return id here
+   */
+  public int mapId(GlobalNameMapReader src, int srcId) {
+    int[] r = remapFor(src);
+    int ret = r[srcId];
+    if (ret < 0) {
+      ret = allocateId(src.nameOf(srcId));
+      r[srcId] = ret;
+    }
+    return ret;
+  }
+
+  private int[] remapFor(GlobalNameMapReader src) {
+    GlobalNameTable table = src.getTable();
+    if (table != remapSource) {
+      int cnt = table.size();
+      boolean identity = cnt <= names.size();
+      for (int i = 0; identity && i < cnt; i++) {
+        identity = names.get(i).equals(table.nameOf(i));
+      }
+      int[] r = new int[cnt];
+      if (identity) {
+        for (int i = 0; i < cnt; i++) {
+          r[i] = i;
+        }
+      } else {
+        Arrays.fill(r, -1);
+      }
+      remap = r;
+      remapIdentity = identity;
+      remapSource = table;
+    }
+    return remap;
+  }
+
+  /**
+   * Have the written name table carry a hash index, so readers can look
+   * names up without decoding the table. Readers predating the index
+   * cannot read such documents, hence off by default.
+   *
+   * @param nameIndex true to write the index
+   */
+  public void setNameIndex(boolean nameIndex) {
+    this.nameIndex = nameIndex;
+  }
+
+  public boolean isNameIndex() {
+    return nameIndex;
+  }
+
+  /**
+   * Canonical encoding: every map must have its keys in ascending
+   * {@link String#compareTo(String)} order, so that ids, which are handed
+   * out in order of first use, come out the same for equal documents. Must
+   * be chosen before any name is allocated.
+   *
+   * @param canonical true for canonical encoding
+   */
+  public void setCanonical(boolean canonical) {
+    if (canonical && !map.isEmpty()) {
+      throw new IllegalStateException("Canonical mode must be chosen before any names are written");
+    }
+    this.canonical = canonical;
+  }
+
+  public boolean isCanonical() {
+    return canonical;
+  }
+
+  public String nameOf(int id) {
+    return names.get(id);
+  }
+
   public void clear() {
     map.clear();
+    names.clear();
     idGen = 0;
+    remapSource = null;
+    remap = null;
   }
 
   public Set<String> getNamesInOrder() {
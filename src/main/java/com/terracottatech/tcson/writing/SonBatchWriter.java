@@ -0,0 +1,94 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.writing;
+
+import com.terracottatech.tcson.MutableSonMap;
+import com.terracottatech.tcson.NameSource;
+import com.terracottatech.tcson.codec.SonCodec;
+import com.terracottatech.tcson.mutable.MutableSonValue;
+import com.terracottatech.tcson.pile.ManagedBuffer;
+
+/**
+ * Writes a batch of maps which share a single global name table. The
+ * result is an ordinary root SON list whose elements are all maps, so
+ * each document carries only its values and key ids; names are written
+ * once for the whole batch. Read back with
+ * {@link com.terracottatech.tcson.reading.SonBatchReader}, or as a plain
+ * readable list.
+ */
+public class SonBatchWriter {
+  private final SonStreamingListWriter<Void> list;
+  private int count = 0;
+  private boolean finished = false;
+
+  public SonBatchWriter(NameSource nameSource) {
+    this(nameSource, new ManagedBuffer(1024));
+  }
+
+  public SonBatchWriter(NameSource nameSource, ManagedBuffer buffer) {
+    this.list = new SonStreamingListWriter<>(nameSource, buffer);
+  }
+
+  /**
+   * Start the next document. It must be ended, with {@code endMap()},
+   * before the next one is started.
+   *
+   * @return writer for the document
+   */
+  public SonStreamingMapWriter<?> document() {
+    checkOpen();
+    count++;
+    return list.map();
+  }
+
+  public SonBatchWriter add(MutableSonMap map) {
+    SonStreamingMapWriter<?> w = document();
+    for (MutableSonValue.MapValue ent : map) {
+      ent.getType().mutableMapToBuffered(w, ent.getKey(), ent.getValue());
+    }
+    w.endMap();
+    return this;
+  }
+
+  public <T> SonBatchWriter add(T value, SonCodec<T> codec) {
+    SonStreamingMapWriter<?> w = document();
+    codec.appendTo(value, w);
+    w.endMap();
+    return this;
+  }
+
+  public int count() {
+    return count;
+  }
+
+  /**
+   * Write the shared name table and close out the batch.
+   *
+   * @return the buffer holding the batch
+   */
+  public ManagedBuffer finish() {
+    checkOpen();
+    finished = true;
+    list.endList();
+    return list.buffer();
+  }
+
+  private void checkOpen() {
+    if (finished) {
+      throw new IllegalStateException("Batch already finished");
+    }
+  }
+}
@@ -20,7 +20,9 @@ import com.terracottatech.tcson.UTCMillisDate;
 import com.terracottatech.tcson.pile.ManagedBuffer;
 import com.terracottatech.tcson.pile.Pile;
 import com.terracottatech.tcson.pile.PileWriter;
+import com.terracottatech.tcson.pile.PileReader;
 import com.terracottatech.tcson.pile.PileWriterImpl;
+import com.terracottatech.tcson.reading.GlobalNameMapReader;
 
 import java.nio.ByteBuffer;
 import java.util.UUID;
@@ -38,6 +40,20 @@ public class SonStreamingListWriter<E> {
     this(null, nameSource, new PileWriterImpl(Pile.Type.PILE2, b), new GlobalNameMapWriter());
   }
 
+  /**
+   * Root writer whose name ids start out identical to those of another
+   * document.
+   *
+   * @param nameSource name source
+   * @param b buffer
+   * @param seed names to seed from
+   * @see SonStreamingMapWriter#SonStreamingMapWriter(NameSource, ManagedBuffer, GlobalNameMapReader)
+   */
+  public SonStreamingListWriter(NameSource nameSource, ManagedBuffer b, GlobalNameMapReader seed) {
+    this(nameSource, b);
+    globalNameMap.seed(seed);
+  }
+
   public SonStreamingListWriter(E parent, NameSource nameSource, PileWriter pw, GlobalNameMapWriter globalMap) {
     this.parent = parent;
     this.nameSource = nameSource;
@@ -87,6 +103,36 @@ public class SonStreamingListWriter<E> {
     return this;
   }
 
+  /**
+   * Append an int at its full 4 byte width rather than as a varint, so it
+   * can later be overwritten in place; a varint when canonical.
+   *
+   * @param b value
+   * @return this writer
+   */
+  public SonStreamingListWriter<E> appendFixed(int b) {
+    if (globalNameMap.isCanonical()) {
+      return append(b);
+    }
+    writer.int32(b);
+    return this;
+  }
+
+  /**
+   * Append a long at its full 8 byte width rather than as a varint, so it
+   * can later be overwritten in place; a varint when canonical.
+   *
+   * @param b value
+   * @return this writer
+   */
+  public SonStreamingListWriter<E> appendFixed(long b) {
+    if (globalNameMap.isCanonical()) {
+      return append(b);
+    }
+    writer.int64(b);
+    return this;
+  }
+
   public SonStreamingListWriter<E> append(float b) {
     writer.float32(b);
     return this;
@@ -121,6 +167,69 @@ public class SonStreamingListWriter<E> {
     return this;
   }
 
+  /**
+   * Append a value copied straight from another document's pile.
+   *
+   * @param src source pile
+   * @param idx index of the value in the source pile
+   * @param srcNames source document's names
+   * @return this writer
+   * @see SonStreamingMapWriter#appendFrom(String, PileReader, int, GlobalNameMapReader)
+   */
+  public SonStreamingListWriter<E> appendFrom(PileReader src, int idx, GlobalNameMapReader srcNames) {
+    SonStreamingMapWriter.copyValue(writer, src, idx, srcNames, globalNameMap);
+    return this;
+  }
+
+  /**
+   * Append a run of values copied from another document's list pile, in
+   * one bulk copy when no ids need translating.
+   *
+   * @param src source pile
+   * @param from first index, inclusive
+   * @param to last index, exclusive
+   * @param srcNames source document's names
+   * @return this writer
+   */
+  public SonStreamingListWriter<E> appendRangeFrom(PileReader src, int from, int to, GlobalNameMapReader srcNames) {
+    if (!globalNameMap.isCanonical() && globalNameMap.sharesIds(srcNames)) {
+      writer.copyRange(src, from, to);
+    } else {
+      for (int i = from; i < to; i++) {
+        appendFrom(src, i, srcNames);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Write a hash index of the names with this document.
+   *
+   * @param on true to write the index
+   * @return this writer
+   * @see SonStreamingMapWriter#nameIndex(boolean)
+   */
+  public SonStreamingListWriter<E> nameIndex(boolean on) {
+    globalNameMap.setNameIndex(on);
+    return this;
+  }
+
+  /**
+   * Write this document canonically.
+   *
+   * @param on true for canonical encoding
+   * @return this writer
+   * @see SonStreamingMapWriter#canonical(boolean)
+   */
+  public SonStreamingListWriter<E> canonical(boolean on) {
+    globalNameMap.setCanonical(on);
+    return this;
+  }
+
+  public boolean isCanonical() {
+    return globalNameMap.isCanonical();
+  }
+
   public SonStreamingListWriter<E> appendNull() {
     writer.nullValue();
     return this;
@@ -136,7 +245,9 @@ public class SonStreamingListWriter<E> {
     }
 
     writer.endPile();
-    // nothing else to do, simple simple.
+    if (parent == null) {
+      writer.managedBuffer().flush();
+    }
     return parent;
   }
 
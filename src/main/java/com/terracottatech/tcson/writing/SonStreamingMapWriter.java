@@ -20,10 +20,14 @@ import com.terracottatech.tcson.UTCMillisDate;
 import com.terracottatech.tcson.pile.ManagedBuffer;
 import com.terracottatech.tcson.pile.Pile;
 import com.terracottatech.tcson.pile.PileWriter;
+import com.terracottatech.tcson.pile.PileReader;
 import com.terracottatech.tcson.pile.PileWriterImpl;
+import com.terracottatech.tcson.pile.StringTool;
+import com.terracottatech.tcson.reading.GlobalNameMapReader;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.UUID;
@@ -72,6 +76,7 @@ public class SonStreamingMapWriter<E> {
   private final E parent;
   private final NameSource nameSource;
   private final PileWriter writer;
+  private String lastName = null;
   private byte[] tmpArray = new byte[32];
   private ByteBuffer tmpBuffer = ByteBuffer.wrap(tmpArray);
 
@@ -83,6 +88,21 @@ public class SonStreamingMapWriter<E> {
     this(null, nameSource, new PileWriterImpl(Pile.Type.PILE1, b), new GlobalNameMapWriter());
   }
 
+  /**
+   * Root writer whose name ids start out identical to those of another
+   * document, so values copied from it with
+   * {@link #appendFrom(String, PileReader, int, GlobalNameMapReader)} are
+   * copied verbatim. Every seeded name ends up in the written name table.
+   *
+   * @param nameSource name source
+   * @param b buffer
+   * @param seed names to seed from
+   */
+  public SonStreamingMapWriter(NameSource nameSource, ManagedBuffer b, GlobalNameMapReader seed) {
+    this(nameSource, b);
+    globalNameMap.seed(seed);
+  }
+
   SonStreamingMapWriter(E parent, NameSource nameSource, PileWriter pw, GlobalNameMapWriter globalMap) {
     this.parent = parent;
     this.nameSource = nameSource;
@@ -107,6 +127,13 @@ public class SonStreamingMapWriter<E> {
     if (!localNames.add(name)) {
       throw new IllegalArgumentException();
     }
+    if (globalNameMap.isCanonical()) {
+      if (lastName != null && name.compareTo(lastName) < 0) {
+        throw new IllegalStateException("Canonical maps need keys in ascending order: '" + name + "' after '" +
+                                        lastName + "'");
+      }
+      lastName = name;
+    }
     return globalNameMap.allocateId(name);
   }
 
@@ -146,6 +173,47 @@ public class SonStreamingMapWriter<E> {
     return this;
   }
 
+  /**
+   * Append an int at its full 4 byte width rather than as a varint, so it
+   * can later be overwritten in place, see
+   * {@link com.terracottatech.tcson.transform.SonInPlaceUpdater}. A
+   * canonical writer writes the usual varint instead, as canonical documents
+   * have one encoding per value.
+   *
+   * @param name key
+   * @param v value
+   * @return this writer
+   */
+  public SonStreamingMapWriter<E> appendFixed(String name, int v) {
+    if (globalNameMap.isCanonical()) {
+      return append(name, v);
+    }
+    int id = idOf(name);
+    IndexDescr descr = new IndexDescr(id, writer.size());
+    writer.int32(v);
+    localIds.add(descr);
+    return this;
+  }
+
+  /**
+   * Append a long at its full 8 byte width rather than as a varint, so it
+   * can later be overwritten in place; a varint when canonical.
+   *
+   * @param name key
+   * @param v value
+   * @return this writer
+   */
+  public SonStreamingMapWriter<E> appendFixed(String name, long v) {
+    if (globalNameMap.isCanonical()) {
+      return append(name, v);
+    }
+    int id = idOf(name);
+    IndexDescr descr = new IndexDescr(id, writer.size());
+    writer.int64(v);
+    localIds.add(descr);
+    return this;
+  }
+
   public SonStreamingMapWriter<E> append(String name, float v) {
     // record name::id for global table
     int id = idOf(name);
@@ -229,6 +297,139 @@ public class SonStreamingMapWriter<E> {
     return this;
   }
 
+  /**
+   * Append a value copied straight from another document's pile. Scalars
+   * are copied as raw bytes; maps and lists are too, unless their key ids
+   * need translating into this document's name table.
+   *
+   * @param name key
+   * @param src source pile
+   * @param idx index of the value in the source pile
+   * @param srcNames source document's names
+   * @return this writer
+   */
+  public SonStreamingMapWriter<E> appendFrom(String name, PileReader src, int idx, GlobalNameMapReader srcNames) {
+    // record name::id for global table
+    int id = idOf(name);
+    IndexDescr descr = new IndexDescr(id, writer.size());
+    copyValue(writer, src, idx, srcNames, globalNameMap);
+    localIds.add(descr);
+    return this;
+  }
+
+  /**
+   * Append a run of entries copied from another document's map, in one bulk
+   * copy when no ids need translating.
+   *
+   * @param src source map pile
+   * @param keys source map's pile of key ids
+   * @param from first index, inclusive
+   * @param to last index, exclusive
+   * @param srcNames source document's names
+   * @return this writer
+   */
+  public SonStreamingMapWriter<E> appendRangeFrom(PileReader src, PileReader keys, int from, int to,
+                                                  GlobalNameMapReader srcNames) {
+    if (globalNameMap.isCanonical() || !globalNameMap.sharesIds(srcNames)) {
+      for (int i = from; i < to; i++) {
+        appendFrom(srcNames.nameOf(keys.int32(i)), src, i, srcNames);
+      }
+      return this;
+    }
+    int base = writer.size();
+    for (int i = from; i < to; i++) {
+      int id = keys.int32(i);
+      if (!localNames.add(srcNames.nameOf(id))) {
+        throw new IllegalArgumentException();
+      }
+      localIds.add(new IndexDescr(id, base + i - from));
+    }
+    writer.copyRange(src, from, to);
+    return this;
+  }
+
+  static void copyValue(PileWriter w, PileReader src, int idx, GlobalNameMapReader srcNames,
+                        GlobalNameMapWriter globalNameMap) {
+    if (globalNameMap.isCanonical()) {
+      copyCanonical(w, src, idx, srcNames, globalNameMap);
+      return;
+    }
+    Pile.Type type = src.typeOf(idx);
+    if ((type != Pile.Type.PILE1 && type != Pile.Type.PILE2) || globalNameMap.sharesIds(srcNames)) {
+      w.copy(src, idx);
+      return;
+    }
+    PileReader nested = src.pile(idx);
+    PileWriter pw = w.pile(type);
+    int cnt = nested.size();
+    if (type == Pile.Type.PILE1) {
+      // values, then the pile of key ids
+      for (int i = 0; i < cnt - 1; i++) {
+        copyValue(pw, nested, i, srcNames, globalNameMap);
+      }
+      PileReader keys = nested.pile(cnt - 1);
+      PileWriter kw = pw.pile(Pile.Type.PILE1);
+      for (int i = 0; i < keys.size(); i++) {
+        kw.zigzag32(globalNameMap.mapId(srcNames, keys.int32(i)));
+      }
+      kw.endPile();
+    } else {
+      for (int i = 0; i < cnt; i++) {
+        copyValue(pw, nested, i, srcNames, globalNameMap);
+      }
+    }
+    pw.endPile();
+  }
+
+  /**
+   * Copy re-encoded the way a canonical writer would have written it: keys
+   * sorted, ids allocated key then value, integers in their usual width.
+   */
+  private static void copyCanonical(PileWriter w, PileReader src, int idx, GlobalNameMapReader srcNames,
+                                    GlobalNameMapWriter globalNameMap) {
+    switch (src.typeOf(idx)) {
+      case INT32:
+        w.zigzag32(src.int32(idx));
+        return;
+      case INT64:
+        w.zigzag64(src.int64(idx));
+        return;
+      case PILE2:
+        PileReader list = src.pile(idx);
+        PileWriter lw = w.pile(Pile.Type.PILE2);
+        for (int i = 0; i < list.size(); i++) {
+          copyCanonical(lw, list, i, srcNames, globalNameMap);
+        }
+        lw.endPile();
+        return;
+      case PILE1:
+        break;
+      default:
+        w.copy(src, idx);
+        return;
+    }
+    PileReader nested = src.pile(idx);
+    PileReader keys = nested.pile(nested.size() - 1);
+    int cnt = keys.size();
+    Integer[] order = new Integer[cnt];
+    for (int i = 0; i < cnt; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> srcNames.nameOf(keys.int32(a)).compareTo(srcNames.nameOf(keys.int32(b))));
+    PileWriter pw = w.pile(Pile.Type.PILE1);
+    int[] ids = new int[cnt];
+    for (int k = 0; k < cnt; k++) {
+      ids[k] = globalNameMap.mapId(srcNames, keys.int32(order[k]));
+      copyCanonical(pw, nested, order[k], srcNames, globalNameMap);
+    }
+    PileWriter kw = pw.pile(Pile.Type.PILE1);
+    for (int id : ids) {
+      kw.zigzag32(id);
+    }
+    kw.endPile();
+    pw.endPile();
+  }
+
   public SonStreamingMapWriter<E> appendNull(String name) {
     // record name::id for global table
     int id = idOf(name);
@@ -256,6 +457,9 @@ public class SonStreamingMapWriter<E> {
 
     // end the writer.
     writer.endPile();
+    if (parent == null) {
+      writer.managedBuffer().flush();
+    }
 
     // return the parent. sigh.
     return parent;
@@ -275,9 +479,63 @@ public class SonStreamingMapWriter<E> {
         w.str(str);
       }
     }
+    // ids are stored in 2 byte slots
+    if (globalNameMap.isNameIndex() && globalNameMap.size() < 0xffff) {
+      writeNameIndex(globalNameMap, w);
+    }
     w.endPile();
   }
 
+  private static void writeNameIndex(GlobalNameMapWriter globalNameMap, PileWriter w) {
+    int cnt = globalNameMap.size();
+    int slots = Integer.highestOneBit(Math.max(2, cnt * 2 - 1)) << 1;
+    int mask = slots - 1;
+    byte[] index = new byte[slots * 2];
+    for (int id = 0; id < cnt; id++) {
+      int slot = StringTool.encodedHash(globalNameMap.nameOf(id)) & mask;
+      while (index[slot * 2] != 0 || index[slot * 2 + 1] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      index[slot * 2] = (byte) ((id + 1) >>> 8);
+      index[slot * 2 + 1] = (byte) (id + 1);
+    }
+    w.byteArray(SonWriter.NAME_INDEX_SIGNIFIER, index, 0, index.length);
+  }
+
+  /**
+   * Write a hash index of the names with this document, letting readers
+   * look keys up without decoding the name table. Applies to the whole
+   * document.
+   *
+   * @param on true to write the index
+   * @return this writer
+   * @see GlobalNameMapWriter#setNameIndex(boolean)
+   */
+  public SonStreamingMapWriter<E> nameIndex(boolean on) {
+    globalNameMap.setNameIndex(on);
+    return this;
+  }
+
+  /**
+   * Write this document canonically, so equal documents encode to
+   * identical bytes. Keys of every map must then be appended in ascending
+   * order, else an {@link IllegalStateException} is thrown; values copied
+   * with {@code appendFrom} are re-encoded as needed. Applies to the whole
+   * document, and must be set before anything is appended.
+   *
+   * @param on true for canonical encoding
+   * @return this writer
+   * @see GlobalNameMapWriter#setCanonical(boolean)
+   */
+  public SonStreamingMapWriter<E> canonical(boolean on) {
+    globalNameMap.setCanonical(on);
+    return this;
+  }
+
+  public boolean isCanonical() {
+    return globalNameMap.isCanonical();
+  }
+
   public E getParent() {
     return parent;
   }
@@ -304,6 +562,7 @@ public class SonStreamingMapWriter<E> {
     globalNameMap.clear();
     localIds.clear();
     localNames.clear();
+    lastName = null;
     writer.reset();
   }
 
@@ -19,6 +19,7 @@ public interface SonWriter<E> {
 
   byte DATE_SIGNIFIER = (byte) -1;
   byte UUID_SIGNIFIER = (byte) -2;
+  byte NAME_INDEX_SIGNIFIER = (byte) -3;
 
   E end();
 
@@ -17,14 +17,28 @@ package com.terracottatech.tcson;
 
 import com.terracottatech.tcson.mutable.MutableSonListBuilder;
 import com.terracottatech.tcson.mutable.MutableSonMapBuilder;
+import com.terracottatech.tcson.mutable.MutableSonValue;
+import com.terracottatech.tcson.reading.ReadableSonMapImpl;
+import com.terracottatech.tcson.writing.SonStreamingMapWriter;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 
 public class MutableSonTest {
 
@@ -152,4 +166,327 @@ public class MutableSonTest {
     Assert.assertThat(m.get("keddy6").doubleValue(), is(13.0d));
     Assert.assertThat(m.get("key7hh").charValue(), is('&'));
   }
+
+  @Test
+  public void testCanonicalBytes() {
+    MutableSonMap inner1 = Son.writeableMap().put("z", 1).put("a", "one");
+    MutableSonMap m1 = Son.writeableMap()
+      .put("name", "fred")
+      .put("age", 20L)
+      .put("nested", inner1)
+      .put("list", Son.writeableList().add(1.5d).add(Son.writeableMap().put("q", true).put("b", (short) 3)));
+
+    MutableSonMap inner2 = Son.writeableMap().put("a", "one").put("z", 1);
+    MutableSonMap m2 = Son.writeableMap()
+      .put("list", Son.writeableList().add(1.5d).add(Son.writeableMap().put("b", (short) 3).put("q", true)))
+      .put("nested", inner2)
+      .put("age", 20L)
+      .put("name", "fred");
+
+    Assert.assertThat(m1.toBuffer().equals(m2.toBuffer()), is(false));
+    ByteBuffer canon = m1.toCanonicalBuffer();
+    Assert.assertThat(canon, is(m2.toCanonicalBuffer()));
+    Assert.assertThat(Son.readableMap(m2.toBuffer()).toCanonicalBuffer(), is(canon));
+    Assert.assertThat(Son.readableMap(canon).asMutable(), is(m1));
+  }
+
+  @Test
+  public void testCanonicalWriterRules() {
+    SonStreamingMapWriter<Void> w = Son.streamingMapWriter().canonical(true);
+    w.append("a", 1).append("c", 2);
+    try {
+      w.append("b", 3);
+      Assert.fail();
+    } catch (IllegalStateException e) {
+    }
+
+    SonStreamingMapWriter<Void> late = Son.streamingMapWriter();
+    late.append("a", 1);
+    try {
+      late.canonical(true);
+      Assert.fail();
+    } catch (IllegalStateException e) {
+    }
+  }
+
+  @Test
+  public void testOverlayMap() {
+    MutableSonMap big = Son.writeableMap();
+    for (int i = 0; i < 100; i++) {
+      big.put("k" + i, "value " + i);
+    }
+    MutableSonMap orig = Son.writeableMap()
+      .put("a", 1)
+      .put("big", big)
+      .put("nested", Son.writeableMap().put("x", 1).put("y", "two"))
+      .put("list", Son.writeableList().add(1).add("two"))
+      .put("s", "gone");
+    ReadableSonMap src = Son.readableMap(orig.toBuffer());
+
+    MutableSonMap expected = src.asMutable();
+    MutableSonMap overlay = Son.overlayMap(src);
+    for (MutableSonMap m : new MutableSonMap[] { expected, overlay }) {
+      m.put("a", 2L);
+      m.get("nested").mapValue().put("z", true).remove("x");
+      m.get("list").listValue().add(3.0d);
+      m.remove("s");
+      m.put("new", "one");
+      m.remove("a").put("a", 'c');
+    }
+
+    Assert.assertThat(overlay.size(), is(expected.size()));
+    Assert.assertThat(overlay, is(expected));
+    Assert.assertThat(overlay.keys(), contains("big", "nested", "list", "new", "a"));
+    Assert.assertThat(overlay.get("s"), nullValue());
+    Assert.assertThat(overlay.get("big").mapValue().get("k7").stringValue(), is("value 7"));
+
+    ReadableSonMap written = Son.readableMap(overlay.toBuffer());
+    Assert.assertThat(written, is(expected));
+    Assert.assertThat(written.keys(), contains("big", "nested", "list", "new", "a"));
+    Assert.assertThat(overlay.toCanonicalBuffer(), is(expected.toCanonicalBuffer()));
+
+    overlay.clear();
+    Assert.assertThat(overlay.size(), is(0));
+    Assert.assertThat(overlay.iterator().hasNext(), is(false));
+  }
+
+  @Test
+  public void testOverlayReadsLeaveSourceRaw() {
+    MutableSonMap orig = Son.writeableMap()
+      .put("a", 1)
+      .put("nested", Son.writeableMap().put("x", 1).put("deep", Son.writeableMap().put("y", 2)))
+      .put("list", Son.writeableList().add(1).add(Son.writeableMap().put("z", 3)));
+    ByteBuffer bytes = orig.toBuffer();
+    ReadableSonMap src = Son.readableMap(bytes.duplicate());
+
+    MutableSonMap overlay = Son.overlayMap(src);
+    Assert.assertThat(overlay, is(src.asMutable()));
+    Assert.assertThat(overlay.hashCode(), is(src.asMutable().hashCode()));
+    Assert.assertThat(overlay.toString(), is(src.asMutable().toString()));
+    for (MutableSonValue.MapValue ent : overlay) {
+      Assert.assertThat(ent.getKey(), not(nullValue()));
+    }
+    Assert.assertThat(overlay.get("list").listValue(), is(overlay.get("list").listValue()));
+    Assert.assertThat(overlay.toBuffer(), is(bytes));
+
+    MutableSonMap expected = src.asMutable();
+    for (MutableSonMap m : new MutableSonMap[] { expected, overlay }) {
+      for (MutableSonValue.MapValue ent : m) {
+        if (ent.getKey().equals("nested")) {
+          ent.mapValue().get("deep").mapValue().put("w", 4);
+        } else if (ent.getKey().equals("list")) {
+          ent.listValue().get(1).mapValue().remove("z");
+        }
+      }
+    }
+    Assert.assertThat(overlay, is(expected));
+    Assert.assertThat(Son.readableMap(overlay.toBuffer()), is(expected));
+  }
+
+  @Test
+  public void testOverlayDropsUnusedNames() {
+    MutableSonMap big = Son.writeableMap();
+    for (int i = 0; i < 100; i++) {
+      big.put("k" + i, i);
+    }
+    ReadableSonMap src = Son.readableMap(Son.writeableMap().put("a", 1).put("big", big).toBuffer());
+
+    MutableSonMap overlay = Son.overlayMap(src);
+    overlay.get("big").mapValue().remove("k0");
+    Assert.assertThat(((ReadableSonMapImpl) Son.readableMap(overlay.toBuffer())).getNameMap().size(), is(102));
+
+    overlay.remove("big");
+    ReadableSonMap written = Son.readableMap(overlay.toBuffer());
+    Assert.assertThat(written, is(Son.writeableMap().put("a", 1)));
+    Assert.assertThat(((ReadableSonMapImpl) written).getNameMap().size(), is(1));
+  }
+
+  @Test
+  public void testConcurrentVariants() throws Exception {
+    MutableSonMap map = Son.concurrentWriteableMap();
+    MutableSonList list = Son.concurrentWriteableList();
+    int threads = 4;
+    int each = 200;
+    ExecutorService exec = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int base = t * each;
+        futures.add(exec.submit(() -> {
+          for (int i = 0; i < each; i++) {
+            map.put("k" + (base + i), base + i);
+            list.add(base + i);
+            // iterating while others write must not fail
+            for (MutableSonValue.MapValue mv : map) {
+              Assert.assertThat(mv.getKey().startsWith("k"), is(true));
+            }
+          }
+        }));
+      }
+      for (Future<?> f : futures) {
+        f.get();
+      }
+    } finally {
+      exec.shutdown();
+    }
+    Assert.assertThat(map.size(), is(threads * each));
+    Assert.assertThat(list.size(), is(threads * each));
+    Assert.assertThat(map.get("k123").intValue(), is(123));
+    Assert.assertThat(Son.readableMap(map.toBuffer()).size(), is(threads * each));
+  }
+
+  @Test
+  public void testUnboxedValues() {
+    MutableSonMap map = Son.writeableMap()
+      .put("b", (byte) -3)
+      .put("s", (short) -300)
+      .put("i", Integer.MIN_VALUE)
+      .put("c", '\uffff')
+      .put("l", Long.MAX_VALUE)
+      .put("f", -1.5f)
+      .put("d", Double.NaN)
+      .put("t", true)
+      .put("str", "x")
+      .putNull("n");
+    Assert.assertThat(map.get("b").byteValue(), is((byte) -3));
+    Assert.assertThat(map.get("s").shortValue(), is((short) -300));
+    Assert.assertThat(map.get("i").intValue(), is(Integer.MIN_VALUE));
+    Assert.assertThat(map.get("c").charValue(), is('\uffff'));
+    Assert.assertThat(map.get("l").longValue(), is(Long.MAX_VALUE));
+    Assert.assertThat(map.get("f").floatValue(), is(-1.5f));
+    Assert.assertThat(Double.isNaN(map.get("d").doubleValue()), is(true));
+    Assert.assertThat(map.get("t").boolValue(), is(true));
+    Assert.assertThat(map.get("n").isNullValue(), is(true));
+
+    map.remove("i").put("b", 4L).put("i", 7);
+    Assert.assertThat(map.keys(), contains("b", "s", "c", "l", "f", "d", "t", "str", "n", "i"));
+    Assert.assertThat(map.get("b").longValue(), is(4L));
+    Assert.assertThat(map.get("c").charValue(), is('\uffff'));
+    Assert.assertThat(Son.readableMap(map.toBuffer()), is(map));
+
+    MutableSonList list = Son.writeableList().add(3).add(1.0d).add(2).add(0, 'a');
+    list.set(list.size(), false).set(1, 5L).remove(2);
+    Assert.assertThat(list.size(), is(4));
+    Assert.assertThat(list.get(0).charValue(), is('a'));
+    Assert.assertThat(list.get(1).longValue(), is(5L));
+    Assert.assertThat(list.get(2).intValue(), is(2));
+    Assert.assertThat(list.get(3).boolValue(), is(false));
+    Assert.assertThat(Son.readableList(list.toBuffer()), is(list));
+
+    MutableSonList nums = Son.writeableList().add(3).add(1).add(2);
+    nums.sort(Comparator.naturalOrder());
+    Assert.assertThat(nums.get(0).intValue(), is(1));
+    Assert.assertThat(nums.get(2).intValue(), is(3));
+  }
+
+  @Test
+  public void testMapGrowsAndShrinksIndex() {
+    MutableSonMap map = Son.writeableMap();
+    for (int i = 0; i < 100; i++) {
+      map.put("k" + i, i);
+      for (int j = 0; j <= i; j += 7) {
+        Assert.assertThat(map.get("k" + j).intValue(), is(j));
+      }
+      Assert.assertThat(map.get("k" + (i + 1)), nullValue());
+    }
+    for (int i = 0; i < 98; i++) {
+      map.remove("k" + i);
+      Assert.assertThat(map.get("k" + i), nullValue());
+      Assert.assertThat(map.get("k" + (i + 1)).intValue(), is(i + 1));
+      Assert.assertThat(map.size(), is(99 - i));
+    }
+    map.put("k0", 0).put("k98", -1);
+    Assert.assertThat(map.keys(), contains("k98", "k99", "k0"));
+    Assert.assertThat(map.get("k98").intValue(), is(-1));
+  }
+
+  @Test
+  public void testIncrementalRewrite() throws Exception {
+    MutableSonMap doc = Son.writeableMap()
+      .put("n", 1)
+      .put("a", Son.writeableMap().put("s", "x").put("b", Son.writeableMap().put("x", 1)))
+      .put("l", Son.writeableList().add(Son.writeableMap().put("y", 1)).add(2))
+      .put("z", 2.0d);
+    ByteBuffer first = doc.toBuffer();
+    Assert.assertThat(Son.readableMap(first), is(doc));
+    Field image = doc.getClass().getDeclaredField("image");
+    image.setAccessible(true);
+    Assert.assertThat(image.get(doc), nullValue());
+
+    // kept from the second write on; unchanged, the copy handed back is independent of the cached bytes
+    ByteBuffer second = doc.toBuffer();
+    Assert.assertThat(second, is(first));
+    Assert.assertThat(image.get(doc), not(nullValue()));
+    second.put(0, (byte) 0x7f);
+    ByteBuffer again = doc.toBuffer();
+    Assert.assertThat(again, is(first));
+    Assert.assertThat(Son.readableMap(again), is(doc));
+
+    doc.get("a").mapValue().get("b").mapValue().put("x", 2);
+    Assert.assertThat(Son.readableMap(doc.toBuffer()), is(doc));
+    doc.get("l").listValue().get(0).mapValue().put("y", "two");
+    Assert.assertThat(Son.readableMap(doc.toBuffer()), is(doc));
+    Assert.assertThat(Son.readableMap(doc.toBuffer()).get("l").listValue().get(0).mapValue().get("y").stringValue(),
+                      is("two"));
+
+    // a nested map written on its own must not leave its parent's copy looking current
+    MutableSonMap a = doc.get("a").mapValue();
+    a.put("k", true);
+    a.toBuffer();
+    Assert.assertThat(Son.readableMap(doc.toBuffer()).get("a").mapValue().get("k").boolValue(), is(true));
+
+    // churning keys does not grow the name table without bound
+    for (int i = 1; i < 200; i++) {
+      doc.remove("t" + (i - 1)).put("t" + i, i);
+      ReadableSonMapImpl written = (ReadableSonMapImpl) Son.readableMap(doc.toBuffer());
+      Assert.assertThat(written, is(doc));
+      Assert.assertThat(written.getNameMap().size() < 40, is(true));
+    }
+  }
+
+  @Test
+  public void testListIndexesAreBoundsChecked() {
+    for (MutableSonList list : new MutableSonList[] { Son.writeableList(), Son.concurrentWriteableList() }) {
+      list.add(1).add(1, 2).add(0, 0);
+      Assert.assertThat(list.size(), is(3));
+      Assert.assertThat(list.get(2).intValue(), is(2));
+      for (int idx : new int[] { -1, 4 }) {
+        try {
+          list.add(idx, 9);
+          Assert.fail();
+        } catch (IndexOutOfBoundsException e) {
+        }
+      }
+      Assert.assertThat(list.size(), is(3));
+    }
+  }
+
+  @Test
+  public void testIteratorsFailFast() {
+    MutableSonMap map = Son.writeableMap().put("a", 1).put("b", 2).put("c", 3);
+    try {
+      for (MutableSonValue.MapValue mv : map) {
+        map.remove(mv.getKey());
+      }
+      Assert.fail();
+    } catch (ConcurrentModificationException e) {
+      // expected
+    }
+    MutableSonList list = Son.writeableList().add(1).add(2).add(3);
+    try {
+      for (MutableSonValue v : list) {
+        list.remove(0);
+      }
+      Assert.fail();
+    } catch (ConcurrentModificationException e) {
+      // expected
+    }
+
+    // snapshots do not fail
+    MutableSonMap shared = Son.concurrentWriteableMap().put("a", 1).put("b", 2).put("c", 3);
+    for (MutableSonValue.MapValue mv : shared) {
+      shared.remove(mv.getKey());
+    }
+    Assert.assertThat(shared.size(), is(0));
+  }
 }
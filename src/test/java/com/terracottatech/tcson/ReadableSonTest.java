@@ -15,17 +15,33 @@
  */
 package com.terracottatech.tcson;
 
+import com.terracottatech.tcson.reading.GlobalNameTableCache;
 import com.terracottatech.tcson.reading.ReadableSonMapImpl;
+import com.terracottatech.tcson.reading.ReadableSonValue;
+import com.terracottatech.tcson.reading.SonKeyAccess;
 import com.terracottatech.tcson.writing.SonStreamingListWriter;
 import com.terracottatech.tcson.writing.SonStreamingMapWriter;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class ReadableSonTest {
@@ -282,4 +298,368 @@ public class ReadableSonTest {
     Assert.assertThat(m.get("keddy6").doubleValue(), is(13.0d));
     Assert.assertThat(m.get("key7hh").charValue(), is('&'));
   }
+
+  @Test
+  public void testKeyIteration() {
+    SonStreamingMapWriter<Void> writer = Son.streamingMapWriter();
+    writer.append("k3", 3);
+    writer.map("m1").append("k2", 2).append("k1", 1).endMap();
+    writer.append("k1", 1);
+    writer.endMap();
+    ByteBuffer buf = writer.buffer().getBuffer();
+    buf.flip();
+    ReadableSonMap m = new ReadableSonMapImpl(buf);
+
+    List<String> keys = new ArrayList<>();
+    for (Iterator<String> it = m.keyIterator(); it.hasNext(); ) {
+      keys.add(it.next());
+    }
+    assertThat(keys, is(Arrays.asList("k3", "m1", "k1")));
+    // iterable more than once
+    keys.clear();
+    for (String k : m.keys()) {
+      keys.add(k);
+    }
+    for (String k : m.get("m1").mapValue().keys()) {
+      keys.add(k);
+    }
+    assertThat(keys, is(Arrays.asList("k3", "m1", "k1", "k2", "k1")));
+  }
+
+  @Test
+  public void testSonKey() {
+    SonKey k1 = SonKey.of("k1");
+    SonKey k2 = SonKey.of("k2");
+    SonKey nope = SonKey.of("nope");
+    for (int i = 0; i < 3; i++) {
+      SonStreamingMapWriter<Void> writer = Son.streamingMapWriter();
+      if (i == 1) {
+        // different shape, so the slot hint misses
+        writer.append("pad", true);
+      }
+      writer.append("k1", i);
+      writer.map("m1").append("k2", "v" + i).endMap();
+      writer.endMap();
+      ByteBuffer buf = writer.buffer().getBuffer();
+      buf.flip();
+      ReadableSonMap m = new ReadableSonMapImpl(buf);
+      assertThat(m.get(k1).intValue(), is(i));
+      assertThat(m.get(k1).getKey(), is("k1"));
+      assertThat(m.get(SonKey.of("m1")).mapValue().get(k2).stringValue(), is("v" + i));
+      assertThat(m.get(k2), nullValue());
+      assertThat(m.get(nope), nullValue());
+    }
+    MutableSonMap mm = Son.writeableMap().put("k1", 7);
+    assertThat(mm.get(k1).intValue(), is(7));
+  }
+
+  @Test
+  public void testSonKeyRemembersIdsWithoutDocuments() throws Exception {
+    SonKey k = SonKey.of("k");
+    Field resolved = SonKey.class.getDeclaredField("resolved");
+    resolved.setAccessible(true);
+    ByteBuffer buf = Son.writeableMap().put("k", 1).put("j", 2).toBuffer();
+
+    assertThat(Son.readableMap(buf.duplicate()).getInt(k), is(1));
+    Object first = resolved.get(k);
+    Field names = first.getClass().getDeclaredField("names");
+    names.setAccessible(true);
+    assertThat(names.get(first).getClass().getSimpleName(), is("Names"));
+
+    // same names in another buffer: found without resolving again
+    ByteBuffer copy = ByteBuffer.allocate(buf.remaining());
+    copy.put(buf.duplicate()).flip();
+    assertThat(Son.readableMap(copy).getInt(k), is(1));
+    assertThat(resolved.get(k), sameInstance(first));
+
+    assertThat(Son.readableMap(Son.writeableMap().put("j", 3).put("k", 4).toBuffer()).getInt(k), is(4));
+    assertThat(resolved.get(k) == first, is(false));
+
+    GlobalNameTableCache cache = new GlobalNameTableCache(4);
+    assertThat(Son.readableMap(null, cache, buf.duplicate()).getInt(k), is(1));
+    Object shared = resolved.get(k);
+    assertThat(Son.readableMap(null, cache, buf.duplicate()).getInt(k), is(1));
+    assertThat(resolved.get(k), sameInstance(shared));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testSonKeyAccessIsOnlyInstalledBySonKey() {
+    SonKeyAccess.install(new SonKeyAccess() {
+      @Override
+      protected Object resolved(SonKey key) {
+        return null;
+      }
+
+      @Override
+      protected void resolved(SonKey key, Object resolved) {
+      }
+
+      @Override
+      protected int slotHint(SonKey key) {
+        return -1;
+      }
+
+      @Override
+      protected void slotHint(SonKey key, int slot) {
+      }
+    });
+  }
+
+  @Test
+  public void testTypedGetters() {
+    SonStreamingMapWriter<Void> writer = Son.streamingMapWriter();
+    writer.append("b", (byte) 3);
+    writer.append("i", 1 << 20);
+    writer.append("l", 1L << 40);
+    writer.append("f", 1.5f);
+    writer.append("d", 2.25d);
+    writer.append("t", true);
+    writer.append("s", "str");
+    writer.appendNull("n");
+    writer.list("ls").append(7).append(8L).append("x").appendNull().endList();
+    writer.endMap();
+    ByteBuffer buf = writer.buffer().getBuffer();
+    buf.flip();
+    ReadableSonMap m = new ReadableSonMapImpl(buf);
+
+    assertThat(m.getInt("b"), is(3));
+    assertThat(m.getLong("b"), is(3L));
+    assertThat(m.getInt("i"), is(1 << 20));
+    assertThat(m.getLong(SonKey.of("l")), is(1L << 40));
+    assertThat(m.getDouble("f"), is(1.5d));
+    assertThat(m.getDouble("d"), is(2.25d));
+    assertThat(m.getBoolean("t"), is(true));
+    assertThat(m.getString(SonKey.of("s")), is("str"));
+    assertThat(m.get("i").longValue(), is((long) (1 << 20)));
+
+    assertThat(m.getLongOrDefault("n", -1L), is(-1L));
+    assertThat(m.getStringOrDefault("missing", "def"), is("def"));
+    assertThat(m.getIntOrDefault(SonKey.of("missing"), 9), is(9));
+    assertThat(m.getBooleanOrDefault("t", false), is(true));
+
+    try {
+      m.getLong("missing");
+      Assert.fail();
+    } catch (NoSuchElementException e) {
+      // expected
+    }
+    try {
+      m.getInt("l");
+      Assert.fail();
+    } catch (ClassCastException e) {
+      // expected
+    }
+    try {
+      m.getString("n");
+      Assert.fail();
+    } catch (ClassCastException e) {
+      // expected
+    }
+
+    ReadableSonList l = m.get("ls").listValue();
+    assertThat(l.getInt(0), is(7));
+    assertThat(l.getLong(1), is(8L));
+    assertThat(l.getString(2), is("x"));
+    assertThat(l.getDoubleOrDefault(3, 0.5d), is(0.5d));
+    try {
+      l.getDouble(0);
+      Assert.fail();
+    } catch (ClassCastException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testReusableNested() {
+    SonStreamingMapWriter<Void> writer = Son.streamingMapWriter();
+    SonStreamingListWriter<SonStreamingMapWriter<Void>> lw = writer.list("docs");
+    for (int i = 0; i < 4; i++) {
+      SonStreamingMapWriter<?> mw = lw.map().append("id", i);
+      for (int j = 0; j < i; j++) {
+        mw.append("f" + j, j);
+      }
+      mw.list("tags").append("t" + i).endList();
+      mw.endMap();
+    }
+    lw.endList();
+    writer.append("n", 1);
+    writer.endMap();
+    ByteBuffer buf = writer.buffer().getBuffer();
+    buf.flip();
+    ReadableSonMap m = new ReadableSonMapImpl(buf);
+
+    ReadableSonList docs = m.listValueInto("docs", Son.reusableList());
+    ReadableSonMap doc = Son.reusableMap();
+    ReadableSonList tags = Son.reusableList();
+    SonKey id = SonKey.of("id");
+    for (int i = 0; i < docs.size(); i++) {
+      assertThat(docs.mapValueInto(i, doc), sameInstance(doc));
+      assertThat(doc.getInt(id), is(i));
+      assertThat(doc.size(), is(i + 2));
+      assertThat(doc.get("f" + (i - 1)) == null, is(i == 0));
+      assertThat(doc.listValueInto("tags", tags).getString(0), is("t" + i));
+      assertThat(doc, is(docs.get(i).mapValue()));
+    }
+    assertThat(doc.mapValueInto("missing", Son.reusableMap()), nullValue());
+    try {
+      m.mapValueInto("n", doc);
+      Assert.fail();
+    } catch (ClassCastException e) {
+      // expected
+    }
+
+    ReadableSonMap root = Son.reusableMap();
+    for (int i = 0; i < 2; i++) {
+      root.reset(buf);
+      assertThat(root.getInt("n"), is(1));
+      assertThat(root, is(m));
+    }
+  }
+
+  @Test
+  public void testSharedAcrossThreads() throws Exception {
+    SonStreamingMapWriter<Void> writer = Son.streamingMapWriter();
+    for (int i = 0; i < 50; i++) {
+      writer.append("s" + i, "v" + i);
+      writer.map("m" + i).append("n", i).endMap();
+    }
+    writer.endMap();
+    ByteBuffer src = writer.buffer().getBuffer();
+    src.flip();
+    // not at the start of its buffer, and the buffer position moved elsewhere
+    ByteBuffer buf = ByteBuffer.allocate(src.remaining() + 16);
+    buf.position(7);
+    buf.put(src);
+    int limit = buf.position();
+    buf.position(3);
+    ReadableSonMap m = new ReadableSonMapImpl(null, buf, 7, limit);
+    assertThat(m.toBuffer().remaining(), is(limit - 7));
+
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        results.add(pool.submit(() -> {
+          for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 50; i++) {
+              if (!m.getString("s" + i).equals("v" + i) || m.get("m" + i).mapValue().getInt("n") != i) {
+                return false;
+              }
+            }
+          }
+          return true;
+        }));
+      }
+      for (Future<Boolean> f : results) {
+        assertThat(f.get(), is(true));
+      }
+    } finally {
+      pool.shutdown();
+    }
+    assertThat(buf.position(), is(3));
+  }
+
+  private static void randomValue(Random r, SonStreamingMapWriter<?> w, String k, int v, int depth) {
+    switch (v % (depth < 2 ? 14 : 12)) {
+      case 0:
+        w.append(k, (byte) v);
+        break;
+      case 1:
+        w.append(k, (short) v);
+        break;
+      case 2:
+        w.append(k, v);
+        break;
+      case 3:
+        w.append(k, (long) v << 33);
+        break;
+      case 4:
+        w.append(k, v / 3.0f);
+        break;
+      case 5:
+        w.append(k, v / 7.0d);
+        break;
+      case 6:
+        w.append(k, (v & 1) == 0);
+        break;
+      case 7:
+        w.append(k, (char) ('a' + v % 26));
+        break;
+      case 8:
+        w.append(k, "s\u0000\u00e9\u4e2d" + v);
+        break;
+      case 9:
+        w.append(k, new UTCMillisDate(v * 1000L));
+        break;
+      case 10:
+        w.append(k, new UUID(v, -v));
+        break;
+      case 11:
+        w.appendNull(k);
+        break;
+      case 12:
+        SonStreamingMapWriter<?> m = w.map(k);
+        for (int i = 0; i < 4; i++) {
+          randomValue(r, m, "n" + i, v + i, depth + 1);
+        }
+        m.endMap();
+        break;
+      default:
+        SonStreamingListWriter<?> l = w.list(k);
+        l.append(v).append("x" + v).appendNull();
+        l.endList();
+        break;
+    }
+  }
+
+  private static ReadableSonMap randomDoc(long seed, boolean shuffle, int change) {
+    Random r = new Random(seed);
+    int n = 1 + r.nextInt(20);
+    List<Integer> order = new ArrayList<>();
+    int[] vals = new int[n];
+    for (int i = 0; i < n; i++) {
+      order.add(i);
+      vals[i] = r.nextInt(1000);
+    }
+    if (shuffle) {
+      Collections.shuffle(order, new Random(seed + 1));
+    }
+    int ch = change < 0 ? -1 : change % n;
+    SonStreamingMapWriter<Void> w = Son.streamingMapWriter();
+    for (int i : order) {
+      randomValue(r, w, "k" + i, i == ch ? vals[i] + 1 : vals[i], 0);
+    }
+    w.endMap();
+    ByteBuffer buf = w.buffer().getBuffer();
+    buf.flip();
+    return new ReadableSonMapImpl(buf);
+  }
+
+  @Test
+  public void testByteLevelEqualityMatchesSemantic() {
+    for (long seed = 0; seed < 200; seed++) {
+      ReadableSonMap a = randomDoc(seed, false, -1);
+      ReadableSonMap sameOrder = randomDoc(seed, false, -1);
+      ReadableSonMap shuffled = randomDoc(seed, true, -1);
+      ReadableSonMap changed = randomDoc(seed, true, (int) (seed % 3));
+      MutableSonMap semantic = a.asMutable();
+
+      assertThat(a.hashCode(), is(semantic.hashCode()));
+      for (ReadableSonMap b : Arrays.asList(sameOrder, shuffled, changed)) {
+        MutableSonMap bs = b.asMutable();
+        assertThat(a.equals(b), is(semantic.equals(bs)));
+        assertThat(b.equals(a), is(bs.equals(semantic)));
+        assertThat(b.hashCode(), is(bs.hashCode()));
+        for (String k : a.keys()) {
+          ReadableSonValue.MapValue av = a.get(k);
+          if (av.getType() != SonType.MAP && av.getType() != SonType.LIST && av.getType() != SonType.NULL &&
+              b.get(k) != null) {
+            assertThat(Integer.signum(a.compareValue(k, b)), is(Integer.signum(av.compareTo(b.get(k)))));
+          }
+        }
+      }
+      assertThat(a, is(shuffled));
+      assertThat(a.equals(changed), is(false));
+    }
+  }
 }
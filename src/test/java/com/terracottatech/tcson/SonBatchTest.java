@@ -0,0 +1,90 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson;
+
+import com.terracottatech.tcson.reading.SonBatchReader;
+import com.terracottatech.tcson.writing.SonBatchWriter;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class SonBatchTest {
+
+  private static MutableSonMap doc(int i) {
+    MutableSonMap m = Son.writeableMap();
+    m.put("id", i);
+    m.put("customer", "cust-" + (i % 7));
+    m.put("amount", i * 1.5d);
+    MutableSonMap addr = Son.writeableMap();
+    addr.put("city", "city-" + i);
+    m.put("address", addr);
+    return m;
+  }
+
+  @Test
+  public void testRoundTrip() {
+    SonBatchWriter w = Son.batchWriter(null);
+    int separate = 0;
+    for (int i = 0; i < 300; i++) {
+      if (i % 2 == 0) {
+        w.add(doc(i));
+      } else {
+        w.document().append("id", i).append("customer", "cust-" + (i % 7)).append("amount", i * 1.5d)
+          .map("address").append("city", "city-" + i).endMap().endMap();
+      }
+      separate = separate + doc(i).toBuffer().remaining();
+    }
+    assertThat(w.count(), is(300));
+    ByteBuffer buf = w.finish().getBuffer();
+    buf.flip();
+    assertThat(buf.remaining(), lessThan(separate));
+
+    SonBatchReader r = Son.batchReader(null, buf);
+    assertThat(r.size(), is(300));
+    assertThat(r.get(123).get("id").intValue(), is(123));
+    assertThat(r.get(123).get("address").mapValue().get("city").stringValue(), is("city-123"));
+    assertThat(r.get(42), is(Son.readableMap(doc(42).toBuffer())));
+    int i = 0;
+    for (ReadableSonMap m : r) {
+      assertThat(m.get("customer").stringValue(), is("cust-" + (i++ % 7)));
+    }
+    assertThat(i, is(300));
+    assertThat(r.getNameMap().size(), is(5));
+
+    // it is still an ordinary list
+    assertThat(Son.readableList(buf).size(), is(300));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testOutOfRange() {
+    SonBatchWriter w = Son.batchWriter(null);
+    w.add(doc(1));
+    ByteBuffer buf = w.finish().getBuffer();
+    buf.flip();
+    Son.batchReader(null, buf).get(1);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testFinishedTwice() {
+    SonBatchWriter w = Son.batchWriter(null);
+    w.finish();
+    w.finish();
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.codec;
+
+import com.terracottatech.tcson.MutableSonMap;
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.Son;
+import com.terracottatech.tcson.UTCMillisDate;
+import com.terracottatech.tcson.reading.GlobalNameMapReader;
+import com.terracottatech.tcson.reading.GlobalNameTableCache;
+import com.terracottatech.tcson.reading.ReadableSonMapImpl;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class SonBinderTest {
+
+  public enum Level { LOW, HIGH }
+
+  public static class Account {
+    private String owner;
+    private long balance;
+    private Integer pin;
+    private boolean active;
+    private Level level;
+    private UTCMillisDate opened;
+    private List<Double> history;
+    private Account parent;
+    private transient String scratch;
+
+    public String getOwner() {
+      return owner;
+    }
+
+    public void setOwner(String owner) {
+      this.owner = owner;
+    }
+
+    public long getBalance() {
+      return balance;
+    }
+
+    public void setBalance(long balance) {
+      this.balance = balance;
+    }
+
+    public boolean isActive() {
+      return active;
+    }
+
+    public void setActive(boolean active) {
+      this.active = active;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      Account a = (Account) o;
+      return balance == a.balance && active == a.active && Objects.equals(owner, a.owner) &&
+             Objects.equals(pin, a.pin) && level == a.level && Objects.equals(opened, a.opened) &&
+             Objects.equals(history, a.history) && Objects.equals(parent, a.parent);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(owner);
+    }
+  }
+
+  public static final class Item {
+    private final UUID id;
+    private final int qty;
+    private final byte[] payload;
+
+    public Item(UUID id, int qty, byte[] payload) {
+      this.id = id;
+      this.qty = qty;
+      this.payload = payload;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      Item i = (Item) o;
+      return qty == i.qty && Objects.equals(id, i.id) && Arrays.equals(payload, i.payload);
+    }
+
+    @Override
+    public int hashCode() {
+      return qty;
+    }
+  }
+
+  public static class Order {
+    List<Item> items;
+    char code;
+  }
+
+  private static Account account() {
+    Account parent = new Account();
+    parent.owner = "bank";
+    parent.balance = Long.MIN_VALUE;
+    Account a = new Account();
+    a.owner = "chris";
+    a.balance = 1234567890123L;
+    a.pin = 42;
+    a.active = true;
+    a.level = Level.HIGH;
+    a.opened = new UTCMillisDate(1000L);
+    a.history = Arrays.asList(1.5, null, -2d);
+    a.parent = parent;
+    a.scratch = "not stored";
+    return a;
+  }
+
+  @Test
+  public void testSetterRoundTrip() {
+    SonBinder<Account> binder = SonBinder.of(Account.class);
+    assertThat(SonBinder.of(Account.class), sameInstance(binder));
+    Account a = account();
+    ByteBuffer buf = binder.toBuffer(a);
+
+    ReadableSonMap m = Son.readableMap(buf.duplicate());
+    assertThat(m.get("owner").stringValue(), is("chris"));
+    assertThat(m.get("level").stringValue(), is("HIGH"));
+    assertThat(m.get("parent").mapValue().get("pin").isNullValue(), is(true));
+    assertThat(m.get("scratch"), nullValue());
+
+    Account back = binder.fromSon(buf.duplicate());
+    assertThat(back, is(a));
+    assertThat(back.scratch, nullValue());
+  }
+
+  @Test
+  public void testConstructorRoundTrip() {
+    Order o = new Order();
+    o.code = 'q';
+    o.items = Arrays.asList(new Item(new UUID(3, 4), 7, new byte[] { 9, 8 }), null);
+    SonBinder<Order> binder = SonBinder.of(Order.class);
+    Order back = binder.fromSon(binder.toBuffer(o));
+    assertThat(back.code, is('q'));
+    assertThat(back.items, is(o.items));
+  }
+
+  @Test
+  public void testBindsForeignLayout() {
+    MutableSonMap m = Son.writeableMap();
+    m.put("unknown", "skip me");
+    m.put("active", true);
+    m.put("balance", 10);
+    m.putNull("owner");
+    m.put("pin", (byte) 3);
+    Account a = SonBinder.of(Account.class).fromSon(m.toBuffer());
+    assertThat(a.active, is(true));
+    assertThat(a.balance, is(10L));
+    assertThat(a.owner, nullValue());
+    assertThat(a.pin, is(3));
+  }
+
+  @Test
+  public void testSharedNameTables() {
+    GlobalNameTableCache cache = new GlobalNameTableCache(16);
+    SonBinder<Account> binder = SonBinder.of(Account.class);
+    for (int i = 0; i < 3; i++) {
+      Account a = account();
+      a.balance = i;
+      ByteBuffer buf = binder.toBuffer(a);
+      assertThat(binder.fromSon(Son.readableMap(null, cache, buf)), is(a));
+    }
+    assertThat(cache.size(), is(1));
+  }
+
+  @Test
+  public void testPrivateNameTableIsNotDecoded() throws Exception {
+    MutableSonMap m = Son.writeableMap().put("owner", "sam").put("balance", 5L).put("active", true);
+    ReadableSonMapImpl rm = (ReadableSonMapImpl) Son.readableMap(m.toBuffer());
+    Account a = SonBinder.of(Account.class).fromSon(rm);
+    assertThat(a.owner, is("sam"));
+    assertThat(a.balance, is(5L));
+    Field table = GlobalNameMapReader.class.getDeclaredField("table");
+    table.setAccessible(true);
+    assertThat(table.get(rm.getNameMap()), nullValue());
+  }
+
+  @Test
+  public void testAlternatingSharedTables() {
+    GlobalNameTableCache cache = new GlobalNameTableCache(16);
+    SonBinder<Account> binder = SonBinder.of(Account.class);
+    ByteBuffer full = binder.toBuffer(account());
+    ByteBuffer foreign = Son.writeableMap().put("unknown", 1).put("balance", 7L).toBuffer();
+    for (int i = 0; i < 3; i++) {
+      assertThat(binder.fromSon(Son.readableMap(null, cache, full.duplicate())), is(account()));
+      assertThat(binder.fromSon(Son.readableMap(null, cache, foreign.duplicate())).balance, is(7L));
+    }
+  }
+
+  @Test(expected = ClassCastException.class)
+  public void testTypeMismatch() {
+    MutableSonMap m = Son.writeableMap();
+    m.put("balance", "lots");
+    SonBinder.of(Account.class).fromSon(m.toBuffer());
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void testNarrowingOutOfRange() {
+    MutableSonMap m = Son.writeableMap();
+    m.put("pin", 1L << 40);
+    SonBinder.of(Account.class).fromSon(m.toBuffer());
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void testFractionIntoIntegral() {
+    MutableSonMap m = Son.writeableMap();
+    m.put("balance", 2.5d);
+    SonBinder.of(Account.class).fromSon(m.toBuffer());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedType() {
+    SonBinder.of(Runnable.class);
+  }
+}
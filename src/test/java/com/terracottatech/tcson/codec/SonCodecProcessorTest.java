@@ -0,0 +1,221 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.codec;
+
+import com.terracottatech.tcson.MutableSonMap;
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.Son;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SonCodecProcessorTest {
+
+  private static final String POINT = "package demo;\n" +
+                                      "import com.terracottatech.tcson.codec.SonObject;\n" +
+                                      "import java.util.*;\n" +
+                                      "@SonObject\n" +
+                                      "public class Point {\n" +
+                                      "  public enum Color { RED, GREEN }\n" +
+                                      "  private int x;\n" +
+                                      "  private long y = 7L;\n" +
+                                      "  private String label;\n" +
+                                      "  private Boolean flag;\n" +
+                                      "  private Color color;\n" +
+                                      "  private byte[] raw;\n" +
+                                      "  private List<String> tags;\n" +
+                                      "  private transient int ignored;\n" +
+                                      "  public int getX() { return x; }\n" +
+                                      "  public void setX(int x) { this.x = x; }\n" +
+                                      "  public long getY() { return y; }\n" +
+                                      "  public void setY(long y) { this.y = y; }\n" +
+                                      "  public String getLabel() { return label; }\n" +
+                                      "  public void setLabel(String label) { this.label = label; }\n" +
+                                      "  public Boolean getFlag() { return flag; }\n" +
+                                      "  public void setFlag(Boolean flag) { this.flag = flag; }\n" +
+                                      "  public Color getColor() { return color; }\n" +
+                                      "  public void setColor(Color color) { this.color = color; }\n" +
+                                      "  public byte[] getRaw() { return raw; }\n" +
+                                      "  public void setRaw(byte[] raw) { this.raw = raw; }\n" +
+                                      "  public List<String> getTags() { return tags; }\n" +
+                                      "  public void setTags(List<String> tags) { this.tags = tags; }\n" +
+                                      "  public static Point sample(int x) {\n" +
+                                      "    Point p = new Point();\n" +
+                                      "    p.x = x; p.y = -1L << 40; p.label = \"pt\" + x; p.color = Color.GREEN;\n" +
+                                      "    p.raw = new byte[] { 1, 2, 3 }; p.tags = Arrays.asList(\"a\", null, \"c\");\n" +
+                                      "    p.ignored = 99;\n" +
+                                      "    return p;\n" +
+                                      "  }\n" +
+                                      "  @Override public boolean equals(Object o) {\n" +
+                                      "    Point p = (Point) o;\n" +
+                                      "    return x == p.x && y == p.y && Objects.equals(label, p.label) && Objects.equals(flag, p.flag) &&\n" +
+                                      "      color == p.color && Arrays.equals(raw, p.raw) && Objects.equals(tags, p.tags);\n" +
+                                      "  }\n" +
+                                      "  @Override public int hashCode() { return x; }\n" +
+                                      "}\n";
+
+  private static final String LINE = "package demo;\n" +
+                                     "import com.terracottatech.tcson.codec.SonObject;\n" +
+                                     "import java.util.*;\n" +
+                                     "@SonObject\n" +
+                                     "public final class Line {\n" +
+                                     "  private final Point a;\n" +
+                                     "  private final Point b;\n" +
+                                     "  private final List<Point> via;\n" +
+                                     "  private final double weight;\n" +
+                                     "  private final UUID id;\n" +
+                                     "  public Line(Point a, Point b, List<Point> via, double weight, UUID id) {\n" +
+                                     "    this.a = a; this.b = b; this.via = via; this.weight = weight; this.id = id;\n" +
+                                     "  }\n" +
+                                     "  public Point getA() { return a; }\n" +
+                                     "  public Point getB() { return b; }\n" +
+                                     "  public List<Point> getVia() { return via; }\n" +
+                                     "  public double getWeight() { return weight; }\n" +
+                                     "  public UUID getId() { return id; }\n" +
+                                     "  public static Line sample() {\n" +
+                                     "    return new Line(Point.sample(1), null, Arrays.asList(Point.sample(2), Point.sample(3)), 2.5,\n" +
+                                     "      new UUID(1L, 2L));\n" +
+                                     "  }\n" +
+                                     "  @Override public boolean equals(Object o) {\n" +
+                                     "    Line l = (Line) o;\n" +
+                                     "    return Objects.equals(a, l.a) && Objects.equals(b, l.b) && Objects.equals(via, l.via) &&\n" +
+                                     "      weight == l.weight && Objects.equals(id, l.id);\n" +
+                                     "  }\n" +
+                                     "  @Override public int hashCode() { return 0; }\n" +
+                                     "}\n";
+
+  @Test
+  public void testSetterAndConstructorRoundTrip() throws Exception {
+    try (URLClassLoader loader = compile(POINT, LINE)) {
+      Class<?> lineClass = loader.loadClass("demo.Line");
+      Object line = lineClass.getMethod("sample").invoke(null);
+      @SuppressWarnings("unchecked")
+      SonCodec<Object> codec = (SonCodec<Object>) loader.loadClass("demo.LineSonCodec").getField("INSTANCE").get(null);
+
+      ByteBuffer buf = codec.toBuffer(line);
+      ReadableSonMap map = Son.readableMap(buf.duplicate());
+      assertThat(map.size(), is(5));
+      assertThat(map.get("a").mapValue().get("x").intValue(), is(1));
+      assertThat(map.get("a").mapValue().get("color").stringValue(), is("GREEN"));
+      assertThat(map.get("a").mapValue().get("ignored") == null, is(true));
+      assertThat(map.get("b").isNullValue(), is(true));
+      assertThat(map.get("via").listValue().size(), is(2));
+
+      Object back = codec.fromSon(buf.duplicate());
+      assertThat(back, is(line));
+      Field ignored = loader.loadClass("demo.Point").getDeclaredField("ignored");
+      ignored.setAccessible(true);
+      assertThat(ignored.getInt(lineClass.getMethod("getA").invoke(back)), is(0));
+    }
+  }
+
+  @Test
+  public void testMissingPropertiesKeepTheirInitialValue() throws Exception {
+    try (URLClassLoader loader = compile(POINT, LINE)) {
+      @SuppressWarnings("unchecked")
+      SonCodec<Object> codec = (SonCodec<Object>) loader.loadClass("demo.PointSonCodec").getField("INSTANCE").get(null);
+      MutableSonMap m = Son.writeableMap();
+      m.put("x", 5);
+      m.putNull("label");
+
+      Object p = codec.fromSon(m.toBuffer());
+      Class<?> pointClass = loader.loadClass("demo.Point");
+      assertThat(pointClass.getMethod("getX").invoke(p), is((Object) 5));
+      assertThat(pointClass.getMethod("getY").invoke(p), is((Object) 7L));
+      assertThat(pointClass.getMethod("getLabel").invoke(p) == null, is(true));
+    }
+  }
+
+  @Test
+  public void testNumbersConvertBetweenWidths() throws Exception {
+    try (URLClassLoader loader = compile(POINT, LINE)) {
+      @SuppressWarnings("unchecked")
+      SonCodec<Object> points = (SonCodec<Object>) loader.loadClass("demo.PointSonCodec").getField("INSTANCE").get(null);
+      @SuppressWarnings("unchecked")
+      SonCodec<Object> lines = (SonCodec<Object>) loader.loadClass("demo.LineSonCodec").getField("INSTANCE").get(null);
+
+      Object p = points.fromSon(Son.writeableMap().put("x", 5L).toBuffer());
+      assertThat(loader.loadClass("demo.Point").getMethod("getX").invoke(p), is((Object) 5));
+      Object l = lines.fromSon(Son.writeableMap().put("weight", 3).toBuffer());
+      assertThat(loader.loadClass("demo.Line").getMethod("getWeight").invoke(l), is((Object) 3.0d));
+
+      try {
+        points.fromSon(Son.writeableMap().put("x", 1L << 40).toBuffer());
+        Assert.fail();
+      } catch (ArithmeticException e) {
+      }
+    }
+  }
+
+  @Test
+  public void testUnsupportedPropertyIsReported() throws Exception {
+    String bad = "package demo;\n" +
+                 "@com.terracottatech.tcson.codec.SonObject\n" +
+                 "public class Bad { public Object any; }\n";
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    Assume.assumeNotNull(compiler);
+    DiagnosticCollector<JavaFileObject> diags = new DiagnosticCollector<>();
+    assertThat(run(compiler, diags, Files.createTempDirectory("son-codec"), bad), is(false));
+    assertThat(diags.getDiagnostics().toString().contains("unsupported @SonObject property type"), is(true));
+  }
+
+  private static URLClassLoader compile(String... sources) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    Assume.assumeNotNull(compiler);
+    Path dir = Files.createTempDirectory("son-codec");
+    DiagnosticCollector<JavaFileObject> diags = new DiagnosticCollector<>();
+    assertThat(diags.getDiagnostics().toString(), run(compiler, diags, dir, sources), is(true));
+    return new URLClassLoader(new URL[] { dir.resolve("classes").toUri().toURL() },
+                              SonCodecProcessorTest.class.getClassLoader());
+  }
+
+  private static boolean run(JavaCompiler compiler, DiagnosticCollector<JavaFileObject> diags, Path dir,
+                             String... sources) throws IOException {
+    Path src = Files.createDirectories(dir.resolve("src").resolve("demo"));
+    Path classes = Files.createDirectories(dir.resolve("classes"));
+    File[] files = new File[sources.length];
+    for (int i = 0; i < sources.length; i++) {
+      String name = sources[i].replaceAll("(?s).*public (final )?class (\\w+).*", "$2");
+      files[i] = Files.write(src.resolve(name + ".java"), sources[i].getBytes(StandardCharsets.UTF_8)).toFile();
+    }
+    String cp = new File(SonCodec.class.getProtectionDomain().getCodeSource().getLocation().getPath()).getPath();
+    List<String> options = Arrays.asList("-classpath", cp, "-d", classes.toString(), "-s", classes.toString(),
+                                         "-processor", SonCodecProcessor.class.getName());
+    try (StandardJavaFileManager fm = compiler.getStandardFileManager(diags, null, StandardCharsets.UTF_8)) {
+      return compiler.getTask(null, fm, diags, options, null, fm.getJavaFileObjects(files)).call();
+    }
+  }
+}
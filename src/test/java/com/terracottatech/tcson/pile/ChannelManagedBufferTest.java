@@ -0,0 +1,89 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.pile;
+
+import com.terracottatech.tcson.ReadableSonList;
+import com.terracottatech.tcson.Son;
+import com.terracottatech.tcson.writing.SonStreamingListWriter;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class ChannelManagedBufferTest {
+
+  private static void fill(SonStreamingListWriter<Void> w, int cnt) {
+    for (int i = 0; i < cnt; i++) {
+      w.map()
+        .append("id", i)
+        .append("name", "record-" + i)
+        .append("blob", (byte) 1, new byte[i % 300])
+        .list("tags")
+        .append(i * 3L)
+        .appendNull()
+        .endList()
+        .endMap();
+    }
+    w.endList();
+  }
+
+  @Test
+  public void testSameBytesAsHeap() {
+    SonStreamingListWriter<Void> heap = Son.streamingListWriter();
+    fill(heap, 2000);
+    ByteBuffer expected = heap.buffer().getBuffer();
+    expected.flip();
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ChannelManagedBuffer cmb = new ChannelManagedBuffer(baos, 256);
+    SonStreamingListWriter<Void> streaming = Son.streamingListWriter(null, cmb);
+    fill(streaming, 2000);
+
+    byte[] exp = new byte[expected.remaining()];
+    expected.get(exp);
+    byte[] got = baos.toByteArray();
+    assertThat(got.length, is(exp.length));
+    assertThat(Arrays.equals(got, exp), is(true));
+    assertThat(cmb.streamPosition(), is((long) got.length));
+    // only grows to fit the largest single value
+    assertThat(cmb.getBuffer().capacity(), lessThan(256 + 2048 + 1));
+
+    ReadableSonList l = Son.readableList(ByteBuffer.wrap(got));
+    assertThat(l.size(), is(2000));
+    assertThat(l.get(1999).mapValue().get("name").stringValue(), is("record-1999"));
+    assertThat(l.get(7).mapValue().get("tags").listValue().get(0).longValue(), is(21L));
+  }
+
+  @Test
+  public void testBigDirectoryStaysChunked() {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ChannelManagedBuffer cmb = new ChannelManagedBuffer(baos, 64);
+    SonStreamingListWriter<Void> w = Son.streamingListWriter(null, cmb);
+    for (int i = 0; i < 10000; i++) {
+      w.append("v" + i);
+    }
+    w.endList();
+    assertThat(cmb.getBuffer().capacity(), is(64));
+    ReadableSonList l = Son.readableList(ByteBuffer.wrap(baos.toByteArray()));
+    assertThat(l.size(), is(10000));
+    assertThat(l.get(9876).stringValue(), is("v9876"));
+  }
+}
@@ -20,7 +20,12 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.hamcrest.Matchers.is;
 
@@ -161,4 +166,52 @@ public class PileTest {
     Assert.assertThat(pr.int32(1), is(1));
     Assert.assertThat(pr.int32(0), is(1));
   }
+
+  @Test
+  public void testFooterBoundaries() {
+    int[] sizes = { 0, (1 << 6) - 1, 1 << 6, (1 << 14) - 1, 1 << 14, (1 << 24) - 1, 1 << 24,
+      PileWriterMetaData.MAX_DIRECTORY };
+    int[] widths = { 1, 1, 2, 2, 4, 4, 4, 4 };
+    for (int i = 0; i < sizes.length; i++) {
+      ByteBuffer b = ByteBuffer.allocate(4);
+      PileWriterMetaData.writeFooter(b, sizes[i]);
+      Assert.assertThat(PileMetaData.footerWidth(b, b.position()), is(widths[i]));
+      Assert.assertThat(PileMetaData.directorySize(b, b.position()), is(sizes[i]));
+    }
+    try {
+      PileWriterMetaData.writeFooter(ByteBuffer.allocate(4), PileWriterMetaData.MAX_DIRECTORY + 1);
+      Assert.fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testPositionsPast28Bits() throws IOException {
+    // a byte array ending just past 2^28, then a byte; the file is sparse
+    int len = (1 << 28) + 3;
+    ByteBuffer dir = ByteBuffer.allocate(16);
+    dir.put((byte) Pile.Type.BYTE_ARRAY.ordinal());
+    VarInts.varEncode(dir, len);
+    dir.put((byte) Pile.Type.INT8.ordinal());
+    int dirLen = dir.position();
+    PileWriterMetaData.writeFooter(dir, dirLen);
+    dir.flip();
+    int limit = len + 1 + dir.remaining();
+    Path file = Files.createTempFile("pile", ".bin");
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.setLength(limit);
+      MappedByteBuffer b = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, limit);
+      b.put(len, (byte) 42);
+      b.position(len + 1);
+      b.put(dir);
+      PileReaderImpl pr = new PileReaderImpl(b, 0, limit);
+      Assert.assertThat(pr.size(), is(2));
+      Assert.assertThat(pr.byteArrayLength(0), is(len - 1));
+      Assert.assertThat(pr.positionOf(1), is(len));
+      Assert.assertThat(pr.int8(1), is((byte) 42));
+    } finally {
+      file.toFile().deleteOnExit();
+    }
+  }
 }
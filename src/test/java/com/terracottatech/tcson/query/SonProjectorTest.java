@@ -0,0 +1,111 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.query;
+
+import com.terracottatech.tcson.MutableSonMap;
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.Son;
+import com.terracottatech.tcson.parser.FieldReference;
+import com.terracottatech.tcson.pile.ManagedBuffer;
+import com.terracottatech.tcson.reading.ReadableSonMapImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class SonProjectorTest {
+
+  private static SonDotTraversal path(Object... steps) {
+    ArrayList<FieldReference> spec = new ArrayList<>();
+    for (Object s : steps) {
+      if (s instanceof Integer) {
+        spec.add(new FieldReference(Collections.singletonList(new FieldReference.ArraySlice((Integer) s))));
+      } else if (s == null) {
+        spec.add(new FieldReference());
+      } else {
+        spec.add(new FieldReference((String) s));
+      }
+    }
+    return new SonDotTraversal(spec);
+  }
+
+  private static ReadableSonMap doc() {
+    MutableSonMap m = Son.writeableMap()
+      .put("a", Son.writeableMap().put("b", Son.writeableMap().put("deep", 1)).put("x", "skip"))
+      .put("c", 12)
+      .put("d", Son.writeableMap().put("e", "kept").put("f", 1.5d))
+      .put("g", "skip")
+      .put("people", Son.writeableList()
+        .add(Son.writeableMap().put("name", "ann").put("age", 30))
+        .add(Son.writeableMap().put("name", "bob").put("age", 40))
+        .add("not a map"))
+      .put("arr", Son.writeableList().add(1).add(2).add(3));
+    return Son.readableMap(m.toBuffer());
+  }
+
+  @Test
+  public void testProjectKeys() {
+    List<SonDotTraversal> paths = Arrays.asList(path("d", "e"), path("a", "b"), path("c"), path("missing"),
+                                                path("g", "deeper"));
+    ManagedBuffer dest = new ManagedBuffer(64);
+    SonProjector.project(doc(), paths, dest);
+    ByteBuffer buf = dest.getBuffer();
+    buf.flip();
+    ReadableSonMap got = Son.readableMap(buf);
+
+    MutableSonMap expected = Son.writeableMap()
+      .put("a", Son.writeableMap().put("b", Son.writeableMap().put("deep", 1)))
+      .put("c", 12)
+      .put("d", Son.writeableMap().put("e", "kept"));
+    Assert.assertThat(got, is(expected));
+    Assert.assertThat(got.keys(), contains("a", "c", "d"));
+    // only the selected names make it into the name table
+    Assert.assertThat(((ReadableSonMapImpl) got).getNameMap().getTable().size(), is(6));
+  }
+
+  @Test
+  public void testProjectLists() {
+    SonProjector p = new SonProjector(Arrays.asList(path("people", "name"), path("arr", -1)));
+    ReadableSonMap got = Son.readableMap(p.project(doc()));
+    MutableSonMap expected = Son.writeableMap()
+      .put("people", Son.writeableList()
+        .add(Son.writeableMap().put("name", "ann"))
+        .add(Son.writeableMap().put("name", "bob")))
+      .put("arr", Son.writeableList().add(3));
+    Assert.assertThat(got, is(expected));
+
+    p = new SonProjector(Arrays.asList(path("people", 1), path("a", null, "deep")));
+    got = Son.readableMap(p.project(doc()));
+    expected = Son.writeableMap()
+      .put("a", Son.writeableMap().put("b", Son.writeableMap().put("deep", 1)))
+      .put("people", Son.writeableList().add(Son.writeableMap().put("name", "bob").put("age", 40)));
+    Assert.assertThat(got, is(expected));
+  }
+
+  @Test
+  public void testProjectAll() {
+    ReadableSonMap src = doc();
+    SonProjector p = new SonProjector(Arrays.asList(path("c"), path()));
+    Assert.assertThat(Son.readableMap(p.project(src)), is(src));
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.query;
+
+import com.terracottatech.tcson.MutableSonMap;
+import com.terracottatech.tcson.Son;
+import com.terracottatech.tcson.SonBytes;
+import com.terracottatech.tcson.SonType;
+import com.terracottatech.tcson.SonValue;
+import com.terracottatech.tcson.UTCMillisDate;
+import com.terracottatech.tcson.mutable.MutableSonValue;
+import com.terracottatech.tcson.parser.FieldReference;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+public class SonSortKeyTest {
+
+  private static SonValue v(SonType type, Object o) {
+    return new MutableSonValue(type, o);
+  }
+
+  private static List<SonValue> samples(Random r) {
+    List<SonValue> ret = new ArrayList<>();
+    for (byte b : new byte[] { Byte.MIN_VALUE, -1, 0, 1, Byte.MAX_VALUE }) {
+      ret.add(v(SonType.BYTE, b));
+    }
+    for (short s : new short[] { Short.MIN_VALUE, -300, 0, 300, Short.MAX_VALUE }) {
+      ret.add(v(SonType.SHORT, s));
+    }
+    for (char c : new char[] { 0, 'a', '\u00ff', '\u407e', '\u407f', '\ud800', '\uffff' }) {
+      ret.add(v(SonType.CHAR, c));
+    }
+    for (float f : new float[] { Float.NEGATIVE_INFINITY, -1.5f, -0.0f, 0.0f, Float.MIN_VALUE, 2.5f,
+      Float.POSITIVE_INFINITY, Float.NaN }) {
+      ret.add(v(SonType.FLOAT, f));
+    }
+    for (String s : new String[] { "", "a", "a\u0000", "ab", "b", "~", "\u007f", "\u407e", "\u407f",
+      "\ud83d\ude00", "\uffff", "\uffff\uffff" }) {
+      ret.add(v(SonType.STRING, s));
+    }
+    ret.add(v(SonType.BOOL, false));
+    ret.add(v(SonType.BOOL, true));
+    for (byte[] b : new byte[][] { {}, { -128 }, { -128, 0 }, { -1 }, { 0 }, { 0, 0 }, { 1, -128 }, { 127 } }) {
+      ret.add(v(SonType.BYTES, new SonBytes((byte) 1, b)));
+      ret.add(v(SonType.BYTES, new SonBytes((byte) -2, b)));
+    }
+    ret.add(v(SonType.UUID, new UUID(-1, 5)));
+    ret.add(v(SonType.UUID, new UUID(1, -5)));
+    ret.add(v(SonType.UUID, new UUID(1, 5)));
+    for (int i = 0; i < 30; i++) {
+      ret.add(v(SonType.INT, r.nextInt()));
+      ret.add(v(SonType.LONG, r.nextLong()));
+      ret.add(v(SonType.DOUBLE, r.nextGaussian() * 1e6));
+      ret.add(v(SonType.DATE, new UTCMillisDate(r.nextLong())));
+    }
+    ret.add(v(SonType.DOUBLE, -0.0d));
+    ret.add(v(SonType.DOUBLE, Double.NaN));
+    return ret;
+  }
+
+  @Test
+  public void testOrderMatchesCompareTo() {
+    Random r = new Random(17);
+    List<SonValue> vals = samples(r);
+    for (SonValue a : vals) {
+      byte[] ka = SonSortKey.encode(a);
+      Assert.assertThat(SonSortKey.decode(ka), is(Collections.singletonList(a)));
+      for (SonValue b : vals) {
+        int expected = Integer.signum(a.compareTo(b));
+        Assert.assertThat(a + " vs " + b, Integer.signum(SonSortKey.compare(ka, SonSortKey.encode(b))),
+                          is(expected));
+      }
+    }
+  }
+
+  @Test
+  public void testTuples() {
+    SonValue one = v(SonType.INT, 1);
+    SonValue two = v(SonType.INT, 2);
+    SonValue a = v(SonType.STRING, "a");
+    SonValue ab = v(SonType.STRING, "ab");
+    List<byte[]> sorted = Arrays.asList(SonSortKey.encode(Arrays.asList(null, two)),
+                                        SonSortKey.encode(Collections.singletonList(a)),
+                                        SonSortKey.encode(Arrays.asList(a, null)),
+                                        SonSortKey.encode(Arrays.asList(a, one)),
+                                        SonSortKey.encode(Arrays.asList(a, two)),
+                                        SonSortKey.encode(Arrays.asList(ab, one)));
+    for (int i = 1; i < sorted.size(); i++) {
+      Assert.assertThat(SonSortKey.compare(sorted.get(i - 1), sorted.get(i)), lessThan(0));
+    }
+    Assert.assertThat(SonSortKey.decode(sorted.get(2)), is(Arrays.asList(a, null)));
+  }
+
+  @Test
+  public void testFromDocument() {
+    MutableSonMap doc = Son.writeableMap()
+      .put("name", "fred")
+      .put("addr", Son.writeableMap().put("zip", 12345));
+    SonDotTraversal name = new SonDotTraversal(Collections.singletonList(new FieldReference("name")));
+    SonDotTraversal zip = new SonDotTraversal(Arrays.asList(new FieldReference("addr"),
+                                                            new FieldReference("zip")));
+    SonDotTraversal missing = new SonDotTraversal(Collections.singletonList(new FieldReference("age")));
+    List<SonValue> got = SonSortKey.decode(SonSortKey.encode(doc, zip, missing, name));
+    Assert.assertThat(got.get(0), is(v(SonType.INT, 12345)));
+    Assert.assertThat(got.get(1), nullValue());
+    Assert.assertThat(got.get(2), is(v(SonType.STRING, "fred")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMapsHaveNoOrder() {
+    SonSortKey.encode(Son.writeableMap().put("a", 1).asSonValue());
+  }
+}
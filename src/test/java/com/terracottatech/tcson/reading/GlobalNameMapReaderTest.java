@@ -0,0 +1,99 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.reading;
+
+import com.terracottatech.tcson.NameSource;
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.Son;
+import com.terracottatech.tcson.writing.SonStreamingListWriter;
+import com.terracottatech.tcson.writing.SonStreamingMapWriter;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class GlobalNameMapReaderTest {
+
+  private static final String[] KEYS = { "a", "\u00e9t\u00e9", "\u4e2d\u6587", "nul\u0000l", "longer key name", "k5" };
+
+  private static ByteBuffer doc(NameSource ns, boolean index) {
+    SonStreamingMapWriter<Void> w = Son.streamingMapWriter(ns).nameIndex(index);
+    for (int i = 0; i < KEYS.length; i++) {
+      w.append(KEYS[i], i);
+    }
+    for (int i = 0; i < 100; i++) {
+      w.append("f" + i, i);
+    }
+    w.map("inner").append("a", "x").endMap();
+    w.endMap();
+    ByteBuffer b = w.buffer().getBuffer();
+    b.flip();
+    return b;
+  }
+
+  private static void check(NameSource ns, ByteBuffer buf) {
+    ReadableSonMap m = Son.readableMap(ns, buf);
+    assertThat(((ReadableSonMapImpl) m).getNameMap().size(), is(KEYS.length + 101));
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < KEYS.length; i++) {
+        assertThat(m.get(KEYS[i]).intValue(), is(i));
+      }
+      assertThat(m.get("f99").intValue(), is(99));
+      assertThat(m.get("missing"), nullValue());
+      assertThat(m.get("\u00e9t"), nullValue());
+      assertThat(m.get("inner").mapValue().get("a").stringValue(), is("x"));
+    }
+    List<String> keys = new ArrayList<>();
+    m.keys().forEach(keys::add);
+    assertThat(keys.size(), is(KEYS.length + 101));
+    assertThat(keys.get(2), is(KEYS[2]));
+  }
+
+  @Test
+  public void testEncodedLookup() {
+    check(null, doc(null, false));
+  }
+
+  @Test
+  public void testIndexedLookup() {
+    ByteBuffer plain = doc(null, false);
+    ByteBuffer indexed = doc(null, true);
+    assertThat(indexed.remaining() > plain.remaining(), is(true));
+    check(null, indexed);
+  }
+
+  @Test
+  public void testIndexedLookupWithNameSource() {
+    NameSource ns = new NameSource.Naive(3);
+    check(ns, doc(ns, true));
+  }
+
+  @Test
+  public void testIndexedList() {
+    SonStreamingListWriter<Void> w = Son.streamingListWriter().nameIndex(true);
+    w.map().append("x", 1).append("y", 2).endMap();
+    w.endList();
+    ByteBuffer b = w.buffer().getBuffer();
+    b.flip();
+    assertThat(Son.readableList(b).size(), is(1));
+    assertThat(Son.readableList(b).get(0).mapValue().get("y").intValue(), is(2));
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.reading;
+
+import com.terracottatech.tcson.NameSource;
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.Son;
+import com.terracottatech.tcson.writing.SonStreamingMapWriter;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class GlobalNameTableCacheTest {
+
+  private static ByteBuffer doc(NameSource ns, String k1, String k2, int v) {
+    SonStreamingMapWriter<Void> w = Son.streamingMapWriter(ns);
+    w.append(k1, v);
+    w.map("inner").append(k2, "v" + v).endMap();
+    w.endMap();
+    ByteBuffer b = w.buffer().getBuffer();
+    b.flip();
+    return b;
+  }
+
+  private static GlobalNameTable tableOf(ReadableSonMap m) {
+    return ((ReadableSonMapImpl) m).getNameMap().getTable();
+  }
+
+  @Test
+  public void testSharedAcrossIdenticalTables() {
+    GlobalNameTableCache cache = new GlobalNameTableCache(16);
+    ReadableSonMap m1 = Son.readableMap(null, cache, doc(null, "a", "b", 1));
+    ReadableSonMap m2 = Son.readableMap(null, cache, doc(null, "a", "b", 2));
+    assertThat(m1.get("a").intValue(), is(1));
+    assertThat(m2.get("a").intValue(), is(2));
+    assertThat(m2.get("inner").mapValue().get("b").stringValue(), is("v2"));
+    assertThat(tableOf(m1), sameInstance(tableOf(m2)));
+    assertThat(cache.size(), is(1));
+    assertThat(tableOf(m1).nameOf(tableOf(m1).lookupId("inner")), is("inner"));
+  }
+
+  @Test
+  public void testDistinctTables() {
+    GlobalNameTableCache cache = new GlobalNameTableCache(16);
+    ReadableSonMap m1 = Son.readableMap(null, cache, doc(null, "a", "b", 1));
+    ReadableSonMap m2 = Son.readableMap(null, cache, doc(null, "a", "c", 1));
+    assertThat(m2.get("inner").mapValue().get("c").stringValue(), is("v1"));
+    assertThat(tableOf(m1), not(sameInstance(tableOf(m2))));
+    assertThat(cache.size(), is(2));
+  }
+
+  @Test
+  public void testNameSourceIsPartOfKey() {
+    GlobalNameTableCache cache = new GlobalNameTableCache(16);
+    NameSource ns1 = new NameSource.Naive(10);
+    NameSource ns2 = new NameSource.Naive(10);
+    ReadableSonMap m1 = Son.readableMap(ns1, cache, doc(ns1, "a", "b", 1));
+    ReadableSonMap m2 = Son.readableMap(ns2, cache, doc(ns2, "x", "y", 1));
+    // same encoded bytes, different names
+    assertThat(m1.get("a").intValue(), is(1));
+    assertThat(m2.get("x").intValue(), is(1));
+    assertThat(tableOf(m1), not(sameInstance(tableOf(m2))));
+  }
+
+  @Test
+  public void testBoundedCache() {
+    GlobalNameTableCache cache = new GlobalNameTableCache(1);
+    Son.readableMap(null, cache, doc(null, "a", "b", 1)).get("a");
+    ReadableSonMap m = Son.readableMap(null, cache, doc(null, "q", "r", 1));
+    assertThat(m.get("q").intValue(), is(1));
+    assertThat(cache.size(), is(1));
+  }
+
+  @Test
+  public void testFullCacheReplacesUnusedTables() {
+    GlobalNameTableCache cache = new GlobalNameTableCache(2);
+    GlobalNameTable a = tableOf(Son.readableMap(null, cache, doc(null, "a", "b", 1)));
+    GlobalNameTable b = tableOf(Son.readableMap(null, cache, doc(null, "c", "d", 1)));
+    assertThat(tableOf(Son.readableMap(null, cache, doc(null, "a", "b", 2))), sameInstance(a));
+
+    GlobalNameTable c = tableOf(Son.readableMap(null, cache, doc(null, "e", "f", 1)));
+    assertThat(cache.size(), is(2));
+    assertThat(tableOf(Son.readableMap(null, cache, doc(null, "a", "b", 3))), sameInstance(a));
+    assertThat(tableOf(Son.readableMap(null, cache, doc(null, "e", "f", 2))), sameInstance(c));
+    assertThat(tableOf(Son.readableMap(null, cache, doc(null, "c", "d", 2))), not(sameInstance(b)));
+  }
+
+  @Test
+  public void testNameSourceIsHeldWeakly() throws Exception {
+    GlobalNameTableCache cache = new GlobalNameTableCache(16);
+    NameSource ns = new NameSource.Naive(10);
+    tableOf(Son.readableMap(ns, cache, doc(ns, "a", "b", 1)));
+    assertThat(cache.size(), is(1));
+    WeakReference<NameSource> ref = new WeakReference<>(ns);
+    ns = null;
+    for (int i = 0; i < 50 && ref.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertThat(ref.get() == null, is(true));
+  }
+}
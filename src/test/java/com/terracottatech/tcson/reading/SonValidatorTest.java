@@ -0,0 +1,137 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.reading;
+
+import com.terracottatech.tcson.NameSource;
+import com.terracottatech.tcson.ReadableSonList;
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.Son;
+import com.terracottatech.tcson.UTCMillisDate;
+import com.terracottatech.tcson.writing.SonStreamingListWriter;
+import com.terracottatech.tcson.writing.SonStreamingMapWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SonValidatorTest {
+
+  private static ByteBuffer doc(NameSource ns) {
+    SonStreamingMapWriter<Void> w = Son.streamingMapWriter(ns).nameIndex(true);
+    w.append("b", (byte) -3);
+    w.append("sh", (short) 300);
+    w.append("i", -70000);
+    w.append("l", Long.MIN_VALUE);
+    w.append("f", 1.5f);
+    w.append("d", -2.5d);
+    w.append("c", '\u20ac');
+    w.append("t", true);
+    w.append("s", "\u00e9t\u00e9 \u4e2d");
+    w.append("date", new UTCMillisDate(123456789L));
+    w.append("uuid", new UUID(1, 2));
+    w.append("bytes", (byte) 4, new byte[] { 1, 2, 3 });
+    w.appendNull("n");
+    w.map("m").append("i", 1).list("l").append("x").appendNull().endList().endMap();
+    w.endMap();
+    ByteBuffer b = w.buffer().getBuffer();
+    b.flip();
+    return b;
+  }
+
+  @Test
+  public void testValidDocuments() {
+    for (NameSource ns : new NameSource[] { null, new NameSource.Naive(100) }) {
+      ByteBuffer heap = doc(ns);
+      ByteBuffer direct = ByteBuffer.allocateDirect(heap.remaining());
+      direct.put(heap.duplicate()).flip();
+      for (ByteBuffer buf : new ByteBuffer[] { heap, direct }) {
+        ReadableSonMap trusted = SonValidator.validate(ns, buf);
+        ReadableSonMap plain = Son.readableMap(ns, buf);
+        assertThat(trusted, is(plain));
+        assertThat(trusted.toString(), is(plain.toString()));
+        assertThat(trusted.getInt("sh"), is(300));
+        assertThat(trusted.getLong("l"), is(Long.MIN_VALUE));
+        assertThat(trusted.get("c").charValue(), is('\u20ac'));
+        assertThat(trusted.get("m").mapValue().get("l").listValue().getString(0), is("x"));
+      }
+    }
+    SonStreamingListWriter<Void> lw = Son.streamingListWriter();
+    lw.append(1).map().append("a", "b").endMap();
+    lw.endList();
+    ByteBuffer lb = lw.buffer().getBuffer();
+    lb.flip();
+    ReadableSonList l = SonValidator.validateList(lb);
+    assertThat(l, is(Son.readableList(lb)));
+  }
+
+  @Test
+  public void testCorruptionIsCaughtOrHarmless() {
+    ByteBuffer good = doc(null);
+    int rejected = 0;
+    for (int i = good.position(); i < good.limit(); i++) {
+      for (int flip : new int[] { 0x01, 0x80, 0xff }) {
+        ByteBuffer bad = ByteBuffer.allocate(good.remaining());
+        bad.put(good.duplicate()).flip();
+        bad.put(i, (byte) (bad.get(i) ^ flip));
+        ReadableSonMap m;
+        try {
+          m = SonValidator.validate(bad);
+        } catch (IllegalArgumentException e) {
+          rejected++;
+          continue;
+        }
+        // passed validation, so every read must work
+        m.toString();
+        for (String k : m.keys()) {
+          m.get(k);
+        }
+      }
+    }
+    assertThat(rejected > 0, is(true));
+  }
+
+  @Test
+  public void testTruncated() {
+    ByteBuffer good = doc(null);
+    for (int len = 0; len < good.remaining(); len++) {
+      ByteBuffer bad = good.duplicate();
+      bad.limit(bad.position() + len);
+      try {
+        SonValidator.validate(bad);
+        Assert.fail("accepted " + len + " bytes");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testLargeFooterIsReadInFull() {
+    // a 4 byte footer claiming a 16 MB directory, one past what 24 bits hold
+    ByteBuffer bad = ByteBuffer.allocate(8);
+    bad.putInt(4, ((1 << 24) << 2) | 0b10);
+    try {
+      SonValidator.validate(bad);
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage().contains("directory of " + (1 << 24) + " bytes"), is(true));
+    }
+  }
+}
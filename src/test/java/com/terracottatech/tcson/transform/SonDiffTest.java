@@ -0,0 +1,148 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.transform;
+
+import com.terracottatech.tcson.MutableSonList;
+import com.terracottatech.tcson.MutableSonMap;
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.Son;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class SonDiffTest {
+
+  private static MutableSonMap order(int qty, String city) {
+    MutableSonMap m = Son.writeableMap();
+    m.put("id", new UUID(1, 2));
+    m.put("customer", "chris");
+    m.put("qty", qty);
+    MutableSonMap addr = Son.writeableMap();
+    addr.put("street", "1 Main St");
+    addr.put("city", city);
+    m.put("address", addr);
+    MutableSonList lines = Son.writeableList();
+    for (int i = 0; i < 20; i++) {
+      MutableSonMap line = Son.writeableMap();
+      line.put("sku", "sku-" + i);
+      line.put("price", i * 2.5d);
+      lines.add(line);
+    }
+    m.put("lines", lines);
+    return m;
+  }
+
+  private static ReadableSonMap read(MutableSonMap m) {
+    return Son.readableMap(m.toBuffer());
+  }
+
+  private static void roundTrip(MutableSonMap base, MutableSonMap updated) {
+    ReadableSonMap b = read(base);
+    ReadableSonMap u = read(updated);
+    ByteBuffer patch = SonDiff.diff(b, u);
+    ReadableSonMap result = Son.readableMap(SonPatch.apply(b, patch));
+    assertThat(result, is(u));
+    assertThat(result.asMutable(), is((Object) updated));
+  }
+
+  @Test
+  public void testIdentical() {
+    ByteBuffer patch = SonDiff.diff(read(order(1, "x")), read(order(1, "x")));
+    assertThat(Son.readableMap(patch).size(), is(0));
+    roundTrip(order(1, "x"), order(1, "x"));
+  }
+
+  @Test
+  public void testKeyOrderAndWidthAreNotChanges() {
+    // same name table in both, so subtrees are first compared raw
+    MutableSonMap b = Son.writeableMap().put("x", (byte) 1).put("y", 0)
+      .put("inner", Son.writeableMap().put("x", 1).put("y", "two"))
+      .put("l", Son.writeableList().add(Son.writeableMap().put("x", 5)));
+    MutableSonMap u = Son.writeableMap().put("x", 1L).put("y", 0)
+      .put("inner", Son.writeableMap().put("y", "two").put("x", (short) 1))
+      .put("l", Son.writeableList().add(Son.writeableMap().put("x", 5L)));
+    assertThat(Son.readableMap(SonDiff.diff(read(b), read(u))).size(), is(0));
+
+    // and walked by name when the tables differ
+    MutableSonMap v = Son.writeableMap().put("inner", Son.writeableMap().put("y", "two").put("x", 1L))
+      .put("l", Son.writeableList().add(Son.writeableMap().put("x", 5))).put("y", 0).put("x", 1);
+    assertThat(Son.readableMap(SonDiff.diff(read(b), read(v))).size(), is(0));
+  }
+
+  @Test
+  public void testSmallChangeSmallPatch() {
+    ReadableSonMap b = read(order(1, "Boston"));
+    MutableSonMap upd = order(1, "Austin");
+    upd.get("lines").listValue().get(13).mapValue().put("price", 99d);
+    ReadableSonMap u = read(upd);
+    ByteBuffer patch = SonDiff.diff(b, u);
+    assertThat(patch.remaining(), lessThan(u.footprint() / 5));
+    assertThat(Son.readableMap(SonPatch.apply(b, patch)), is(u));
+  }
+
+  @Test
+  public void testAddRemoveRetype() {
+    MutableSonMap upd = order(2, "Boston");
+    upd.remove("customer");
+    upd.put("note", "rush");
+    upd.put("address", "unknown");
+    MutableSonList lines = upd.get("lines").listValue();
+    lines.remove(19);
+    lines.remove(18);
+    lines.get(0).mapValue().remove("price");
+    lines.get(1).mapValue().put("extra", true);
+    roundTrip(order(1, "Boston"), upd);
+  }
+
+  @Test
+  public void testListGrowsAndNests() {
+    MutableSonMap base = order(1, "Boston");
+    MutableSonMap upd = order(1, "Boston");
+    MutableSonList lines = upd.get("lines").listValue();
+    lines.add(5L);
+    MutableSonList inner = Son.writeableList();
+    inner.add("a");
+    inner.addNull();
+    lines.add(inner);
+    roundTrip(base, upd);
+    roundTrip(upd, base);
+  }
+
+  @Test
+  public void testDifferentNameTables() {
+    MutableSonMap base = Son.writeableMap();
+    base.put("z", 1);
+    MutableSonMap nested = Son.writeableMap();
+    nested.put("a", 1);
+    nested.put("b", 2);
+    base.put("n", nested);
+
+    MutableSonMap upd = Son.writeableMap();
+    MutableSonMap nested2 = Son.writeableMap();
+    nested2.put("b", 2);
+    nested2.put("c", 3);
+    nested2.put("a", 1);
+    upd.put("n", nested2);
+    upd.put("z", 1);
+    roundTrip(base, upd);
+    roundTrip(upd, base);
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.transform;
+
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.Son;
+import com.terracottatech.tcson.UTCMillisDate;
+import com.terracottatech.tcson.parser.FieldReference;
+import com.terracottatech.tcson.query.SonDotTraversal;
+import com.terracottatech.tcson.writing.SonStreamingMapWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+
+import static org.hamcrest.Matchers.is;
+
+public class SonInPlaceUpdaterTest {
+
+  private static SonDotTraversal path(Object... steps) {
+    ArrayList<FieldReference> spec = new ArrayList<>();
+    for (Object s : steps) {
+      if (s instanceof Integer) {
+        spec.add(new FieldReference(Collections.singletonList(new FieldReference.ArraySlice((Integer) s))));
+      } else {
+        spec.add(new FieldReference((String) s));
+      }
+    }
+    return new SonDotTraversal(spec);
+  }
+
+  private static ByteBuffer doc() {
+    SonStreamingMapWriter<Void> w = Son.streamingMapWriter();
+    w.appendFixed("count", 0L)
+      .append("b", (byte) 1)
+      .append("f", 1.5f)
+      .append("d", 2.5d)
+      .append("flag", false)
+      .append("when", new UTCMillisDate(1000L))
+      .append("v", 5)
+      .append("s", "str");
+    w.map("m").appendFixed("n", 7).endMap();
+    w.list("l").append("x").appendFixed(3L).endList();
+    w.endMap();
+    ByteBuffer heap = w.buffer().getBuffer();
+    heap.flip();
+    ByteBuffer direct = ByteBuffer.allocateDirect(heap.remaining());
+    direct.put(heap).flip();
+    return direct;
+  }
+
+  private static SonInPlaceUpdater.Field field(ByteBuffer doc, Object... steps) {
+    return SonInPlaceUpdater.field(doc, null, path(steps));
+  }
+
+  @Test
+  public void testSetFixedWidth() {
+    ByteBuffer doc = doc();
+    int size = doc.remaining();
+    field(doc, "count").set(Long.MAX_VALUE);
+    field(doc, "b").set(-7L);
+    field(doc, "f").set(0.25d);
+    field(doc, "d").set(-1e100d);
+    field(doc, "flag").set(true);
+    field(doc, "when").set(2000L);
+    field(doc, "m", "n").set(Integer.MIN_VALUE);
+    field(doc, "l", -1).set(99L);
+
+    Assert.assertThat(doc.remaining(), is(size));
+    ReadableSonMap m = Son.readableMap(doc);
+    Assert.assertThat(m.getLong("count"), is(Long.MAX_VALUE));
+    Assert.assertThat(m.get("b").byteValue(), is((byte) -7));
+    Assert.assertThat(m.get("f").floatValue(), is(0.25f));
+    Assert.assertThat(m.getDouble("d"), is(-1e100d));
+    Assert.assertThat(m.getBoolean("flag"), is(true));
+    Assert.assertThat(m.get("when").dateValue(), is(new UTCMillisDate(2000L)));
+    Assert.assertThat(m.get("m").mapValue().getInt("n"), is(Integer.MIN_VALUE));
+    Assert.assertThat(m.get("l").listValue().getLong(1), is(99L));
+    Assert.assertThat(m.getString("s"), is("str"));
+  }
+
+  @Test
+  public void testRefusals() {
+    ByteBuffer doc = doc();
+    ByteBuffer copy = ByteBuffer.allocate(doc.remaining());
+    copy.put(doc.duplicate()).flip();
+    expect(IllegalArgumentException.class, () -> field(doc, "v").set(6L));
+    expect(IllegalArgumentException.class, () -> field(doc, "b").set(128L));
+    expect(IllegalArgumentException.class, () -> field(doc, "m", "n").set(1L << 32));
+    expect(IllegalArgumentException.class, () -> field(doc, "f").set(0.1d));
+    expect(ClassCastException.class, () -> field(doc, "s").set(1L));
+    expect(ClassCastException.class, () -> field(doc, "count").set(true));
+    expect(NoSuchElementException.class, () -> field(doc, "nope"));
+    expect(NoSuchElementException.class, () -> field(doc, "l", 5));
+    expect(NoSuchElementException.class, () -> field(doc, "count", "deeper"));
+    expect(IllegalArgumentException.class, () -> field(copy, "count").compareAndSet(0L, 1L));
+    Assert.assertThat(doc, is(copy));
+  }
+
+  @Test
+  public void testAtomic() {
+    ByteBuffer doc = doc();
+    SonInPlaceUpdater.Field count = field(doc, "count");
+    if (System.getProperty("java.specification.version").startsWith("1.")) {
+      expect(UnsupportedOperationException.class, () -> count.compareAndSet(0L, 1L));
+      return;
+    }
+    // the first value sits at the start of the buffer, so is aligned
+    Assert.assertThat(count.getPosition(), is(0));
+    Assert.assertThat(count.compareAndSet(0L, 10L), is(true));
+    Assert.assertThat(count.compareAndSet(0L, 20L), is(false));
+    count.setVolatile(30L);
+    Assert.assertThat(Son.readableMap(doc).getLong("count"), is(30L));
+  }
+
+  private static void expect(Class<? extends Exception> type, Runnable r) {
+    try {
+      r.run();
+      Assert.fail("Expected " + type.getSimpleName());
+    } catch (Exception e) {
+      Assert.assertThat(e.getClass().getName(), type.isInstance(e), is(true));
+    }
+  }
+
+  @Test
+  public void testFixedWidthIsNotCanonical() {
+    SonStreamingMapWriter<Void> w = Son.streamingMapWriter().canonical(true);
+    w.appendFixed("a", 5).appendFixed("b", 1L << 40);
+    w.list("l").appendFixed(3).appendFixed(-4L).endList();
+    w.endMap();
+    ByteBuffer canonical = w.buffer().getBuffer();
+    canonical.flip();
+
+    ByteBuffer expected = Son.writeableMap()
+      .put("a", 5)
+      .put("b", 1L << 40)
+      .put("l", Son.writeableList().add(3).add(-4L))
+      .toCanonicalBuffer();
+    Assert.assertThat(canonical, is(expected));
+
+    // a fixed width document re-encodes to the same canonical bytes
+    SonStreamingMapWriter<Void> fixed = Son.streamingMapWriter();
+    fixed.appendFixed("b", 1L << 40).appendFixed("a", 5);
+    fixed.list("l").appendFixed(3).appendFixed(-4L).endList();
+    fixed.endMap();
+    ByteBuffer fixedBuf = fixed.buffer().getBuffer();
+    fixedBuf.flip();
+    Assert.assertThat(Son.readableMap(fixedBuf).toCanonicalBuffer(), is(expected));
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.transform;
+
+import com.terracottatech.tcson.MutableSonMap;
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.Son;
+import com.terracottatech.tcson.pile.ManagedBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class SonMergerTest {
+
+  private static ReadableSonMap base() {
+    return Son.readableMap(Son.writeableMap()
+                             .put("name", "base")
+                             .put("port", 80)
+                             .put("db", Son.writeableMap()
+                               .put("host", "localhost")
+                               .put("pool", Son.writeableMap().put("min", 1).put("max", 10)))
+                             .put("tags", Son.writeableList().add("a").add("b"))
+                             .put("shape", Son.writeableMap().put("was", "map"))
+                             .toBuffer());
+  }
+
+  private static ReadableSonMap overlay() {
+    return Son.readableMap(Son.writeableMap()
+                             .put("extra", true)
+                             .put("db", Son.writeableMap()
+                               .put("pool", Son.writeableMap().put("max", 20))
+                               .put("user", "admin"))
+                             .put("tags", Son.writeableList().add("c"))
+                             .put("shape", 7L)
+                             .putNull("port")
+                             .toBuffer());
+  }
+
+  @Test
+  public void testMergeReplacingLists() {
+    ManagedBuffer out = new ManagedBuffer(16);
+    SonMerger.merge(base(), overlay(), out);
+    ByteBuffer buf = out.getBuffer();
+    buf.flip();
+    ReadableSonMap got = Son.readableMap(buf);
+
+    MutableSonMap expected = Son.writeableMap()
+      .put("name", "base")
+      .putNull("port")
+      .put("db", Son.writeableMap()
+        .put("host", "localhost")
+        .put("pool", Son.writeableMap().put("min", 1).put("max", 20))
+        .put("user", "admin"))
+      .put("tags", Son.writeableList().add("c"))
+      .put("shape", 7L)
+      .put("extra", true);
+    Assert.assertThat(got, is(expected));
+    Assert.assertThat(got.keys(), contains("name", "port", "db", "tags", "shape", "extra"));
+    Assert.assertThat(got.get("db").mapValue().keys(), contains("host", "pool", "user"));
+  }
+
+  @Test
+  public void testMergeConcatenatingLists() {
+    ReadableSonMap got = Son.readableMap(SonMerger.merge(base(), overlay(), SonMerger.ListPolicy.CONCAT));
+    Assert.assertThat(got.get("tags").listValue(), is(Son.writeableList().add("a").add("b").add("c")));
+    Assert.assertThat(got.get("db").mapValue().get("pool").mapValue().getInt("max"), is(20));
+  }
+
+  @Test
+  public void testMergeWithEmpty() {
+    ReadableSonMap empty = Son.readableMap(Son.writeableMap().toBuffer());
+    Assert.assertThat(Son.readableMap(SonMerger.merge(base(), empty, SonMerger.ListPolicy.REPLACE)), is(base()));
+    Assert.assertThat(Son.readableMap(SonMerger.merge(empty, overlay(), SonMerger.ListPolicy.REPLACE)),
+                      is(overlay()));
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright IBM Corp. 2020, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.tcson.transform;
+
+import com.terracottatech.tcson.MutableSonList;
+import com.terracottatech.tcson.MutableSonMap;
+import com.terracottatech.tcson.ReadableSonMap;
+import com.terracottatech.tcson.Son;
+import com.terracottatech.tcson.SonType;
+import com.terracottatech.tcson.mutable.MutableSonValue;
+import com.terracottatech.tcson.parser.FieldReference;
+import com.terracottatech.tcson.query.SonDotTraversal;
+import com.terracottatech.tcson.reading.SonValidator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class SonSplicerTest {
+
+  private static SonDotTraversal path(Object... steps) {
+    ArrayList<FieldReference> spec = new ArrayList<>();
+    for (Object s : steps) {
+      if (s instanceof Integer) {
+        spec.add(new FieldReference(Collections.singletonList(new FieldReference.ArraySlice((Integer) s))));
+      } else {
+        spec.add(new FieldReference((String) s));
+      }
+    }
+    return new SonDotTraversal(spec);
+  }
+
+  private static MutableSonMap doc() {
+    MutableSonMap big = Son.writeableMap();
+    for (int i = 0; i < 50; i++) {
+      big.put("k" + i, "value " + i);
+    }
+    return Son.writeableMap()
+      .put("a", 1)
+      .put("big", big)
+      .put("name", "fred")
+      .put("m", Son.writeableMap().put("x", 1).put("y", Son.writeableList().add(1).add("two").add(3.0d)))
+      .put("z", true);
+  }
+
+  private static ReadableSonMap check(ByteBuffer spliced, MutableSonMap expected) {
+    SonValidator.validate(spliced.duplicate());
+    ReadableSonMap ret = Son.readableMap(spliced);
+    Assert.assertThat(ret, is(expected));
+    return ret;
+  }
+
+  @Test
+  public void testReplace() {
+    ReadableSonMap src = Son.readableMap(doc().toBuffer());
+    MutableSonMap expected = src.asMutable();
+    expected.put("name", "a much longer name than before");
+    ReadableSonMap got = check(SonSplicer.replace(src, path("name"), Son.of("a much longer name than before")),
+                               expected);
+    Assert.assertThat(got.keys(), contains("a", "big", "name", "m", "z"));
+
+    expected = src.asMutable();
+    expected.get("m").mapValue().get("y").listValue().set(1, Son.writeableMap().put("new", 'c'));
+    MutableSonValue nested = new MutableSonValue(SonType.MAP, Son.writeableMap().put("new", 'c'));
+    check(SonSplicer.replace(src, path("m", "y", 1), nested), expected);
+
+    expected = src.asMutable();
+    expected.get("m").mapValue().put("x", Son.readableMap(doc().toBuffer()).asMutable());
+    check(SonSplicer.replace(src, path("m", "x"), Son.readableMap(doc().toBuffer()).asSonValue()), expected);
+  }
+
+  @Test
+  public void testInsertAndRemove() {
+    ReadableSonMap src = Son.readableMap(doc().toBuffer());
+
+    MutableSonMap expected = src.asMutable();
+    expected.get("m").mapValue().put("fresh", 10L);
+    ReadableSonMap got = check(SonSplicer.insert(src, path("m", "fresh"), Son.of(10L)), expected);
+    Assert.assertThat(got.get("m").mapValue().keys(), contains("x", "y", "fresh"));
+
+    expected = src.asMutable();
+    MutableSonList l = expected.get("m").mapValue().get("y").listValue();
+    l.add(0, "first");
+    check(SonSplicer.insert(src, path("m", "y", 0), Son.of("first")), expected);
+
+    expected = src.asMutable();
+    expected.get("m").mapValue().get("y").listValue().add("last");
+    check(SonSplicer.insert(src, path("m", "y", -1), Son.of("last")), expected);
+
+    expected = src.asMutable();
+    expected.remove("big");
+    check(SonSplicer.remove(src, path("big")), expected);
+
+    expected = src.asMutable();
+    expected.get("m").mapValue().get("y").listValue().remove(2);
+    check(SonSplicer.remove(src, path("m", "y", -1)), expected);
+  }
+
+  @Test
+  public void testBadPaths() {
+    ReadableSonMap src = Son.readableMap(doc().toBuffer());
+    try {
+      SonSplicer.replace(src, path("m", "nope"), Son.of(1));
+      Assert.fail();
+    } catch (NoSuchElementException e) {
+    }
+    try {
+      SonSplicer.remove(src, path("m", "y", 3));
+      Assert.fail();
+    } catch (NoSuchElementException e) {
+    }
+    try {
+      SonSplicer.remove(src, path("name", "deeper"));
+      Assert.fail();
+    } catch (NoSuchElementException e) {
+    }
+    try {
+      SonSplicer.insert(src, path("a"), Son.of(1));
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+}